@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Uno
+ *
+ * AIDecisionChunk class:
+ * Reads a chunk of decisions written by AIDecisionTelemetry. Only the column
+ * files that are asked for are opened, and each is memory mapped and decoded
+ * straight from the mapping.
+ *
+ * Each column file is: AIDecisionTelemetry.COLUMN_MAGIC, the ColumnEncoding
+ * ordinal (1 byte), the row count (4 bytes), then the encoded rows.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class AIDecisionChunk {
+    /**
+     * The folder containing the chunk's column files.
+     */
+    private final Path chunkFolder;
+    /**
+     * Number of rows in every column of the chunk.
+     */
+    private final int rowCount;
+
+    /**
+     * Opens a chunk by reading its manifest.
+     *
+     * @param chunkFolder The folder containing the chunk's column files.
+     * @throws IOException When the manifest could not be read.
+     */
+    public AIDecisionChunk(Path chunkFolder) throws IOException {
+        this.chunkFolder = chunkFolder;
+        List<String> manifest = Files.readAllLines(chunkFolder.resolve(AIDecisionTelemetry.MANIFEST_FILE), StandardCharsets.UTF_8);
+        try {
+            rowCount = Integer.parseInt(manifest.get(0));
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid decision chunk manifest in " + chunkFolder);
+        }
+    }
+
+    /**
+     * Gets the chunks in a folder that were completely written. Chunks without a manifest
+     * are still being written or were interrupted, and chunks whose manifest cannot be read
+     * are damaged, so both are left out.
+     *
+     * @param folder The folder given to AIDecisionTelemetry.setOutputFolder().
+     * @return The chunks in the order they were written.
+     * @throws IOException When the folder could not be read.
+     */
+    public static List<AIDecisionChunk> openChunks(Path folder) throws IOException {
+        List<Path> chunkFolders;
+        try(Stream<Path> files = Files.list(folder)) {
+            chunkFolders = files.filter(path -> Files.exists(path.resolve(AIDecisionTelemetry.MANIFEST_FILE)))
+                    .sorted().collect(Collectors.toList());
+        }
+        List<AIDecisionChunk> chunks = new ArrayList<>();
+        for(Path chunkFolder : chunkFolders) {
+            try {
+                chunks.add(new AIDecisionChunk(chunkFolder));
+            } catch (IOException e) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Warning, "Skipped decision chunk. {}", e.getMessage());
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Gets the number of decisions in the chunk.
+     *
+     * @return The row count.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Reads every value in one column.
+     *
+     * @param column The column to read.
+     * @return The value for each row in order.
+     * @throws IOException When the column file could not be read or does not match the chunk.
+     */
+    public int[] readColumn(AIDecisionTelemetry.Column column) throws IOException {
+        Path file = chunkFolder.resolve(column.getFileName());
+        ByteBuffer buffer;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            for(byte magicByte : AIDecisionTelemetry.COLUMN_MAGIC) {
+                if(buffer.get() != magicByte) throw new IOException("Not a column file: " + file);
+            }
+            ColumnEncoding encoding = ColumnEncoding.values()[buffer.get()];
+            if(buffer.getInt() != rowCount) throw new IOException("Column does not match chunk: " + file);
+            return encoding.decode(buffer, rowCount);
+        } catch (RuntimeException e) {
+            throw new IOException("Damaged column file: " + file, e);
+        }
+    }
+}
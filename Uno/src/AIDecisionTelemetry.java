@@ -0,0 +1,361 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Uno
+ *
+ * AIDecisionTelemetry class:
+ * Records every decision made by an AIPlayer for offline analysis. Each decision
+ * is a row with the state of the round when it was made, the number of options
+ * the AI had, the choice it made, and the outcome of the round. Rows are held
+ * in the RoundRows of their game until the round ends so the outcome can be
+ * filled in. Rows from rounds that are abandoned are dropped. Each game only
+ * touches its own RoundRows while the round is played, so a GameServer hosting
+ * many games only takes the lock here once per round ended.
+ *
+ * Rows are stored in columns and written out in a chunk once CHUNK_ROWS rows are complete.
+ * Each chunk is a folder with one file per Column so analysis can read only the
+ * columns it needs. Each column is compressed with the ColumnEncoding set for it.
+ * The column files are written by the EventLogWriter, followed by the chunk's
+ * manifest under a temporary name, which is moved into place once every file
+ * has been written and closed. Use AIDecisionChunk to read them.
+ *
+ * Recording is off until setOutputFolder() is called. Used for simulations with
+ * the decision folder of GameServer.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class AIDecisionTelemetry {
+    /**
+     * The decisions an AIPlayer can make.
+     */
+    public enum DecisionType { ChooseCard, WildColour, KeepOrPlay, SwapTarget, ChallengeOrDecline, StackPlus2 }
+
+    /**
+     * The columns recorded for each decision and the encoding used to store them.
+     */
+    public enum Column {
+        /**
+         * Number of the round in the order rounds ended since recording started.
+         */
+        RoundNumber(ColumnEncoding.Delta),
+        /**
+         * The turn the decision was made in from CurrentGameInterface.getTurnNumber().
+         */
+        TurnNumber(ColumnEncoding.Delta),
+        /**
+         * The player making the decision.
+         */
+        PlayerID(ColumnEncoding.Dictionary),
+        /**
+         * The AIStrategy ordinal of the player.
+         */
+        Strategy(ColumnEncoding.Dictionary),
+        /**
+         * The DecisionType ordinal.
+         */
+        DecisionType(ColumnEncoding.Dictionary),
+        /**
+         * Number of cards in the player's hand when the decision was made.
+         */
+        HandSize(ColumnEncoding.Plain),
+        /**
+         * Fewest cards in any other player's hand.
+         */
+        SmallestOpponentHand(ColumnEncoding.Plain),
+        /**
+         * The top card of the played pile as faceValueID * 5 + colourID.
+         */
+        TopCard(ColumnEncoding.Dictionary),
+        /**
+         * Number of choices that were available.
+         */
+        OptionCount(ColumnEncoding.Dictionary),
+        /**
+         * The choice made. The meaning depends on the DecisionType, see AIPlayer.
+         */
+        Choice(ColumnEncoding.Dictionary),
+        /**
+         * 1 if the player went on to win the round, otherwise 0.
+         */
+        Won(ColumnEncoding.Dictionary),
+        /**
+         * The round score of the player who won.
+         */
+        WinningScore(ColumnEncoding.Plain);
+
+        /**
+         * How the column is compressed.
+         */
+        private final ColumnEncoding encoding;
+
+        /**
+         * Sets the encoding for the column.
+         *
+         * @param encoding How the column is compressed.
+         */
+        Column(ColumnEncoding encoding) {
+            this.encoding = encoding;
+        }
+
+        /**
+         * Gets how the column is compressed.
+         *
+         * @return The encoding.
+         */
+        public ColumnEncoding getEncoding() {
+            return encoding;
+        }
+
+        /**
+         * Gets the name of the file the column is stored in within a chunk.
+         *
+         * @return The file name.
+         */
+        public String getFileName() {
+            return name() + COLUMN_EXTENSION;
+        }
+    }
+
+    /**
+     * Bytes at the start of every column file.
+     */
+    public static final byte[] COLUMN_MAGIC = {'U', 'N', 'O', 'C'};
+    /**
+     * File extension for column files.
+     */
+    public static final String COLUMN_EXTENSION = ".unocol";
+    /**
+     * Name of the file written last in each chunk listing its columns and row count.
+     */
+    public static final String MANIFEST_FILE = "manifest.unocols";
+    /**
+     * Number of rows from ended rounds that causes a chunk to be written.
+     */
+    public static final int CHUNK_ROWS = 64 * 1024;
+
+    /**
+     * Folder chunks are written to. Null when recording is off.
+     */
+    private static volatile Path outputFolder;
+    /**
+     * Values for each row from rounds that have ended, indexed by Column ordinal and then row.
+     */
+    private static final int[][] columns = new int[Column.values().length][1024];
+    /**
+     * Number of rows from rounds that have ended waiting to be written.
+     */
+    private static int completedRowCount;
+    /**
+     * Number of rounds that have ended since recording started.
+     */
+    private static int roundNumber;
+    /**
+     * Number used to name the next chunk.
+     */
+    private static int nextChunkNumber;
+
+    /**
+     * Starts recording decisions to chunks in the folder, or stops recording. Rows waiting
+     * to be written when recording is stopped are written first.
+     *
+     * @param folder The folder to write chunks to, or null to stop recording.
+     */
+    public static synchronized void setOutputFolder(Path folder) {
+        flush();
+        outputFolder = folder;
+        completedRowCount = 0;
+    }
+
+    /**
+     * Checks if decisions are being recorded.
+     *
+     * @return True if an output folder has been set.
+     */
+    public static boolean isEnabled() {
+        return outputFolder != null;
+    }
+
+    /**
+     * Records a decision made by a player in the current game to the RoundRows of that game.
+     *
+     * @param player The player who made the decision.
+     * @param strategy The strategy the player is using.
+     * @param decisionType The decision that was made.
+     * @param optionCount Number of choices that were available.
+     * @param choice The choice that was made.
+     */
+    public static void recordDecision(Player player, AIPlayer.AIStrategy strategy,
+                                      DecisionType decisionType, int optionCount, int choice) {
+        if(!isEnabled()) return;
+        CurrentGameInterface game = CurrentGameInterface.getCurrentGame();
+        int smallestOpponentHand = Integer.MAX_VALUE;
+        for(Player otherPlayer : game.getAllPlayers()) {
+            if(otherPlayer != player) {
+                smallestOpponentHand = Math.min(smallestOpponentHand, otherPlayer.getHand().size());
+            }
+        }
+        Card topCard = game.getTopCard();
+        int[] row = game.getDecisionRows().addRow();
+        row[Column.TurnNumber.ordinal()] = game.getTurnNumber();
+        row[Column.PlayerID.ordinal()] = player.getPlayerID();
+        row[Column.Strategy.ordinal()] = strategy.ordinal();
+        row[Column.DecisionType.ordinal()] = decisionType.ordinal();
+        row[Column.HandSize.ordinal()] = player.getHand().size();
+        row[Column.SmallestOpponentHand.ordinal()] = smallestOpponentHand;
+        row[Column.TopCard.ordinal()] = topCard.getFaceValueID() * 5 + topCard.getColourID();
+        row[Column.OptionCount.ordinal()] = optionCount;
+        row[Column.Choice.ordinal()] = choice;
+    }
+
+    /**
+     * Fills in the outcome for every decision made in the round that ended, moves them to
+     * the rows waiting to be written, and writes a chunk once there are enough rows.
+     *
+     * @param roundRows The decisions made in the round that ended. Left empty for the next round.
+     * @param winnerID The player who won the round.
+     * @param winningScore The round score of the winner.
+     */
+    public static void endRound(RoundRows roundRows, int winnerID, int winningScore) {
+        if(!isEnabled() || roundRows.rowCount == 0) {
+            roundRows.clear();
+            return;
+        }
+        for(int row = 0; row < roundRows.rowCount; row++) {
+            int[] values = roundRows.rows[row];
+            values[Column.Won.ordinal()] = values[Column.PlayerID.ordinal()] == winnerID ? 1 : 0;
+            values[Column.WinningScore.ordinal()] = winningScore;
+        }
+        synchronized (AIDecisionTelemetry.class) {
+            if(completedRowCount + roundRows.rowCount > columns[0].length) {
+                int newLength = Math.max(columns[0].length * 2, completedRowCount + roundRows.rowCount);
+                for(int i = 0; i < columns.length; i++) {
+                    columns[i] = Arrays.copyOf(columns[i], newLength);
+                }
+            }
+            for(int row = 0; row < roundRows.rowCount; row++) {
+                int[] values = roundRows.rows[row];
+                values[Column.RoundNumber.ordinal()] = roundNumber;
+                for(int column = 0; column < columns.length; column++) {
+                    columns[column][completedRowCount] = values[column];
+                }
+                completedRowCount++;
+            }
+            roundNumber++;
+            if(completedRowCount >= CHUNK_ROWS) {
+                flush();
+            }
+        }
+        roundRows.clear();
+    }
+
+    /**
+     * Drops the decisions from a round that ended without a winner.
+     *
+     * @param roundRows The decisions made in the round. Left empty for the next round.
+     */
+    public static void abandonRound(RoundRows roundRows) {
+        roundRows.clear();
+    }
+
+    /**
+     * Writes the rows from rounds that have ended to a new chunk.
+     */
+    public static synchronized void flush() {
+        if(!isEnabled() || completedRowCount == 0) return;
+        Path chunkFolder = outputFolder.resolve(String.format("decisions-%d-%04d", System.currentTimeMillis(), nextChunkNumber++));
+        try {
+            Files.createDirectories(chunkFolder);
+            StringBuilder manifest = new StringBuilder();
+            manifest.append(completedRowCount).append('\n');
+            for(Column column : Column.values()) {
+                ByteBuffer encoded = column.getEncoding().encode(columns[column.ordinal()], completedRowCount);
+                ByteBuffer buffer = ByteBuffer.allocate(COLUMN_MAGIC.length + 1 + 4 + encoded.remaining());
+                buffer.put(COLUMN_MAGIC).put((byte) column.getEncoding().ordinal()).putInt(completedRowCount).put(encoded);
+                writeFile(chunkFolder.resolve(column.getFileName()), buffer.flip());
+                manifest.append(column.getFileName()).append('\n');
+            }
+            Path manifestFile = chunkFolder.resolve(MANIFEST_FILE);
+            Path tempFile = DurableFile.getTempPath(manifestFile);
+            writeFile(tempFile, ByteBuffer.wrap(manifest.toString().getBytes(StandardCharsets.UTF_8)));
+            // A reader takes the chunk as complete once the manifest exists, so it only appears after the columns are written.
+            EventLogWriter.run(() -> Files.move(tempFile, manifestFile, StandardCopyOption.ATOMIC_MOVE));
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Failed to write decision telemetry. {}", e.getMessage());
+        }
+        completedRowCount = 0;
+    }
+
+    /**
+     * Creates a file and queues the data to be written to it by the EventLogWriter.
+     *
+     * @param file The file to create.
+     * @param data The data ready for reading.
+     * @throws IOException When the file could not be created.
+     */
+    private static void writeFile(Path file, ByteBuffer data) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        EventLogWriter.write(channel, data, null);
+        EventLogWriter.close(channel);
+    }
+
+    /**
+     * Uno
+     *
+     * RoundRows class:
+     * The decisions made so far in the current round of one game. Owned by the
+     * CurrentGameInterface so that games hosted together never see each other's
+     * rows. Only used by the thread running that game.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    public static class RoundRows {
+        /**
+         * Values for each row, indexed by row and then Column ordinal.
+         */
+        private int[][] rows;
+        /**
+         * Number of rows recorded in the current round.
+         */
+        private int rowCount;
+
+        /**
+         * Creates an empty set of rows for a new round.
+         */
+        public RoundRows() {
+            rows = new int[16][];
+            rowCount = 0;
+        }
+
+        /**
+         * Adds a row for a new decision, reusing one from an earlier round when possible.
+         *
+         * @return The values of the row indexed by Column ordinal.
+         */
+        private int[] addRow() {
+            if(rowCount == rows.length) {
+                rows = Arrays.copyOf(rows, rowCount * 2);
+            }
+            if(rows[rowCount] == null) {
+                rows[rowCount] = new int[Column.values().length];
+            }
+            return rows[rowCount++];
+        }
+
+        /**
+         * Drops every row ready for the next round.
+         */
+        private void clear() {
+            rowCount = 0;
+        }
+    }
+}
@@ -65,24 +65,22 @@ public class AIPlayer extends Player {
      */
     public AIPlayer(int playerNumber, String playerName, Rectangle bounds, AIStrategy strategy, boolean showPlayerNameLeft) {
         super(playerNumber, playerName, PlayerType.AIPlayer, bounds, showPlayerNameLeft);
-        if(strategy == AIStrategy.Random) {
-            selectRandomStrategy();
-        } else {
-            this.strategy = strategy;
-        }
+        this.strategy = strategy == AIStrategy.Random ? chooseRandomStrategy() : strategy;
         resetDelayTimer();
         consideringDelayTimer = -1;
     }
 
     /**
      * Chooses a random Strategy.
+     *
+     * @return Offensive, Defensive, or Chaotic with equal chance.
      */
-    private void selectRandomStrategy() {
-        switch((int)(Math.random()*3)) {
-            case 0 -> strategy = AIStrategy.Offensive;
-            case 1 -> strategy = AIStrategy.Defensive;
-            case 2 -> strategy = AIStrategy.Chaotic;
-        }
+    public static AIStrategy chooseRandomStrategy() {
+        return switch((int)(Math.random()*3)) {
+            case 0 -> AIStrategy.Offensive;
+            case 1 -> AIStrategy.Defensive;
+            default -> AIStrategy.Chaotic;
+        };
     }
 
     /**
@@ -206,7 +204,14 @@ public class AIPlayer extends Player {
         if(validMoves.isEmpty()) {
             CurrentGameInterface.getCurrentGame().setCurrentTurnAction(TurnActionFactory.drawCardAsAction(getPlayerID()));
         } else {
-            Card cardToPlay = chooseCard(validMoves);
+            Card cardToPlay = chooseCard(strategy, validMoves);
+            if(GameLogger.isEnabled(GameLogger.Category.AIDecisions, GameLogger.Level.Debug)) {
+                GameLogger.log(GameLogger.Category.AIDecisions, GameLogger.Level.Debug,
+                        "{} ({}) chose faceValueID {} colourID {} from {} valid cards.", getPlayerName(), strategy,
+                        cardToPlay.getFaceValueID(), cardToPlay.getColourID(), validMoves.size());
+            }
+            recordDecision(AIDecisionTelemetry.DecisionType.ChooseCard, validMoves.size(),
+                    cardToPlay.getFaceValueID() * 5 + cardToPlay.getColourID());
             checkCallUNO();
             CurrentGameInterface.getCurrentGame().setCurrentTurnAction(TurnActionFactory.playCardAsAction(
                     getPlayerID(), cardToPlay.getCardID(), cardToPlay.getFaceValueID(), cardToPlay.getColourID()));
@@ -224,10 +229,11 @@ public class AIPlayer extends Player {
      * Takes a list of cards that can be played and chooses the card
      * based on the selected strategy for the AI.
      *
-     * @param validCards A collection of cards that are all valid to be played.
+     * @param strategy The strategy to choose with, which must not be Random.
+     * @param validCards A collection of cards that are all valid to be played. It may be sorted.
      * @return A single valid card selected to be played.
      */
-    private Card chooseCard(List<Card> validCards) {
+    public static Card chooseCard(AIStrategy strategy, List<Card> validCards) {
         if(strategy == AIStrategy.Chaotic) {
             return validCards.get((int)(Math.random()*validCards.size()));
         }
@@ -255,6 +261,10 @@ public class AIPlayer extends Player {
             case "isChallenging" -> chooseChallengeOrDecline(decisionAction);
             case "isStacking" -> chooseStackPlus2(decisionAction);
         }
+        if(GameLogger.isEnabled(GameLogger.Category.AIDecisions, GameLogger.Level.Debug)) {
+            GameLogger.log(GameLogger.Category.AIDecisions, GameLogger.Level.Debug, "{} ({}) chose {} for {}.",
+                    getPlayerName(), strategy, decisionAction.storedData.get(decisionAction.flagName), decisionAction.flagName);
+        }
     }
 
     /**
@@ -265,15 +275,27 @@ public class AIPlayer extends Player {
      * @param decisionAction Reference to the current action requiring a decision.
      */
     private void chooseWildColour(TurnActionFactory.TurnDecisionAction decisionAction) {
-        List<Card> colouredHandCards = getHand().stream().filter(card -> card.getColourID() != 4).collect(Collectors.toList());
+        decisionAction.injectProperty("colourID", chooseWildColour(getHand()));
+        decisionAction.injectFlagProperty(1);
+        recordDecision(AIDecisionTelemetry.DecisionType.WildColour, 4, decisionAction.storedData.get("colourID"));
+    }
+
+    /**
+     * Chooses the colour for a wild from the first coloured card in a hand. If there are none,
+     * or on a random chance, the colour is chosen randomly.
+     *
+     * @param hand The cards held by the player choosing.
+     * @return The colourID chosen.
+     */
+    public static int chooseWildColour(List<Card> hand) {
+        List<Card> colouredHandCards = hand.stream().filter(card -> card.getColourID() != 4).collect(Collectors.toList());
 
         // No cards, or only wilds, or rare 10% chance: randomly choose colour
         if(colouredHandCards.isEmpty() || Math.random() * 100 > 90) {
-            decisionAction.injectProperty("colourID", (int)(Math.random()*4));
+            return (int)(Math.random()*4);
         } else { // Use first coloured card
-            decisionAction.injectProperty("colourID", colouredHandCards.get(0).getColourID());
+            return colouredHandCards.get(0).getColourID();
         }
-        decisionAction.injectFlagProperty(1);
     }
 
     /**
@@ -284,6 +306,7 @@ public class AIPlayer extends Player {
     private void chooseKeepOrPlay(TurnActionFactory.TurnDecisionAction decisionAction) {
         checkCallUNO();
         decisionAction.injectFlagProperty(1);
+        recordDecision(AIDecisionTelemetry.DecisionType.KeepOrPlay, 2, 1);
     }
 
     /**
@@ -302,6 +325,8 @@ public class AIPlayer extends Player {
             }
         }
         decisionAction.injectFlagProperty(chosenPlayer.getPlayerID());
+        recordDecision(AIDecisionTelemetry.DecisionType.SwapTarget,
+                CurrentGameInterface.getCurrentGame().getAllPlayers().size() - 1, chosenPlayer.getPlayerID());
     }
 
     /**
@@ -321,6 +346,7 @@ public class AIPlayer extends Player {
                 decisionAction.injectProperty("cardID", validCard.getCardID());
                 decisionAction.injectProperty("isChaining", 1);
                 decisionAction.injectFlagProperty(0);
+                recordDecision(AIDecisionTelemetry.DecisionType.ChallengeOrDecline, 3, 2);
                 return;
             }
         }
@@ -329,6 +355,7 @@ public class AIPlayer extends Player {
         // Don't need to check the no bluffing rule because this method is only called if a valid choice is available
         // And the AI will ALWAYS choose to stack a card meaning this will never run the random chance of challenge in those cases.
         decisionAction.injectFlagProperty((int)(Math.random()*2));
+        recordDecision(AIDecisionTelemetry.DecisionType.ChallengeOrDecline, 2, decisionAction.storedData.get("isChallenging"));
     }
 
     /**
@@ -346,10 +373,28 @@ public class AIPlayer extends Player {
                 decisionAction.injectProperty("colourID", validCard.getColourID());
                 decisionAction.injectProperty("cardID", validCard.getCardID());
                 decisionAction.injectFlagProperty(1);
+                recordDecision(AIDecisionTelemetry.DecisionType.StackPlus2, 2, 1);
                 return;
             }
         }
         decisionAction.injectFlagProperty(0);
+        recordDecision(AIDecisionTelemetry.DecisionType.StackPlus2, 1, 0);
+    }
+
+    /**
+     * Records a decision with AIDecisionTelemetry when it is enabled. The choice is the card played as
+     * faceValueID * 5 + colourID for ChooseCard, the colourID for WildColour, the chosen playerID for
+     * SwapTarget, 2 for a stacked +4 or otherwise the isChallenging flag for ChallengeOrDecline, and
+     * the flag value for the others.
+     *
+     * @param decisionType The decision that was made.
+     * @param optionCount Number of choices that were available.
+     * @param choice The choice that was made.
+     */
+    private void recordDecision(AIDecisionTelemetry.DecisionType decisionType, int optionCount, int choice) {
+        if(AIDecisionTelemetry.isEnabled()) {
+            AIDecisionTelemetry.recordDecision(this, strategy, decisionType, optionCount, choice);
+        }
     }
 
     /**
@@ -358,8 +403,16 @@ public class AIPlayer extends Player {
     private void checkCallUNO() {
         if(getHand().size() != 2) return;
         if(Math.random() * 100 < 70) {
-            setUnoState(UNOState.Called);
-            CurrentGameInterface.getCurrentGame().showGeneralOverlay("UNOCalled"+getPlayerID());
+            CurrentGameInterface.getCurrentGame().callUNO(getPlayerID());
         }
     }
+
+    /**
+     * Gets the strategy used by this AI. If Random was requested this is the strategy that was chosen.
+     *
+     * @return The strategy used for selecting how cards are played.
+     */
+    public AIStrategy getStrategy() {
+        return strategy;
+    }
 }
@@ -0,0 +1,43 @@
+/**
+ * Uno
+ *
+ * ButtonHitGrid class:
+ * A HitTestGrid of buttons that also tracks which button the mouse is over,
+ * so that only the previously hovered and newly hovered buttons are updated
+ * when the mouse moves.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class ButtonHitGrid extends HitTestGrid<Button> {
+    /**
+     * The button currently hovered by the mouse or null.
+     */
+    private Button hoveredButton;
+
+    /**
+     * Creates an empty grid with no hovered button.
+     */
+    public ButtonHitGrid() {
+        super(0);
+        hoveredButton = null;
+    }
+
+    /**
+     * Looks up the button under the mouse and updates the hover state of only
+     * the previously hovered and newly hovered buttons.
+     *
+     * @param mousePosition Position of the mouse.
+     */
+    public void updateHover(Position mousePosition) {
+        Button newHoveredButton = getItemAt(mousePosition);
+        if(newHoveredButton == hoveredButton) return;
+        if(hoveredButton != null) {
+            hoveredButton.setHovering(false);
+        }
+        if(newHoveredButton != null) {
+            newHoveredButton.setHovering(true);
+        }
+        hoveredButton = newHoveredButton;
+    }
+}
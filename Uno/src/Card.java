@@ -49,6 +49,14 @@ public class Card extends Rectangle {
      * The unique ID based on order drawn from the deck.
      */
     private final int cardID;
+    /**
+     * Where the card is drawn while it is moving towards its position.
+     */
+    private final Position drawPosition;
+    /**
+     * When true the card is drawn at drawPosition instead of its position.
+     */
+    private boolean isMoving;
 
     public Card(int faceValueID, int colourID, int cardID) {
         super(new Position(0,0), CARD_WIDTH, CARD_HEIGHT);
@@ -57,6 +65,8 @@ public class Card extends Rectangle {
         this.colourID = colourID;
         this.drawColour = getColourByID(colourID);
         this.cardID = cardID;
+        drawPosition = new Position(0,0);
+        isMoving = false;
         if(faceValueID == 10) {
             this.cornerLabel = "+2";
         } else if(faceValueID == 13) {
@@ -69,27 +79,49 @@ public class Card extends Rectangle {
     }
 
     /**
-     * Draws the card face up based on properties and type of card.
+     * Draws the card face up using the cached image for this type of card.
      *
      * @param g Reference to the Graphics object for rendering.
      */
     public void paint(Graphics g) {
+        Position paintPosition = getDrawPosition();
+        g.drawImage(CardImageCache.getCardFront(this), paintPosition.x, paintPosition.y, width, height, null);
+    }
+
+    /**
+     * Draws the card face down using the cached image for the card back.
+     *
+     * @param g Reference to the Graphics object for rendering.
+     */
+    public void paintBack(Graphics g) {
+        Position paintPosition = getDrawPosition();
+        g.drawImage(CardImageCache.getCardBack(), paintPosition.x, paintPosition.y, width, height, null);
+    }
+
+    /**
+     * Draws the card face up based on properties and type of card with the top left corner at x, y.
+     *
+     * @param g Reference to the Graphics object for rendering.
+     * @param x X coordinate of the top left corner.
+     * @param y Y coordinate of the top left corner.
+     */
+    public void paintFace(Graphics g, int x, int y) {
         // Draw card background with white border and card colour
         g.setColor(Color.WHITE);
-        g.fillRect(position.x, position.y, width, height);
+        g.fillRect(x, y, width, height);
         g.setColor(drawColour);
-        g.fillRect(position.x+2, position.y+2, width-4, height-4);
+        g.fillRect(x+2, y+2, width-4, height-4);
 
         if(colourID != 4) {
             // Draw a white oval for any non-wild in the middle.
             g.setColor(Color.WHITE);
-            g.fillOval(position.x + 4, position.y + height / 2 - ((width - 8) / 4),
+            g.fillOval(x + 4, y + height / 2 - ((width - 8) / 4),
                     width - 8, (width - 8) / 2);
         } else {
             // Red, blue, green, yellow segments for any wild card in the middle.
             for(int i = 0; i < 4; i++) {
                 g.setColor(getColourByID(i));
-                g.fillArc(position.x + 4, position.y + height / 2 - ((width - 8) / 4)-5,
+                g.fillArc(x + 4, y + height / 2 - ((width - 8) / 4)-5,
                         width - 8, (width - 8) / 2+10, 270+90*i, 90);
             }
         }
@@ -100,8 +132,8 @@ public class Card extends Rectangle {
         // Draw shadow (black) text for central label
         if(colourID == 4 || cardLabel.length() <= 4) {
             g.setColor(Color.BLACK);
-            g.drawString(cardLabel, position.x+width/2-strWidth/2-1,
-                    position.y+height/2+fontHeight/2+1);
+            g.drawString(cardLabel, x+width/2-strWidth/2-1,
+                    y+height/2+fontHeight/2+1);
         }
         // Colour to make primary text visible based on whether a shadow was added.
         if(colourID == 4) {
@@ -110,38 +142,58 @@ public class Card extends Rectangle {
             g.setColor(cardLabel.length()<=4 ? drawColour : Color.BLACK);
         }
         // Draw central label
-        g.drawString(cardLabel, position.x+width/2-strWidth/2,
-                position.y+height/2+fontHeight/2);
+        g.drawString(cardLabel, x+width/2-strWidth/2,
+                y+height/2+fontHeight/2);
 
         // Draw labels in each of the corners
         fontHeight = (cornerLabel.length() > 2) ? 10 : 20;
         g.setFont(new Font("Arial", Font.BOLD, fontHeight));
         strWidth = g.getFontMetrics().stringWidth(cornerLabel);
         g.setColor(Color.WHITE);
-        g.drawString(cornerLabel, position.x+5, position.y+5+fontHeight);
-        g.drawString(cornerLabel, position.x+width-strWidth-5, position.y+height-5);
+        g.drawString(cornerLabel, x+5, y+5+fontHeight);
+        g.drawString(cornerLabel, x+width-strWidth-5, y+height-5);
     }
 
     /**
+     * Draws the back of a card. Card sized bounds use the cached image, any other size is drawn directly.
+     *
      * @param g Reference to the Graphics object for rendering.
      * @param bounds Bounds to use for drawing the card back.
      */
     public static void paintCardBack(Graphics g, Rectangle bounds) {
+        if(bounds.width == CARD_WIDTH && bounds.height == CARD_HEIGHT) {
+            g.drawImage(CardImageCache.getCardBack(), bounds.position.x, bounds.position.y,
+                    bounds.width, bounds.height, null);
+        } else {
+            paintCardBackShape(g, bounds.position.x, bounds.position.y, bounds.width, bounds.height);
+        }
+    }
+
+    /**
+     * Draws the shapes and text making up the back of a card.
+     *
+     * @param g Reference to the Graphics object for rendering.
+     * @param x X coordinate of the top left corner.
+     * @param y Y coordinate of the top left corner.
+     * @param width Width of the card back.
+     * @param height Height of the card back.
+     */
+    public static void paintCardBackShape(Graphics g, int x, int y, int width, int height) {
         g.setColor(Color.WHITE);
-        g.fillRect(bounds.position.x, bounds.position.y, bounds.width, bounds.height);
+        g.fillRect(x, y, width, height);
         g.setColor(Color.BLACK);
-        g.fillRect(bounds.position.x+2, bounds.position.y+2, bounds.width-4, bounds.height-4);
+        g.fillRect(x+2, y+2, width-4, height-4);
         g.setColor(new Color(147, 44, 44));
-        g.fillOval(bounds.position.x+4, bounds.position.y+bounds.height/2-((bounds.width-8)/4),
-                bounds.width-8, (bounds.width-8)/2);
+        g.fillOval(x+4, y+height/2-((width-8)/4),
+                width-8, (width-8)/2);
         g.setColor(Color.BLACK);
         g.setFont(new Font("Arial", Font.BOLD, 20));
         int strWidth = g.getFontMetrics().stringWidth("UNO");
-        g.drawString("UNO", bounds.position.x+bounds.width/2-strWidth/2-2,
-                bounds.position.y+bounds.height/2-((bounds.width-8)/4)+2+20);
+        g.drawString("UNO", x+width/2-strWidth/2-2,
+                y+height/2-((width-8)/4)+2+20);
         g.setColor(new Color(226, 173, 67));
-        g.drawString("UNO", bounds.position.x+bounds.width/2-strWidth/2,
-                bounds.position.y+bounds.height/2-((bounds.width-8)/4)+20);
+        g.drawString("UNO", x+width/2-strWidth/2,
+                y+height/2-((width-8)/4)+20);
     }
 
     /**
@@ -181,6 +233,34 @@ public class Card extends Rectangle {
         return cardID;
     }
 
+    /**
+     * Gets the position the card is currently drawn at. This is the card's position
+     * unless it is being animated towards it.
+     *
+     * @return The position to draw the card at.
+     */
+    public Position getDrawPosition() {
+        return isMoving ? drawPosition : position;
+    }
+
+    /**
+     * Sets where the card is drawn while it is moving towards its position.
+     *
+     * @param x X coordinate to draw the card at.
+     * @param y Y coordinate to draw the card at.
+     */
+    public void setMovingDrawPosition(int x, int y) {
+        drawPosition.setPosition(x, y);
+        isMoving = true;
+    }
+
+    /**
+     * Stops the card moving so it is drawn at its position.
+     */
+    public void stopMoving() {
+        isMoving = false;
+    }
+
     /**
      * Gets a mapped colour for the colourID or Black.
      *
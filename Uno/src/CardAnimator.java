@@ -0,0 +1,195 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uno
+ *
+ * CardAnimator class:
+ * Moves cards smoothly to new positions instead of having them jump.
+ * A card's position is always set to the destination straight away so
+ * game logic and hover checks use the final layout, while the card is
+ * drawn at an eased position between where it was and its destination.
+ * Tweens are pooled and reused, and are looked up by card so that laying
+ * out a whole hand takes one lookup per card.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class CardAnimator {
+    /**
+     * Uno
+     *
+     * CardTween class:
+     * Stores the progress of a single card moving from a start position to its current position.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    private static class CardTween {
+        /**
+         * The card being moved. Null while the tween is in the pool.
+         */
+        private Card card;
+        /**
+         * Position the card started moving from.
+         */
+        private int startX, startY;
+        /**
+         * Time in ms since the movement started.
+         */
+        private int elapsed;
+        /**
+         * Time in ms the movement takes to complete.
+         */
+        private int duration;
+    }
+
+    /**
+     * Default time in ms for a card to move to a new position.
+     */
+    public static final int DEFAULT_DURATION = 250;
+    /**
+     * Number of samples stored in the easing table.
+     */
+    private static final int EASING_STEPS = 256;
+    /**
+     * Pre-calculated ease out cubic curve mapping progress to the fraction of distance moved.
+     */
+    private static final float[] easeOutTable = createEaseOutTable();
+
+    /**
+     * Tweens that are currently moving cards.
+     */
+    private final List<CardTween> activeTweens;
+    /**
+     * The active tweens looked up by the card they are moving.
+     */
+    private final Map<Card, CardTween> tweensByCard;
+    /**
+     * Tweens that have finished and are ready to be reused.
+     */
+    private final List<CardTween> tweenPool;
+    /**
+     * When false cards are moved instantly without animating.
+     */
+    private boolean isEnabled;
+
+    /**
+     * Creates an animator with no cards moving.
+     */
+    public CardAnimator() {
+        activeTweens = new ArrayList<>();
+        tweensByCard = new HashMap<>();
+        tweenPool = new ArrayList<>();
+        isEnabled = true;
+    }
+
+    /**
+     * Sets the card's position to the destination and starts animating it from where it is currently drawn.
+     * If the card is already moving it continues from its current drawn position.
+     *
+     * @param card The card to move.
+     * @param x X coordinate of the destination.
+     * @param y Y coordinate of the destination.
+     * @param duration Time in ms for the card to reach the destination.
+     */
+    public void moveCard(Card card, int x, int y, int duration) {
+        Position drawPosition = card.getDrawPosition();
+        int startX = drawPosition.x;
+        int startY = drawPosition.y;
+        card.position.setPosition(x, y);
+        if(!isEnabled || duration <= 0 || (startX == x && startY == y)) {
+            return;
+        }
+
+        CardTween tween = tweensByCard.get(card);
+        if(tween == null) {
+            tween = tweenPool.isEmpty() ? new CardTween() : tweenPool.remove(tweenPool.size()-1);
+            tween.card = card;
+            activeTweens.add(tween);
+            tweensByCard.put(card, tween);
+        }
+        tween.startX = startX;
+        tween.startY = startY;
+        tween.elapsed = 0;
+        tween.duration = duration;
+        card.setMovingDrawPosition(startX, startY);
+    }
+
+    /**
+     * Advances all the moving cards in a single pass. Cards that reach their
+     * destination stop moving and their tweens are returned to the pool.
+     *
+     * @param deltaTime Time since last update.
+     */
+    public void update(int deltaTime) {
+        // Iterates backwards so finished tweens can be swapped out with the last tween.
+        for(int i = activeTweens.size()-1; i >= 0; i--) {
+            CardTween tween = activeTweens.get(i);
+            Card card = tween.card;
+            tween.elapsed += deltaTime;
+            if(tween.elapsed >= tween.duration) {
+                card.stopMoving();
+                releaseTween(i);
+            } else {
+                float progress = easeOutTable[(int)((long)tween.elapsed * (EASING_STEPS-1) / tween.duration)];
+                card.setMovingDrawPosition(tween.startX + Math.round((card.position.x - tween.startX) * progress),
+                                           tween.startY + Math.round((card.position.y - tween.startY) * progress));
+            }
+        }
+    }
+
+    /**
+     * Immediately finishes all movement so every card is drawn at its destination.
+     */
+    public void finishAll() {
+        for(int i = activeTweens.size()-1; i >= 0; i--) {
+            activeTweens.get(i).card.stopMoving();
+            releaseTween(i);
+        }
+    }
+
+    /**
+     * Changes whether cards are animated. Disabling finishes all current movement.
+     *
+     * @param isEnabled When false cards are moved instantly.
+     */
+    public void setEnabled(boolean isEnabled) {
+        this.isEnabled = isEnabled;
+        if(!isEnabled) {
+            finishAll();
+        }
+    }
+
+    /**
+     * Removes the tween at the index from the active tweens by swapping the last tween
+     * into its place, and returns it to the pool.
+     *
+     * @param index Index of the tween in activeTweens.
+     */
+    private void releaseTween(int index) {
+        CardTween tween = activeTweens.get(index);
+        int lastIndex = activeTweens.size()-1;
+        activeTweens.set(index, activeTweens.get(lastIndex));
+        activeTweens.remove(lastIndex);
+        tweensByCard.remove(tween.card);
+        tween.card = null;
+        tweenPool.add(tween);
+    }
+
+    /**
+     * Generates the ease out cubic table.
+     *
+     * @return Samples of 1-(1-t)^3 for t from 0 to 1.
+     */
+    private static float[] createEaseOutTable() {
+        float[] table = new float[EASING_STEPS];
+        for(int i = 0; i < EASING_STEPS; i++) {
+            double t = 1 - i / (double)(EASING_STEPS-1);
+            table[i] = (float)(1 - t * t * t);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,114 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Uno
+ *
+ * CardImageCache class:
+ * Stores pre-rendered images of every card face and the card back at the
+ * current render scale so cards can be drawn with a single image copy
+ * instead of redrawing all the shapes and text every frame.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class CardImageCache {
+    /**
+     * Number of different faceValueIDs (0 to 14).
+     */
+    private static final int FACE_VALUE_COUNT = 15;
+    /**
+     * Number of different colourIDs (0 to 4 with 4 being an unset wild).
+     */
+    private static final int COLOUR_COUNT = 5;
+
+    /**
+     * Cached card fronts indexed by faceValueID * COLOUR_COUNT + colourID.
+     */
+    private static final BufferedImage[] cardFronts = new BufferedImage[FACE_VALUE_COUNT * COLOUR_COUNT];
+    /**
+     * Cached card back shared by all cards.
+     */
+    private static BufferedImage cardBack;
+    /**
+     * The scale from logical coordinates to device pixels that the images are rendered at.
+     */
+    private static double renderScale = 1;
+
+    /**
+     * Changes the scale images are rendered at. When the scale changes all
+     * cached images are discarded so they are re-rendered at the new resolution.
+     *
+     * @param scale The scale from logical coordinates to device pixels.
+     */
+    public static void setRenderScale(double scale) {
+        if(scale <= 0 || scale == renderScale) return;
+        renderScale = scale;
+        clear();
+    }
+
+    /**
+     * Gets the scale images are currently rendered at.
+     *
+     * @return The scale from logical coordinates to device pixels.
+     */
+    public static double getRenderScale() {
+        return renderScale;
+    }
+
+    /**
+     * Removes all cached images.
+     */
+    public static void clear() {
+        for(int i = 0; i < cardFronts.length; i++) {
+            cardFronts[i] = null;
+        }
+        cardBack = null;
+    }
+
+    /**
+     * Gets the image for the front of the card, rendering it first if it has not been cached yet.
+     *
+     * @param card The card to get an image for. Any card with the same face and colour shares the image.
+     * @return An image of the card front at the current render scale.
+     */
+    public static BufferedImage getCardFront(Card card) {
+        int index = card.getFaceValueID() * COLOUR_COUNT + card.getColourID();
+        if(cardFronts[index] == null) {
+            BufferedImage image = createCardImage();
+            Graphics2D g = image.createGraphics();
+            g.scale(renderScale, renderScale);
+            card.paintFace(g, 0, 0);
+            g.dispose();
+            cardFronts[index] = image;
+        }
+        return cardFronts[index];
+    }
+
+    /**
+     * Gets the image for the back of a card, rendering it first if it has not been cached yet.
+     *
+     * @return An image of the card back at the current render scale.
+     */
+    public static BufferedImage getCardBack() {
+        if(cardBack == null) {
+            BufferedImage image = createCardImage();
+            Graphics2D g = image.createGraphics();
+            g.scale(renderScale, renderScale);
+            Card.paintCardBackShape(g, 0, 0, Card.CARD_WIDTH, Card.CARD_HEIGHT);
+            g.dispose();
+            cardBack = image;
+        }
+        return cardBack;
+    }
+
+    /**
+     * Creates an empty image large enough to hold one card at the current render scale.
+     *
+     * @return A transparent image sized for a card.
+     */
+    private static BufferedImage createCardImage() {
+        return new BufferedImage((int)Math.ceil(Card.CARD_WIDTH * renderScale),
+                (int)Math.ceil(Card.CARD_HEIGHT * renderScale), BufferedImage.TYPE_INT_ARGB);
+    }
+}
@@ -0,0 +1,506 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Uno
+ *
+ * ClientConnection class:
+ * Defines a connection from a remote client to the GameServer. Owned by a single
+ * event loop thread so none of the state needs to be synchronised. Messages are
+ * WireProtocol frames. Frames sent are gathered in the output buffer and written
+ * by the event loop once it has finished handling everything that is ready.
+ * Frames shared by many clients, such as those sent to spectators, are queued as
+ * read-only views instead of being copied, and are only written once requestFlush()
+ * is called so that several go out in a single gathering write. Frames sent while
+ * shared frames are waiting are copied onto the end of the same queue so that the
+ * client receives every frame whole and in the order it was sent.
+ * When the channel is handed over to another event loop, the bytes read but not yet
+ * handled and the output not yet written go with it to the adopting connection.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class ClientConnection {
+    /**
+     * Most bytes allowed to wait to be sent. Clients that fall this far behind are disconnected.
+     */
+    public static final int MAX_OUTPUT_SIZE = 64 * 1024;
+    /**
+     * Most shared frames allowed to wait to be sent. A client that falls this far behind has them dropped.
+     */
+    public static final int MAX_SHARED_FRAMES = 256;
+    /**
+     * Most shared frames written by each gathering write.
+     */
+    private static final int GATHER_SIZE = 16;
+
+    /**
+     * The channel connected to the client.
+     */
+    private final SocketChannel channel;
+    /**
+     * The registration of the channel with the event loop's Selector.
+     */
+    private final SelectionKey key;
+    /**
+     * Bytes read that do not yet make up a complete frame.
+     */
+    private final ByteBuffer inputBuffer;
+    /**
+     * Bytes waiting to be written ready for putting more into.
+     */
+    private ByteBuffer outputBuffer;
+    /**
+     * Frames waiting to be written after the outputBuffer. Shared frames are read-only views and
+     * frames sent while shared frames were waiting are writable copies. Every frame starts at
+     * position 0 so the head has been partly written when its position is not 0. Null until the
+     * first shared frame is sent.
+     */
+    private Deque<ByteBuffer> sharedFrames;
+    /**
+     * Reused array for writing the sharedFrames. Null until the first is sent.
+     */
+    private ByteBuffer[] gatherFrames;
+    /**
+     * The event loop's list of connections to flush. The connection adds itself when output starts waiting.
+     */
+    private final List<ClientConnection> flushQueue;
+    /**
+     * Largest frame that may be read after the length.
+     */
+    private final int maxFrameSize;
+    /**
+     * Most bytes allowed to wait to be sent before the next flush fails.
+     */
+    private final int maxOutputSize;
+    /**
+     * The table the client is seated at, or null before joining.
+     */
+    private GameTable table;
+    /**
+     * The client's place in the Matchmaker while waiting for a table, otherwise null.
+     */
+    private Matchmaker.Ticket ticket;
+    /**
+     * The playerID of the client's seat at the table.
+     */
+    private int seatID;
+    /**
+     * The name the client joined with.
+     */
+    private String playerName;
+    /**
+     * True when the client is watching the table instead of seated at it.
+     */
+    private boolean isSpectator;
+    /**
+     * True when the spectator has missed frames and is waiting for a Snapshot to catch up.
+     */
+    private boolean needsSnapshot;
+    /**
+     * True once more output was sent than maxOutputSize allows. The next flush() fails.
+     */
+    private boolean isOverflowed;
+    /**
+     * True once the connection has been closed.
+     */
+    private boolean isClosed;
+    /**
+     * True once the channel has been handed over to another event loop.
+     */
+    private boolean isHandedOver;
+    /**
+     * True once shutdownOutput() has been called. Nothing more is sent and the channel is closed
+     * for writing once the output waiting has been written.
+     */
+    private boolean isOutputShutdown;
+
+    /**
+     * Creates the connection for a channel that has been registered with an event loop.
+     *
+     * @param channel The channel connected to the client.
+     * @param key The registration of the channel with the event loop's Selector.
+     * @param flushQueue The event loop's list of connections to flush.
+     */
+    public ClientConnection(SocketChannel channel, SelectionKey key, List<ClientConnection> flushQueue) {
+        this(channel, key, flushQueue, WireProtocol.MAX_CLIENT_FRAME_SIZE, MAX_OUTPUT_SIZE);
+    }
+
+    /**
+     * Creates a connection that reads larger frames than clients send, such as the ShardCoordinator's
+     * connections to its workers.
+     *
+     * @param channel The channel connected to the other side.
+     * @param key The registration of the channel with the event loop's Selector.
+     * @param flushQueue The event loop's list of connections to flush.
+     * @param maxFrameSize Largest frame that may be read after the length.
+     * @param maxOutputSize Most bytes allowed to wait to be sent.
+     */
+    public ClientConnection(SocketChannel channel, SelectionKey key, List<ClientConnection> flushQueue,
+                            int maxFrameSize, int maxOutputSize) {
+        this.channel = channel;
+        this.key = key;
+        this.flushQueue = flushQueue;
+        this.maxFrameSize = maxFrameSize;
+        this.maxOutputSize = maxOutputSize;
+        inputBuffer = ByteBuffer.allocate(Math.max(4 * (WireProtocol.LENGTH_SIZE + WireProtocol.MAX_CLIENT_FRAME_SIZE),
+                WireProtocol.LENGTH_SIZE + maxFrameSize));
+        outputBuffer = ByteBuffer.allocate(1024);
+        seatID = -1;
+        playerName = "";
+    }
+
+    /**
+     * Creates the connection for a channel handed over by another event loop. It takes the bytes
+     * the handed over connection read but did not handle, and the output it did not write, so
+     * nothing the client pipelined is lost and nothing sent before the handover is dropped.
+     * The event loop must call readFrames() and requestFlush() once it is ready to handle them.
+     *
+     * @param handedOver The connection handOver() was called on. It must not be used again.
+     * @param key The registration of the channel with the adopting event loop's Selector.
+     * @param flushQueue The adopting event loop's list of connections to flush.
+     */
+    public ClientConnection(ClientConnection handedOver, SelectionKey key, List<ClientConnection> flushQueue) {
+        this(handedOver.channel, key, flushQueue, handedOver.maxFrameSize, handedOver.maxOutputSize);
+        inputBuffer.put(handedOver.inputBuffer.flip());
+        outputBuffer = handedOver.outputBuffer;
+        sharedFrames = handedOver.sharedFrames;
+        gatherFrames = handedOver.gatherFrames;
+        isOverflowed = handedOver.isOverflowed;
+    }
+
+    /**
+     * Reads everything available from the client and passes each complete frame to the handler.
+     *
+     * @param frameHandler Called with a view of the message type and payload of each frame.
+     *                     The view is only valid until the handler returns.
+     * @return False if the client closed the connection.
+     * @throws IOException When the channel could not be read or a frame was invalid.
+     */
+    public boolean readFrames(Consumer<ByteBuffer> frameHandler) throws IOException {
+        while(true) {
+            if(isHandedOver) return true;
+            if(channel.read(inputBuffer) < 0) return false;
+            // When the read stopped before filling the buffer the channel had nothing more to give.
+            boolean isDrained = inputBuffer.hasRemaining();
+            inputBuffer.flip();
+            ByteBuffer frame;
+            while((frame = WireProtocol.nextFrame(inputBuffer, maxFrameSize)) != null) {
+                frameHandler.accept(frame);
+                if(isClosed) return false;
+                if(isHandedOver) break;
+            }
+            inputBuffer.compact();
+            if(isDrained) return true;
+        }
+    }
+
+    /**
+     * Adds a frame to be sent to the client when the event loop next flushes. When a client has
+     * too much waiting to be sent the frame is dropped and the next flush fails so the event loop
+     * disconnects it. While shared frames are waiting the frame is copied onto the end of their
+     * queue instead, so it can not be written into the middle of one.
+     *
+     * @param frame The frame ready for reading. It is copied and its position is not changed.
+     */
+    public void send(ByteBuffer frame) {
+        if(isClosed || isOverflowed || isOutputShutdown) return;
+        if(sharedFrames != null && !sharedFrames.isEmpty()) {
+            if(sharedFrames.size() >= MAX_SHARED_FRAMES) {
+                isOverflowed = true;
+                flushQueue.add(this);
+                return;
+            }
+            ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+            copy.put(frame.duplicate()).flip();
+            sharedFrames.add(copy);
+            return;
+        }
+        if(outputBuffer.position() == 0 && (key.interestOps() & SelectionKey.OP_WRITE) == 0) {
+            flushQueue.add(this);
+        }
+        if(outputBuffer.remaining() < frame.remaining()) {
+            int required = outputBuffer.position() + frame.remaining();
+            if(required > maxOutputSize) {
+                isOverflowed = true;
+                flushQueue.add(this);
+                return;
+            }
+            ByteBuffer larger = ByteBuffer.allocate(Math.min(maxOutputSize, Math.max(required, outputBuffer.capacity() * 2)));
+            outputBuffer.flip();
+            larger.put(outputBuffer);
+            outputBuffer = larger;
+        }
+        outputBuffer.put(frame.duplicate());
+    }
+
+    /**
+     * Queues a view of a frame shared with other clients without copying it. It is not written
+     * until requestFlush() is called. When the client already has MAX_SHARED_FRAMES waiting,
+     * the waiting shared frames are dropped instead. A shared frame already partly written is
+     * kept so the client still receives it whole, as are frames sent to this client alone.
+     *
+     * @param frame A frame ready for reading that is never changed again, usually from WireProtocol.shareFrame().
+     * @return False if the frames were dropped because the client fell behind.
+     */
+    public boolean sendShared(ByteBuffer frame) {
+        if(isClosed || isOverflowed || isOutputShutdown) return true;
+        if(sharedFrames == null) {
+            sharedFrames = new ArrayDeque<>();
+            gatherFrames = new ByteBuffer[GATHER_SIZE];
+        }
+        if(sharedFrames.size() >= MAX_SHARED_FRAMES) {
+            ByteBuffer head = sharedFrames.peekFirst();
+            sharedFrames.removeIf(waiting -> waiting.isReadOnly() && !(waiting == head && head.position() > 0));
+            return false;
+        }
+        sharedFrames.add(frame.isReadOnly() ? frame.slice() : frame.asReadOnlyBuffer().slice());
+        return true;
+    }
+
+    /**
+     * Adds the connection to the event loop's flush queue if it has output waiting and is not
+     * already waiting for the channel to be writable.
+     */
+    public void requestFlush() {
+        if(!isClosed && hasOutput() && (key.interestOps() & SelectionKey.OP_WRITE) == 0) {
+            flushQueue.add(this);
+        }
+    }
+
+    /**
+     * Sends an Error frame telling the client a message was rejected.
+     *
+     * @param messageType Ordinal of the ClientMessage rejected, or 255 if it was not known.
+     * @param errorCode The reason it was rejected.
+     */
+    public void sendError(int messageType, WireProtocol.ErrorCode errorCode) {
+        ByteBuffer frame = WireProtocol.beginFrame(ByteBuffer.allocate(5), WireProtocol.ServerMessage.Error.ordinal());
+        frame.put((byte) messageType);
+        frame.put((byte) errorCode.ordinal());
+        send(WireProtocol.endFrame(frame));
+    }
+
+    /**
+     * Checks if there are bytes waiting to be sent.
+     *
+     * @return True if flush() has something to write.
+     */
+    public boolean hasOutput() {
+        return outputBuffer.position() > 0 || (sharedFrames != null && !sharedFrames.isEmpty());
+    }
+
+    /**
+     * Writes as much of the waiting output as the channel will accept, starting with the
+     * outputBuffer and then the shared frames. The Selector is asked to report when the
+     * channel can be written to again if some of it is left.
+     *
+     * @throws IOException When the channel could not be written to.
+     */
+    public void flush() throws IOException {
+        if(isClosed || isHandedOver) return;
+        if(isOverflowed) {
+            throw new IOException("Client is not keeping up with the output.");
+        }
+        outputBuffer.flip();
+        channel.write(outputBuffer);
+        outputBuffer.compact();
+        if(outputBuffer.position() == 0 && sharedFrames != null) {
+            flushSharedFrames();
+        }
+        if(isOutputShutdown && !hasOutput()) {
+            channel.shutdownOutput();
+        }
+        int interestOps = hasOutput() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if(key.interestOps() != interestOps) {
+            key.interestOps(interestOps);
+        }
+    }
+
+    /**
+     * Writes the shared frames with gathering writes until they are all written or the channel is full.
+     *
+     * @throws IOException When the channel could not be written to.
+     */
+    private void flushSharedFrames() throws IOException {
+        while(!sharedFrames.isEmpty()) {
+            int count = 0;
+            for(ByteBuffer frame : sharedFrames) {
+                gatherFrames[count++] = frame;
+                if(count == GATHER_SIZE) break;
+            }
+            channel.write(gatherFrames, 0, count);
+            while(!sharedFrames.isEmpty() && !sharedFrames.peekFirst().hasRemaining()) {
+                sharedFrames.pollFirst();
+            }
+            boolean isFull = count > 0 && gatherFrames[count-1].hasRemaining();
+            Arrays.fill(gatherFrames, 0, count, null);
+            if(isFull) return;
+        }
+    }
+
+    /**
+     * Closes the channel for writing once everything waiting has been written, so the other side
+     * reads to the end of every frame sent and then sees the end of the stream. Frames sent
+     * afterwards are discarded. The connection can still be read until the other side closes it.
+     *
+     * @throws IOException When the channel could not be shut down.
+     */
+    public void shutdownOutput() throws IOException {
+        if(isClosed || isOutputShutdown) return;
+        isOutputShutdown = true;
+        if(hasOutput()) {
+            requestFlush();
+        } else {
+            channel.shutdownOutput();
+        }
+    }
+
+    /**
+     * Stops the event loop using the channel so it can be registered with another event loop.
+     * The channel is left open and anything waiting to be sent or read is kept for the
+     * connection created from this one by the adopting event loop.
+     *
+     * @return The channel to hand over.
+     */
+    public SocketChannel handOver() {
+        isHandedOver = true;
+        key.cancel();
+        return channel;
+    }
+
+    /**
+     * Checks if the channel has been handed over to another event loop.
+     *
+     * @return True once handOver() has been called.
+     */
+    public boolean isHandedOver() {
+        return isHandedOver;
+    }
+
+    /**
+     * Closes the channel. Anything waiting to be sent is discarded.
+     */
+    public void close() {
+        if(isClosed) return;
+        isClosed = true;
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Debug, "Failed to close connection. {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Checks if the connection has been closed.
+     *
+     * @return True once close() has been called.
+     */
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    /**
+     * Seats the client at a table.
+     *
+     * @param table The table the client joined.
+     * @param seatID The playerID of the client's seat.
+     * @param playerName The name the client joined with.
+     */
+    public void setSeat(GameTable table, int seatID, String playerName) {
+        this.table = table;
+        this.seatID = seatID;
+        this.playerName = playerName;
+    }
+
+    /**
+     * Sets the client's place in the Matchmaker.
+     *
+     * @param ticket The Ticket while the client waits for a table, or null once matched.
+     */
+    public void setTicket(Matchmaker.Ticket ticket) {
+        this.ticket = ticket;
+    }
+
+    /**
+     * Gets the client's place in the Matchmaker.
+     *
+     * @return The Ticket while the client waits for a table, otherwise null.
+     */
+    public Matchmaker.Ticket getTicket() {
+        return ticket;
+    }
+
+    /**
+     * Makes the client a spectator of a table. They need a Snapshot before they are sent any Deltas.
+     *
+     * @param table The table being watched.
+     */
+    public void setSpectating(GameTable table) {
+        this.table = table;
+        isSpectator = true;
+        needsSnapshot = true;
+    }
+
+    /**
+     * Checks if the client is watching a table instead of seated at it.
+     *
+     * @return True for spectators.
+     */
+    public boolean isSpectator() {
+        return isSpectator;
+    }
+
+    /**
+     * Checks if the spectator has missed frames and is waiting for a Snapshot.
+     *
+     * @return True until the spectator is sent a Snapshot.
+     */
+    public boolean needsSnapshot() {
+        return needsSnapshot;
+    }
+
+    /**
+     * Sets whether the spectator is waiting for a Snapshot.
+     *
+     * @param needsSnapshot True when frames were missed, false once a Snapshot was queued.
+     */
+    public void setNeedsSnapshot(boolean needsSnapshot) {
+        this.needsSnapshot = needsSnapshot;
+    }
+
+    /**
+     * Gets the table the client is seated at or watching.
+     *
+     * @return The table, or null before joining.
+     */
+    public GameTable getTable() {
+        return table;
+    }
+
+    /**
+     * Gets the playerID of the client's seat.
+     *
+     * @return The seat, or -1 before joining.
+     */
+    public int getSeatID() {
+        return seatID;
+    }
+
+    /**
+     * Gets the name the client joined with.
+     *
+     * @return The player name.
+     */
+    public String getPlayerName() {
+        return playerName;
+    }
+}
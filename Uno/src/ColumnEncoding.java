@@ -0,0 +1,170 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Uno
+ *
+ * ColumnEncoding enum:
+ * The ways a column of ints can be compressed in a column file.
+ *
+ * Dictionary stores each distinct value once and then every row as an index
+ * into the dictionary using only as many bits as the dictionary needs. Used for
+ * ids and other columns with few distinct values. Its rows can be read in any order.
+ * Delta stores the first value and then the difference from the previous row.
+ * Used for columns that increase slowly such as turn numbers.
+ * Plain stores each value on its own.
+ *
+ * All three write numbers as zigzag variable length integers so small negative
+ * numbers are also small.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public enum ColumnEncoding {
+    Dictionary {
+        @Override
+        public ByteBuffer encode(int[] values, int count) {
+            int[] dictionary = Arrays.stream(values, 0, count).distinct().sorted().toArray();
+            int bitsPerValue = getBitsPerValue(dictionary.length);
+            long[] packed = new long[(int) (((long) count * bitsPerValue + 63) / 64)];
+            for(int row = 0; row < count && bitsPerValue > 0; row++) {
+                long index = Arrays.binarySearch(dictionary, values[row]);
+                long bitOffset = (long) row * bitsPerValue;
+                int word = (int) (bitOffset >>> 6);
+                int shift = (int) (bitOffset & 63);
+                packed[word] |= index << shift;
+                if(shift + bitsPerValue > 64) {
+                    packed[word + 1] |= index >>> (64 - shift);
+                }
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(5 + dictionary.length * 5 + 1 + packed.length * 8);
+            GameEventLog.writeVarInt(buffer, dictionary.length);
+            for(int value : dictionary) {
+                writeZigZag(buffer, value);
+            }
+            buffer.put((byte) bitsPerValue);
+            for(long word : packed) {
+                buffer.putLong(word);
+            }
+            return buffer.flip();
+        }
+
+        @Override
+        public int[] decode(ByteBuffer buffer, int count) {
+            int[] dictionary = new int[GameEventLog.readVarInt(buffer)];
+            for(int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = readZigZag(buffer);
+            }
+            int bitsPerValue = buffer.get();
+            int packedStart = buffer.position();
+            long mask = (1L << bitsPerValue) - 1;
+            int[] values = new int[count];
+            for(int row = 0; row < count; row++) {
+                if(bitsPerValue == 0) {
+                    values[row] = dictionary[0];
+                    continue;
+                }
+                long bitOffset = (long) row * bitsPerValue;
+                int word = (int) (bitOffset >>> 6);
+                int shift = (int) (bitOffset & 63);
+                long index = buffer.getLong(packedStart + word * 8) >>> shift;
+                if(shift + bitsPerValue > 64) {
+                    index |= buffer.getLong(packedStart + (word + 1) * 8) << (64 - shift);
+                }
+                values[row] = dictionary[(int) (index & mask)];
+            }
+            return values;
+        }
+    },
+    Delta {
+        @Override
+        public ByteBuffer encode(int[] values, int count) {
+            ByteBuffer buffer = ByteBuffer.allocate(count * 5);
+            int previous = 0;
+            for(int row = 0; row < count; row++) {
+                writeZigZag(buffer, values[row] - previous);
+                previous = values[row];
+            }
+            return buffer.flip();
+        }
+
+        @Override
+        public int[] decode(ByteBuffer buffer, int count) {
+            int[] values = new int[count];
+            int previous = 0;
+            for(int row = 0; row < count; row++) {
+                previous += readZigZag(buffer);
+                values[row] = previous;
+            }
+            return values;
+        }
+    },
+    Plain {
+        @Override
+        public ByteBuffer encode(int[] values, int count) {
+            ByteBuffer buffer = ByteBuffer.allocate(count * 5);
+            for(int row = 0; row < count; row++) {
+                writeZigZag(buffer, values[row]);
+            }
+            return buffer.flip();
+        }
+
+        @Override
+        public int[] decode(ByteBuffer buffer, int count) {
+            int[] values = new int[count];
+            for(int row = 0; row < count; row++) {
+                values[row] = readZigZag(buffer);
+            }
+            return values;
+        }
+    };
+
+    /**
+     * Compresses the first count values of a column.
+     *
+     * @param values The column values.
+     * @param count Number of rows to encode.
+     * @return A buffer ready for reading containing the encoded rows.
+     */
+    public abstract ByteBuffer encode(int[] values, int count);
+
+    /**
+     * Reads rows written by encode().
+     *
+     * @param buffer The buffer positioned at the start of the encoded rows.
+     * @param count Number of rows that were encoded.
+     * @return The column values.
+     */
+    public abstract int[] decode(ByteBuffer buffer, int count);
+
+    /**
+     * Gets the number of bits needed to store an index into a dictionary.
+     *
+     * @param dictionarySize Number of distinct values.
+     * @return The bits per row, or 0 when there is only one value.
+     */
+    private static int getBitsPerValue(int dictionarySize) {
+        return dictionarySize <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(dictionarySize - 1);
+    }
+
+    /**
+     * Writes a number that may be negative so values close to zero use the fewest bytes.
+     *
+     * @param buffer The buffer to write to.
+     * @param value The value to write.
+     */
+    private static void writeZigZag(ByteBuffer buffer, int value) {
+        GameEventLog.writeVarInt(buffer, (value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Reads a number written by writeZigZag().
+     *
+     * @param buffer The buffer to read from.
+     * @return The value that was read.
+     */
+    private static int readZigZag(ByteBuffer buffer) {
+        int value = GameEventLog.readVarInt(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
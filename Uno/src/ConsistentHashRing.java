@@ -0,0 +1,119 @@
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Uno
+ *
+ * ConsistentHashRing class:
+ * Assigns keys to nodes so that adding or removing a node only moves the keys that belong
+ * to it, instead of reshuffling every key as a key modulo the node count would. Each node is
+ * placed at VIRTUAL_NODES points around a ring of 32 bit hashes and a key belongs to the first
+ * point at or after its own hash. The many points per node keep the share of keys each node
+ * gets close to even.
+ *
+ * Not thread safe. Used by the ShardCoordinator to pick the worker that hosts each table.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class ConsistentHashRing {
+    /**
+     * Number of points each node is placed at.
+     */
+    public static final int VIRTUAL_NODES = 128;
+
+    /**
+     * The nodeID at each point on the ring, sorted by the point's hash.
+     */
+    private final TreeMap<Integer, Integer> ring;
+
+    /**
+     * Creates an empty ring.
+     */
+    public ConsistentHashRing() {
+        ring = new TreeMap<>();
+    }
+
+    /**
+     * Adds a node at each of its points. Adding a node already on the ring does nothing.
+     *
+     * @param nodeID The node to add, at least 0.
+     */
+    public void add(int nodeID) {
+        for(int i = 0; i < VIRTUAL_NODES; i++) {
+            // Points that two nodes share stay with the node added first.
+            ring.putIfAbsent(getPointHash(nodeID, i), nodeID);
+        }
+    }
+
+    /**
+     * Removes a node so that its keys move to the nodes that follow each of its points.
+     *
+     * @param nodeID The node to remove.
+     */
+    public void remove(int nodeID) {
+        for(int i = 0; i < VIRTUAL_NODES; i++) {
+            ring.remove(getPointHash(nodeID, i), nodeID);
+        }
+    }
+
+    /**
+     * Checks if a node is on the ring.
+     *
+     * @param nodeID The node to check.
+     * @return True if the node has been added and not removed.
+     */
+    public boolean contains(int nodeID) {
+        return ring.containsValue(nodeID);
+    }
+
+    /**
+     * Finds the node a key belongs to.
+     *
+     * @param key The key to look up.
+     * @return The nodeID, or -1 when the ring is empty.
+     */
+    public int get(int key) {
+        Map.Entry<Integer, Integer> point = ring.ceilingEntry(hash(key));
+        if(point == null) {
+            point = ring.firstEntry();
+        }
+        return point == null ? -1 : point.getValue();
+    }
+
+    /**
+     * Checks if there are no nodes to assign keys to.
+     *
+     * @return True when the ring is empty.
+     */
+    public boolean isEmpty() {
+        return ring.isEmpty();
+    }
+
+    /**
+     * Gets the hash of one of a node's points. The node is kept in the upper half of the
+     * value hashed so that no point has the same input as a key.
+     *
+     * @param nodeID The node.
+     * @param index Which of the node's points.
+     * @return The position of the point on the ring.
+     */
+    private static int getPointHash(int nodeID, int index) {
+        return hash(((long) nodeID + 1) << 32 | index);
+    }
+
+    /**
+     * Spreads the bits of a value over a 32 bit hash with the finalizer from MurmurHash3.
+     *
+     * @param value The value to hash.
+     * @return The hash.
+     */
+    private static int hash(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+}
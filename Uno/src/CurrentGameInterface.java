@@ -2,6 +2,7 @@ import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -60,10 +61,30 @@ public class CurrentGameInterface extends WndInterface {
      * Animation to show the direction of turn order.
      */
     private final PlayDirectionAnimation playDirectionAnimation;
+    /**
+     * Animates cards moving between the deck, hands, and the pile of played cards.
+     */
+    private final CardAnimator cardAnimator;
+    /**
+     * Records every event that happens during the round.
+     */
+    private final GameEventLog eventLog;
+    /**
+     * When not null the round is a replay of a recorded round and is driven by the recorded events.
+     */
+    private final GameReplay replay;
+    /**
+     * Decisions made by AIPlayers in this round waiting for its outcome. See AIDecisionTelemetry.
+     */
+    private final AIDecisionTelemetry.RoundRows decisionRows;
     /**
      * Turn order increasing (true) means clockwise, or false would be anti-clockwise.
      */
     private boolean isIncreasing;
+    /**
+     * Number of turns that have started since the first turn of the round.
+     */
+    private int turnNumber;
 
     /**
      * The rules for what card actions are set and other specific changes to how the game is played.
@@ -72,11 +93,35 @@ public class CurrentGameInterface extends WndInterface {
     /**
      * Reference to the current instance of this class so that other classes can quickly access it directly.
      */
-    private static CurrentGameInterface activeSingleton;
+    private static volatile CurrentGameInterface activeSingleton;
+    /**
+     * The game bound to each thread hosting games for a GameServer. Takes priority over the activeSingleton.
+     */
+    private static final ThreadLocal<CurrentGameInterface> threadBoundGame = new ThreadLocal<>();
     /**
-     * Reference to GamePanel for when the game ends.
+     * Reference to GamePanel for when the game ends. Null when the game is hosted at a GameTable.
      */
     private final GamePanel gamePanel;
+    /**
+     * True once a player has won the round. No more updates are performed after this.
+     */
+    private boolean isRoundOver;
+    /**
+     * Wall clock time in ns the local player has been waited on to act on timedTurnAction.
+     */
+    private long timeOutTimer;
+    /**
+     * System.nanoTime() at the last call to updateTimeOut().
+     */
+    private long lastTimeOutUpdate;
+    /**
+     * The action the local player was being waited on for when timeOutTimer started, or null for a normal turn.
+     */
+    private TurnActionFactory.TurnAction timedTurnAction;
+    /**
+     * The turnNumber when timeOutTimer started.
+     */
+    private int timedTurnNumber;
     /**
      * When GamePanel.DEBUG_MODE and this are true, output is shown for each transition in the TaskAction sequence.
      */
@@ -89,11 +134,27 @@ public class CurrentGameInterface extends WndInterface {
     /**
      * Gets the current single instance of CurrentGameInterface. This is not enforced, but
      * it can be null if not created yet, but it is expected that only one will be run at a time.
+     * Threads hosting many games for a GameServer get the game bound to them with bindToCurrentThread().
      *
      * @return Reference to the current instance of this class.
      */
     public static CurrentGameInterface getCurrentGame() {
-        return activeSingleton;
+        CurrentGameInterface boundGame = threadBoundGame.get();
+        return boundGame != null ? boundGame : activeSingleton;
+    }
+
+    /**
+     * Makes a game the current game for the calling thread only. Must be called before using a hosted
+     * game so that every class looking up getCurrentGame() finds the right game.
+     *
+     * @param game The game to bind, or null to go back to the activeSingleton.
+     */
+    public static void bindToCurrentThread(CurrentGameInterface game) {
+        if(game == null) {
+            threadBoundGame.remove();
+        } else {
+            threadBoundGame.set(game);
+        }
     }
 
     /**
@@ -117,35 +178,144 @@ public class CurrentGameInterface extends WndInterface {
      * @param ruleSet The rules definition for how the game is to be played.
      */
     public CurrentGameInterface(Rectangle bounds, List<Player> playerList, RuleSet ruleSet, GamePanel gamePanel) {
+        this(bounds, playerList, ruleSet, gamePanel, null, null);
+    }
+
+    /**
+     * Initialise the interface with bounds and make it enabled. Use this version to watch a
+     * recorded round. The players and rules are taken from the recording, and all actions
+     * come from the recorded events instead of the players.
+     *
+     * @param bounds The bounds of the interface.
+     * @param replay The recorded round to play back.
+     */
+    public CurrentGameInterface(Rectangle bounds, GameReplay replay, GamePanel gamePanel) {
+        this(bounds, createPlayersFromLobby(replay.getLobbyPlayers(), bounds), replay.getRuleSet(), gamePanel, replay, null);
+    }
+
+    /**
+     * Initialise the interface with bounds and make it enabled. Use this version to resume a
+     * round that was saved before the game was closed.
+     *
+     * @param bounds The bounds of the interface.
+     * @param snapshot The saved state of the round.
+     */
+    public CurrentGameInterface(Rectangle bounds, GameSnapshot snapshot, GamePanel gamePanel) {
+        this(bounds, snapshot.restoreTotalScores(createPlayersFromLobby(snapshot.getLobbyPlayers(), bounds)),
+                snapshot.getRuleSet(), gamePanel, null, snapshot);
+    }
+
+    /**
+     * Initialise the interface with bounds and make it enabled. Use this version to play the next
+     * round of a session from the session journal that did not end when the game was last closed.
+     *
+     * @param bounds The bounds of the interface.
+     * @param session The session to continue with the total scores it had.
+     */
+    public CurrentGameInterface(Rectangle bounds, SessionJournal.Session session, GamePanel gamePanel) {
+        this(bounds, session.restoreTotalScores(createPlayersFromLobby(session.getLobbyPlayers(), bounds)),
+                session.getRuleSet(), gamePanel, null, null);
+    }
+
+    /**
+     * Initialise the interface with bounds and make it enabled. Use this version for a game hosted at a
+     * GameTable. The game is bound to the calling thread instead of replacing the activeSingleton, the
+     * round is not recorded, and isRoundOver() is set instead of showing the post game interface.
+     *
+     * @param bounds The bounds of the interface.
+     * @param playerList Players to create in the game.
+     * @param ruleSet The rules definition for how the game is to be played.
+     */
+    public CurrentGameInterface(Rectangle bounds, List<Player> playerList, RuleSet ruleSet) {
+        this(bounds, playerList, ruleSet, null, null, null);
+    }
+
+    /**
+     * Initialise the interface with bounds and make it enabled. Use this version for a round moved to a
+     * GameTable from another process. The round is restored from the snapshot into the players given,
+     * which keep their own total scores, and is bound to the calling thread in the same way as a new round.
+     *
+     * @param bounds The bounds of the interface.
+     * @param playerList Players to restore the round into, in order of playerID.
+     * @param ruleSet The rules definition for how the game is to be played.
+     * @param snapshot The round to carry on with.
+     */
+    public CurrentGameInterface(Rectangle bounds, List<Player> playerList, RuleSet ruleSet, GameSnapshot snapshot) {
+        this(bounds, playerList, ruleSet, null, null, snapshot);
+    }
+
+    /**
+     * Initialise the interface with bounds and make it enabled. When there is a replay it is started,
+     * when there is a snapshot the saved round is restored, otherwise the hands are dealt and the
+     * first card is played.
+     *
+     * @param bounds The bounds of the interface.
+     * @param playerList Players to create in the game.
+     * @param ruleSet The rules definition for how the game is to be played.
+     * @param replay The recorded round to play back, or null to play a new round.
+     * @param snapshot The saved round to resume, or null to play a new round.
+     */
+    private CurrentGameInterface(Rectangle bounds, List<Player> playerList, RuleSet ruleSet, GamePanel gamePanel,
+                                 GameReplay replay, GameSnapshot snapshot) {
         super(bounds);
-        activeSingleton = this;
+        if(gamePanel != null) {
+            activeSingleton = this;
+        } else {
+            bindToCurrentThread(this);
+        }
         this.ruleSet = ruleSet;
         this.gamePanel = gamePanel;
+        this.replay = replay;
         recentCards = new ArrayList<>();
+        cardAnimator = new CardAnimator();
         centredCardPos = new Position(bounds.position.x+bounds.width/2-30,bounds.position.y+bounds.height/2-45);
         deck = new Deck(new Position(centredCardPos.x-160,centredCardPos.y));
 
         this.players = playerList;
+        decisionRows = new AIDecisionTelemetry.RoundRows();
+        if(replay != null) {
+            currentPlayerID = replay.getStartingPlayerID();
+            isIncreasing = replay.getStartingIsIncreasing();
+            eventLog = GameEventLog.createDisabled();
+        } else if(snapshot != null) {
+            currentPlayerID = snapshot.getCurrentPlayerID();
+            isIncreasing = snapshot.isIncreasing();
+            eventLog = gamePanel != null ? new GameEventLog(players, ruleSet, currentPlayerID, isIncreasing)
+                                         : GameEventLog.createForHostedRound(players, ruleSet, currentPlayerID, isIncreasing);
+        } else {
+            currentPlayerID = (int) (Math.random() * players.size());
+            isIncreasing = (Math.random() * 100 < 50);
+            eventLog = gamePanel != null ? new GameEventLog(players, ruleSet, currentPlayerID, isIncreasing)
+                                         : GameEventLog.createForHostedRound(players, ruleSet, currentPlayerID, isIncreasing);
+        }
         for (Player player : players) {
             if(player.getPlayerType() == Player.PlayerType.ThisPlayer) {
                 bottomPlayer = player;
             }
+            player.setCardAnimator(cardAnimator);
             // Emptying hand is required just in case this is a continued sequence of rounds.
             player.emptyHand();
-            for(int i = 0; i < 7; i++) {
-                player.addCardToHand(deck.drawCard());
+            for(int i = 0; i < 7 && replay == null && snapshot == null; i++) {
+                Card card = deck.drawCard();
+                eventLog.logCardEvent(GameEventLog.EventType.Deal, player.getPlayerID(), card);
+                player.addCardToHand(card);
             }
         }
-        currentPlayerID = (int) (Math.random()*players.size());
-        isIncreasing = (Math.random() * 100 < 50);
         playDirectionAnimation = new PlayDirectionAnimation(new Position(bounds.width/2,bounds.height/2), 120, 5);
         playDirectionAnimation.setIsIncreasing(isIncreasing);
 
         overlayManager = new OverlayManager(bounds, players);
-        forcePlayCard(deck.drawCard());
         currentTurnAction = null;
         debugShowTaskActionNotes = false;
         debugShowTreeOnNewAction = false;
+        if(replay != null) {
+            revealHands();
+            replay.start(this);
+        } else if(snapshot != null) {
+            snapshot.restore(this);
+        } else {
+            forcePlayCard(deck.drawCard());
+        }
     }
 
     /**
@@ -155,15 +325,109 @@ public class CurrentGameInterface extends WndInterface {
      */
     @Override
     public void update(int deltaTime) {
-        if(!isEnabled()) return;
+        if(!isEnabled() || isRoundOver) return;
 
+        eventLog.update(deltaTime);
         playDirectionAnimation.update(deltaTime);
+        cardAnimator.update(deltaTime);
         overlayManager.update(deltaTime);
+        if(replay != null) {
+            replay.update(deltaTime);
+            return;
+        }
         updateTurnAction();
+        // Hosted games are timed by their GameTable.
+        if(gamePanel != null) {
+            updateTimeOut(deltaTime);
+        }
         players.forEach(player -> player.update(deltaTime));
         checkForEndOfRound();
     }
 
+    /**
+     * Counts how long the local player has been waited on and makes the default choice for them
+     * once they have had the time allowed by the RuleSet. The wait is counted in wall clock time
+     * so that the GamePanel's speed multiplier does not shorten it. Each update counts no more
+     * than deltaTime so that time spent paused is not counted.
+     *
+     * @param deltaTime Time since last update.
+     */
+    private void updateTimeOut(int deltaTime) {
+        long now = System.nanoTime();
+        long elapsed = Math.min(now - lastTimeOutUpdate, TimeUnit.MILLISECONDS.toNanos(deltaTime));
+        lastTimeOutUpdate = now;
+        if(currentTurnAction != timedTurnAction || turnNumber != timedTurnNumber) {
+            timedTurnAction = currentTurnAction;
+            timedTurnNumber = turnNumber;
+            timeOutTimer = 0;
+        }
+        if(!isWaitingForLocalPlayer()) return;
+        timeOutTimer += elapsed;
+        if(timeOutTimer >= TimeUnit.SECONDS.toNanos(ruleSet.getDefaultTimeOut())) {
+            applyTimeOut();
+        }
+    }
+
+    /**
+     * Checks if the game cannot continue until the local player takes their turn or makes a
+     * decision. Replays never wait on anyone.
+     *
+     * @return True if the current player is ThisPlayer and an action from them is needed.
+     */
+    public boolean isWaitingForLocalPlayer() {
+        return replay == null && getCurrentPlayer().getPlayerType() == Player.PlayerType.ThisPlayer
+                && (currentTurnAction == null || getWaitingDecisionAction() != null);
+    }
+
+    /**
+     * Makes the default choice for the current player when they have run out of time. A normal turn
+     * draws a card, a drawn card is kept, the wild colour and the player to swap with are chosen at
+     * random, and challenges and stacking are declined.
+     *
+     * @return True if the current player was being waited on and the choice was made.
+     */
+    public boolean applyTimeOut() {
+        if(isRoundOver) return false;
+        if(currentTurnAction == null) {
+            GameLogger.log(GameLogger.Category.TurnActions, GameLogger.Level.Info, "Player {} timed out and draws a card.", currentPlayerID);
+            return beginDrawCard(currentPlayerID);
+        }
+        TurnActionFactory.TurnDecisionAction decision = getWaitingDecisionAction();
+        if(decision == null) return false;
+        GameLogger.log(GameLogger.Category.TurnActions, GameLogger.Level.Info, "Player {} timed out on {}.", currentPlayerID, decision.flagName);
+        switch (decision.flagName) {
+            case "wildColour" -> {
+                decision.injectProperty("colourID", (int) (Math.random() * 4));
+                decision.injectFlagProperty(1);
+            }
+            case "otherPlayer" -> decision.injectFlagProperty(
+                    (currentPlayerID + 1 + (int) (Math.random() * (players.size() - 1))) % players.size());
+            case "isChallenging" -> {
+                decision.injectProperty("isChaining", 0);
+                decision.injectFlagProperty(0);
+            }
+            // keepOrPlay keeps the card and isStacking declines.
+            default -> decision.injectFlagProperty(0);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the TurnDecisionAction waiting for the current player to choose. These are the
+     * decisions that show an overlay to the player and have a time limit.
+     *
+     * @return The decision, or null if no choice is needed.
+     */
+    public TurnActionFactory.TurnDecisionAction getWaitingDecisionAction() {
+        if(currentTurnAction instanceof TurnActionFactory.TurnDecisionAction) {
+            TurnActionFactory.TurnDecisionAction decision = (TurnActionFactory.TurnDecisionAction) currentTurnAction;
+            if(decision.timeOut && decision.hasRunOnce && !decision.storedData.containsKey(decision.flagName)) {
+                return decision;
+            }
+        }
+        return null;
+    }
+
     /**
      * Checks if there is currently a player who has won the game and initiates end game conditions once found.
      */
@@ -179,7 +443,13 @@ public class CurrentGameInterface extends WndInterface {
                 }
                 player.setCurrentRoundScore(totalScore);
                 player.setWon();
-                gamePanel.showPostGame(players, ruleSet);
+                isRoundOver = true;
+                eventLog.logEvent(GameEventLog.EventType.RoundEnd, player.getPlayerID(), totalScore);
+                eventLog.close();
+                AIDecisionTelemetry.endRound(decisionRows, player.getPlayerID(), totalScore);
+                if(gamePanel != null) {
+                    gamePanel.showPostGame(players, ruleSet);
+                }
                 return;
             }
         }
@@ -194,10 +464,10 @@ public class CurrentGameInterface extends WndInterface {
             if(GamePanel.DEBUG_MODE && debugShowTaskActionNotes) {
                 if (currentTurnAction instanceof TurnActionFactory.TurnDecisionAction) {
                     if (!((TurnActionFactory.TurnDecisionAction) currentTurnAction).hasRunOnce) {
-                        System.out.println(currentTurnAction.actionDebugText);
+                        GameLogger.log(GameLogger.Category.TurnActions, GameLogger.Level.Debug, currentTurnAction.actionDebugText);
                     }
                 } else {
-                    System.out.println(currentTurnAction.actionDebugText);
+                    GameLogger.log(GameLogger.Category.TurnActions, GameLogger.Level.Debug, currentTurnAction.actionDebugText);
                 }
             }
             currentTurnAction.performAction();
@@ -224,6 +494,9 @@ public class CurrentGameInterface extends WndInterface {
         overlayManager.paint(g);
 
         playDirectionAnimation.paint(g);
+        if(replay != null) {
+            replay.paint(g);
+        }
     }
 
     /**
@@ -235,19 +508,15 @@ public class CurrentGameInterface extends WndInterface {
      */
     @Override
     public void handleMousePress(Position mousePosition, boolean isLeft) {
-        if(!isEnabled()) return;
+        if(!isEnabled() || replay != null) return;
 
         overlayManager.handleMousePress(mousePosition, isLeft);
 
         if(currentTurnAction == null && currentPlayerID == bottomPlayer.getPlayerID()) {
             if (deck.isPositionInside(mousePosition)) {
-                currentTurnAction = TurnActionFactory.drawCardAsAction(currentPlayerID);
+                beginDrawCard(bottomPlayer.getPlayerID());
             } else {
-                Card cardToPlay = bottomPlayer.chooseCardFromClick(mousePosition);
-                Card topCard = getTopCard();
-                if (bottomPlayer.getValidMoves(topCard.getFaceValueID(), topCard.getColourID()).contains(cardToPlay)) {
-                    currentTurnAction = TurnActionFactory.playCardAsAction(currentPlayerID, cardToPlay.getCardID(), cardToPlay.getFaceValueID(), cardToPlay.getColourID());
-                }
+                beginPlayCard(bottomPlayer.getPlayerID(), bottomPlayer.chooseCardFromClick(mousePosition));
             }
         } else if(currentTurnAction == null && currentPlayerID != bottomPlayer.getPlayerID() &&
                     CurrentGameInterface.getCurrentGame().getRuleSet().allowJumpInRule()) {
@@ -278,6 +547,9 @@ public class CurrentGameInterface extends WndInterface {
      */
     @Override
     public void handleInput(int keyCode) {
+        if(replay != null && replay.handleInput(keyCode)) {
+            return;
+        }
         if(keyCode == KeyEvent.VK_Q) {
             sortHand();
         } else if(GamePanel.DEBUG_MODE && keyCode == KeyEvent.VK_9) {
@@ -292,28 +564,88 @@ public class CurrentGameInterface extends WndInterface {
             debugShowTreeOnNewAction = !debugShowTreeOnNewAction;
         } else if(GamePanel.DEBUG_MODE && keyCode == KeyEvent.VK_4) {
             debugShowTaskActionNotes = !debugShowTaskActionNotes;
+        } else if(GamePanel.DEBUG_MODE && keyCode == KeyEvent.VK_3) {
+            toggleDebugLogging(GameLogger.Category.AIDecisions);
+        } else if(GamePanel.DEBUG_MODE && keyCode == KeyEvent.VK_2) {
+            toggleDebugLogging(GameLogger.Category.Overlays);
         } else {
             overlayManager.handleInput(keyCode);
         }
     }
 
+    /**
+     * Switches a logging category between showing debug messages and only showing Info or higher.
+     *
+     * @param category The category to toggle.
+     */
+    private void toggleDebugLogging(GameLogger.Category category) {
+        boolean enableDebug = !GameLogger.isEnabled(category, GameLogger.Level.Debug);
+        GameLogger.setLevel(category, enableDebug ? GameLogger.Level.Debug : GameLogger.Level.Info);
+    }
+
+    /**
+     * Starts the player's turn by drawing a card if it is their turn and nothing else is happening.
+     *
+     * @param playerID The player drawing a card.
+     * @return True if the draw was started.
+     */
+    public boolean beginDrawCard(int playerID) {
+        if(currentTurnAction != null || currentPlayerID != playerID) return false;
+        currentTurnAction = TurnActionFactory.drawCardAsAction(playerID);
+        return true;
+    }
+
+    /**
+     * Starts the player's turn by playing a card if it is their turn, nothing else is happening,
+     * and the card is a valid move from their hand.
+     *
+     * @param playerID The player playing the card.
+     * @param cardToPlay The card to play, or null if no card was chosen.
+     * @return True if the play was started.
+     */
+    public boolean beginPlayCard(int playerID, Card cardToPlay) {
+        if(currentTurnAction != null || currentPlayerID != playerID || cardToPlay == null) return false;
+        Card topCard = getTopCard();
+        if(!players.get(playerID).getValidMoves(topCard.getFaceValueID(), topCard.getColourID()).contains(cardToPlay)) {
+            return false;
+        }
+        currentTurnAction = TurnActionFactory.playCardAsAction(playerID, cardToPlay.getCardID(),
+                cardToPlay.getFaceValueID(), cardToPlay.getColourID());
+        return true;
+    }
+
     /**
      * Verifies the card can be played as a jump in and then swaps the current player,
      * and initiates the action of the card being played.
      *
      * @param playerID The player trying to jump in.
      * @param cardToPlay The card that is being jumped in with.
+     * @return True if the jump in was allowed.
      */
-    public void jumpIn(int playerID, Card cardToPlay) {
+    public boolean jumpIn(int playerID, Card cardToPlay) {
         Card topCard = getTopCard();
         if(currentTurnAction == null && currentPlayerID != playerID
                 && topCard.getFaceValueID() == cardToPlay.getFaceValueID()
                 && topCard.getColourID() == cardToPlay.getColourID()) {
             currentPlayerID = playerID;
-            showGeneralOverlay("JumpIn"+playerID);
+            eventLog.logCardEvent(GameEventLog.EventType.JumpIn, playerID, cardToPlay);
+            showGeneralOverlay(OverlayManager.GeneralOverlayType.JumpIn, playerID);
             currentTurnAction = TurnActionFactory.playCardAsAction(currentPlayerID, cardToPlay.getCardID(),
                     cardToPlay.getFaceValueID(), cardToPlay.getColourID());
+            return true;
         }
+        return false;
+    }
+
+    /**
+     * Flags the player as having called UNO and flashes the called signal over them.
+     *
+     * @param playerID The player calling UNO.
+     */
+    public void callUNO(int playerID) {
+        players.get(playerID).setUnoState(Player.UNOState.Called);
+        eventLog.logEvent(GameEventLog.EventType.UNOCalled, playerID, 0);
+        showGeneralOverlay(OverlayManager.GeneralOverlayType.UNOCalled, playerID);
     }
 
     /**
@@ -326,12 +658,23 @@ public class CurrentGameInterface extends WndInterface {
     }
 
     /**
-     * Shows an overlay based on a String lookup in the overlay manager.
+     * Shows an overlay of the specified type over a player.
+     *
+     * @param overlayType The type of overlay to show.
+     * @param playerID The player to show the overlay over.
+     */
+    public void showGeneralOverlay(OverlayManager.GeneralOverlayType overlayType, int playerID) {
+        overlayManager.showGeneralOverlay(overlayType, playerID);
+    }
+
+    /**
+     * Shows an overlay over a player with the number of cards they have drawn.
      *
-     * @param overlayName Name that maps to a specific overlay.
+     * @param playerID The player to show the overlay over.
+     * @param drawCount The number of cards that were drawn.
      */
-    public void showGeneralOverlay(String overlayName) {
-        overlayManager.showGeneralOverlay(overlayName);
+    public void showDrawNOverlay(int playerID, int drawCount) {
+        overlayManager.showDrawNOverlay(playerID, drawCount);
     }
 
     /**
@@ -363,9 +706,19 @@ public class CurrentGameInterface extends WndInterface {
      */
     public void toggleTurnDirection() {
         isIncreasing = !isIncreasing;
+        eventLog.logEvent(GameEventLog.EventType.Reverse, currentPlayerID, isIncreasing ? 1 : 0);
         playDirectionAnimation.setIsIncreasing(isIncreasing);
     }
 
+    /**
+     * Changes the current player directly. Used when replaying recorded turns.
+     *
+     * @param playerID The player to make the current player.
+     */
+    public void setCurrentPlayer(int playerID) {
+        currentPlayerID = playerID;
+    }
+
     /**
      * Moves to the next player depending on whether the direction is clockwise or anti-clockwise.
      */
@@ -382,12 +735,24 @@ public class CurrentGameInterface extends WndInterface {
                 currentPlayerID = players.size()-1;
             }
         }
+        turnNumber++;
+        eventLog.logNextTurn(currentPlayerID, isIncreasing, players, recentCards);
+    }
+
+    /**
+     * Gets the number of turns that have started since the first turn of the round.
+     *
+     * @return The current turn number.
+     */
+    public int getTurnNumber() {
+        return turnNumber;
     }
 
     /**
      * Sets the current player to NotSafe if they have one card or Safe otherwise, all other players are set to Safe.
+     * Called as each turn ends, including by a replay so its UNO states match the recorded round.
      */
-    private void updateUNOState() {
+    public void updateUNOState() {
         players.get(currentPlayerID).setUnoState(players.get(currentPlayerID).getHand().size() == 1 ? Player.UNOState.NotSafe : Player.UNOState.Safe);
         for(Player player : players) {
             if(player.getPlayerID() != currentPlayerID) {
@@ -401,11 +766,15 @@ public class CurrentGameInterface extends WndInterface {
      * Flashes the message and draws two cards to that player.
      */
     public void applyAntiUno(int playerID) {
-        CurrentGameInterface.getCurrentGame().showGeneralOverlay("AntiUnoCalled"+playerID);
+        showGeneralOverlay(OverlayManager.GeneralOverlayType.AntiUnoCalled, playerID);
+        eventLog.logEvent(GameEventLog.EventType.AntiUnoCalled, playerID, 0);
         // Set to safe to prevent multiple anti-uno callouts.
         players.get(playerID).setUnoState(Player.UNOState.Safe);
-        players.get(playerID).addCardToHand(deck.drawCard());
-        players.get(playerID).addCardToHand(deck.drawCard());
+        for(int i = 0; i < 2; i++) {
+            Card card = deck.drawCard();
+            eventLog.logCardEvent(GameEventLog.EventType.Draw, playerID, card);
+            players.get(playerID).addCardToHand(card);
+        }
     }
 
     /**
@@ -423,6 +792,7 @@ public class CurrentGameInterface extends WndInterface {
      * @param colourID 0=Red, 1=Blue, 2=Green, 3=Yellow
      */
     public void setTopCardColour(int colourID) {
+        eventLog.logEvent(GameEventLog.EventType.ColourChoice, currentPlayerID, colourID);
         recentCards.get(recentCards.size()-1).setColour(colourID);
     }
 
@@ -436,13 +806,13 @@ public class CurrentGameInterface extends WndInterface {
         if(currentTurnAction != null) {
             queuedTurnAction = turnAction;
             if(GamePanel.DEBUG_MODE && debugShowTreeOnNewAction) {
-                System.out.println("Queued action sequence:");
+                GameLogger.log(GameLogger.Category.TurnActions, GameLogger.Level.Debug, "Queued action sequence:");
                 TurnActionFactory.debugOutputTurnActionTree(turnAction);
             }
         } else {
             currentTurnAction = turnAction;
             if(GamePanel.DEBUG_MODE && debugShowTreeOnNewAction) {
-                System.out.println("Set action sequence:");
+                GameLogger.log(GameLogger.Category.TurnActions, GameLogger.Level.Debug, "Set action sequence:");
                 TurnActionFactory.debugOutputTurnActionTree(turnAction);
             }
         }
@@ -455,6 +825,7 @@ public class CurrentGameInterface extends WndInterface {
      * @param card Card to place on top of the card pile with no action.
      */
     public void forcePlayCard(Card card) {
+        eventLog.logCardEvent(GameEventLog.EventType.FirstCard, currentPlayerID, card);
         placeCard(card);
 
         if(card.getFaceValueID() >= 13) {
@@ -463,15 +834,15 @@ public class CurrentGameInterface extends WndInterface {
     }
 
     /**
-     * Moves the card's position to the card pile with a random offset and adds it
+     * Animates the card moving to the card pile with a random offset and adds it
      * to the collection of recentCards. If the number of recent cards is more
      * than the maximum allowed the oldest card is removed.
      *
      * @param card Card to place on top of the card pile.
      */
     public void placeCard(Card card) {
-        card.position.setPosition(centredCardPos.x, centredCardPos.y);
-        card.position.add(new Position((int)(Math.random()*24-12),(int)(Math.random()*24-12)));
+        cardAnimator.moveCard(card, centredCardPos.x + (int)(Math.random()*24-12),
+                centredCardPos.y + (int)(Math.random()*24-12), CardAnimator.DEFAULT_DURATION);
         recentCards.add(card);
         int MAX_CARD_HISTORY = 10;
         if(recentCards.size() > MAX_CARD_HISTORY) {
@@ -488,6 +859,34 @@ public class CurrentGameInterface extends WndInterface {
         return currentTurnAction;
     }
 
+    /**
+     * Gets the TurnAction that will be performed next. This is the queued action when there is
+     * one because it replaces the current action once the current action has been performed.
+     *
+     * @return The next action to perform or null.
+     */
+    public TurnActionFactory.TurnAction getPendingTurnAction() {
+        return queuedTurnAction != null ? queuedTurnAction : currentTurnAction;
+    }
+
+    /**
+     * Checks if a player has won the round.
+     *
+     * @return True once the round has ended.
+     */
+    public boolean isRoundOver() {
+        return isRoundOver;
+    }
+
+    /**
+     * Checks if this is a replay of a recorded round instead of a round being played.
+     *
+     * @return True when the round is driven by a recording.
+     */
+    public boolean isReplay() {
+        return replay != null;
+    }
+
     /**
      * Gets the ruleset to easily check and apply any rules.
      *
@@ -525,6 +924,45 @@ public class CurrentGameInterface extends WndInterface {
         return players.get(playerID);
     }
 
+    /**
+     * Gets the animator used to move cards around the game.
+     *
+     * @return A reference to the CardAnimator.
+     */
+    public CardAnimator getCardAnimator() {
+        return cardAnimator;
+    }
+
+    /**
+     * Gets the log recording every event in the round.
+     *
+     * @return A reference to the GameEventLog.
+     */
+    public GameEventLog getEventLog() {
+        return eventLog;
+    }
+
+    /**
+     * Gets the decisions made by AIPlayers in this round waiting for its outcome.
+     *
+     * @return The rows AIDecisionTelemetry records this game's decisions to.
+     */
+    public AIDecisionTelemetry.RoundRows getDecisionRows() {
+        return decisionRows;
+    }
+
+    /**
+     * Closes the event log for a round that is being abandoned before it ends,
+     * or the recording being read when this is a replay.
+     */
+    public void closeEventLog() {
+        eventLog.close();
+        AIDecisionTelemetry.abandonRound(decisionRows);
+        if(replay != null) {
+            replay.close();
+        }
+    }
+
     /**
      * Gets the deck to provide access to drawing cards.
      *
@@ -562,7 +1000,7 @@ public class CurrentGameInterface extends WndInterface {
         List<Player> result = new ArrayList<>();
         List<LobbyPlayer> playersToAdd = playerList.stream().filter(LobbyPlayer::isEnabled).collect(Collectors.toList());
         if(playersToAdd.size() != 2 && playersToAdd.size() != 4) {
-            System.out.println("Critical Error. Only combinations of 2 or 4 players are allowed");
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Critical Error. Only combinations of 2 or 4 players are allowed");
             return result;
         }
         int thisPlayerIndex = -1;
@@ -571,13 +1009,13 @@ public class CurrentGameInterface extends WndInterface {
                 if(thisPlayerIndex == -1) {
                     thisPlayerIndex = i;
                 } else {
-                    System.out.println("Critical Error. Only one ThisPlayer is allowed.");
+                    GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Critical Error. Only one ThisPlayer is allowed.");
                     return result;
                 }
             }
         }
         if(thisPlayerIndex == -1) {
-            System.out.println("Critical Error. One ThisPlayer is required!");
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Critical Error. One ThisPlayer is required!");
             return result;
         }
 
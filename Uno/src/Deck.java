@@ -43,6 +43,7 @@ public class Deck extends Rectangle {
         Card.paintCardBack(g, this);
 
         g.setColor(Color.BLACK);
+        g.setFont(new Font("Arial", Font.BOLD, 20));
         int strWidth = g.getFontMetrics().stringWidth("DECK");
         g.drawString("DECK", position.x+width/2-strWidth/2, position.y-4);
     }
@@ -50,6 +51,7 @@ public class Deck extends Rectangle {
     /**
      * If the deck is empty it is populated with a new deck.
      * Then a card is removed from the deck and returned.
+     * The card is positioned on the deck so it can be animated moving away from it.
      *
      * @return A single card drawn from the deck.
      */
@@ -59,9 +61,40 @@ public class Deck extends Rectangle {
         }
         Card drawnCard = deck.get(0);
         deck.remove(0);
+        drawnCard.position.setPosition(position.x, position.y);
         return drawnCard;
     }
 
+    /**
+     * Gets the cards remaining in the deck in the order they will be drawn.
+     *
+     * @return A reference to the remaining cards.
+     */
+    public List<Card> getRemainingCards() {
+        return deck;
+    }
+
+    /**
+     * Gets the cardID that will be given to the next card created when the deck is refilled.
+     *
+     * @return The next unused cardID.
+     */
+    public int getNextCardID() {
+        return nextCardID;
+    }
+
+    /**
+     * Replaces the cards in the deck. Used when restoring a saved game.
+     *
+     * @param cards The cards in the order they will be drawn.
+     * @param nextCardID The cardID to give the next card created when the deck is refilled.
+     */
+    public void restoreCards(List<Card> cards, int nextCardID) {
+        deck.clear();
+        deck.addAll(cards);
+        this.nextCardID = nextCardID;
+    }
+
     /**
      * Fills the deck by populating the deck with all the different card variations,
      * and then shuffles the cards to create a random order.
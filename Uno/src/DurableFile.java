@@ -0,0 +1,71 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Uno
+ *
+ * DurableFile class:
+ * Replaces files so that a crash part way through leaves either the old
+ * version or the new one, never a torn mix. The new contents are written
+ * to a sibling temporary file and forced to disk before being moved over
+ * the old file, and the folder is forced so that the move itself is kept.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class DurableFile {
+    /**
+     * Added to the name of the file being replaced to get the name of its temporary file.
+     */
+    public static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Replaces the contents of a file, creating it if it does not exist.
+     *
+     * @param path The file to replace.
+     * @param buffer The new contents, ready for reading.
+     * @throws IOException When the file could not be written. The old file is left as it was.
+     */
+    public static void replace(Path path, ByteBuffer buffer) throws IOException {
+        Path tempPath = getTempPath(path);
+        try(FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceFolder(path.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Gets the temporary file written before replacing a file.
+     *
+     * @param path The file being replaced.
+     * @return The path beside it with TEMP_SUFFIX added.
+     */
+    public static Path getTempPath(Path path) {
+        return path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+    }
+
+    /**
+     * Forces the entries of a folder to disk so that files created, moved, or deleted in it are kept
+     * after a crash. Platforms that cannot open a folder this way are ignored.
+     *
+     * @param folder The folder to force.
+     */
+    public static void forceFolder(Path folder) {
+        if(folder == null) return;
+        try(FileChannel channel = FileChannel.open(folder, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Windows does not allow folders to be opened, and its moves are already kept by the file system.
+        }
+    }
+}
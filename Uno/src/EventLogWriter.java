@@ -0,0 +1,206 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uno
+ *
+ * EventLogWriter class:
+ * A single background thread shared by all event logs that performs the
+ * writes to file so that the game thread never waits on disk access.
+ * Filled buffers are queued with the channel to write them to and handed
+ * back to the log that sent them once written.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class EventLogWriter {
+    /**
+     * Uno
+     *
+     * WriteTask class:
+     * A buffer to write to a channel, a request to close the channel when buffer is null,
+     * or an action to run when channel is null.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    private static class WriteTask {
+        /**
+         * The channel to write to.
+         */
+        private final FileChannel channel;
+        /**
+         * Data ready to be written, or null to close the channel.
+         */
+        private final ByteBuffer buffer;
+        /**
+         * Where to return the buffer once it has been written. Null if it is not needed back.
+         */
+        private final BlockingQueue<ByteBuffer> returnQueue;
+        /**
+         * The action to run instead of writing, or null.
+         */
+        private final IOAction action;
+
+        /**
+         * Stores the properties ready for the writer thread.
+         *
+         * @param channel The channel to write to.
+         * @param buffer Data ready to be written, or null to close the channel.
+         * @param returnQueue Where to return the buffer once it has been written. Null if it is not needed back.
+         * @param action The action to run instead of writing, or null.
+         */
+        private WriteTask(FileChannel channel, ByteBuffer buffer, BlockingQueue<ByteBuffer> returnQueue, IOAction action) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.returnQueue = returnQueue;
+            this.action = action;
+        }
+    }
+
+    /**
+     * Uno
+     *
+     * IOAction interface:
+     * File work to run on the writer thread once the writes queued before it are done.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    public interface IOAction {
+        /**
+         * Performs the work.
+         *
+         * @throws IOException When the work failed. It is logged by the writer thread.
+         */
+        void run() throws IOException;
+    }
+
+    /**
+     * Task used to tell the writer thread to stop once all earlier tasks are complete.
+     */
+    private static final WriteTask STOP_TASK = new WriteTask(null, null, null, null);
+    /**
+     * Tasks waiting to be written in the order they were submitted.
+     */
+    private static final BlockingQueue<WriteTask> tasks = new LinkedBlockingQueue<>();
+    /**
+     * The thread performing the writes. Created when the first task is submitted, and
+     * cleared by the thread itself once it stops so that only one ever takes tasks.
+     */
+    private static Thread writerThread;
+
+    /**
+     * Queues the buffer to be written to the channel. The buffer should already be flipped ready for reading.
+     *
+     * @param channel The channel to write to.
+     * @param buffer Data ready to be written.
+     * @param returnQueue Where to return the cleared buffer once it has been written. Null if it is not needed back.
+     */
+    public static void write(FileChannel channel, ByteBuffer buffer, BlockingQueue<ByteBuffer> returnQueue) {
+        submit(new WriteTask(channel, buffer, returnQueue, null));
+    }
+
+    /**
+     * Queues the channel to be closed after all writes already queued for it.
+     *
+     * @param channel The channel to close.
+     */
+    public static void close(FileChannel channel) {
+        submit(new WriteTask(channel, null, null, null));
+    }
+
+    /**
+     * Queues an action to run after all writes and closes already queued, such as moving a
+     * file into place once the files it describes are complete.
+     *
+     * @param action The action to run on the writer thread.
+     */
+    public static void run(IOAction action) {
+        submit(new WriteTask(null, null, null, action));
+    }
+
+    /**
+     * Waits for all queued writes to be completed and stops the writer thread.
+     * A new thread is started if anything is written after it has stopped. A writer
+     * still busy when the wait ends keeps going and stops once the queue is empty.
+     */
+    public static void shutdown() {
+        Thread thread;
+        synchronized (EventLogWriter.class) {
+            thread = writerThread;
+            if(thread == null) return;
+            tasks.add(STOP_TASK);
+        }
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Adds the task to the queue and starts the writer thread if it is not running.
+     *
+     * @param task The task to queue.
+     */
+    private static synchronized void submit(WriteTask task) {
+        if(writerThread == null) {
+            writerThread = new Thread(EventLogWriter::processTasks, "EventLogWriter");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+        tasks.add(task);
+    }
+
+    /**
+     * Performs tasks in order until the stop task is found with nothing queued after it.
+     * Tasks submitted after the stop task are performed first, because no other thread is
+     * started while this one is set as the writerThread.
+     */
+    private static void processTasks() {
+        while(true) {
+            WriteTask task;
+            try {
+                task = tasks.take();
+            } catch (InterruptedException e) {
+                synchronized (EventLogWriter.class) {
+                    writerThread = null;
+                }
+                return;
+            }
+            if(task == STOP_TASK) {
+                synchronized (EventLogWriter.class) {
+                    if(tasks.isEmpty()) {
+                        writerThread = null;
+                        return;
+                    }
+                }
+                continue;
+            }
+
+            try {
+                if(task.action != null) {
+                    task.action.run();
+                } else if(task.buffer == null) {
+                    task.channel.close();
+                } else {
+                    while(task.buffer.hasRemaining()) {
+                        task.channel.write(task.buffer);
+                    }
+                }
+            } catch (IOException e) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Failed to write event log. {}", e.getMessage());
+            }
+            if(task.buffer != null && task.returnQueue != null) {
+                task.buffer.clear();
+                // A buffer allocated while the log was interrupted is surplus once the queue is full, so it is dropped.
+                task.returnQueue.offer(task.buffer);
+            }
+        }
+    }
+}
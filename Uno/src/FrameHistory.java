@@ -0,0 +1,120 @@
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Uno
+ *
+ * FrameHistory class:
+ * Defines a bounded history of the WireProtocol frames sent to a seat so a client that
+ * reconnects can be sent only the frames it missed. Frames are numbered from 0 in the
+ * order they were added and their bytes are kept back to back in a fixed ring, so adding
+ * a frame never allocates. The oldest frames are dropped when either the bytes or the
+ * number of frames would go over the limits.
+ *
+ * Not thread safe. The history must only be used by the thread that owns the table.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class FrameHistory {
+    /**
+     * The bytes of the frames kept, wrapping around at the end.
+     */
+    private final byte[] bytes;
+    /**
+     * Position in the stream of bytes ever added where each frame kept starts, indexed by frame number modulo its length.
+     */
+    private final long[] frameStarts;
+    /**
+     * Number of the oldest frame kept.
+     */
+    private int firstFrame;
+    /**
+     * Number the next frame added will be given.
+     */
+    private int nextFrame;
+    /**
+     * Position in the stream of bytes ever added where the next frame will start.
+     */
+    private long endPosition;
+
+    /**
+     * Creates an empty history.
+     *
+     * @param capacity Most bytes of frames to keep.
+     * @param maxFrames Most frames to keep.
+     */
+    public FrameHistory(int capacity, int maxFrames) {
+        bytes = new byte[capacity];
+        frameStarts = new long[maxFrames];
+    }
+
+    /**
+     * Adds a copy of a frame as the next frame. Frames larger than the capacity are counted but not kept.
+     *
+     * @param frame The frame ready for reading. Its position is not changed.
+     */
+    public void add(ByteBuffer frame) {
+        int length = frame.remaining();
+        while(firstFrame < nextFrame && (nextFrame - firstFrame >= frameStarts.length
+                || endPosition + length - frameStarts[firstFrame % frameStarts.length] > bytes.length)) {
+            firstFrame++;
+        }
+        if(length > bytes.length) {
+            firstFrame = ++nextFrame;
+            return;
+        }
+        frameStarts[nextFrame % frameStarts.length] = endPosition;
+        int offset = (int) (endPosition % bytes.length);
+        int firstPart = Math.min(length, bytes.length - offset);
+        frame.get(frame.position(), bytes, offset, firstPart);
+        frame.get(frame.position() + firstPart, bytes, 0, length - firstPart);
+        endPosition += length;
+        nextFrame++;
+    }
+
+    /**
+     * Gets the number the next frame added will be given, which is also the number of frames ever added.
+     *
+     * @return The next frame number.
+     */
+    public int getNextFrame() {
+        return nextFrame;
+    }
+
+    /**
+     * Checks if every frame from a frame number onwards is still kept.
+     *
+     * @param fromFrame Number of the first frame wanted.
+     * @return True if replay() can pass them all on.
+     */
+    public boolean isKept(int fromFrame) {
+        return fromFrame >= firstFrame && fromFrame <= nextFrame;
+    }
+
+    /**
+     * Passes a copy of every frame from a frame number onwards to a consumer, oldest first.
+     * Nothing is passed unless every one of them is still kept.
+     *
+     * @param fromFrame Number of the first frame wanted.
+     * @param consumer Called with each frame ready for reading. The buffer is only valid until it returns.
+     * @return True if the frames were all kept and passed on, false if some have been dropped.
+     */
+    public boolean replay(int fromFrame, Consumer<ByteBuffer> consumer) {
+        if(!isKept(fromFrame)) return false;
+        if(fromFrame == nextFrame) return true;
+        long startPosition = frameStarts[fromFrame % frameStarts.length];
+        ByteBuffer buffer = ByteBuffer.allocate((int) (endPosition - startPosition));
+        for(int frameNumber = fromFrame; frameNumber < nextFrame; frameNumber++) {
+            long start = frameStarts[frameNumber % frameStarts.length];
+            long end = frameNumber + 1 < nextFrame ? frameStarts[(frameNumber + 1) % frameStarts.length] : endPosition;
+            int offset = (int) (start % bytes.length);
+            int length = (int) (end - start);
+            int firstPart = Math.min(length, bytes.length - offset);
+            buffer.clear();
+            buffer.put(bytes, offset, firstPart).put(bytes, 0, length - firstPart).flip();
+            consumer.accept(buffer);
+        }
+        return true;
+    }
+}
@@ -1,6 +1,8 @@
 import javax.swing.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 /**
  * Uno
@@ -29,17 +31,24 @@ public class Game implements KeyListener {
 
     /**
      * Creates the JFrame with a GamePanel inside it, attaches a key listener,
-     * and makes everything visible.
+     * and makes everything visible. Closing the window quits through the GamePanel
+     * so any game in progress is finished being recorded.
      */
     public Game() {
         JFrame frame = new JFrame("Uno");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setResizable(false);
+        frame.setResizable(true);
 
         gamePanel = new GamePanel();
         frame.getContentPane().add(gamePanel);
 
         frame.addKeyListener(this);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                gamePanel.quitGame();
+            }
+        });
         frame.pack();
         frame.setVisible(true);
     }
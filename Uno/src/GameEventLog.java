@@ -0,0 +1,536 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Uno
+ *
+ * GameEventLog class:
+ * Records every event in a round as a compact binary stream. Events are encoded
+ * on the game thread into a buffer and full buffers are handed to the EventLogWriter
+ * to be written to file on a background thread.
+ *
+ * The file begins with a header: "UNOL", format version, RuleSet flags, ScoreLimitType,
+ * the player count followed by each player (type, strategy, name, total score),
+ * the starting player and the starting direction.
+ * Each event is then: event type, time since the previous event in ms, playerID, and
+ * either a card (cardID then faceValueID * 5 + colourID) or a single value.
+ * All numbers except the event type and card face are variable length integers.
+ *
+ * Every KEYFRAME_INTERVAL turns a Keyframe event is written with the whole visible state
+ * so a replay can jump to any turn without reading from the start. Its value is the length
+ * of the snapshot that follows it. When the log is closed an index of the keyframes is
+ * appended: the count, each keyframe (turn, 8 byte file offset), the total number of turns,
+ * the 8 byte file offset of the index, and then "UNOI".
+ *
+ * When a GameRecordStore has been set with setRecordStore() each log is instead kept in
+ * memory and appended to the store as a single record when it is closed. The record has
+ * the same layout as a log file with offsets measured from the start of the record.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class GameEventLog {
+    /**
+     * The types of events that can be recorded. Events marked as card events store a card, others store a value.
+     */
+    public enum EventType {
+        Deal(true), FirstCard(true), Draw(true), Place(true), JumpIn(true),
+        ColourChoice(false), ChallengeResult(false), Stack(false), Swap(false), PassAll(false),
+        UNOCalled(false), AntiUnoCalled(false), NextTurn(false), Reverse(false), RoundEnd(false),
+        Keyframe(false);
+
+        /**
+         * When true the event is followed by a card, otherwise it is followed by a value.
+         */
+        private final boolean isCardEvent;
+
+        /**
+         * Defines the type of data stored with the event.
+         *
+         * @param isCardEvent When true the event is followed by a card, otherwise it is followed by a value.
+         */
+        EventType(boolean isCardEvent) {
+            this.isCardEvent = isCardEvent;
+        }
+
+        /**
+         * Checks if the event stores a card.
+         *
+         * @return True if the event is followed by a card, otherwise it is followed by a value.
+         */
+        public boolean isCardEvent() {
+            return isCardEvent;
+        }
+    }
+
+    /**
+     * Bytes at the start of every log to identify the file.
+     */
+    public static final byte[] MAGIC = {'U', 'N', 'O', 'L'};
+    /**
+     * Bytes at the end of a log that was closed properly, following the keyframe index.
+     */
+    public static final byte[] INDEX_MAGIC = {'U', 'N', 'O', 'I'};
+    /**
+     * Number of turns between each keyframe.
+     */
+    public static final int KEYFRAME_INTERVAL = 25;
+    /**
+     * Version of the format written by this class. Version 1 logs had no Keyframe events or
+     * keyframe index, and stored the player ID in NextTurn, so they are rejected. Version 2
+     * keyframes did not store the UNO state of each player.
+     */
+    public static final int FORMAT_VERSION = 3;
+    /**
+     * Oldest version of the format that can still be read.
+     */
+    public static final int MIN_FORMAT_VERSION = 2;
+    /**
+     * Folder the logs are written to, relative to the working directory.
+     */
+    public static final String LOG_FOLDER = "GameLogs";
+    /**
+     * File extension for event logs.
+     */
+    public static final String LOG_EXTENSION = ".unolog";
+    /**
+     * Value written for the strategy of players that are not AI.
+     */
+    public static final int NO_STRATEGY = 255;
+    /**
+     * Size of each buffer events are encoded into.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * Number of buffers each log can have. When all are waiting to be written the game thread waits for one.
+     */
+    private static final int BUFFER_COUNT = 4;
+    /**
+     * The largest number of bytes a single event can take.
+     */
+    public static final int MAX_EVENT_SIZE = 1 + 5 + 5 + 5 + 1;
+    /**
+     * The largest number of bytes a single card takes.
+     */
+    public static final int MAX_CARD_SIZE = 5 + 1;
+    /**
+     * Number used to give every log created by this process a unique file name.
+     */
+    private static int nextLogNumber = 0;
+    /**
+     * When not null, new logs are appended to this store instead of being written to their own file.
+     */
+    private static volatile GameRecordStore recordStore;
+
+    /**
+     * The channel events are written to. Null when logging is disabled.
+     */
+    private FileChannel channel;
+    /**
+     * The store the log is appended to when it is closed. Null when writing to a file or when logging is disabled.
+     */
+    private GameRecordStore targetStore;
+    /**
+     * Buffer currently being filled with events.
+     */
+    private ByteBuffer buffer;
+    /**
+     * Empty buffers ready to be filled. Buffers are returned here by the EventLogWriter after being written.
+     */
+    private final BlockingQueue<ByteBuffer> freeBuffers;
+    /**
+     * Total time in ms the game has been updated for.
+     */
+    private long gameTime;
+    /**
+     * The gameTime when the last event was recorded.
+     */
+    private long lastEventTime;
+    /**
+     * Number of bytes that have been sent to the EventLogWriter.
+     */
+    private long bytesWritten;
+    /**
+     * Number of turns that have started since the first turn.
+     */
+    private int turnNumber;
+    /**
+     * Reusable buffer a keyframe snapshot is prepared in before it is added to the log.
+     */
+    private ByteBuffer keyframeBuffer;
+    /**
+     * The turn each keyframe was written for.
+     */
+    private int[] keyframeTurns;
+    /**
+     * The offset from the start of the file to each keyframe.
+     */
+    private long[] keyframeOffsets;
+    /**
+     * Number of keyframes that have been written.
+     */
+    private int keyframeCount;
+
+    /**
+     * Creates a log for a new round in the LOG_FOLDER and writes the header. If the file can not
+     * be created the log is disabled and all events are ignored.
+     *
+     * @param players The players in the round with their total scores from previous rounds.
+     * @param ruleSet The rules the round is played with.
+     * @param startingPlayerID The player who takes the first turn.
+     * @param isIncreasing The starting direction of play.
+     */
+    public GameEventLog(List<Player> players, RuleSet ruleSet, int startingPlayerID, boolean isIncreasing) {
+        freeBuffers = new ArrayBlockingQueue<>(BUFFER_COUNT);
+        keyframeBuffer = ByteBuffer.allocate(1024);
+        keyframeTurns = new int[16];
+        keyframeOffsets = new long[16];
+        targetStore = recordStore;
+        if(targetStore != null) {
+            buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            writeHeader(players, ruleSet, startingPlayerID, isIncreasing);
+            return;
+        }
+        try {
+            Path folder = Paths.get(LOG_FOLDER);
+            Files.createDirectories(folder);
+            Path file = folder.resolve("game-" + System.currentTimeMillis() + "-" + (nextLogNumber++) + LOG_EXTENSION);
+            channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Event logging disabled. Failed to create log file. {}", e.getMessage());
+            channel = null;
+            return;
+        }
+        for(int i = 0; i < BUFFER_COUNT; i++) {
+            freeBuffers.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+        }
+        buffer = freeBuffers.poll();
+        writeHeader(players, ruleSet, startingPlayerID, isIncreasing);
+    }
+
+    /**
+     * Creates a log that ignores all events. Used when a round is being replayed.
+     */
+    private GameEventLog() {
+        freeBuffers = null;
+        channel = null;
+    }
+
+    /**
+     * Creates a log that ignores all events.
+     *
+     * @return A log that is not enabled.
+     */
+    public static GameEventLog createDisabled() {
+        return new GameEventLog();
+    }
+
+    /**
+     * Creates a log for a round hosted by a GameTable. Hosted rounds are only recorded when a
+     * GameRecordStore has been set, since a server plays far too many rounds for a file each.
+     *
+     * @param players The players in the round with their total scores from previous rounds.
+     * @param ruleSet The rules the round is played with.
+     * @param startingPlayerID The player who takes the first turn.
+     * @param isIncreasing The starting direction of play.
+     * @return A log appended to the store when closed, or a log that is not enabled.
+     */
+    public static GameEventLog createForHostedRound(List<Player> players, RuleSet ruleSet, int startingPlayerID, boolean isIncreasing) {
+        return recordStore != null ? new GameEventLog(players, ruleSet, startingPlayerID, isIncreasing) : createDisabled();
+    }
+
+    /**
+     * Sets the store that logs created from now on are appended to instead of being written to
+     * their own file. Used by a GameServer given a record folder, which records every round it hosts.
+     *
+     * @param store The store to append to, or null to go back to writing a file per log.
+     */
+    public static void setRecordStore(GameRecordStore store) {
+        recordStore = store;
+    }
+
+    /**
+     * Advances the time used to timestamp events.
+     *
+     * @param deltaTime Time since last update.
+     */
+    public void update(int deltaTime) {
+        gameTime += deltaTime;
+    }
+
+    /**
+     * Records an event that involves a card.
+     *
+     * @param eventType The type of event. Must be a card event.
+     * @param playerID The player the event happened to.
+     * @param card The card involved.
+     */
+    public void logCardEvent(EventType eventType, int playerID, Card card) {
+        if(!isEnabled()) return;
+        beginEvent(eventType, playerID);
+        writeCard(buffer, card);
+    }
+
+    /**
+     * Records an event with a single value.
+     *
+     * @param eventType The type of event. Must not be a card event.
+     * @param playerID The player the event happened to.
+     * @param value A non-negative value with a meaning that depends on the event type.
+     */
+    public void logEvent(EventType eventType, int playerID, int value) {
+        if(!isEnabled()) return;
+        beginEvent(eventType, playerID);
+        writeVarInt(buffer, value);
+    }
+
+    /**
+     * Records the start of a new turn, and writes a keyframe with the current state
+     * of the round every KEYFRAME_INTERVAL turns.
+     *
+     * @param playerID The player whose turn it is.
+     * @param isIncreasing The current direction of play.
+     * @param players All the players in the round.
+     * @param recentCards The cards in the played pile.
+     */
+    public void logNextTurn(int playerID, boolean isIncreasing, List<Player> players, List<Card> recentCards) {
+        if(!isEnabled()) return;
+        turnNumber++;
+        logEvent(EventType.NextTurn, playerID, turnNumber);
+        if(turnNumber % KEYFRAME_INTERVAL == 0) {
+            logKeyframe(playerID, isIncreasing, players, recentCards);
+        }
+    }
+
+    /**
+     * Sends any buffered events to be written. When the log is being kept for a record store
+     * the buffer is grown instead.
+     */
+    public void flush() {
+        if(!isEnabled() || buffer.position() == 0) return;
+        if(targetStore != null) {
+            buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+            return;
+        }
+        bytesWritten += buffer.position();
+        buffer.flip();
+        EventLogWriter.write(channel, buffer, freeBuffers);
+        buffer = takeFreeBuffer();
+    }
+
+    /**
+     * Writes any buffered events and closes the file. Further events are ignored.
+     */
+    public void close() {
+        if(!isEnabled()) return;
+        writeIndex();
+        if(targetStore != null) {
+            try {
+                targetStore.append(buffer.flip());
+            } catch (IOException e) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Failed to store event log. {}", e.getMessage());
+            }
+            targetStore = null;
+            return;
+        }
+        flush();
+        EventLogWriter.close(channel);
+        channel = null;
+    }
+
+    /**
+     * Checks if events are being recorded.
+     *
+     * @return True if the log is open and recording events.
+     */
+    public boolean isEnabled() {
+        return channel != null || targetStore != null;
+    }
+
+    /**
+     * Makes sure there is space for an event and writes the common part of every event.
+     *
+     * @param eventType The type of event.
+     * @param playerID The player the event happened to.
+     */
+    private void beginEvent(EventType eventType, int playerID) {
+        if(buffer.remaining() < MAX_EVENT_SIZE) {
+            flush();
+        }
+        buffer.put((byte) eventType.ordinal());
+        writeVarInt(buffer, (int) Math.min(Integer.MAX_VALUE, gameTime - lastEventTime));
+        writeVarInt(buffer, playerID);
+        lastEventTime = gameTime;
+    }
+
+    /**
+     * Writes a snapshot of the hands, UNO states, played pile and direction of play so a replay can start from this turn.
+     * The snapshot is prepared separately first so its length can be written before it.
+     *
+     * @param playerID The player whose turn it is.
+     * @param isIncreasing The current direction of play.
+     * @param players All the players in the round.
+     * @param recentCards The cards in the played pile.
+     */
+    private void logKeyframe(int playerID, boolean isIncreasing, List<Player> players, List<Card> recentCards) {
+        int cardCount = recentCards.size();
+        for(Player player : players) {
+            cardCount += player.getHand().size();
+        }
+        int maxSize = 5 + 1 + 5 + (players.size() + 1) * 5 + players.size() + cardCount * MAX_CARD_SIZE;
+        if(maxSize > BUFFER_SIZE - MAX_EVENT_SIZE) return;
+        if(keyframeBuffer.capacity() < maxSize) {
+            keyframeBuffer = ByteBuffer.allocate(Math.max(maxSize, keyframeBuffer.capacity() * 2));
+        }
+
+        keyframeBuffer.clear();
+        writeVarInt(keyframeBuffer, turnNumber);
+        keyframeBuffer.put((byte) (isIncreasing ? 1 : 0));
+        writeVarInt(keyframeBuffer, players.size());
+        for(Player player : players) {
+            writeVarInt(keyframeBuffer, player.getHand().size());
+            for(Card card : player.getHand()) {
+                writeCard(keyframeBuffer, card);
+            }
+            keyframeBuffer.put((byte) player.getUnoState().ordinal());
+        }
+        writeVarInt(keyframeBuffer, recentCards.size());
+        for(Card card : recentCards) {
+            writeCard(keyframeBuffer, card);
+        }
+        keyframeBuffer.flip();
+
+        if(buffer.remaining() < MAX_EVENT_SIZE + keyframeBuffer.remaining()) {
+            flush();
+        }
+        if(keyframeCount == keyframeTurns.length) {
+            keyframeTurns = Arrays.copyOf(keyframeTurns, keyframeCount * 2);
+            keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframeCount * 2);
+        }
+        keyframeTurns[keyframeCount] = turnNumber;
+        keyframeOffsets[keyframeCount] = bytesWritten + buffer.position();
+        keyframeCount++;
+        logEvent(EventType.Keyframe, playerID, keyframeBuffer.remaining());
+        buffer.put(keyframeBuffer);
+    }
+
+    /**
+     * Appends the index of keyframes so a replay can find them without reading the whole log.
+     */
+    private void writeIndex() {
+        if(buffer.remaining() < MAX_EVENT_SIZE) {
+            flush();
+        }
+        long indexOffset = bytesWritten + buffer.position();
+        writeVarInt(buffer, keyframeCount);
+        for(int i = 0; i < keyframeCount; i++) {
+            if(buffer.remaining() < 5 + 8) {
+                flush();
+            }
+            writeVarInt(buffer, keyframeTurns[i]);
+            buffer.putLong(keyframeOffsets[i]);
+        }
+        if(buffer.remaining() < 5 + 8 + INDEX_MAGIC.length) {
+            flush();
+        }
+        writeVarInt(buffer, turnNumber);
+        buffer.putLong(indexOffset);
+        buffer.put(INDEX_MAGIC);
+    }
+
+    /**
+     * Writes the header describing the round to the start of the log.
+     *
+     * @param players The players in the round with their total scores from previous rounds.
+     * @param ruleSet The rules the round is played with.
+     * @param startingPlayerID The player who takes the first turn.
+     * @param isIncreasing The starting direction of play.
+     */
+    private void writeHeader(List<Player> players, RuleSet ruleSet, int startingPlayerID, boolean isIncreasing) {
+        buffer.put(MAGIC);
+        buffer.put((byte) FORMAT_VERSION);
+        buffer.put((byte) ruleSet.getRuleFlags());
+        buffer.put((byte) ruleSet.getScoreLimitType().ordinal());
+        writeVarInt(buffer, players.size());
+        for(Player player : players) {
+            byte[] name = player.getPlayerName().getBytes(StandardCharsets.UTF_8);
+            if(buffer.remaining() < name.length + MAX_EVENT_SIZE) {
+                flush();
+            }
+            buffer.put((byte) player.getPlayerType().ordinal());
+            buffer.put((byte) (player instanceof AIPlayer ? ((AIPlayer) player).getStrategy().ordinal() : NO_STRATEGY));
+            writeVarInt(buffer, name.length);
+            buffer.put(name);
+            writeVarInt(buffer, player.getTotalScore());
+        }
+        writeVarInt(buffer, startingPlayerID);
+        buffer.put((byte) (isIncreasing ? 1 : 0));
+    }
+
+    /**
+     * Writes the cardID and then the faceValueID and colourID packed into a single byte.
+     *
+     * @param buffer The buffer to write to.
+     * @param card The card to write.
+     */
+    public static void writeCard(ByteBuffer buffer, Card card) {
+        writeVarInt(buffer, card.getCardID());
+        buffer.put((byte) (card.getFaceValueID() * 5 + card.getColourID()));
+    }
+
+    /**
+     * Writes a non-negative number using 7 bits per byte with the high bit set when more bytes follow.
+     *
+     * @param buffer The buffer to write to.
+     * @param value The value to write.
+     */
+    public static void writeVarInt(ByteBuffer buffer, int value) {
+        while((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads a number written by writeVarInt().
+     *
+     * @param buffer The buffer to read from.
+     * @return The value that was read.
+     */
+    public static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte next;
+        do {
+            next = buffer.get();
+            value |= (next & 0x7F) << shift;
+            shift += 7;
+        } while((next & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Waits for a buffer to be returned by the EventLogWriter.
+     *
+     * @return An empty buffer ready to be filled.
+     */
+    private ByteBuffer takeFreeBuffer() {
+        try {
+            return freeBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    }
+}
@@ -0,0 +1,459 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Uno
+ *
+ * GameLogger class:
+ * Logging for debug output and errors that never blocks the thread logging
+ * the message. Each message is added to a lock free queue with a single
+ * atomic swap, and a background thread takes them off in batches, formats
+ * them, and writes them to the console and a rolling log file.
+ *
+ * Every category has its own level. Messages below the level of their category
+ * are discarded by a single comparison before anything is created, and
+ * messages take their values as separate arguments that are only inserted in
+ * place of each {} once the message is written, so a disabled message costs
+ * no string building. Code that has to do work to produce the arguments
+ * should check isEnabled() first.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class GameLogger {
+    /**
+     * The areas of the game that messages come from. Each has its own level.
+     */
+    public enum Category { General, TurnActions, Overlays, AIDecisions }
+
+    /**
+     * How important a message is. Setting a category to Off discards all of its messages.
+     */
+    public enum Level { Debug, Info, Warning, Error, Off }
+
+    /**
+     * Uno
+     *
+     * LogEntry class:
+     * A message waiting to be written. Entries are linked together to form the queue.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    private static class LogEntry {
+        /**
+         * The area the message came from.
+         */
+        private final Category category;
+        /**
+         * How important the message is.
+         */
+        private final Level level;
+        /**
+         * Time the message was logged in ms since the epoch.
+         */
+        private final long time;
+        /**
+         * The message with {} in place of each argument.
+         */
+        private String message;
+        /**
+         * Values to insert into the message in order.
+         */
+        private Object[] args;
+        /**
+         * The next entry in the queue. Set by the thread that adds the next entry.
+         */
+        private volatile LogEntry next;
+
+        /**
+         * Stores the message ready to be queued.
+         *
+         * @param category The area the message came from.
+         * @param level How important the message is.
+         * @param message The message with {} in place of each argument.
+         * @param args Values to insert into the message in order.
+         */
+        private LogEntry(Category category, Level level, String message, Object[] args) {
+            this.category = category;
+            this.level = level;
+            this.message = message;
+            this.args = args;
+            time = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Folder the log files are written to, relative to the working directory.
+     */
+    public static final String LOG_FOLDER = "Logs";
+    /**
+     * Name of the log file being written to. Older files have a number before the extension.
+     */
+    public static final String LOG_FILE = "uno.log";
+    /**
+     * Size a log file can reach before it is rolled over to a new file.
+     */
+    private static final long MAX_FILE_SIZE = 4 * 1024 * 1024;
+    /**
+     * Number of old log files kept after rolling over.
+     */
+    private static final int MAX_OLD_FILES = 3;
+    /**
+     * Most entries written together before the file is flushed.
+     */
+    private static final int MAX_BATCH_SIZE = 256;
+    /**
+     * How long the writer waits before checking for new entries when the queue is empty.
+     */
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    /**
+     * Format of the time written at the start of each line.
+     */
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+    /**
+     * Empty argument list shared by messages without arguments.
+     */
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /**
+     * The lowest Level that is kept for each category, indexed by Category ordinal.
+     */
+    private static final int[] categoryLevels = new int[Category.values().length];
+    /**
+     * The most recently added entry. Threads adding entries swap themselves in here.
+     */
+    private static final AtomicReference<LogEntry> queueTail;
+    /**
+     * The last entry taken by the writer. Entries after it are waiting. Only used by the writer thread.
+     */
+    private static LogEntry queueHead;
+    /**
+     * The thread writing entries. Created when the first entry is logged, and cleared by the
+     * writer itself once it stops so that only one thread ever takes entries.
+     */
+    private static volatile Thread writerThread;
+    /**
+     * When true the writer thread writes what is left and stops.
+     */
+    private static volatile boolean isStopping;
+    /**
+     * When true entries are also written to System.out.
+     */
+    private static volatile boolean writeToConsole;
+
+    static {
+        LogEntry stub = new LogEntry(Category.General, Level.Off, null, NO_ARGS);
+        queueHead = stub;
+        queueTail = new AtomicReference<>(stub);
+        for(Category category : Category.values()) {
+            categoryLevels[category.ordinal()] = Level.Info.ordinal();
+        }
+        categoryLevels[Category.TurnActions.ordinal()] = Level.Debug.ordinal();
+        writeToConsole = true;
+    }
+
+    /**
+     * Checks if messages of a level in a category will be kept.
+     *
+     * @param category The area the message would come from.
+     * @param level How important the message would be.
+     * @return True if the message would be written.
+     */
+    public static boolean isEnabled(Category category, Level level) {
+        return level.ordinal() >= categoryLevels[category.ordinal()];
+    }
+
+    /**
+     * Sets the lowest level of message kept for a category.
+     *
+     * @param category The category to change.
+     * @param level The lowest level to keep, or Off to discard everything.
+     */
+    public static void setLevel(Category category, Level level) {
+        categoryLevels[category.ordinal()] = level.ordinal();
+    }
+
+    /**
+     * Gets the lowest level of message kept for a category.
+     *
+     * @param category The category to look up.
+     * @return The lowest level kept.
+     */
+    public static Level getLevel(Category category) {
+        return Level.values()[categoryLevels[category.ordinal()]];
+    }
+
+    /**
+     * Sets whether messages are also written to System.out as well as the log file.
+     *
+     * @param enabled True to write to the console.
+     */
+    public static void setWriteToConsole(boolean enabled) {
+        writeToConsole = enabled;
+    }
+
+    /**
+     * Logs a message.
+     *
+     * @param category The area the message comes from.
+     * @param level How important the message is.
+     * @param message The message.
+     */
+    public static void log(Category category, Level level, String message) {
+        if(!isEnabled(category, level)) return;
+        enqueue(new LogEntry(category, level, message, NO_ARGS));
+    }
+
+    /**
+     * Logs a message with one value inserted in place of the {}.
+     *
+     * @param category The area the message comes from.
+     * @param level How important the message is.
+     * @param message The message with {} in place of the argument.
+     * @param arg The value to insert.
+     */
+    public static void log(Category category, Level level, String message, Object arg) {
+        if(!isEnabled(category, level)) return;
+        enqueue(new LogEntry(category, level, message, new Object[] {arg}));
+    }
+
+    /**
+     * Logs a message with two values inserted in place of each {}.
+     *
+     * @param category The area the message comes from.
+     * @param level How important the message is.
+     * @param message The message with {} in place of each argument.
+     * @param arg1 The first value to insert.
+     * @param arg2 The second value to insert.
+     */
+    public static void log(Category category, Level level, String message, Object arg1, Object arg2) {
+        if(!isEnabled(category, level)) return;
+        enqueue(new LogEntry(category, level, message, new Object[] {arg1, arg2}));
+    }
+
+    /**
+     * Logs a message with values inserted in place of each {}.
+     *
+     * @param category The area the message comes from.
+     * @param level How important the message is.
+     * @param message The message with {} in place of each argument.
+     * @param args The values to insert in order.
+     */
+    public static void log(Category category, Level level, String message, Object... args) {
+        if(!isEnabled(category, level)) return;
+        enqueue(new LogEntry(category, level, message, args));
+    }
+
+    /**
+     * Writes everything already logged and stops the writer thread. Anything logged while
+     * it stops is then written on the calling thread. A new thread is started if anything
+     * is logged afterwards. A writer still busy when the wait ends keeps going and stops
+     * once the queue is empty.
+     */
+    public static void shutdown() {
+        Thread thread;
+        synchronized (GameLogger.class) {
+            thread = writerThread;
+            if(thread == null) return;
+            isStopping = true;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        synchronized (GameLogger.class) {
+            if(writerThread != null || queueHead.next == null) return;
+            writerThread = Thread.currentThread();
+            isStopping = true;
+        }
+        processEntries();
+    }
+
+    /**
+     * Adds the entry to the end of the queue with a single atomic swap and starts the writer if needed.
+     *
+     * @param entry The entry to add.
+     */
+    private static void enqueue(LogEntry entry) {
+        LogEntry previous = queueTail.getAndSet(entry);
+        previous.next = entry;
+        if(writerThread == null) {
+            startWriter();
+        }
+    }
+
+    /**
+     * Starts the writer thread if it is not already running.
+     */
+    private static synchronized void startWriter() {
+        if(writerThread != null) return;
+        writerThread = new Thread(GameLogger::processEntries, "GameLogger");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Takes the next entry from the queue. Only called by the writer thread.
+     *
+     * @return The next entry, or null if the queue is empty.
+     */
+    private static LogEntry poll() {
+        LogEntry next = queueHead.next;
+        if(next == null) return null;
+        queueHead = next;
+        return next;
+    }
+
+    /**
+     * Writes entries in batches until asked to stop and the queue is empty.
+     */
+    private static void processEntries() {
+        BufferedWriter fileWriter = openLogFile();
+        long fileSize = 0;
+        StringBuilder line = new StringBuilder();
+        while(true) {
+            LogEntry entry = poll();
+            if(entry == null) {
+                if(isStopping && stopWriter()) break;
+                if(!isStopping) {
+                    LockSupport.parkNanos(IDLE_WAIT_NANOS);
+                }
+                continue;
+            }
+            StringBuilder batch = new StringBuilder();
+            int count = 0;
+            while(entry != null) {
+                line.setLength(0);
+                formatEntry(line, entry);
+                batch.append(line).append(System.lineSeparator());
+                if(++count == MAX_BATCH_SIZE) break;
+                entry = poll();
+            }
+            if(writeToConsole) {
+                System.out.print(batch);
+            }
+            if(fileWriter != null) {
+                try {
+                    if(fileSize + batch.length() > MAX_FILE_SIZE) {
+                        fileWriter.close();
+                        fileWriter = rollLogFiles();
+                        fileSize = 0;
+                    }
+                    if(fileWriter != null) {
+                        fileWriter.append(batch);
+                        fileWriter.flush();
+                        fileSize += batch.length();
+                    }
+                } catch (IOException e) {
+                    System.out.println("Logging to file stopped. " + e.getMessage());
+                    fileWriter = null;
+                }
+            }
+        }
+        if(fileWriter != null) {
+            try {
+                fileWriter.close();
+            } catch (IOException e) {
+                System.out.println("Failed to close log file. " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Clears writerThread so that the next entry logged starts a new writer. An entry added
+     * while clearing it is either seen here, in which case this thread carries on when no
+     * new writer has been started, or sees no writer and starts one.
+     *
+     * @return True if the calling writer should stop.
+     */
+    private static boolean stopWriter() {
+        synchronized (GameLogger.class) {
+            writerThread = null;
+            isStopping = false;
+        }
+        if(queueHead.next == null) return true;
+        synchronized (GameLogger.class) {
+            if(writerThread != null) return true;
+            writerThread = Thread.currentThread();
+            isStopping = true;
+            return false;
+        }
+    }
+
+    /**
+     * Formats an entry as a single line with the time, level, and category before the message.
+     * The entry's message and arguments are released once formatted.
+     *
+     * @param line The builder to append to.
+     * @param entry The entry to format.
+     */
+    private static void formatEntry(StringBuilder line, LogEntry entry) {
+        line.append(LocalTime.ofInstant(Instant.ofEpochMilli(entry.time), ZoneId.systemDefault()).format(TIME_FORMAT))
+                .append(' ').append(entry.level).append(' ').append(entry.category).append(": ");
+        String message = entry.message;
+        int argIndex = 0;
+        int start = 0;
+        int placeholder;
+        while(argIndex < entry.args.length && (placeholder = message.indexOf("{}", start)) != -1) {
+            line.append(message, start, placeholder).append(entry.args[argIndex++]);
+            start = placeholder + 2;
+        }
+        line.append(message, start, message.length());
+        entry.message = null;
+        entry.args = NO_ARGS;
+    }
+
+    /**
+     * Opens the log file for appending, creating the folder if needed.
+     *
+     * @return The writer, or null if the file could not be opened.
+     */
+    private static BufferedWriter openLogFile() {
+        try {
+            Path folder = Paths.get(LOG_FOLDER);
+            Files.createDirectories(folder);
+            return Files.newBufferedWriter(folder.resolve(LOG_FILE), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.out.println("Logging to file disabled. " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Renames the current log file to keep it as an old file, dropping the oldest, and opens a new log file.
+     *
+     * @return The writer for the new file, or null if it could not be opened.
+     * @throws IOException When the old files could not be renamed.
+     */
+    private static BufferedWriter rollLogFiles() throws IOException {
+        Path folder = Paths.get(LOG_FOLDER);
+        String baseName = LOG_FILE.substring(0, LOG_FILE.lastIndexOf('.'));
+        Files.deleteIfExists(folder.resolve(baseName + "." + MAX_OLD_FILES + ".log"));
+        for(int i = MAX_OLD_FILES - 1; i >= 1; i--) {
+            Path oldFile = folder.resolve(baseName + "." + i + ".log");
+            if(Files.exists(oldFile)) {
+                Files.move(oldFile, folder.resolve(baseName + "." + (i + 1) + ".log"), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(folder.resolve(LOG_FILE), folder.resolve(baseName + ".1.log"), StandardCopyOption.REPLACE_EXISTING);
+        return openLogFile();
+    }
+}
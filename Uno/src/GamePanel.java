@@ -1,6 +1,11 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.geom.AffineTransform;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 
 /**
@@ -15,13 +20,27 @@ import java.util.List;
  */
 public class GamePanel extends JPanel implements MouseListener, MouseMotionListener, ActionListener {
     /**
-     * Height of the panel.
+     * Height of the logical game area. All layout is done in this coordinate space
+     * and scaled to fit the actual size of the panel when drawn.
      */
     public static final int PANEL_HEIGHT = 720;
     /**
-     * Width of the panel.
+     * Width of the logical game area. All layout is done in this coordinate space
+     * and scaled to fit the actual size of the panel when drawn.
      */
     public static final int PANEL_WIDTH = 1280;
+    /**
+     * Time in ms between each update of the game.
+     */
+    private static final int UPDATE_INTERVAL = 20;
+    /**
+     * The game speed multipliers that can be cycled through. 0 represents instant.
+     */
+    private static final int[] GAME_SPEEDS = {1, 2, 4, 8, 16, 32, 64, 0};
+    /**
+     * Maximum time in ms spent simulating during a single timer event when the game speed is instant.
+     */
+    private static final int INSTANT_TIME_BUDGET = 15;
 
     /**
      * Reference to the window that appears when the game is paused.
@@ -31,10 +50,38 @@ public class GamePanel extends JPanel implements MouseListener, MouseMotionListe
      * Reference to the active interface.
      */
     private WndInterface activeInterface;
+    /**
+     * Journal recording the total scores of each session so it can be resumed after a crash. Null if it could not be opened.
+     */
+    private SessionJournal sessionJournal;
+    /**
+     * The sessionID in the sessionJournal of the game being played, or -1 when there is none.
+     */
+    private int activeSessionID;
     /**
      * When debug mode is enabled. Additional output and controls are enabled.
      */
     public static boolean DEBUG_MODE;
+    /**
+     * Index into GAME_SPEEDS for the current game speed.
+     */
+    private int gameSpeedIndex;
+    /**
+     * Transform from the logical game area to the panel. Only recalculated when the panel changes size.
+     */
+    private final AffineTransform viewTransform;
+    /**
+     * The panel width and height that viewTransform was last calculated for.
+     */
+    private int viewWidth, viewHeight;
+    /**
+     * Scale applied to the logical game area to fit it inside the panel.
+     */
+    private double viewScale;
+    /**
+     * Offset to centre the scaled game area inside the panel.
+     */
+    private double viewOffsetX, viewOffsetY;
 
     /**
      * Configures the game ready to be played including selection of playing against either
@@ -43,13 +90,23 @@ public class GamePanel extends JPanel implements MouseListener, MouseMotionListe
     public GamePanel() {
         setPreferredSize(new Dimension(PANEL_WIDTH, PANEL_HEIGHT));
         setBackground(new Color(93, 141, 74));
+        viewTransform = new AffineTransform();
+        viewScale = 1;
 
         pauseWnd = new PauseInterface(new Rectangle(PANEL_WIDTH/2-100,PANEL_HEIGHT/2-100,200,200), this);
         pauseWnd.setEnabled(false);
 
+        PlayerProfile.load();
+        activeSessionID = -1;
+        try {
+            sessionJournal = new SessionJournal(Paths.get(SessionJournal.JOURNAL_FOLDER));
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Session journal disabled. {}", e.getMessage());
+        }
         showLobby();
 
-        Timer updateTimer = new Timer(20, this);
+        gameSpeedIndex = 0;
+        Timer updateTimer = new Timer(UPDATE_INTERVAL, this);
         updateTimer.start();
 
         addMouseListener(this);
@@ -63,6 +120,8 @@ public class GamePanel extends JPanel implements MouseListener, MouseMotionListe
      */
     public void showLobby() {
         if(!(activeInterface instanceof LobbyInterface)) {
+            closeActiveEventLog();
+            endActiveSession();
             activeInterface = new LobbyInterface(new Rectangle(0, 0, PANEL_WIDTH, PANEL_HEIGHT), this);
         }
         setPauseState(false);
@@ -75,6 +134,13 @@ public class GamePanel extends JPanel implements MouseListener, MouseMotionListe
      * @param ruleSet Rules applied during the round.
      */
     public void showPostGame(List<Player> playerList, RuleSet ruleSet) {
+        PlayerProfile profile = PlayerProfile.getIfLoaded();
+        if(profile != null) {
+            profile.recordRound(playerList);
+        }
+        if(sessionJournal != null && activeSessionID != -1) {
+            sessionJournal.recordRound(activeSessionID, playerList);
+        }
         activeInterface = new PostGameInterface(new Rectangle(0,0,PANEL_WIDTH, PANEL_HEIGHT),
                                                 playerList, ruleSet, this);
     }
@@ -86,8 +152,10 @@ public class GamePanel extends JPanel implements MouseListener, MouseMotionListe
      * @param ruleSet Definition of how the game is to be played.
      */
     public void startGame(List<LobbyPlayer> playerList, RuleSet ruleSet) {
-        activeInterface = new CurrentGameInterface(new Rectangle(0,0,PANEL_WIDTH,PANEL_HEIGHT),
+        CurrentGameInterface game = new CurrentGameInterface(new Rectangle(0,0,PANEL_WIDTH,PANEL_HEIGHT),
                                                     ruleSet, playerList, this);
+        beginSession(game);
+        activeInterface = game;
     }
 
     /**
@@ -101,6 +169,106 @@ public class GamePanel extends JPanel implements MouseListener, MouseMotionListe
                 playerList, ruleSet, this);
     }
 
+    /**
+     * Starts a new game with the same players and rules as the game that just ended.
+     * The scores are reset and a new session is started.
+     *
+     * @param playerList The players from the game that ended.
+     * @param ruleSet Definition of how the game is to be played.
+     */
+    public void startNewGame(List<Player> playerList, RuleSet ruleSet) {
+        playerList.forEach(Player::resetScore);
+        CurrentGameInterface game = new CurrentGameInterface(new Rectangle(0,0,PANEL_WIDTH,PANEL_HEIGHT),
+                playerList, ruleSet, this);
+        beginSession(game);
+        activeInterface = game;
+    }
+
+    /**
+     * Starts watching the most recently recorded round. Does nothing if there are no recordings.
+     */
+    public void startReplay() {
+        Path logFile = GameReplay.findLatestLog();
+        if(logFile == null) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "There are no recorded games to replay.");
+            return;
+        }
+        try {
+            GameReplay replay = new GameReplay(logFile);
+            activeInterface = new CurrentGameInterface(new Rectangle(0,0,PANEL_WIDTH,PANEL_HEIGHT), replay, this);
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, e.getMessage());
+        }
+    }
+
+    /**
+     * Resumes the game that was saved when the game was last closed during a round.
+     * The save is removed once loaded so that the same round can only be resumed once.
+     * When there is no save, but the session journal has a session that did not end because
+     * the game was closed between rounds or crashed, the next round of that session is started.
+     */
+    public void resumeSavedGame() {
+        SessionJournal.Session session = getLatestUnfinishedSession();
+        Path saveFile = GameSnapshot.getSavePath();
+        if(!Files.exists(saveFile)) {
+            if(session == null) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "There is no saved game to resume.");
+                return;
+            }
+            activeSessionID = session.getSessionID();
+            activeInterface = new CurrentGameInterface(new Rectangle(0,0,PANEL_WIDTH,PANEL_HEIGHT), session, this);
+            return;
+        }
+        try {
+            GameSnapshot snapshot = GameSnapshot.load(saveFile);
+            Files.delete(saveFile);
+            CurrentGameInterface game = new CurrentGameInterface(new Rectangle(0,0,PANEL_WIDTH,PANEL_HEIGHT), snapshot, this);
+            if(session != null) {
+                activeSessionID = session.getSessionID();
+            } else {
+                beginSession(game);
+            }
+            activeInterface = game;
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, e.getMessage());
+        }
+    }
+
+    /**
+     * Ends any sessions left unfinished from earlier runs, because only one game is played at a time,
+     * and starts recording a new session for the game.
+     *
+     * @param game The game starting the session.
+     */
+    private void beginSession(CurrentGameInterface game) {
+        if(sessionJournal == null) return;
+        for(SessionJournal.Session session : sessionJournal.getUnfinishedSessions()) {
+            sessionJournal.endSession(session.getSessionID());
+        }
+        activeSessionID = sessionJournal.beginSession(game.getRuleSet(), game.getAllPlayers());
+    }
+
+    /**
+     * Records that the active session has ended so it will not be offered to be resumed.
+     */
+    private void endActiveSession() {
+        if(sessionJournal != null && activeSessionID != -1) {
+            sessionJournal.endSession(activeSessionID);
+        }
+        activeSessionID = -1;
+    }
+
+    /**
+     * Gets the most recently started session that has not ended.
+     *
+     * @return The session, or null if there is none.
+     */
+    private SessionJournal.Session getLatestUnfinishedSession() {
+        if(sessionJournal == null) return null;
+        List<SessionJournal.Session> sessions = sessionJournal.getUnfinishedSessions();
+        return sessions.isEmpty() ? null : sessions.get(sessions.size() - 1);
+    }
+
     /**
      * Draws the game grid and draws the message at the bottom showing a string representing the game state.
      *
@@ -108,6 +276,11 @@ public class GamePanel extends JPanel implements MouseListener, MouseMotionListe
      */
     public void paint(Graphics g) {
         super.paint(g);
+        updateViewTransform();
+        Graphics2D g2 = (Graphics2D) g;
+        g2.transform(viewTransform);
+        // Includes any HiDPI scaling already applied to the Graphics by the display.
+        CardImageCache.setRenderScale(g2.getTransform().getScaleX());
         if(activeInterface != null) {
             activeInterface.paint(g);
         }
@@ -119,6 +292,39 @@ public class GamePanel extends JPanel implements MouseListener, MouseMotionListe
             g.setFont(new Font("Arial", Font.BOLD, 20));
             g.drawString("DEBUG ON", 10,20);
         }
+        if(GAME_SPEEDS[gameSpeedIndex] != 1) {
+            g.setColor(Color.BLACK);
+            g.setFont(new Font("Arial", Font.BOLD, 20));
+            g.drawString("Speed: " + getGameSpeedLabel(), 10, 45);
+        }
+    }
+
+    /**
+     * Recalculates the transform used to scale the logical game area to fit the panel
+     * keeping the aspect ratio, and centring it. Does nothing if the panel size has not changed.
+     */
+    private void updateViewTransform() {
+        if(getWidth() == viewWidth && getHeight() == viewHeight) return;
+        viewWidth = getWidth();
+        viewHeight = getHeight();
+        viewScale = Math.min(viewWidth / (double)PANEL_WIDTH, viewHeight / (double)PANEL_HEIGHT);
+        if(viewScale <= 0) viewScale = 1;
+        viewOffsetX = (viewWidth - PANEL_WIDTH * viewScale) / 2;
+        viewOffsetY = (viewHeight - PANEL_HEIGHT * viewScale) / 2;
+        viewTransform.setToTranslation(viewOffsetX, viewOffsetY);
+        viewTransform.scale(viewScale, viewScale);
+    }
+
+    /**
+     * Converts a position from the mouse event on the panel into the logical game area.
+     *
+     * @param e Information about the mouse event.
+     * @return The position in the logical game area.
+     */
+    private Position toLogicalPosition(MouseEvent e) {
+        updateViewTransform();
+        return new Position((int)((e.getX() - viewOffsetX) / viewScale),
+                            (int)((e.getY() - viewOffsetY) / viewScale));
     }
 
     /**
@@ -134,12 +340,54 @@ public class GamePanel extends JPanel implements MouseListener, MouseMotionListe
     }
 
     /**
-     * Quits the game immediately.
+     * Quits the game after waiting for any event logs to finish being written.
      */
     public void quitGame() {
+        saveActiveGame();
+        closeActiveEventLog();
+        AIDecisionTelemetry.flush();
+        PlayerProfile.waitForSaves();
+        closeSessionJournal();
+        EventLogWriter.shutdown();
+        GameLogger.shutdown();
         System.exit(0);
     }
 
+    /**
+     * Saves the current game if a round is being played so that it can be resumed from the lobby.
+     */
+    private void saveActiveGame() {
+        if(activeInterface instanceof CurrentGameInterface && !((CurrentGameInterface) activeInterface).isReplay()) {
+            try {
+                GameSnapshot.save((CurrentGameInterface) activeInterface, GameSnapshot.getSavePath());
+            } catch (IOException e) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Failed to save the game. {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Commits anything waiting in the session journal and closes it. The active session is left
+     * unfinished so that it can be resumed.
+     */
+    private void closeSessionJournal() {
+        if(sessionJournal == null) return;
+        try {
+            sessionJournal.close();
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Failed to close session journal. {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the event log of the current game if a game is being played.
+     */
+    private void closeActiveEventLog() {
+        if(activeInterface instanceof CurrentGameInterface) {
+            ((CurrentGameInterface) activeInterface).closeEventLog();
+        }
+    }
+
     /**
      * Handles the key input to have Escape open the pause menu.
      *
@@ -150,6 +398,10 @@ public class GamePanel extends JPanel implements MouseListener, MouseMotionListe
             setPauseState(!pauseWnd.isEnabled());
         } else if(keyCode == KeyEvent.VK_0) {
             DEBUG_MODE = !DEBUG_MODE;
+        } else if(keyCode == KeyEvent.VK_EQUALS || keyCode == KeyEvent.VK_ADD) {
+            gameSpeedIndex = Math.min(gameSpeedIndex+1, GAME_SPEEDS.length-1);
+        } else if(keyCode == KeyEvent.VK_MINUS || keyCode == KeyEvent.VK_SUBTRACT) {
+            gameSpeedIndex = Math.max(gameSpeedIndex-1, 0);
         } else {
             activeInterface.handleInput(keyCode);
         }
@@ -157,15 +409,16 @@ public class GamePanel extends JPanel implements MouseListener, MouseMotionListe
     }
 
     /**
-     * Passes the mouse event on to all the windows.
+     * Passes the mouse event on to the pause window when paused, or otherwise the active interface.
      *
      * @param e Information about the mouse event.
      */
     @Override
     public void mousePressed(MouseEvent e) {
-        Position mousePosition = new Position(e.getX(), e.getY());
-        pauseWnd.handleMousePress(mousePosition, e.getButton() == 1);
-        if(activeInterface != null) {
+        Position mousePosition = toLogicalPosition(e);
+        if(pauseWnd.isEnabled()) {
+            pauseWnd.handleMousePress(mousePosition, e.getButton() == 1);
+        } else if(activeInterface != null) {
             activeInterface.handleMousePress(mousePosition, e.getButton() == 1);
         }
         repaint();
@@ -194,33 +447,68 @@ public class GamePanel extends JPanel implements MouseListener, MouseMotionListe
     }
 
     /**
-     * Passes the mouse event on to all the windows.
+     * Passes the mouse event on to the pause window when paused, or otherwise the active interface.
      *
      * @param e Information about the mouse event.
      */
     @Override
     public void mouseMoved(MouseEvent e) {
-        Position mousePosition = new Position(e.getX(), e.getY());
-        pauseWnd.handleMouseMove(mousePosition);
-        if(activeInterface != null) {
+        Position mousePosition = toLogicalPosition(e);
+        if(pauseWnd.isEnabled()) {
+            pauseWnd.handleMouseMove(mousePosition);
+        } else if(activeInterface != null) {
             activeInterface.handleMouseMove(mousePosition);
         }
         repaint();
     }
 
     /**
-     * Forces the active game to update and forces a repaint.
+     * Forces the active interface to update and forces a repaint. A game is then sped up
+     * by updating it again in fixed steps for each further multiple of the game speed.
      *
      * @param e Information about the event.
      */
     @Override
     public void actionPerformed(ActionEvent e) {
-        if(activeInterface != null) {
-            activeInterface.update(20);
+        if(activeInterface != null && !pauseWnd.isEnabled()) {
+            activeInterface.update(UPDATE_INTERVAL);
+            if(activeInterface instanceof CurrentGameInterface) {
+                updateSpedUpGame((CurrentGameInterface) activeInterface);
+            }
         }
         repaint();
     }
 
+    /**
+     * Runs the extra fixed steps for the game speed so everything that uses deltaTime is
+     * sped up equally, and only the final state is drawn. When the game speed is instant,
+     * steps run until the time budget is used. Steps stop as soon as the round ends or the
+     * local player is being waited on, since nothing more can happen until they act.
+     *
+     * @param game The game being played.
+     */
+    private void updateSpedUpGame(CurrentGameInterface game) {
+        int gameSpeed = GAME_SPEEDS[gameSpeedIndex];
+        long endTime = System.nanoTime() + INSTANT_TIME_BUDGET * 1000000L;
+        for(int i = 1; gameSpeed == 0 || i < gameSpeed; i++) {
+            if(activeInterface != game || !game.isEnabled() || game.isRoundOver() || game.isWaitingForLocalPlayer()
+                    || (gameSpeed == 0 && System.nanoTime() >= endTime)) {
+                return;
+            }
+            game.update(UPDATE_INTERVAL);
+        }
+    }
+
+    /**
+     * Gets a label to show the current game speed.
+     *
+     * @return The game speed as a multiplier such as 4x, or Instant.
+     */
+    private String getGameSpeedLabel() {
+        int gameSpeed = GAME_SPEEDS[gameSpeedIndex];
+        return gameSpeed > 0 ? gameSpeed + "x" : "Instant";
+    }
+
     /**
      * Not set.
      *
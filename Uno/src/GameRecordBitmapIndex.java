@@ -0,0 +1,281 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Uno
+ *
+ * GameRecordBitmapIndex class:
+ * Bitmap indexes over the records in one segment of a GameRecordStore. Each
+ * bitmap has one bit per record in the order the records appear in the
+ * segment. There is a bitmap for each EventType marking the records where it
+ * happened at least once, one for each combination of RuleSet flags that was
+ * used, and one for each AIStrategy marking records with a player using it.
+ * The bitmaps are built when a segment is sealed so queries can narrow down
+ * the records to look at without reading any of them. They are not kept up to
+ * date while records are appended, since appends reserve space concurrently and
+ * a record's position among the others is only known once the segment is full.
+ * The segment still being appended to is instead scanned and indexed in memory
+ * when it is queried, which costs a read of every record in it.
+ *
+ * The file is: INDEX_MAGIC, the record count, the EventType bitmaps in order,
+ * the number of rule flag combinations followed by each (flags byte, bitmap),
+ * then the AIStrategy bitmaps in order. Each bitmap is its number of longs
+ * followed by the longs.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class GameRecordBitmapIndex {
+    /**
+     * Bytes at the start of every bitmap index file.
+     */
+    public static final byte[] INDEX_MAGIC = {'U', 'N', 'O', 'B'};
+    /**
+     * Number of different values RuleSet.getRuleFlags() can return.
+     */
+    private static final int RULE_FLAG_COMBINATIONS = 128;
+
+    /**
+     * Number of records in the segment.
+     */
+    private final int recordCount;
+    /**
+     * Records containing each EventType, indexed by ordinal.
+     */
+    private final BitSet[] eventTypeBitmaps;
+    /**
+     * Records played with each combination of rule flags. Null for combinations that were not used.
+     */
+    private final BitSet[] ruleFlagBitmaps;
+    /**
+     * Records with a player using each AIStrategy, indexed by ordinal.
+     */
+    private final BitSet[] strategyBitmaps;
+
+    /**
+     * Creates empty bitmaps for a segment.
+     *
+     * @param recordCount Number of records in the segment.
+     */
+    private GameRecordBitmapIndex(int recordCount) {
+        this.recordCount = recordCount;
+        eventTypeBitmaps = new BitSet[GameEventLog.EventType.values().length];
+        for(int i = 0; i < eventTypeBitmaps.length; i++) {
+            eventTypeBitmaps[i] = new BitSet(recordCount);
+        }
+        ruleFlagBitmaps = new BitSet[RULE_FLAG_COMBINATIONS];
+        strategyBitmaps = new BitSet[AIPlayer.AIStrategy.values().length];
+        for(int i = 0; i < strategyBitmaps.length; i++) {
+            strategyBitmaps[i] = new BitSet(recordCount);
+        }
+    }
+
+    /**
+     * Builds the bitmaps by reading every record in a segment once.
+     *
+     * @param data The segment data.
+     * @param recordOffsets The offset of each record from GameRecordSegment.scanRecords().
+     * @return The bitmaps for the segment.
+     */
+    public static GameRecordBitmapIndex build(ByteBuffer data, int[] recordOffsets) {
+        GameRecordBitmapIndex index = new GameRecordBitmapIndex(recordOffsets.length);
+        for(int recordIndex = 0; recordIndex < recordOffsets.length; recordIndex++) {
+            int offset = recordOffsets[recordIndex];
+            ByteBuffer record = data.slice(offset + GameRecordSegment.RECORD_HEADER_SIZE, data.getInt(offset));
+            index.addRecord(recordIndex, record);
+        }
+        return index;
+    }
+
+    /**
+     * Reads bitmaps written by write().
+     *
+     * @param file The file to read.
+     * @param recordCount Number of records expected in the segment.
+     * @return The bitmaps, or null if the file is missing or does not match the segment.
+     * @throws IOException When the file exists but could not be read.
+     */
+    public static GameRecordBitmapIndex read(Path file, int recordCount) throws IOException {
+        if(!Files.exists(file)) return null;
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        try {
+            for(byte magicByte : INDEX_MAGIC) {
+                if(buffer.get() != magicByte) return null;
+            }
+            if(buffer.getInt() != recordCount) return null;
+            GameRecordBitmapIndex index = new GameRecordBitmapIndex(recordCount);
+            for(int i = 0; i < index.eventTypeBitmaps.length; i++) {
+                index.eventTypeBitmaps[i] = readBitmap(buffer);
+            }
+            int combinationCount = buffer.getInt();
+            for(int i = 0; i < combinationCount; i++) {
+                index.ruleFlagBitmaps[buffer.get()] = readBitmap(buffer);
+            }
+            for(int i = 0; i < index.strategyBitmaps.length; i++) {
+                index.strategyBitmaps[i] = readBitmap(buffer);
+            }
+            return index;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the bitmaps to a file.
+     *
+     * @param file The file to write. It is replaced in one move once completely written.
+     * @throws IOException When the file could not be written.
+     */
+    public void write(Path file) throws IOException {
+        List<long[]> bitmaps = new ArrayList<>();
+        int size = INDEX_MAGIC.length + 4 + 4 + RULE_FLAG_COMBINATIONS;
+        for(BitSet bitmap : eventTypeBitmaps) {
+            bitmaps.add(bitmap.toLongArray());
+        }
+        for(BitSet bitmap : ruleFlagBitmaps) {
+            if(bitmap != null) bitmaps.add(bitmap.toLongArray());
+        }
+        for(BitSet bitmap : strategyBitmaps) {
+            bitmaps.add(bitmap.toLongArray());
+        }
+        for(long[] words : bitmaps) {
+            size += 4 + words.length * 8;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(INDEX_MAGIC);
+        buffer.putInt(recordCount);
+        int bitmapIndex = 0;
+        for(int i = 0; i < eventTypeBitmaps.length; i++) {
+            writeBitmap(buffer, bitmaps.get(bitmapIndex++));
+        }
+        int combinationCount = 0;
+        for(BitSet bitmap : ruleFlagBitmaps) {
+            if(bitmap != null) combinationCount++;
+        }
+        buffer.putInt(combinationCount);
+        for(int flags = 0; flags < RULE_FLAG_COMBINATIONS; flags++) {
+            if(ruleFlagBitmaps[flags] != null) {
+                buffer.put((byte) flags);
+                writeBitmap(buffer, bitmaps.get(bitmapIndex++));
+            }
+        }
+        for(int i = 0; i < strategyBitmaps.length; i++) {
+            writeBitmap(buffer, bitmaps.get(bitmapIndex++));
+        }
+        buffer.flip();
+        DurableFile.replace(file, buffer);
+    }
+
+    /**
+     * Gets the number of records covered by the bitmaps.
+     *
+     * @return The record count.
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Gets the records where an event happened at least once.
+     *
+     * @param eventType The event to look up.
+     * @return A new bitmap with a bit set for each matching record.
+     */
+    public BitSet getRecordsWithEvent(GameEventLog.EventType eventType) {
+        return (BitSet) eventTypeBitmaps[eventType.ordinal()].clone();
+    }
+
+    /**
+     * Gets the records played with rules matching the required and excluded flags.
+     * Flags in neither mask can have any value.
+     *
+     * @param requiredFlags Flags from RuleSet that must all be set.
+     * @param excludedFlags Flags from RuleSet that must all be clear.
+     * @return A new bitmap with a bit set for each matching record.
+     */
+    public BitSet getRecordsWithRules(int requiredFlags, int excludedFlags) {
+        BitSet result = new BitSet(recordCount);
+        for(int flags = 0; flags < RULE_FLAG_COMBINATIONS; flags++) {
+            if(ruleFlagBitmaps[flags] != null && (flags & requiredFlags) == requiredFlags
+                    && (flags & excludedFlags) == 0) {
+                result.or(ruleFlagBitmaps[flags]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the records with at least one player using a strategy.
+     *
+     * @param strategy The strategy to look up.
+     * @return A new bitmap with a bit set for each matching record.
+     */
+    public BitSet getRecordsWithStrategy(AIPlayer.AIStrategy strategy) {
+        return (BitSet) strategyBitmaps[strategy.ordinal()].clone();
+    }
+
+    /**
+     * Sets the bits for a record in every bitmap that applies to it. Records that can not be decoded are left out of all bitmaps.
+     *
+     * @param recordIndex The position of the record in the segment.
+     * @param record A complete event log.
+     */
+    private void addRecord(int recordIndex, ByteBuffer record) {
+        GameRecordReader reader;
+        try {
+            reader = new GameRecordReader(record);
+        } catch (RuntimeException e) {
+            return;
+        }
+        int ruleFlags = reader.getRuleFlags() & (RULE_FLAG_COMBINATIONS - 1);
+        if(ruleFlagBitmaps[ruleFlags] == null) {
+            ruleFlagBitmaps[ruleFlags] = new BitSet(recordCount);
+        }
+        ruleFlagBitmaps[ruleFlags].set(recordIndex);
+        for(int playerID = 0; playerID < reader.getPlayerCount(); playerID++) {
+            if(reader.getStrategy(playerID) < strategyBitmaps.length) {
+                strategyBitmaps[reader.getStrategy(playerID)].set(recordIndex);
+            }
+        }
+        try {
+            while(reader.nextEvent()) {
+                eventTypeBitmaps[reader.getEventType().ordinal()].set(recordIndex);
+            }
+        } catch (RuntimeException e) {
+            // Events up to the damaged one are still indexed.
+        }
+    }
+
+    /**
+     * Writes a bitmap as its number of longs followed by the longs.
+     *
+     * @param buffer The buffer to write to.
+     * @param words The bitmap from BitSet.toLongArray().
+     */
+    private static void writeBitmap(ByteBuffer buffer, long[] words) {
+        buffer.putInt(words.length);
+        for(long word : words) {
+            buffer.putLong(word);
+        }
+    }
+
+    /**
+     * Reads a bitmap written by writeBitmap().
+     *
+     * @param buffer The buffer to read from.
+     * @return The bitmap.
+     */
+    private static BitSet readBitmap(ByteBuffer buffer) {
+        long[] words = new long[buffer.getInt()];
+        for(int i = 0; i < words.length; i++) {
+            words[i] = buffer.getLong();
+        }
+        return BitSet.valueOf(words);
+    }
+}
@@ -0,0 +1,307 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Uno
+ *
+ * GameRecordQuery class:
+ * Finds recorded rounds in a GameRecordStore with specific properties. The
+ * conditions on events, rules, and AIStrategy are answered by intersecting
+ * each segment's bitmaps, and only the records left are decoded to check any
+ * further condition given with where(). Segments are searched in parallel.
+ *
+ * Example: rounds longer than 200 turns under drawnTillCanPlay.
+ *     new GameRecordQuery().requireRules(RuleSet.DRAWN_TILL_CAN_PLAY_FLAG)
+ *                          .where(GameRecordQuery.longerThan(200)).find(segments);
+ *
+ * The same query from the command line, over a store filled by a GameServer given a record folder:
+ *     java GameRecordQuery recordFolder +drawnTillCanPlay longer:200
+ * Conditions are +rule or -rule for a rule that must be on or off, event:EventType,
+ * strategy:AIStrategy, longer:turns, stack:chainLength, and swapwin.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class GameRecordQuery {
+    /**
+     * Names of the RuleSet flags used on the command line, in order of their bits.
+     */
+    private static final List<String> RULE_NAMES = Arrays.asList("canStack", "drawnTillCanPlay", "twoPlayers",
+            "sevenZero", "noBluffing", "allowJumpIn", "forcedPlay");
+
+    /**
+     * Events that must each happen at least once in the round.
+     */
+    private final List<GameEventLog.EventType> requiredEvents;
+    /**
+     * Strategies that must each be used by at least one player.
+     */
+    private final List<AIPlayer.AIStrategy> requiredStrategies;
+    /**
+     * RuleSet flags that must all be set.
+     */
+    private int requiredRuleFlags;
+    /**
+     * RuleSet flags that must all be clear.
+     */
+    private int excludedRuleFlags;
+    /**
+     * Condition checked on the raw record after the bitmaps have matched. Null to accept all.
+     */
+    private Predicate<ByteBuffer> recordCondition;
+
+    /**
+     * Creates a query that matches every record.
+     */
+    public GameRecordQuery() {
+        requiredEvents = new ArrayList<>();
+        requiredStrategies = new ArrayList<>();
+    }
+
+    /**
+     * Only matches rounds where the event happened at least once.
+     *
+     * @param eventType The event that must have happened.
+     * @return This query so conditions can be chained.
+     */
+    public GameRecordQuery requireEvent(GameEventLog.EventType eventType) {
+        requiredEvents.add(eventType);
+        return this;
+    }
+
+    /**
+     * Only matches rounds with at least one player using the strategy.
+     *
+     * @param strategy The strategy that must have been used.
+     * @return This query so conditions can be chained.
+     */
+    public GameRecordQuery requireStrategy(AIPlayer.AIStrategy strategy) {
+        requiredStrategies.add(strategy);
+        return this;
+    }
+
+    /**
+     * Only matches rounds played with all of the rules set.
+     *
+     * @param ruleFlags Flags from RuleSet such as RuleSet.DRAWN_TILL_CAN_PLAY_FLAG.
+     * @return This query so conditions can be chained.
+     */
+    public GameRecordQuery requireRules(int ruleFlags) {
+        requiredRuleFlags |= ruleFlags;
+        return this;
+    }
+
+    /**
+     * Only matches rounds played with none of the rules set.
+     *
+     * @param ruleFlags Flags from RuleSet such as RuleSet.CAN_STACK_FLAG.
+     * @return This query so conditions can be chained.
+     */
+    public GameRecordQuery excludeRules(int ruleFlags) {
+        excludedRuleFlags |= ruleFlags;
+        return this;
+    }
+
+    /**
+     * Only matches rounds where the condition is true for the raw record. The condition is only
+     * checked for records that already match all the other conditions.
+     *
+     * @param condition Receives a complete event log for a round.
+     * @return This query so conditions can be chained.
+     */
+    public GameRecordQuery where(Predicate<ByteBuffer> condition) {
+        recordCondition = recordCondition == null ? condition : recordCondition.and(condition);
+        return this;
+    }
+
+    /**
+     * Finds every matching record.
+     *
+     * @param segments The segments to search.
+     * @return The matching records as read only slices of the mapped segment files.
+     */
+    public List<ByteBuffer> find(List<GameRecordSegment> segments) {
+        return segments.parallelStream()
+                .flatMap(segment -> findInSegment(segment).stream())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Counts the records in the segments that match the conditions on events, rules, and strategies
+     * without reading any records. This is an upper limit on the number of records find() will return.
+     *
+     * @param segments The segments to search.
+     * @return The number of candidate records.
+     */
+    public long countCandidates(List<GameRecordSegment> segments) {
+        return segments.parallelStream().mapToLong(segment -> getCandidates(segment).cardinality()).sum();
+    }
+
+    /**
+     * Finds the matching records in one segment.
+     *
+     * @param segment The segment to search.
+     * @return The matching records.
+     */
+    private List<ByteBuffer> findInSegment(GameRecordSegment segment) {
+        List<ByteBuffer> result = new ArrayList<>();
+        BitSet candidates = getCandidates(segment);
+        for(int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            ByteBuffer record = segment.getRecord(i);
+            if(recordCondition == null || recordCondition.test(record.duplicate())) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Intersects the bitmaps for every condition on events, rules, and strategies.
+     *
+     * @param segment The segment to search.
+     * @return A bitmap of the records in the segment matching those conditions.
+     */
+    private BitSet getCandidates(GameRecordSegment segment) {
+        GameRecordBitmapIndex index;
+        try {
+            index = segment.getBitmapIndex();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        BitSet candidates = index.getRecordsWithRules(requiredRuleFlags, excludedRuleFlags);
+        for(GameEventLog.EventType eventType : requiredEvents) {
+            if(candidates.isEmpty()) break;
+            candidates.and(index.getRecordsWithEvent(eventType));
+        }
+        for(AIPlayer.AIStrategy strategy : requiredStrategies) {
+            if(candidates.isEmpty()) break;
+            candidates.and(index.getRecordsWithStrategy(strategy));
+        }
+        return candidates;
+    }
+
+    /**
+     * Creates a query for rounds where the winner got the hand they won with from a Swap.
+     * The last Swap of the round must involve the winner, and the winner must place at most
+     * one card after it.
+     *
+     * @return The query.
+     */
+    public static GameRecordQuery swapDecidedWinner() {
+        return new GameRecordQuery().requireRules(RuleSet.SEVEN_ZERO_FLAG)
+                .requireEvent(GameEventLog.EventType.Swap)
+                .where(record -> {
+                    GameRecordReader reader = new GameRecordReader(record);
+                    int swapPlayerA = -1, swapPlayerB = -1;
+                    int[] placedSinceSwap = new int[reader.getPlayerCount()];
+                    while(reader.nextEvent()) {
+                        switch (reader.getEventType()) {
+                            case Swap -> {
+                                swapPlayerA = reader.getPlayerID();
+                                swapPlayerB = reader.getValue();
+                                placedSinceSwap = new int[reader.getPlayerCount()];
+                            }
+                            case Place, JumpIn -> placedSinceSwap[reader.getPlayerID()]++;
+                            case RoundEnd -> {
+                                int winnerID = reader.getPlayerID();
+                                return (winnerID == swapPlayerA || winnerID == swapPlayerB)
+                                        && placedSinceSwap[winnerID] <= 1;
+                            }
+                        }
+                    }
+                    return false;
+                });
+    }
+
+    /**
+     * Creates a condition for rounds with a +2/+4 stacking chain of at least the given length.
+     *
+     * @param minimumLength Number of +2 and +4 cards played in a row before someone had to draw.
+     * @return The condition to pass to where().
+     */
+    public static Predicate<ByteBuffer> hasStackingChain(int minimumLength) {
+        return record -> {
+            GameRecordReader reader = new GameRecordReader(record);
+            StackingChainCounter stackingChain = new StackingChainCounter();
+            while(reader.nextEvent()) {
+                stackingChain.addEvent(reader);
+                if(stackingChain.getChainLength() >= minimumLength) return true;
+            }
+            return false;
+        };
+    }
+
+    /**
+     * Creates a condition for rounds with more than the given number of turns.
+     *
+     * @param turns The number of turns the round must be longer than.
+     * @return The condition to pass to where().
+     */
+    public static Predicate<ByteBuffer> longerThan(int turns) {
+        return record -> {
+            GameRecordReader reader = new GameRecordReader(record);
+            int turnCount = 0;
+            while(reader.nextEvent()) {
+                if(reader.getEventType() == GameEventLog.EventType.NextTurn && ++turnCount > turns) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    /**
+     * Entry point to count the rounds in a GameRecordStore matching the conditions given.
+     *
+     * @param args The folder containing the store's segment files followed by the conditions.
+     * @throws IOException When a segment could not be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error,
+                    "Usage: java GameRecordQuery recordFolder [+rule|-rule|event:type|strategy:name|longer:turns|stack:length|swapwin]...");
+            GameLogger.shutdown();
+            return;
+        }
+        List<String> conditions = Arrays.asList(args).subList(1, args.length);
+        GameRecordQuery query = conditions.contains("swapwin") ? swapDecidedWinner() : new GameRecordQuery();
+        for(String condition : conditions) {
+            String value = condition.substring(condition.indexOf(':') + 1);
+            if(condition.startsWith("+") || condition.startsWith("-")) {
+                int ruleIndex = RULE_NAMES.indexOf(condition.substring(1));
+                if(ruleIndex < 0) throw new IllegalArgumentException("Unknown rule " + condition);
+                if(condition.startsWith("+")) {
+                    query.requireRules(1 << ruleIndex);
+                } else {
+                    query.excludeRules(1 << ruleIndex);
+                }
+            } else if(condition.startsWith("event:")) {
+                query.requireEvent(GameEventLog.EventType.valueOf(value));
+            } else if(condition.startsWith("strategy:")) {
+                query.requireStrategy(AIPlayer.AIStrategy.valueOf(value));
+            } else if(condition.startsWith("longer:")) {
+                query.where(longerThan(Integer.parseInt(value)));
+            } else if(condition.startsWith("stack:")) {
+                query.where(hasStackingChain(Integer.parseInt(value)));
+            } else if(!condition.equals("swapwin")) {
+                throw new IllegalArgumentException("Unknown condition " + condition);
+            }
+        }
+        long startTime = System.nanoTime();
+        List<GameRecordSegment> segments = GameRecordStore.openSegments(Paths.get(args[0]));
+        long candidateCount = query.countCandidates(segments);
+        int matchCount = query.find(segments).size();
+        GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "{} candidates from the bitmaps, {} matching rounds in {} ms",
+                candidateCount, matchCount, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        GameLogger.shutdown();
+    }
+}
@@ -0,0 +1,281 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Uno
+ *
+ * GameRecordReader class:
+ * Decodes a complete event log held in a buffer, such as a record from a
+ * GameRecordStore. The header is read when the reader is created and the
+ * events are then stepped through one at a time with nextEvent(). Player
+ * names and keyframe snapshots are skipped because they are not needed for
+ * working out statistics.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class GameRecordReader {
+    /**
+     * The record being read.
+     */
+    private final ByteBuffer record;
+    /**
+     * Offset where the events end and the keyframe index begins.
+     */
+    private final int eventsEnd;
+    /**
+     * The rules packed by RuleSet.getRuleFlags().
+     */
+    private final int ruleFlags;
+    /**
+     * The score limit the round was played with.
+     */
+    private final RuleSet.ScoreLimitType scoreLimitType;
+    /**
+     * The type of each player.
+     */
+    private final Player.PlayerType[] playerTypes;
+    /**
+     * The AIStrategy ordinal of each player, or GameEventLog.NO_STRATEGY for players who are not AI.
+     */
+    private final int[] strategies;
+    /**
+     * The total score of each player before the round.
+     */
+    private final int[] totalScores;
+    /**
+     * The player who took the first turn.
+     */
+    private final int startingPlayerID;
+    /**
+     * The type of the current event.
+     */
+    private GameEventLog.EventType eventType;
+    /**
+     * Time in ms between the previous event and the current event.
+     */
+    private int deltaTime;
+    /**
+     * The player the current event happened to.
+     */
+    private int playerID;
+    /**
+     * The cardID of the current event when it is a card event.
+     */
+    private int cardID;
+    /**
+     * The faceValueID of the current event when it is a card event.
+     */
+    private int faceValueID;
+    /**
+     * The colourID of the current event when it is a card event.
+     */
+    private int colourID;
+    /**
+     * The value of the current event when it is not a card event.
+     */
+    private int value;
+
+    /**
+     * Reads the header of the record ready for the events to be read.
+     *
+     * @param record A complete event log. The buffer's position is changed while reading.
+     * @throws IllegalArgumentException When the record is not an event log of a supported version.
+     */
+    public GameRecordReader(ByteBuffer record) {
+        this.record = record;
+        eventsEnd = findEventsEnd(record);
+        for(byte magicByte : GameEventLog.MAGIC) {
+            if(record.get() != magicByte) {
+                throw new IllegalArgumentException("Record is not an event log.");
+            }
+        }
+        int version = record.get();
+        if(version < GameEventLog.MIN_FORMAT_VERSION || version > GameEventLog.FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported event log version " + version);
+        }
+        ruleFlags = record.get();
+        scoreLimitType = RuleSet.ScoreLimitType.values()[record.get()];
+        int playerCount = GameEventLog.readVarInt(record);
+        playerTypes = new Player.PlayerType[playerCount];
+        strategies = new int[playerCount];
+        totalScores = new int[playerCount];
+        for(int i = 0; i < playerCount; i++) {
+            playerTypes[i] = Player.PlayerType.values()[record.get()];
+            strategies[i] = record.get() & 0xFF;
+            int nameLength = GameEventLog.readVarInt(record);
+            record.position(record.position() + nameLength);
+            totalScores[i] = GameEventLog.readVarInt(record);
+        }
+        startingPlayerID = GameEventLog.readVarInt(record);
+        record.get(); // Starting direction
+    }
+
+    /**
+     * Reads the next event. Its details are then available from the getters.
+     *
+     * @return True if an event was read, or false when there are no more events.
+     */
+    public boolean nextEvent() {
+        if(record.position() >= eventsEnd) return false;
+        eventType = GameEventLog.EventType.values()[record.get()];
+        deltaTime = GameEventLog.readVarInt(record);
+        playerID = GameEventLog.readVarInt(record);
+        if(eventType.isCardEvent()) {
+            cardID = GameEventLog.readVarInt(record);
+            int faceAndColour = record.get();
+            faceValueID = faceAndColour / 5;
+            colourID = faceAndColour % 5;
+        } else {
+            value = GameEventLog.readVarInt(record);
+            if(eventType == GameEventLog.EventType.Keyframe) {
+                record.position(record.position() + value);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of players in the round.
+     *
+     * @return The player count.
+     */
+    public int getPlayerCount() {
+        return playerTypes.length;
+    }
+
+    /**
+     * Gets the rules the round was played with.
+     *
+     * @return The rules packed by RuleSet.getRuleFlags().
+     */
+    public int getRuleFlags() {
+        return ruleFlags;
+    }
+
+    /**
+     * Gets the score limit the round was played with.
+     *
+     * @return The ScoreLimitType.
+     */
+    public RuleSet.ScoreLimitType getScoreLimitType() {
+        return scoreLimitType;
+    }
+
+    /**
+     * Gets the type of a player.
+     *
+     * @param playerID The player to look up.
+     * @return The type of the player.
+     */
+    public Player.PlayerType getPlayerType(int playerID) {
+        return playerTypes[playerID];
+    }
+
+    /**
+     * Gets the strategy of a player.
+     *
+     * @param playerID The player to look up.
+     * @return The AIStrategy ordinal, or GameEventLog.NO_STRATEGY for players who are not AI.
+     */
+    public int getStrategy(int playerID) {
+        return strategies[playerID];
+    }
+
+    /**
+     * Gets the total score of a player before the round.
+     *
+     * @param playerID The player to look up.
+     * @return The total score from previous rounds.
+     */
+    public int getTotalScore(int playerID) {
+        return totalScores[playerID];
+    }
+
+    /**
+     * Gets the player who took the first turn.
+     *
+     * @return The starting playerID.
+     */
+    public int getStartingPlayerID() {
+        return startingPlayerID;
+    }
+
+    /**
+     * Gets the type of the current event.
+     *
+     * @return The EventType.
+     */
+    public GameEventLog.EventType getEventType() {
+        return eventType;
+    }
+
+    /**
+     * Gets the time between the previous event and the current event.
+     *
+     * @return The time in ms.
+     */
+    public int getDeltaTime() {
+        return deltaTime;
+    }
+
+    /**
+     * Gets the player the current event happened to.
+     *
+     * @return The playerID.
+     */
+    public int getPlayerID() {
+        return playerID;
+    }
+
+    /**
+     * Gets the card of the current event when it is a card event.
+     *
+     * @return The cardID.
+     */
+    public int getCardID() {
+        return cardID;
+    }
+
+    /**
+     * Gets the card of the current event when it is a card event.
+     *
+     * @return The faceValueID.
+     */
+    public int getFaceValueID() {
+        return faceValueID;
+    }
+
+    /**
+     * Gets the card of the current event when it is a card event.
+     *
+     * @return The colourID.
+     */
+    public int getColourID() {
+        return colourID;
+    }
+
+    /**
+     * Gets the value of the current event when it is not a card event.
+     *
+     * @return The value with a meaning that depends on the event type.
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Finds where the events end using the index footer at the end of the record.
+     * Records without a footer are read to the end.
+     *
+     * @param record The record to check.
+     * @return The offset of the end of the events.
+     */
+    private static int findEventsEnd(ByteBuffer record) {
+        int footerStart = record.limit() - GameEventLog.INDEX_MAGIC.length;
+        if(footerStart - 8 < record.position()) return record.limit();
+        for(int i = 0; i < GameEventLog.INDEX_MAGIC.length; i++) {
+            if(record.get(footerStart + i) != GameEventLog.INDEX_MAGIC[i]) return record.limit();
+        }
+        return record.position() + (int) record.getLong(footerStart - 8);
+    }
+}
@@ -0,0 +1,222 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Uno
+ *
+ * GameRecordSegment class:
+ * A read only view of one segment file from a GameRecordStore. The file is
+ * memory mapped and each record is returned as a slice of the mapping so
+ * records are read without being copied. The offset of every record is
+ * loaded from the segment's index file, or found by scanning the segment
+ * when there is no index because the store was not closed properly.
+ * The segment's GameRecordBitmapIndex is loaded the first time it is needed.
+ *
+ * Each record in a segment is: length (4 bytes), CRC32 of the data (4 bytes),
+ * then the data. The unused end of a segment is left as zeroes, as is the region
+ * of any append that reserved space but stopped before writing its length.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class GameRecordSegment {
+    /**
+     * Bytes at the start of every segment index file.
+     */
+    public static final byte[] INDEX_MAGIC = {'U', 'N', 'O', 'X'};
+    /**
+     * Bytes before the data of each record.
+     */
+    public static final int RECORD_HEADER_SIZE = 8;
+
+    /**
+     * The number identifying the segment. Segments are created in increasing order.
+     */
+    private final int segmentID;
+    /**
+     * The whole segment file mapped read only.
+     */
+    private final ByteBuffer data;
+    /**
+     * Offset of the header of each valid record.
+     */
+    private final int[] recordOffsets;
+    /**
+     * The file the bitmap index is loaded from.
+     */
+    private final Path bitmapFile;
+    /**
+     * The bitmap index for the records. Null until it is first needed.
+     */
+    private GameRecordBitmapIndex bitmapIndex;
+
+    /**
+     * Maps the segment and loads or rebuilds the offsets of its records.
+     *
+     * @param segmentID The number identifying the segment.
+     * @param segmentFile The segment file.
+     * @param indexFile The index file for the segment. When it is missing or does not
+     *                  match the segment the records are found by scanning.
+     * @param bitmapFile The bitmap index file for the segment. When it is missing or does
+     *                   not match the segment the bitmaps are built from the records.
+     * @throws IOException When the segment could not be read.
+     */
+    public GameRecordSegment(int segmentID, Path segmentFile, Path indexFile, Path bitmapFile) throws IOException {
+        this.segmentID = segmentID;
+        this.bitmapFile = bitmapFile;
+        try(FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            data = mapped.asReadOnlyBuffer();
+        }
+        int[] offsets = readIndex(indexFile);
+        recordOffsets = offsets != null ? offsets : scanRecords(data);
+    }
+
+    /**
+     * Gets the number identifying the segment.
+     *
+     * @return The segmentID.
+     */
+    public int getSegmentID() {
+        return segmentID;
+    }
+
+    /**
+     * Gets the number of valid records in the segment.
+     *
+     * @return The number of records.
+     */
+    public int getRecordCount() {
+        return recordOffsets.length;
+    }
+
+    /**
+     * Gets the data of a record as a read only slice of the mapped file.
+     *
+     * @param recordIndex The record to get, from 0 to getRecordCount()-1.
+     * @return A buffer containing only the record's data.
+     */
+    public ByteBuffer getRecord(int recordIndex) {
+        int offset = recordOffsets[recordIndex];
+        return data.slice(offset + RECORD_HEADER_SIZE, data.getInt(offset));
+    }
+
+    /**
+     * Gets the bitmap index for the records, loading it or building it the first time.
+     *
+     * @return The bitmaps for this segment.
+     * @throws IOException When the bitmap index file exists but could not be read.
+     */
+    public synchronized GameRecordBitmapIndex getBitmapIndex() throws IOException {
+        if(bitmapIndex == null) {
+            bitmapIndex = GameRecordBitmapIndex.read(bitmapFile, recordOffsets.length);
+            if(bitmapIndex == null) {
+                bitmapIndex = GameRecordBitmapIndex.build(data, recordOffsets);
+            }
+        }
+        return bitmapIndex;
+    }
+
+    /**
+     * Passes every record in the segment in order to the consumer.
+     *
+     * @param consumer Receives each record as a read only slice of the mapped file.
+     */
+    public void forEachRecord(Consumer<ByteBuffer> consumer) {
+        for(int i = 0; i < recordOffsets.length; i++) {
+            consumer.accept(getRecord(i));
+        }
+    }
+
+    /**
+     * Finds every valid record by walking from the start of the segment. Records that fail the
+     * CRC check were not completely written before a crash and are skipped using their length.
+     * Appends reserve their regions concurrently and write the length afterwards, so a crash
+     * can also leave a region with no length in front of complete records. The walk then
+     * searches forward byte by byte for the next header whose CRC matches its data.
+     *
+     * @param data The segment data up to its limit.
+     * @return The offset of the header of each valid record.
+     */
+    public static int[] scanRecords(ByteBuffer data) {
+        int[] offsets = new int[64];
+        int count = 0;
+        CRC32 crc = new CRC32();
+        int offset = 0;
+        boolean isSearching = false;
+        while(offset + RECORD_HEADER_SIZE <= data.limit()) {
+            int length = data.getInt(offset);
+            if(length <= 0 || length > data.limit() - offset - RECORD_HEADER_SIZE) {
+                isSearching = true;
+                offset++;
+                continue;
+            }
+            crc.reset();
+            crc.update(data.slice(offset + RECORD_HEADER_SIZE, length));
+            if((int) crc.getValue() == data.getInt(offset + 4)) {
+                if(count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                offsets[count++] = offset;
+                isSearching = false;
+            } else if(isSearching) {
+                // Only a header found by its CRC can be trusted while searching through a gap.
+                offset++;
+                continue;
+            }
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    /**
+     * Writes the index for a segment: INDEX_MAGIC, the record count, then the offset of each record.
+     * The index marks the segment as sealed, so it is replaced in one move once completely written
+     * and a crash while sealing never leaves a torn index behind.
+     *
+     * @param indexFile The file to write.
+     * @param recordOffsets The offset of the header of each valid record.
+     * @throws IOException When the file could not be written.
+     */
+    public static void writeIndex(Path indexFile, int[] recordOffsets) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_MAGIC.length + 4 + recordOffsets.length * 4);
+        buffer.put(INDEX_MAGIC);
+        buffer.putInt(recordOffsets.length);
+        for(int offset : recordOffsets) {
+            buffer.putInt(offset);
+        }
+        buffer.flip();
+        DurableFile.replace(indexFile, buffer);
+    }
+
+    /**
+     * Reads the offsets written by writeIndex().
+     *
+     * @param indexFile The file to read.
+     * @return The offsets, or null if the file is missing or incomplete.
+     * @throws IOException When the file exists but could not be read.
+     */
+    private static int[] readIndex(Path indexFile) throws IOException {
+        if(!Files.exists(indexFile)) return null;
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+        if(buffer.remaining() < INDEX_MAGIC.length + 4) return null;
+        for(byte magicByte : INDEX_MAGIC) {
+            if(buffer.get() != magicByte) return null;
+        }
+        int count = buffer.getInt();
+        if(count < 0 || buffer.remaining() != count * 4) return null;
+        int[] offsets = new int[count];
+        for(int i = 0; i < count; i++) {
+            offsets[i] = buffer.getInt();
+        }
+        return offsets;
+    }
+}
@@ -0,0 +1,169 @@
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Uno
+ *
+ * GameRecordSpliterator class:
+ * Streams the records of a list of segments so they can be processed in
+ * parallel. Splitting first divides the list of segments in half so that
+ * each thread works through whole segments, and once a single segment is
+ * left it divides the segment's records in half. Records are passed on as
+ * read only slices of the mapped segment files.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class GameRecordSpliterator implements Spliterator<ByteBuffer> {
+    /**
+     * Smallest number of records in a segment that will still be split.
+     */
+    private static final int MIN_SPLIT_RECORDS = 1024;
+
+    /**
+     * The segments to read.
+     */
+    private final List<GameRecordSegment> segments;
+    /**
+     * Index of the segment currently being read.
+     */
+    private int segmentIndex;
+    /**
+     * Index after the last segment to read.
+     */
+    private final int segmentEnd;
+    /**
+     * Index of the next record to read in the current segment.
+     */
+    private int recordIndex;
+    /**
+     * Index after the last record to read in the final segment.
+     */
+    private int lastSegmentRecordEnd;
+
+    /**
+     * Creates a spliterator over every record in the segments.
+     *
+     * @param segments The segments to read in order.
+     */
+    public GameRecordSpliterator(List<GameRecordSegment> segments) {
+        this(segments, 0, segments.size(), 0,
+                segments.isEmpty() ? 0 : segments.get(segments.size() - 1).getRecordCount());
+    }
+
+    /**
+     * Creates a spliterator over part of the segments.
+     *
+     * @param segments The segments to read.
+     * @param segmentIndex Index of the first segment to read.
+     * @param segmentEnd Index after the last segment to read.
+     * @param recordIndex Index of the first record to read in the first segment.
+     * @param lastSegmentRecordEnd Index after the last record to read in the last segment.
+     */
+    private GameRecordSpliterator(List<GameRecordSegment> segments, int segmentIndex, int segmentEnd,
+                                  int recordIndex, int lastSegmentRecordEnd) {
+        this.segments = segments;
+        this.segmentIndex = segmentIndex;
+        this.segmentEnd = segmentEnd;
+        this.recordIndex = recordIndex;
+        this.lastSegmentRecordEnd = lastSegmentRecordEnd;
+    }
+
+    /**
+     * Passes the next record to the action.
+     *
+     * @param action Receives the record.
+     * @return True if there was a record, or false when all have been read.
+     */
+    @Override
+    public boolean tryAdvance(Consumer<? super ByteBuffer> action) {
+        while(segmentIndex < segmentEnd) {
+            if(recordIndex < getRecordEnd(segmentIndex)) {
+                action.accept(segments.get(segmentIndex).getRecord(recordIndex++));
+                return true;
+            }
+            segmentIndex++;
+            recordIndex = 0;
+        }
+        return false;
+    }
+
+    /**
+     * Passes every remaining record to the action.
+     *
+     * @param action Receives each record.
+     */
+    @Override
+    public void forEachRemaining(Consumer<? super ByteBuffer> action) {
+        for(; segmentIndex < segmentEnd; segmentIndex++, recordIndex = 0) {
+            GameRecordSegment segment = segments.get(segmentIndex);
+            int recordEnd = getRecordEnd(segmentIndex);
+            for(; recordIndex < recordEnd; recordIndex++) {
+                action.accept(segment.getRecord(recordIndex));
+            }
+        }
+    }
+
+    /**
+     * Splits off the first half of the remaining segments, or the first half of the
+     * records when only one segment is left.
+     *
+     * @return A spliterator over the part split off, or null if the rest is too small to split.
+     */
+    @Override
+    public Spliterator<ByteBuffer> trySplit() {
+        int remainingSegments = segmentEnd - segmentIndex;
+        if(remainingSegments > 1) {
+            int splitIndex = segmentIndex + remainingSegments / 2;
+            GameRecordSpliterator firstHalf = new GameRecordSpliterator(segments, segmentIndex, splitIndex,
+                    recordIndex, segments.get(splitIndex - 1).getRecordCount());
+            segmentIndex = splitIndex;
+            recordIndex = 0;
+            return firstHalf;
+        }
+        if(remainingSegments == 1 && lastSegmentRecordEnd - recordIndex >= MIN_SPLIT_RECORDS * 2) {
+            int splitRecord = recordIndex + (lastSegmentRecordEnd - recordIndex) / 2;
+            GameRecordSpliterator firstHalf = new GameRecordSpliterator(segments, segmentIndex, segmentEnd,
+                    recordIndex, splitRecord);
+            recordIndex = splitRecord;
+            return firstHalf;
+        }
+        return null;
+    }
+
+    /**
+     * Counts the records left to read.
+     *
+     * @return The exact number of remaining records.
+     */
+    @Override
+    public long estimateSize() {
+        long size = 0;
+        for(int i = segmentIndex; i < segmentEnd; i++) {
+            size += getRecordEnd(i);
+        }
+        return size - recordIndex;
+    }
+
+    /**
+     * The records are ordered, not null, and the exact size is known for every split.
+     *
+     * @return The characteristics of the spliterator.
+     */
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE | SIZED | SUBSIZED;
+    }
+
+    /**
+     * Gets the index after the last record to read in a segment.
+     *
+     * @param index Index of the segment.
+     * @return The record count, or lastSegmentRecordEnd for the final segment.
+     */
+    private int getRecordEnd(int index) {
+        return index == segmentEnd - 1 ? lastSegmentRecordEnd : segments.get(index).getRecordCount();
+    }
+}
@@ -0,0 +1,353 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Uno
+ *
+ * GameRecordStore class:
+ * An append only store for the event records of many games, used by simulations
+ * where a file per game would be far too many files. Records are appended to
+ * fixed size segment files that are memory mapped. Any number of threads can
+ * append at once: each append reserves its region of the current segment with a
+ * single atomic add and then copies its data in without any locking. When a
+ * segment is full a new one is started and the full one is sealed by writing
+ * an index of its record offsets.
+ *
+ * The length of a record is written as soon as its region is reserved and its
+ * CRC is written last, so after a crash any record that was not completely
+ * written fails its CRC check and is skipped. A region reserved just before a
+ * crash may not have its length yet, and the records after it are found again
+ * by searching for the next header with a matching CRC. Segments without an
+ * index are scanned to recover their valid records when the store is opened.
+ *
+ * Sealing a segment also builds its GameRecordBitmapIndex so that queries can find
+ * records by event type, rules, and AIStrategy without reading them.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class GameRecordStore implements AutoCloseable {
+    /**
+     * Uno
+     *
+     * Segment class:
+     * A segment file that is being appended to.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    private static class Segment {
+        /**
+         * The number identifying the segment.
+         */
+        private final int segmentID;
+        /**
+         * The open segment file.
+         */
+        private final FileChannel channel;
+        /**
+         * The whole segment file mapped for writing.
+         */
+        private final MappedByteBuffer buffer;
+        /**
+         * Number of bytes reserved by appends. Can go past the end of the segment when it is full.
+         */
+        private final AtomicLong reservedBytes;
+        /**
+         * Number of appends currently writing to the segment.
+         */
+        private final AtomicInteger activeWriters;
+
+        /**
+         * Creates the segment file at its full size and maps it.
+         *
+         * @param segmentID The number identifying the segment.
+         * @param file The segment file to create.
+         * @param segmentSize Size of the segment file in bytes.
+         * @throws IOException When the file could not be created.
+         */
+        private Segment(int segmentID, Path file, int segmentSize) throws IOException {
+            this.segmentID = segmentID;
+            channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            reservedBytes = new AtomicLong(0);
+            activeWriters = new AtomicInteger(0);
+        }
+    }
+
+    /**
+     * Size used for each segment file when no size is specified.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    /**
+     * File extension for segment files.
+     */
+    public static final String SEGMENT_EXTENSION = ".unoseg";
+    /**
+     * File extension for segment index files.
+     */
+    public static final String INDEX_EXTENSION = ".unoidx";
+    /**
+     * File extension for segment bitmap index files.
+     */
+    public static final String BITMAP_EXTENSION = ".unobmp";
+
+    /**
+     * Folder containing the segment files.
+     */
+    private final Path folder;
+    /**
+     * Size of each segment file in bytes.
+     */
+    private final int segmentSize;
+    /**
+     * The segment currently being appended to.
+     */
+    private volatile Segment activeSegment;
+    /**
+     * When true, no more records can be appended.
+     */
+    private volatile boolean isClosed;
+
+    /**
+     * Opens the store with the default segment size.
+     *
+     * @param folder Folder containing the segment files. Created if it does not exist.
+     * @throws IOException When the folder or a new segment could not be created.
+     */
+    public GameRecordStore(Path folder) throws IOException {
+        this(folder, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the store, recovers any segments that were not sealed, and starts a new segment
+     * for appending after the existing ones.
+     *
+     * @param folder Folder containing the segment files. Created if it does not exist.
+     * @param segmentSize Size of each new segment file in bytes.
+     * @throws IOException When the folder or a new segment could not be created.
+     */
+    public GameRecordStore(Path folder, int segmentSize) throws IOException {
+        this.folder = folder;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(folder);
+        int lastSegmentID = -1;
+        for(int segmentID : findSegmentIDs(folder)) {
+            if(!Files.exists(getIndexFile(folder, segmentID)) || !Files.exists(getBitmapFile(folder, segmentID))) {
+                recoverSegment(segmentID);
+            }
+            lastSegmentID = segmentID;
+        }
+        activeSegment = createSegment(lastSegmentID + 1);
+        isClosed = false;
+    }
+
+    /**
+     * Appends a record. Safe to call from any number of threads at once.
+     *
+     * @param record The data to append from its position to its limit. The position is not changed.
+     * @throws IOException When a new segment was needed and could not be created.
+     */
+    public void append(ByteBuffer record) throws IOException {
+        int length = record.remaining();
+        int size = GameRecordSegment.RECORD_HEADER_SIZE + length;
+        if(length == 0 || size > segmentSize) {
+            throw new IllegalArgumentException("Record of " + length + " bytes can not be stored in a segment.");
+        }
+        while(true) {
+            if(isClosed) {
+                throw new IOException("The record store is closed.");
+            }
+            Segment segment = activeSegment;
+            segment.activeWriters.incrementAndGet();
+            long offset = segment.reservedBytes.getAndAdd(size);
+            if(offset <= segmentSize - size) {
+                writeRecord(segment.buffer, (int) offset, record);
+                segment.activeWriters.decrementAndGet();
+                return;
+            }
+            segment.activeWriters.decrementAndGet();
+            rollSegment(segment);
+        }
+    }
+
+    /**
+     * Seals the active segment so every record appended so far can be read. No more records can be appended.
+     *
+     * @throws IOException When the index could not be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if(isClosed) return;
+        isClosed = true;
+        sealSegment(activeSegment);
+    }
+
+    /**
+     * Opens every segment in the folder for reading in the order they were written.
+     * The segment still being appended to has no indexes yet, so its records are found by
+     * scanning it and its bitmaps are built in memory the first time it is queried. Records
+     * appended after it was opened are not seen.
+     *
+     * @param folder Folder containing the segment files.
+     * @return A read only view of each segment.
+     * @throws IOException When a segment could not be read.
+     */
+    public static List<GameRecordSegment> openSegments(Path folder) throws IOException {
+        List<GameRecordSegment> segments = new ArrayList<>();
+        for(int segmentID : findSegmentIDs(folder)) {
+            segments.add(new GameRecordSegment(segmentID, getSegmentFile(folder, segmentID),
+                    getIndexFile(folder, segmentID), getBitmapFile(folder, segmentID)));
+        }
+        return segments;
+    }
+
+    /**
+     * Copies the record into its reserved region. The length is written first, and the CRC is
+     * written last to show the record is complete.
+     *
+     * @param buffer The segment to write to.
+     * @param offset The start of the reserved region.
+     * @param record The data to write.
+     */
+    private static void writeRecord(MappedByteBuffer buffer, int offset, ByteBuffer record) {
+        int length = record.remaining();
+        buffer.putInt(offset, length);
+        ByteBuffer region = buffer.duplicate();
+        region.position(offset + GameRecordSegment.RECORD_HEADER_SIZE);
+        region.put(record.duplicate());
+        CRC32 crc = new CRC32();
+        crc.update(record.duplicate());
+        buffer.putInt(offset + 4, (int) crc.getValue());
+    }
+
+    /**
+     * Replaces the full segment with a new one unless another thread already has, and then
+     * seals the full segment.
+     *
+     * @param fullSegment The segment that did not have space for a record.
+     * @throws IOException When the new segment could not be created or the old one could not be sealed.
+     */
+    private synchronized void rollSegment(Segment fullSegment) throws IOException {
+        if(activeSegment != fullSegment || isClosed) return;
+        activeSegment = createSegment(fullSegment.segmentID + 1);
+        sealSegment(fullSegment);
+    }
+
+    /**
+     * Waits for appends still writing to the segment, then writes its index and closes it.
+     *
+     * @param segment The segment to seal.
+     * @throws IOException When the index could not be written.
+     */
+    private void sealSegment(Segment segment) throws IOException {
+        // Stops any more regions being reserved in the segment.
+        long usedBytes = Math.min(segmentSize, segment.reservedBytes.getAndAdd(segmentSize + 1));
+        while(segment.activeWriters.get() != 0) {
+            Thread.onSpinWait();
+        }
+        segment.buffer.force();
+        // Only the reserved part is scanned so the empty end of the segment is not searched.
+        writeIndexes(segment.segmentID, segment.buffer.duplicate().limit((int) usedBytes));
+        segment.channel.close();
+    }
+
+    /**
+     * Scans a segment that was not sealed for its valid records and writes its indexes.
+     *
+     * @param segmentID The segment to recover.
+     * @throws IOException When the segment could not be read or the indexes could not be written.
+     */
+    private void recoverSegment(int segmentID) throws IOException {
+        try(FileChannel channel = FileChannel.open(getSegmentFile(folder, segmentID), StandardOpenOption.READ)) {
+            writeIndexes(segmentID, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes the bitmap index and then the offset index for a segment. The offset index is
+     * written last because it marks the segment as sealed.
+     *
+     * @param segmentID The segment being sealed.
+     * @param data The segment data.
+     * @throws IOException When an index could not be written.
+     */
+    private void writeIndexes(int segmentID, ByteBuffer data) throws IOException {
+        int[] recordOffsets = GameRecordSegment.scanRecords(data);
+        GameRecordBitmapIndex.build(data, recordOffsets).write(getBitmapFile(folder, segmentID));
+        GameRecordSegment.writeIndex(getIndexFile(folder, segmentID), recordOffsets);
+    }
+
+    /**
+     * Creates a new segment file.
+     *
+     * @param segmentID The number identifying the segment.
+     * @return The segment ready for appending.
+     * @throws IOException When the file could not be created.
+     */
+    private Segment createSegment(int segmentID) throws IOException {
+        return new Segment(segmentID, getSegmentFile(folder, segmentID), segmentSize);
+    }
+
+    /**
+     * Finds the number of every segment in the folder.
+     *
+     * @param folder Folder containing the segment files.
+     * @return The segment numbers in increasing order.
+     * @throws IOException When the folder could not be listed.
+     */
+    private static int[] findSegmentIDs(Path folder) throws IOException {
+        if(!Files.isDirectory(folder)) return new int[0];
+        try(Stream<Path> files = Files.list(folder)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith("segment-") && name.endsWith(SEGMENT_EXTENSION))
+                    .mapToInt(name -> Integer.parseInt(name.substring(8, name.length() - SEGMENT_EXTENSION.length())))
+                    .sorted().toArray();
+        }
+    }
+
+    /**
+     * Gets the path of a segment file.
+     *
+     * @param folder Folder containing the segment files.
+     * @param segmentID The number identifying the segment.
+     * @return The path to the segment file.
+     */
+    private static Path getSegmentFile(Path folder, int segmentID) {
+        return folder.resolve(String.format("segment-%08d%s", segmentID, SEGMENT_EXTENSION));
+    }
+
+    /**
+     * Gets the path of a segment's index file.
+     *
+     * @param folder Folder containing the segment files.
+     * @param segmentID The number identifying the segment.
+     * @return The path to the index file.
+     */
+    private static Path getIndexFile(Path folder, int segmentID) {
+        return folder.resolve(String.format("segment-%08d%s", segmentID, INDEX_EXTENSION));
+    }
+
+    /**
+     * Gets the path of a segment's bitmap index file.
+     *
+     * @param folder Folder containing the segment files.
+     * @param segmentID The number identifying the segment.
+     * @return The path to the bitmap index file.
+     */
+    private static Path getBitmapFile(Path folder, int segmentID) {
+        return folder.resolve(String.format("segment-%08d%s", segmentID, BITMAP_EXTENSION));
+    }
+}
@@ -0,0 +1,802 @@
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Uno
+ *
+ * GameReplay class:
+ * Plays back a round recorded by GameEventLog into a CurrentGameInterface. The log is
+ * read a block at a time as events are needed, and each event is applied to the game
+ * in place of the decisions the players would normally make. Playback can be paused,
+ * stepped a turn at a time, and moved to any turn using the keyframes in the log.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class GameReplay {
+    /**
+     * Size of the buffer used to read from the log.
+     */
+    private static final int READ_BUFFER_SIZE = 128 * 1024;
+    /**
+     * The longest time in ms waited between two events so long periods of thinking are skipped.
+     */
+    private static final int MAX_EVENT_DELAY = 1500;
+    /**
+     * Number of turns moved by the seek forward and back controls.
+     */
+    private static final int SEEK_TURNS = 10;
+
+    /**
+     * The log being read.
+     */
+    private final FileChannel channel;
+    /**
+     * Buffer holding the part of the log currently being read.
+     */
+    private ByteBuffer readBuffer;
+    /**
+     * Offset in the file of the byte after the last byte in the readBuffer.
+     */
+    private long bufferEndOffset;
+    /**
+     * Offset in the file of the first event after the header.
+     */
+    private long eventsStartOffset;
+    /**
+     * Offset in the file after the last event.
+     */
+    private long eventsEndOffset;
+
+    /**
+     * Players recorded in the header ready to be created.
+     */
+    private final List<LobbyPlayer> lobbyPlayers;
+    /**
+     * The rules recorded in the header.
+     */
+    private final RuleSet ruleSet;
+    /**
+     * The player who took the first turn.
+     */
+    private int startingPlayerID;
+    /**
+     * The direction of play at the start of the round.
+     */
+    private boolean startingIsIncreasing;
+    /**
+     * The turn each keyframe was written for in order.
+     */
+    private int[] keyframeTurns;
+    /**
+     * The offset in the file of each keyframe.
+     */
+    private long[] keyframeOffsets;
+    /**
+     * Number of keyframes in the log.
+     */
+    private int keyframeCount;
+    /**
+     * Number of turns in the whole round.
+     */
+    private int totalTurns;
+
+    /**
+     * Every card that has appeared in the replay so the same card objects move between hands and the pile.
+     */
+    private final Map<Integer, Card> cards;
+    /**
+     * The game being driven by the replay.
+     */
+    private CurrentGameInterface game;
+    /**
+     * The most recent turn that has been started.
+     */
+    private int currentTurn;
+    /**
+     * Time in ms since the last event was applied.
+     */
+    private int timeSinceLastEvent;
+    /**
+     * When true events are not applied during update().
+     */
+    private boolean isPaused;
+    /**
+     * When true the round end has been reached.
+     */
+    private boolean isFinished;
+    /**
+     * When true overlays are not shown because many events are being applied at once.
+     */
+    private boolean isSeeking;
+    /**
+     * True when the keyframes store the UNO state of each player. Version 2 logs did not.
+     */
+    private boolean hasKeyframeUNOStates;
+    /**
+     * Message describing the result once the round end has been reached.
+     */
+    private String resultMessage;
+
+    /**
+     * When true the next event has been read and is waiting to be applied.
+     */
+    private boolean hasNextEvent;
+    /**
+     * Type of the next event.
+     */
+    private GameEventLog.EventType nextType;
+    /**
+     * Time in ms between the previous event and the next event when it was recorded.
+     */
+    private int nextDelay;
+    /**
+     * The player the next event happened to.
+     */
+    private int nextPlayerID;
+    /**
+     * Offset in the file of the start of the next event.
+     */
+    private long nextEventOffset;
+
+    /**
+     * Opens the recorded round and reads the header and the keyframe index. If the log was
+     * not closed properly the keyframes are found by reading through the events once.
+     *
+     * @param logFile The recording to play back.
+     * @throws IOException When the file could not be read or is not a recording.
+     */
+    public GameReplay(Path logFile) throws IOException {
+        channel = FileChannel.open(logFile, StandardOpenOption.READ);
+        readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        cards = new HashMap<>();
+        lobbyPlayers = new ArrayList<>();
+        ruleSet = new RuleSet();
+        keyframeTurns = new int[16];
+        keyframeOffsets = new long[16];
+        try {
+            eventsEndOffset = channel.size();
+            readIndex();
+            seekToOffset(0);
+            readHeader();
+            eventsStartOffset = getReadOffset();
+            if(keyframeCount == 0 && totalTurns == 0) {
+                scanForKeyframes();
+            }
+        } catch (IOException | BufferUnderflowException e) {
+            channel.close();
+            throw new IOException("Failed to read the recording " + logFile, e);
+        }
+    }
+
+    /**
+     * Finds the most recently modified recording in the GameEventLog.LOG_FOLDER.
+     *
+     * @return The path to the newest recording, or null if there are none.
+     */
+    public static Path findLatestLog() {
+        Path folder = Paths.get(GameEventLog.LOG_FOLDER);
+        if(!Files.isDirectory(folder)) return null;
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.filter(file -> file.toString().endsWith(GameEventLog.LOG_EXTENSION))
+                    .max(Comparator.comparingLong(file -> file.toFile().lastModified()))
+                    .orElse(null);
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Failed to search for recordings. {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Starts playing from the beginning into the game.
+     *
+     * @param game The game to apply the events to.
+     */
+    public void start(CurrentGameInterface game) {
+        this.game = game;
+        seekToTurn(0);
+    }
+
+    /**
+     * Applies any events that are due based on the time they were recorded.
+     *
+     * @param deltaTime Time since last update.
+     */
+    public void update(int deltaTime) {
+        if(isPaused || !hasNextEvent) return;
+        timeSinceLastEvent += deltaTime;
+        while(!isPaused && hasNextEvent && timeSinceLastEvent >= getNextEventDelay()) {
+            timeSinceLastEvent -= getNextEventDelay();
+            applyNextEvent();
+        }
+    }
+
+    /**
+     * Draws the progress of the replay and the controls.
+     *
+     * @param g Reference to the Graphics object for rendering.
+     */
+    public void paint(Graphics g) {
+        g.setColor(Color.BLACK);
+        g.setFont(new Font("Arial", Font.BOLD, 20));
+        String status = "Replay Turn " + currentTurn + "/" + totalTurns;
+        if(isFinished) {
+            status += " - " + resultMessage;
+        } else if(isPaused) {
+            status += " (Paused)";
+        }
+        g.drawString(status, 10, GamePanel.PANEL_HEIGHT - 40);
+        g.setFont(new Font("Arial", Font.PLAIN, 14));
+        g.drawString("Space: Pause  Left/Right: Step Turn  Up/Down: " + SEEK_TURNS + " Turns  Home/End: Start/End",
+                10, GamePanel.PANEL_HEIGHT - 15);
+    }
+
+    /**
+     * Handles the playback controls.
+     *
+     * @param keyCode The key that was pressed.
+     * @return True if the key was used by the replay.
+     */
+    public boolean handleInput(int keyCode) {
+        switch (keyCode) {
+            case KeyEvent.VK_SPACE -> isPaused = !isPaused;
+            case KeyEvent.VK_RIGHT -> stepTurn();
+            case KeyEvent.VK_LEFT -> seekToTurn(currentTurn - 1);
+            case KeyEvent.VK_UP -> seekToTurn(currentTurn + SEEK_TURNS);
+            case KeyEvent.VK_DOWN -> seekToTurn(currentTurn - SEEK_TURNS);
+            case KeyEvent.VK_HOME -> seekToTurn(0);
+            case KeyEvent.VK_END -> seekToEnd();
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies all events up to the start of the next turn and then pauses.
+     */
+    public void stepTurn() {
+        isPaused = true;
+        int targetTurn = currentTurn + 1;
+        while(hasNextEvent && currentTurn < targetTurn) {
+            applyNextEvent();
+        }
+        timeSinceLastEvent = 0;
+    }
+
+    /**
+     * Moves the replay to the start of a turn. Turn 0 is after the hands are dealt. The nearest keyframe at or before the turn is
+     * restored and then the remaining events are applied without animation. If the turn is
+     * ahead of the current turn with no keyframe between them it continues from the current turn.
+     *
+     * @param turn The turn to move to.
+     */
+    public void seekToTurn(int turn) {
+        turn = Math.max(0, Math.min(turn, totalTurns));
+        int keyframeIndex = findKeyframe(turn);
+        int keyframeTurn = keyframeIndex == -1 ? 0 : keyframeTurns[keyframeIndex];
+        boolean continueFromCurrent = turn >= currentTurn && keyframeTurn <= currentTurn && game.getRecentCards().size() > 0;
+
+        isSeeking = true;
+        game.getCardAnimator().setEnabled(false);
+        try {
+            if(!continueFromCurrent) {
+                if (keyframeIndex == -1) {
+                    resetToStart();
+                } else {
+                    seekToOffset(keyframeOffsets[keyframeIndex]);
+                    readNextEvent();
+                    applyNextEvent();
+                }
+            }
+            while (hasNextEvent && currentTurn < turn) {
+                applyNextEvent();
+            }
+        } finally {
+            game.getCardAnimator().setEnabled(true);
+            isSeeking = false;
+        }
+        timeSinceLastEvent = 0;
+    }
+
+    /**
+     * Moves to the end of the round, applying all remaining events.
+     */
+    public void seekToEnd() {
+        seekToTurn(totalTurns);
+        isSeeking = true;
+        game.getCardAnimator().setEnabled(false);
+        while(hasNextEvent) {
+            applyNextEvent();
+        }
+        game.getCardAnimator().setEnabled(true);
+        isSeeking = false;
+    }
+
+    /**
+     * Closes the recording.
+     */
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Failed to close recording. {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the players recorded in the log to create the game with.
+     *
+     * @return Players in the order of their playerIDs.
+     */
+    public List<LobbyPlayer> getLobbyPlayers() {
+        return lobbyPlayers;
+    }
+
+    /**
+     * Gets the rules the round was recorded with.
+     *
+     * @return The recorded rules.
+     */
+    public RuleSet getRuleSet() {
+        return ruleSet;
+    }
+
+    /**
+     * Gets the player who took the first turn.
+     *
+     * @return The playerID of the starting player.
+     */
+    public int getStartingPlayerID() {
+        return startingPlayerID;
+    }
+
+    /**
+     * Gets the direction of play at the start of the round.
+     *
+     * @return True if play started clockwise.
+     */
+    public boolean getStartingIsIncreasing() {
+        return startingIsIncreasing;
+    }
+
+    /**
+     * Empties all hands and the pile and moves back to the first event after the header.
+     */
+    private void resetToStart() {
+        for(Player player : game.getAllPlayers()) {
+            player.emptyHand();
+            player.setUnoState(Player.UNOState.Safe);
+        }
+        game.getRecentCards().clear();
+        game.setCurrentPlayer(startingPlayerID);
+        setIsIncreasing(startingIsIncreasing);
+        currentTurn = 0;
+        isFinished = false;
+        seekToOffset(eventsStartOffset);
+        readNextEvent();
+        // The dealt hands and first card, including its colour if it is a wild, make up the starting state.
+        while(hasNextEvent && (nextType == GameEventLog.EventType.Deal || nextType == GameEventLog.EventType.FirstCard
+                || (nextType == GameEventLog.EventType.ColourChoice && game.getRecentCards().size() == 1))) {
+            applyNextEvent();
+        }
+    }
+
+    /**
+     * Applies the next event to the game and reads the event after it.
+     */
+    private void applyNextEvent() {
+        Player player = nextPlayerID >= 0 && nextPlayerID < game.getAllPlayers().size()
+                ? game.getPlayerByID(nextPlayerID) : game.getCurrentPlayer();
+        if(nextType.isCardEvent()) {
+            Card card = readCard(readBuffer);
+            switch (nextType) {
+                case Deal, Draw -> {
+                    card.position.setPosition(game.getDeck().position.x, game.getDeck().position.y);
+                    player.addCardToHand(card);
+                }
+                case FirstCard -> game.placeCard(card);
+                case Place -> {
+                    Card cardInHand = player.getCardByID(card.getCardID());
+                    if(cardInHand != null) {
+                        player.removeCard(cardInHand);
+                    }
+                    game.placeCard(card);
+                }
+                case JumpIn -> {
+                    game.setCurrentPlayer(player.getPlayerID());
+                    showOverlay(OverlayManager.GeneralOverlayType.JumpIn, player.getPlayerID());
+                }
+            }
+        } else {
+            int value = GameEventLog.readVarInt(readBuffer);
+            switch (nextType) {
+                case ColourChoice -> game.setTopCardColour(value);
+                case ChallengeResult -> showOverlay(value == 1 ? OverlayManager.GeneralOverlayType.ChallengeSuccess
+                        : OverlayManager.GeneralOverlayType.ChallengeFailed, player.getPlayerID());
+                case Swap -> swapHands(player, game.getPlayerByID(value));
+                case PassAll -> passAllHands(value == 1);
+                case UNOCalled -> {
+                    player.setUnoState(Player.UNOState.Called);
+                    showOverlay(OverlayManager.GeneralOverlayType.UNOCalled, player.getPlayerID());
+                }
+                case AntiUnoCalled -> {
+                    player.setUnoState(Player.UNOState.Safe);
+                    showOverlay(OverlayManager.GeneralOverlayType.AntiUnoCalled, player.getPlayerID());
+                }
+                case NextTurn -> {
+                    // The UNO states change as the previous turn ends, the same as when the round was played.
+                    game.updateUNOState();
+                    game.setCurrentPlayer(player.getPlayerID());
+                    currentTurn = value;
+                }
+                case Reverse -> setIsIncreasing(value == 1);
+                case RoundEnd -> {
+                    game.revealHands();
+                    isFinished = true;
+                    resultMessage = player.getPlayerName() + " won and scored " + value;
+                }
+                case Keyframe -> applyKeyframe(player.getPlayerID(), value);
+                // Stacking has no visible effect of its own, the cards being played are separate events.
+                default -> {}
+            }
+        }
+        readNextEvent();
+    }
+
+    /**
+     * Restores the state of the game from a keyframe, or skips over it when already at the same state.
+     *
+     * @param playerID The player whose turn it was.
+     * @param length Number of bytes in the snapshot.
+     */
+    private void applyKeyframe(int playerID, int length) {
+        if(!isSeeking) {
+            readBuffer.position(readBuffer.position() + length);
+            return;
+        }
+        currentTurn = GameEventLog.readVarInt(readBuffer);
+        setIsIncreasing(readBuffer.get() == 1);
+        game.setCurrentPlayer(playerID);
+        int playerCount = GameEventLog.readVarInt(readBuffer);
+        for(int i = 0; i < playerCount; i++) {
+            Player player = game.getPlayerByID(i);
+            player.emptyHand();
+            player.setUnoState(Player.UNOState.Safe);
+            int handSize = GameEventLog.readVarInt(readBuffer);
+            for(int j = 0; j < handSize; j++) {
+                player.addCardToHand(readCard(readBuffer));
+            }
+            if(hasKeyframeUNOStates) {
+                player.setUnoState(Player.UNOState.values()[readBuffer.get()]);
+            }
+        }
+        game.getRecentCards().clear();
+        int recentCount = GameEventLog.readVarInt(readBuffer);
+        for(int i = 0; i < recentCount; i++) {
+            game.placeCard(readCard(readBuffer));
+        }
+        isFinished = false;
+    }
+
+    /**
+     * Reads the type, delay and player of the next event ready for it to be applied.
+     * The rest of the event is read when it is applied.
+     */
+    private void readNextEvent() {
+        ensureAvailable(GameEventLog.MAX_EVENT_SIZE);
+        hasNextEvent = isNextEventComplete();
+        if(!hasNextEvent) return;
+        nextEventOffset = getReadOffset();
+        nextType = GameEventLog.EventType.values()[readBuffer.get()];
+        nextDelay = GameEventLog.readVarInt(readBuffer);
+        nextPlayerID = GameEventLog.readVarInt(readBuffer);
+    }
+
+    /**
+     * Checks the whole of the next event is in the readBuffer without moving the read position.
+     * A log that was not closed properly can end part way through an event.
+     *
+     * @return True if there is a next event and all of it has been read into the readBuffer.
+     */
+    private boolean isNextEventComplete() {
+        ByteBuffer peekBuffer = readBuffer.duplicate();
+        try {
+            int typeID = peekBuffer.get();
+            if(typeID < 0 || typeID >= GameEventLog.EventType.values().length) return false;
+            GameEventLog.EventType eventType = GameEventLog.EventType.values()[typeID];
+            GameEventLog.readVarInt(peekBuffer);
+            GameEventLog.readVarInt(peekBuffer);
+            if(eventType.isCardEvent()) {
+                GameEventLog.readVarInt(peekBuffer);
+                peekBuffer.get();
+            } else {
+                int value = GameEventLog.readVarInt(peekBuffer);
+                if(eventType == GameEventLog.EventType.Keyframe) {
+                    return ensureAvailable(peekBuffer.position() - readBuffer.position() + value);
+                }
+            }
+            return true;
+        } catch (BufferUnderflowException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets how long to wait before applying the next event.
+     *
+     * @return The recorded delay limited to MAX_EVENT_DELAY.
+     */
+    private int getNextEventDelay() {
+        return Math.min(nextDelay, MAX_EVENT_DELAY);
+    }
+
+    /**
+     * Looks up the card by ID, creating it the first time it is seen. The colour is
+     * always updated to the recorded colour since a wild's colour changes when played.
+     *
+     * @param buffer The buffer to read the card from.
+     * @return The card that was read.
+     */
+    private Card readCard(ByteBuffer buffer) {
+        int cardID = GameEventLog.readVarInt(buffer);
+        int faceAndColour = buffer.get();
+        Card card = cards.get(cardID);
+        if(card == null) {
+            card = new Card(faceAndColour / 5, faceAndColour % 5, cardID);
+            cards.put(cardID, card);
+        } else {
+            card.setColour(faceAndColour % 5);
+        }
+        return card;
+    }
+
+    /**
+     * Shows an overlay unless many events are being applied at once.
+     *
+     * @param overlayType The type of overlay to show.
+     * @param playerID The player to show the overlay over.
+     */
+    private void showOverlay(OverlayManager.GeneralOverlayType overlayType, int playerID) {
+        if(!isSeeking) {
+            game.showGeneralOverlay(overlayType, playerID);
+        }
+    }
+
+    /**
+     * Changes the direction of play if it is different.
+     *
+     * @param isIncreasing The direction of play to set.
+     */
+    private void setIsIncreasing(boolean isIncreasing) {
+        if(game.isIncreasing() != isIncreasing) {
+            game.toggleTurnDirection();
+        }
+    }
+
+    /**
+     * Swaps the hands of two players.
+     *
+     * @param player The player who played the swap.
+     * @param targetPlayer The player they chose to swap with.
+     */
+    private void swapHands(Player player, Player targetPlayer) {
+        Card[] playerHand = player.getHand().toArray(new Card[0]);
+        Card[] targetPlayerHand = targetPlayer.getHand().toArray(new Card[0]);
+        player.emptyHand();
+        targetPlayer.emptyHand();
+        for(Card card : targetPlayerHand) {
+            player.addCardToHand(card);
+        }
+        for(Card card : playerHand) {
+            targetPlayer.addCardToHand(card);
+        }
+    }
+
+    /**
+     * Passes every hand to the next player in the direction of play.
+     *
+     * @param isIncreasing The direction of play when the hands were passed.
+     */
+    private void passAllHands(boolean isIncreasing) {
+        List<Player> players = game.getAllPlayers();
+        List<Card[]> hands = new ArrayList<>();
+        for(Player player : players) {
+            hands.add(player.getHand().toArray(new Card[0]));
+            player.emptyHand();
+        }
+        if(isIncreasing) {
+            hands.add(hands.remove(0));
+        } else {
+            hands.add(0, hands.remove(hands.size()-1));
+        }
+        for(int playerID = 0; playerID < players.size(); playerID++) {
+            for(Card card : hands.get(playerID)) {
+                players.get(playerID).addCardToHand(card);
+            }
+        }
+    }
+
+    /**
+     * Finds the last keyframe at or before the turn.
+     *
+     * @param turn The turn to search for.
+     * @return Index of the keyframe, or -1 if the turn is before all keyframes.
+     */
+    private int findKeyframe(int turn) {
+        int index = Arrays.binarySearch(keyframeTurns, 0, keyframeCount, turn);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Reads the recorded players, rules and starting state.
+     *
+     * @throws IOException When the file is not a recording.
+     */
+    private void readHeader() throws IOException {
+        ensureAvailable(GameEventLog.MAGIC.length + 3);
+        for(byte magicByte : GameEventLog.MAGIC) {
+            if(readBuffer.get() != magicByte) {
+                throw new IOException("Not a recording.");
+            }
+        }
+        int version = readBuffer.get();
+        if(version < GameEventLog.MIN_FORMAT_VERSION || version > GameEventLog.FORMAT_VERSION) {
+            throw new IOException("Unsupported recording version " + version);
+        }
+        hasKeyframeUNOStates = version >= 3;
+        ruleSet.setRuleFlags(readBuffer.get());
+        ensureAvailable(1 + 5);
+        ruleSet.setScoreLimitType(RuleSet.ScoreLimitType.values()[readBuffer.get()]);
+        int playerCount = GameEventLog.readVarInt(readBuffer);
+        for(int i = 0; i < playerCount; i++) {
+            ensureAvailable(2 + 5);
+            Player.PlayerType playerType = Player.PlayerType.values()[readBuffer.get()];
+            readBuffer.get(); // Strategy is not needed to watch the replay.
+            int nameLength = GameEventLog.readVarInt(readBuffer);
+            ensureAvailable(nameLength + 5);
+            byte[] name = new byte[nameLength];
+            readBuffer.get(name);
+            GameEventLog.readVarInt(readBuffer); // Total score before the round.
+            lobbyPlayers.add(new LobbyPlayer(new String(name, StandardCharsets.UTF_8), playerType,
+                    new Rectangle(0, 0, 0, 0)));
+        }
+        ensureAvailable(5 + 1);
+        startingPlayerID = GameEventLog.readVarInt(readBuffer);
+        startingIsIncreasing = readBuffer.get() == 1;
+    }
+
+    /**
+     * Reads the keyframe index from the end of the log if it was closed properly.
+     * Events are then known to end where the index begins.
+     *
+     * @throws IOException When the file could not be read.
+     */
+    private void readIndex() throws IOException {
+        int footerSize = 8 + GameEventLog.INDEX_MAGIC.length;
+        if(eventsEndOffset < footerSize) return;
+        ByteBuffer footer = ByteBuffer.allocate(footerSize);
+        channel.read(footer, eventsEndOffset - footerSize);
+        footer.flip();
+        long indexOffset = footer.getLong();
+        for(byte magicByte : GameEventLog.INDEX_MAGIC) {
+            if(footer.get() != magicByte) return;
+        }
+        if(indexOffset < 0 || indexOffset > eventsEndOffset - footerSize) return;
+
+        ByteBuffer index = ByteBuffer.allocate((int) (eventsEndOffset - footerSize - indexOffset));
+        channel.read(index, indexOffset);
+        index.flip();
+        int count = GameEventLog.readVarInt(index);
+        for(int i = 0; i < count; i++) {
+            addKeyframe(GameEventLog.readVarInt(index), index.getLong());
+        }
+        totalTurns = GameEventLog.readVarInt(index);
+        eventsEndOffset = indexOffset;
+    }
+
+    /**
+     * Reads through all the events once to find the keyframes and number of turns
+     * for a log that was not closed properly.
+     */
+    private void scanForKeyframes() {
+        readNextEvent();
+        while(hasNextEvent) {
+            if(nextType.isCardEvent()) {
+                GameEventLog.readVarInt(readBuffer);
+                readBuffer.get();
+            } else {
+                int value = GameEventLog.readVarInt(readBuffer);
+                if(nextType == GameEventLog.EventType.NextTurn) {
+                    totalTurns = value;
+                } else if(nextType == GameEventLog.EventType.Keyframe) {
+                    addKeyframe(GameEventLog.readVarInt(readBuffer.duplicate()), nextEventOffset);
+                    readBuffer.position(readBuffer.position() + value);
+                }
+            }
+            readNextEvent();
+        }
+    }
+
+    /**
+     * Adds a keyframe to the end of the index.
+     *
+     * @param turn The turn the keyframe was written for.
+     * @param offset The offset in the file of the keyframe event.
+     */
+    private void addKeyframe(int turn, long offset) {
+        if(keyframeCount == keyframeTurns.length) {
+            keyframeTurns = Arrays.copyOf(keyframeTurns, keyframeCount * 2);
+            keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframeCount * 2);
+        }
+        keyframeTurns[keyframeCount] = turn;
+        keyframeOffsets[keyframeCount] = offset;
+        keyframeCount++;
+    }
+
+    /**
+     * Gets the offset in the file of the next byte to be read.
+     *
+     * @return The file offset of the readBuffer position.
+     */
+    private long getReadOffset() {
+        return bufferEndOffset - readBuffer.remaining();
+    }
+
+    /**
+     * Empties the readBuffer so the next read starts at the offset.
+     *
+     * @param offset The offset in the file to continue reading from.
+     */
+    private void seekToOffset(long offset) {
+        readBuffer.clear();
+        readBuffer.limit(0);
+        bufferEndOffset = offset;
+    }
+
+    /**
+     * Makes sure at least the number of bytes are in the readBuffer, reading more from the log
+     * if needed. Fewer bytes are available when the end of the events is reached.
+     *
+     * @param byteCount Number of bytes required.
+     * @return True if all the bytes are available.
+     */
+    private boolean ensureAvailable(int byteCount) {
+        if(readBuffer.remaining() >= byteCount) return true;
+        if(readBuffer.capacity() < byteCount) {
+            ByteBuffer largerBuffer = ByteBuffer.allocate(byteCount * 2);
+            largerBuffer.put(readBuffer);
+            readBuffer = largerBuffer;
+        } else {
+            readBuffer.compact();
+        }
+        try {
+            while(readBuffer.hasRemaining() && bufferEndOffset < eventsEndOffset) {
+                int maxRead = (int) Math.min(readBuffer.remaining(), eventsEndOffset - bufferEndOffset);
+                int oldLimit = readBuffer.limit();
+                readBuffer.limit(readBuffer.position() + maxRead);
+                int bytesRead = channel.read(readBuffer, bufferEndOffset);
+                readBuffer.limit(oldLimit);
+                if(bytesRead <= 0) break;
+                bufferEndOffset += bytesRead;
+            }
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Failed to read recording. {}", e.getMessage());
+        }
+        readBuffer.flip();
+        return readBuffer.remaining() >= byteCount;
+    }
+}
@@ -0,0 +1,1085 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Uno
+ *
+ * GameServer class:
+ * Hosts many GameTables for remote clients using a few event loop threads that
+ * each own a java.nio Selector. The first event loop accepts new connections and
+ * hands them out to the event loops in turn. Each event loop owns its connections
+ * and the tables they are seated at, so a game is only ever touched by one thread
+ * and every table on the loop is updated on the same tick. Alternatively each table
+ * can be run on a thread of its own by a TableRunner once it starts, with the event
+ * loops only handling the connections.
+ *
+ * Clients speak the binary WireProtocol. A client sends Join with a seatCount of 2 or 4 and
+ * optionally the RuleSet signature they want to play with, and waits in the Matchmaker with
+ * the clients on every event loop who asked for the same rules. Once a table's worth are
+ * waiting, or the first has waited Matchmaker.BACKFILL_DELAY, a table is created on the event
+ * loop that owns most of them and the rest have their connections handed over to it. The
+ * seats left over are given to AIPlayers with the server's AIStrategy. See GameTable
+ * for the state sent once seated. A client can instead send Spectate with a tableID to
+ * watch that table. Their connection is handed over to the event loop that owns the table
+ * so the table's frames can be shared with every spectator without crossing threads.
+ * A client that lost its connection can send Resume on a new one to take back its seat,
+ * which is handed over to the table's event loop in the same way.
+ * Every message is stamped with the time its event loop's select returned, which the
+ * tables use to order contested messages held in their arbitration window.
+ * A ShardWorker drives the server from its ShardCoordinator instead, opening tables with
+ * their seats reserved for the clients the coordinator matched and moving tables in and out
+ * with exportTable() and importTable(). The coordinator then relays each client's frames
+ * over a connection of its own that claims the seat with Resume.
+ * Each event loop logs the state bytes sent and the
+ * time spent encoding them per turn every STATISTICS_INTERVAL.
+ * When given a record folder, every round hosted is appended to a GameRecordStore there.
+ * When given a decision folder, every decision made by the AIPlayers is recorded there
+ * with AIDecisionTelemetry.
+ *
+ * Run with: java GameServer [port] [eventLoopCount] [threadPerTable] [aiStrategy] [arbitrationWindow] [recordFolder] [decisionFolder]
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class GameServer {
+    /**
+     * Port used when none is given.
+     */
+    public static final int DEFAULT_PORT = 7777;
+    /**
+     * Time in ms between updates of the tables. Matches the update rate of the GamePanel.
+     */
+    public static final int TICK_INTERVAL = 20;
+    /**
+     * Number of buckets in each event loop's TimerWheel. With one bucket per tick the wheel turns every 10 seconds.
+     */
+    private static final int TIMER_WHEEL_SIZE = 512;
+    /**
+     * Connections allowed to wait to be accepted. Large so that many clients can connect at once.
+     */
+    private static final int ACCEPT_BACKLOG = 4096;
+    /**
+     * Time in ms between each event loop logging its WireProtocol.Statistics.
+     */
+    public static final int STATISTICS_INTERVAL = 60000;
+    /**
+     * The RuleSet signature used for clients that join without one.
+     */
+    public static final int DEFAULT_SIGNATURE = new RuleSet().getSignature();
+
+    /**
+     * The port to listen on, or 0 to use any free port.
+     */
+    private final int port;
+    /**
+     * The event loops hosting the connections and tables.
+     */
+    private final EventLoop[] eventLoops;
+    /**
+     * True when each table is run on its own thread by a TableRunner instead of by its event loop.
+     */
+    private final boolean isThreadPerTable;
+    /**
+     * Number of connections open across all event loops.
+     */
+    private final AtomicInteger connectionCount;
+    /**
+     * Number of tables across all event loops.
+     */
+    private final AtomicInteger tableCount;
+    /**
+     * The event loop that owns each table indexed by tableID.
+     */
+    private final Map<Integer, EventLoop> tableEventLoops;
+    /**
+     * The ID to give the next table created.
+     */
+    private final AtomicInteger nextTableID;
+    /**
+     * Groups the clients waiting for a table by the rules they asked for.
+     */
+    private final Matchmaker matchmaker;
+    /**
+     * The strategy of the AIPlayers put in the seats without a client.
+     */
+    private final AIPlayer.AIStrategy aiStrategy;
+    /**
+     * Time in ms each table holds contested messages for, or 0 to apply every message as it arrives.
+     */
+    private int arbitrationWindow;
+    /**
+     * The address to listen on, or null to listen on every address.
+     */
+    private InetAddress bindAddress;
+    /**
+     * Called with the tableID of each table removed, or null.
+     */
+    private IntConsumer tableClosedListener;
+    /**
+     * Folder of the GameRecordStore every hosted round is appended to, or null to not record rounds.
+     */
+    private Path recordFolder;
+    /**
+     * The store opened in recordFolder while running, or null.
+     */
+    private GameRecordStore recordStore;
+    /**
+     * Folder AIDecisionTelemetry writes decision chunks to, or null to not record decisions.
+     */
+    private Path decisionFolder;
+    /**
+     * The channel accepting connections. Null until started.
+     */
+    private ServerSocketChannel serverChannel;
+    /**
+     * Index of the event loop to give the next accepted connection.
+     */
+    private int nextEventLoop;
+    /**
+     * False once stop() has been called.
+     */
+    private volatile boolean isRunning;
+
+    /**
+     * Uno
+     *
+     * EventLoop class:
+     * Waits on a Selector for its connections to be ready, reads and performs their
+     * commands, updates its tables each tick, and then writes everything sent.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    private class EventLoop implements Runnable {
+        /**
+         * Index of the event loop in eventLoops.
+         */
+        private final int eventLoopID;
+        /**
+         * Selector for the connections owned by the event loop.
+         */
+        private final Selector selector;
+        /**
+         * Connections accepted by the first event loop waiting to be registered with this one.
+         */
+        private final Queue<SocketChannel> acceptedChannels;
+        /**
+         * Every table owned by the event loop.
+         */
+        private final List<GameTable> tables;
+        /**
+         * Every table owned by the event loop indexed by tableID.
+         */
+        private final Map<Integer, GameTable> tablesByID;
+        /**
+         * Tasks passed from other threads waiting to be run by the event loop.
+         */
+        private final Queue<Runnable> tasks;
+        /**
+         * Connections with output waiting to be flushed.
+         */
+        private final List<ClientConnection> flushQueue;
+        /**
+         * Counts the state sent by the tables on the event loop.
+         */
+        private final WireProtocol.Statistics statistics;
+        /**
+         * Timeouts for the clients being waited on at every table on the event loop.
+         */
+        private final TimerWheel timerWheel;
+        /**
+         * The thread running the event loop.
+         */
+        private final Thread thread;
+        /**
+         * System.nanoTime() when the current select found its first ready key, or 0 before it has.
+         */
+        private long selectTime;
+
+        /**
+         * Creates the event loop and its thread ready to be started.
+         *
+         * @param eventLoopID Index of the event loop in eventLoops.
+         * @throws IOException When the Selector could not be opened.
+         */
+        public EventLoop(int eventLoopID) throws IOException {
+            this.eventLoopID = eventLoopID;
+            selector = Selector.open();
+            acceptedChannels = new ConcurrentLinkedQueue<>();
+            tasks = new ConcurrentLinkedQueue<>();
+            tables = new ArrayList<>();
+            tablesByID = new HashMap<>();
+            flushQueue = new ArrayList<>();
+            statistics = new WireProtocol.Statistics();
+            timerWheel = new TimerWheel(TICK_INTERVAL, TIMER_WHEEL_SIZE, TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+            thread = new Thread(this, "GameServer-EventLoop-" + eventLoopID);
+        }
+
+        /**
+         * Selects until the server is stopped, updating the tables every TICK_INTERVAL.
+         */
+        @Override
+        public void run() {
+            long nextTick = System.nanoTime();
+            long nextStatistics = nextTick + TimeUnit.MILLISECONDS.toNanos(STATISTICS_INTERVAL);
+            try {
+                while(isRunning) {
+                    long waitTime = TimeUnit.NANOSECONDS.toMillis(nextTick - System.nanoTime());
+                    selectTime = 0;
+                    if(waitTime > 0) {
+                        selector.select(this::handleReadyKey, waitTime);
+                    } else {
+                        selector.selectNow(this::handleReadyKey);
+                    }
+                    registerAcceptedChannels();
+                    runTasks();
+                    long now = System.nanoTime();
+                    if(now - nextTick >= 0) {
+                        timerWheel.advance(TimeUnit.NANOSECONDS.toMillis(now));
+                        updateTables();
+                        if(eventLoopID == 0) {
+                            matchmaker.backfill();
+                        }
+                        nextTick += TimeUnit.MILLISECONDS.toNanos(TICK_INTERVAL);
+                        // Skip the missed ticks instead of running them all at once after a stall.
+                        if(now - nextTick > TimeUnit.MILLISECONDS.toNanos(TICK_INTERVAL)) {
+                            nextTick = now + TimeUnit.MILLISECONDS.toNanos(TICK_INTERVAL);
+                        }
+                    }
+                    flushConnections();
+                    if(now - nextStatistics >= 0) {
+                        if(statistics.hasTurns()) {
+                            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "{}: {}, {} timeouts scheduled",
+                                    thread.getName(), statistics.takeSummary(), timerWheel.size());
+                        }
+                        nextStatistics = now + TimeUnit.MILLISECONDS.toNanos(STATISTICS_INTERVAL);
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if(isRunning) {
+                    GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Event loop stopped. {}", e.getMessage());
+                }
+            }
+            for(GameTable table : tables) {
+                if(table.getRunner() != null) {
+                    table.getRunner().stop();
+                }
+            }
+            for(SelectionKey key : selector.keys()) {
+                if(key.attachment() instanceof ClientConnection) {
+                    ((ClientConnection) key.attachment()).close();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Debug, "Failed to close selector. {}", e.getMessage());
+            }
+        }
+
+        /**
+         * Queues a connection accepted by the first event loop to be registered by this event loop.
+         *
+         * @param channel The accepted connection.
+         */
+        public void addChannel(SocketChannel channel) {
+            acceptedChannels.add(channel);
+            selector.wakeup();
+        }
+
+        /**
+         * Queues a task from another thread to be run by the event loop.
+         *
+         * @param task The task to run.
+         */
+        public void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        /**
+         * Runs every task passed from other threads.
+         */
+        private void runTasks() {
+            Runnable task;
+            while((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+        /**
+         * Registers every connection waiting to be added with the Selector.
+         *
+         * @throws IOException When a connection could not be registered.
+         */
+        private void registerAcceptedChannels() throws IOException {
+            SocketChannel channel;
+            while((channel = acceptedChannels.poll()) != null) {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new ClientConnection(channel, key, flushQueue));
+                connectionCount.incrementAndGet();
+            }
+        }
+
+        /**
+         * Accepts, reads, or writes for a key that is ready.
+         *
+         * @param key The key that is ready.
+         */
+        private void handleReadyKey(SelectionKey key) {
+            if(!key.isValid()) return;
+            // Every message read in the same select is stamped with the same time so none gains from the order of the keys.
+            if(selectTime == 0) {
+                selectTime = System.nanoTime();
+            }
+            if(key.isAcceptable()) {
+                acceptConnections();
+                return;
+            }
+            ClientConnection connection = (ClientConnection) key.attachment();
+            try {
+                if(key.isWritable()) {
+                    connection.flush();
+                }
+                if(key.isValid() && key.isReadable() && !connection.readFrames(frame -> handleFrame(connection, frame))) {
+                    disconnect(connection);
+                }
+            } catch (IOException e) {
+                disconnect(connection);
+            }
+        }
+
+        /**
+         * Accepts every waiting connection and hands them out to the event loops in turn.
+         */
+        private void acceptConnections() {
+            try {
+                SocketChannel channel;
+                while((channel = serverChannel.accept()) != null) {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    eventLoops[nextEventLoop].addChannel(channel);
+                    nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+                }
+            } catch (IOException e) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Warning, "Failed to accept connection. {}", e.getMessage());
+            }
+        }
+
+        /**
+         * Joins the client to a table or passes the message to the table they are seated at.
+         *
+         * @param connection The client who sent the frame.
+         * @param frame The message type and payload.
+         */
+        private void handleFrame(ClientConnection connection, ByteBuffer frame) {
+            int messageTypeID = frame.get() & 0xFF;
+            if(messageTypeID >= WireProtocol.ClientMessage.values().length) {
+                connection.sendError(255, WireProtocol.ErrorCode.UnknownMessage);
+                return;
+            }
+            WireProtocol.ClientMessage messageType = WireProtocol.ClientMessage.values()[messageTypeID];
+            try {
+                if(messageType == WireProtocol.ClientMessage.Join) {
+                    joinTable(connection, frame);
+                } else if(messageType == WireProtocol.ClientMessage.Spectate) {
+                    watchTable(connection, frame);
+                } else if(messageType == WireProtocol.ClientMessage.Resume) {
+                    resumeSeat(connection, frame);
+                } else if(connection.getTable() == null) {
+                    connection.sendError(messageTypeID, WireProtocol.ErrorCode.NotSeated);
+                } else if(connection.isSpectator()) {
+                    connection.sendError(messageTypeID, WireProtocol.ErrorCode.NotAllowed);
+                } else {
+                    connection.getTable().handleMessage(connection, messageType, frame, selectTime);
+                }
+            } catch (BufferUnderflowException e) {
+                connection.sendError(messageTypeID, WireProtocol.ErrorCode.InvalidMessage);
+            }
+        }
+
+        /**
+         * Adds the client to the Matchmaker to wait for a table with the rules they asked for.
+         * The default rules are used when the client did not send a RuleSet signature.
+         *
+         * @param connection The client joining.
+         * @param payload The protocol version, seatCount, name, and optionally the RuleSet signature.
+         */
+        private void joinTable(ClientConnection connection, ByteBuffer payload) {
+            int joinID = WireProtocol.ClientMessage.Join.ordinal();
+            if(connection.getTable() != null || connection.getTicket() != null) {
+                connection.sendError(joinID, WireProtocol.ErrorCode.AlreadySeated);
+                return;
+            }
+            if((payload.get() & 0xFF) != WireProtocol.PROTOCOL_VERSION) {
+                connection.sendError(joinID, WireProtocol.ErrorCode.WrongVersion);
+                return;
+            }
+            int seatCount = payload.get();
+            String playerName = WireProtocol.readName(payload);
+            int signature = payload.hasRemaining() ? GameEventLog.readVarInt(payload) : DEFAULT_SIGNATURE;
+            if((seatCount != 2 && seatCount != 4) || !RuleSet.isValidSignature(signature)) {
+                connection.sendError(joinID, WireProtocol.ErrorCode.InvalidMessage);
+                return;
+            }
+            if(playerName.isBlank()) {
+                playerName = "Player";
+            }
+            // The seatCount decides whether the two player rules are used.
+            signature = seatCount == 2 ? signature | RuleSet.TWO_PLAYERS_FLAG : signature & ~RuleSet.TWO_PLAYERS_FLAG;
+            connection.setTicket(matchmaker.join(connection, playerName, signature, eventLoopID));
+        }
+
+        /**
+         * Creates a table for a Match on this event loop. Its clients are seated as their event loops hand them over.
+         *
+         * @param tableID Unique ID for the table.
+         * @param ruleSet The rules the clients asked for.
+         * @param clientCount Number of clients in the Match.
+         * @return The table added.
+         */
+        private GameTable openTable(int tableID, RuleSet ruleSet, int clientCount) {
+            GameTable table = new GameTable(tableID, ruleSet, clientCount, aiStrategy, statistics, timerWheel);
+            addTable(table);
+            return table;
+        }
+
+        /**
+         * Creates a table from the state exported by another process and starts its runner if it
+         * had already started.
+         *
+         * @param state The state from GameTable.exportTable().
+         * @param importer Called with true once the table has been added, or false if the state was not valid.
+         */
+        private void importTable(ByteBuffer state, Consumer<Boolean> importer) {
+            GameTable table;
+            try {
+                table = GameTable.importTable(state, aiStrategy, statistics, timerWheel);
+            } catch (IOException e) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Warning, "Failed to import table. {}", e.getMessage());
+                importer.accept(false);
+                return;
+            }
+            if(tableEventLoops.containsKey(table.getTableID())) {
+                importer.accept(false);
+                return;
+            }
+            addTable(table);
+            if(table.hasStarted() && table.getRunner() != null) {
+                table.getRunner().start();
+            }
+            importer.accept(true);
+        }
+
+        /**
+         * Gives a new table its arbitration window and runner and adds it to the event loop.
+         *
+         * @param table The table to add.
+         */
+        private void addTable(GameTable table) {
+            table.setArbitrationWindow(arbitrationWindow);
+            if(isThreadPerTable) {
+                table.setRunner(new TableRunner(table, this::execute));
+            }
+            tables.add(table);
+            tablesByID.put(table.getTableID(), table);
+            tableEventLoops.put(table.getTableID(), this);
+            tableCount.incrementAndGet();
+        }
+
+        /**
+         * Stops a table owned by the event loop so it can be moved and passes on its state.
+         *
+         * @param tableID The table to export.
+         * @param exporter Called with the state, or null if the table is not here or has been abandoned.
+         */
+        private void exportTable(int tableID, Consumer<ByteBuffer> exporter) {
+            GameTable table = tablesByID.get(tableID);
+            if(table == null || table.isAbandoned()) {
+                exporter.accept(null);
+            } else {
+                table.exportTable(exporter);
+            }
+        }
+
+        /**
+         * Sends a client owned by this event loop to the table formed for them. When the table is
+         * owned by another event loop the connection is handed over to it first.
+         *
+         * @param ticket The client's Ticket from the Match.
+         * @param owner The event loop that owns the table.
+         * @param tableID The table formed for the client.
+         */
+        private void sendToTable(Matchmaker.Ticket ticket, EventLoop owner, int tableID) {
+            ClientConnection connection = ticket.getConnection();
+            connection.setTicket(null);
+            String playerName = ticket.getPlayerName();
+            if(connection.isClosed()) {
+                owner.execute(() -> owner.cancelPendingClient(tableID));
+            } else if(owner == this) {
+                seatAtTable(connection, tableID, playerName);
+            } else {
+                SocketChannel channel = connection.handOver();
+                owner.execute(() -> owner.adoptConnection(channel, connection, adopted -> owner.seatAtTable(adopted, tableID, playerName)));
+            }
+        }
+
+        /**
+         * Seats a matched client at a table owned by the event loop. A client that arrives after
+         * the table gave up waiting is told the table is unknown so they can join again.
+         *
+         * @param connection The client matched to the table.
+         * @param tableID The table formed for the client.
+         * @param playerName The name the client joined with.
+         */
+        private void seatAtTable(ClientConnection connection, int tableID, String playerName) {
+            GameTable table = tablesByID.get(tableID);
+            if(table == null || !table.isWaitingForClients()) {
+                connection.sendError(WireProtocol.ClientMessage.Join.ordinal(), WireProtocol.ErrorCode.UnknownTable);
+            } else {
+                table.addConnection(connection, playerName);
+            }
+        }
+
+        /**
+         * Tells a table owned by the event loop that a client matched to it left before being seated.
+         *
+         * @param tableID The table formed for the client.
+         */
+        private void cancelPendingClient(int tableID) {
+            GameTable table = tablesByID.get(tableID);
+            if(table != null && table.isWaitingForClients()) {
+                table.cancelPendingClient();
+            }
+        }
+
+        /**
+         * Makes the client a spectator of a table. When the table is owned by another event loop
+         * the connection is handed over to that event loop first.
+         *
+         * @param connection The client asking to watch.
+         * @param payload The protocol version and tableID.
+         */
+        private void watchTable(ClientConnection connection, ByteBuffer payload) {
+            int spectateID = WireProtocol.ClientMessage.Spectate.ordinal();
+            if(connection.getTable() != null || connection.getTicket() != null) {
+                connection.sendError(spectateID, WireProtocol.ErrorCode.AlreadySeated);
+                return;
+            }
+            if((payload.get() & 0xFF) != WireProtocol.PROTOCOL_VERSION) {
+                connection.sendError(spectateID, WireProtocol.ErrorCode.WrongVersion);
+                return;
+            }
+            int tableID = GameEventLog.readVarInt(payload);
+            EventLoop owner = tableEventLoops.get(tableID);
+            if(owner == null) {
+                connection.sendError(spectateID, WireProtocol.ErrorCode.UnknownTable);
+            } else if(owner == this) {
+                addSpectator(connection, tableID);
+            } else {
+                SocketChannel channel = connection.handOver();
+                owner.execute(() -> owner.adoptConnection(channel, connection, adopted -> owner.addSpectator(adopted, tableID)));
+            }
+        }
+
+        /**
+         * Puts a client who reconnected back in their seat. When the table is owned by another
+         * event loop the connection is handed over to that event loop first.
+         *
+         * @param connection The client asking to resume.
+         * @param payload The protocol version, tableID, seatID, resumeToken, and frames received in the seat.
+         */
+        private void resumeSeat(ClientConnection connection, ByteBuffer payload) {
+            int resumeID = WireProtocol.ClientMessage.Resume.ordinal();
+            if(connection.getTable() != null || connection.getTicket() != null) {
+                connection.sendError(resumeID, WireProtocol.ErrorCode.AlreadySeated);
+                return;
+            }
+            if((payload.get() & 0xFF) != WireProtocol.PROTOCOL_VERSION) {
+                connection.sendError(resumeID, WireProtocol.ErrorCode.WrongVersion);
+                return;
+            }
+            int tableID = GameEventLog.readVarInt(payload);
+            int seatID = payload.get() & 0xFF;
+            long resumeToken = payload.getLong();
+            int frameCount = GameEventLog.readVarInt(payload);
+            EventLoop owner = tableEventLoops.get(tableID);
+            if(owner == null) {
+                connection.sendError(resumeID, WireProtocol.ErrorCode.UnknownTable);
+            } else if(owner == this) {
+                takeBackSeat(connection, tableID, seatID, resumeToken, frameCount);
+            } else {
+                SocketChannel channel = connection.handOver();
+                owner.execute(() -> owner.adoptConnection(channel, connection,
+                        adopted -> owner.takeBackSeat(adopted, tableID, seatID, resumeToken, frameCount)));
+            }
+        }
+
+        /**
+         * Resumes a seat at a table owned by the event loop when the resumeToken matches.
+         *
+         * @param connection The client asking to resume.
+         * @param tableID The table they were seated at.
+         * @param seatID The seat they were in.
+         * @param resumeToken The token they were sent with Seated.
+         * @param frameCount Number of frames they received in the seat.
+         */
+        private void takeBackSeat(ClientConnection connection, int tableID, int seatID, long resumeToken, int frameCount) {
+            int resumeID = WireProtocol.ClientMessage.Resume.ordinal();
+            GameTable table = tablesByID.get(tableID);
+            if(table == null || table.isAbandoned()) {
+                connection.sendError(resumeID, WireProtocol.ErrorCode.UnknownTable);
+            } else if(!table.canResume(seatID, resumeToken)) {
+                connection.sendError(resumeID, WireProtocol.ErrorCode.NotAllowed);
+            } else {
+                table.resumeConnection(connection, seatID, frameCount);
+            }
+        }
+
+        /**
+         * Registers a channel handed over by another event loop and passes on its new connection.
+         * Once the handler has seated the client, any frames they sent after the one that caused
+         * the handover are handled and any output waiting from the old event loop is flushed.
+         *
+         * @param channel The client's channel.
+         * @param handedOver The connection the channel was handed over from.
+         * @param handler Called with the connection once it is registered with this event loop.
+         */
+        private void adoptConnection(SocketChannel channel, ClientConnection handedOver, Consumer<ClientConnection> handler) {
+            ClientConnection connection;
+            try {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                connection = new ClientConnection(handedOver, key, flushQueue);
+                key.attach(connection);
+            } catch (IOException e) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Debug, "Failed to adopt connection. {}", e.getMessage());
+                connectionCount.decrementAndGet();
+                try {
+                    channel.close();
+                } catch (IOException closeException) {
+                    GameLogger.log(GameLogger.Category.General, GameLogger.Level.Debug, "Failed to close connection. {}", closeException.getMessage());
+                }
+                return;
+            }
+            handler.accept(connection);
+            connection.requestFlush();
+            try {
+                if(!connection.readFrames(frame -> handleFrame(connection, frame))) {
+                    disconnect(connection);
+                }
+            } catch (IOException e) {
+                disconnect(connection);
+            }
+        }
+
+        /**
+         * Adds a spectator to a table owned by the event loop.
+         *
+         * @param connection The client asking to watch.
+         * @param tableID The table to watch.
+         */
+        private void addSpectator(ClientConnection connection, int tableID) {
+            GameTable table = tablesByID.get(tableID);
+            if(table == null) {
+                connection.sendError(WireProtocol.ClientMessage.Spectate.ordinal(), WireProtocol.ErrorCode.UnknownTable);
+            } else {
+                table.addSpectator(connection);
+            }
+        }
+
+        /**
+         * Updates every table and removes any that everyone has left. Their spectators are disconnected.
+         */
+        private void updateTables() {
+            int keptCount = 0;
+            for(int i = 0; i < tables.size(); i++) {
+                GameTable table = tables.get(i);
+                if(table.isAbandoned()) {
+                    table.cancelTimeOut();
+                    for(ClientConnection spectator : new ArrayList<>(table.getSpectators().getSpectators())) {
+                        disconnect(spectator);
+                    }
+                    tablesByID.remove(table.getTableID());
+                    tableEventLoops.remove(table.getTableID());
+                    tableCount.decrementAndGet();
+                    if(tableClosedListener != null) {
+                        tableClosedListener.accept(table.getTableID());
+                    }
+                    continue;
+                }
+                table.update(TICK_INTERVAL);
+                table.getSpectators().update(TICK_INTERVAL);
+                tables.set(keptCount++, table);
+            }
+            while(tables.size() > keptCount) {
+                tables.remove(tables.size()-1);
+            }
+            CurrentGameInterface.bindToCurrentThread(null);
+        }
+
+        /**
+         * Writes the output waiting for every connection in the flush queue.
+         */
+        private void flushConnections() {
+            for(int i = 0; i < flushQueue.size(); i++) {
+                ClientConnection connection = flushQueue.get(i);
+                try {
+                    connection.flush();
+                } catch (IOException e) {
+                    disconnect(connection);
+                }
+            }
+            flushQueue.clear();
+        }
+
+        /**
+         * Closes a connection and removes the client from their table.
+         *
+         * @param connection The connection to close.
+         */
+        private void disconnect(ClientConnection connection) {
+            if(connection.isClosed()) return;
+            connection.close();
+            connectionCount.decrementAndGet();
+            if(connection.getTicket() != null) {
+                // When the Ticket was already matched the table is told once the Match reaches this event loop.
+                matchmaker.cancel(connection.getTicket());
+            } else if(connection.isSpectator()) {
+                connection.getTable().removeSpectator(connection);
+            } else if(connection.getTable() != null) {
+                connection.getTable().removeConnection(connection);
+            }
+        }
+    }
+
+    /**
+     * Creates a server ready to be started.
+     *
+     * @param port The port to listen on, or 0 to use any free port.
+     * @param eventLoopCount Number of event loop threads to use.
+     * @throws IOException When a Selector could not be opened.
+     */
+    public GameServer(int port, int eventLoopCount) throws IOException {
+        this(port, eventLoopCount, false);
+    }
+
+    /**
+     * Creates a server ready to be started.
+     *
+     * @param port The port to listen on, or 0 to use any free port.
+     * @param eventLoopCount Number of event loop threads to use.
+     * @param isThreadPerTable When true each table is run on its own thread by a TableRunner.
+     * @throws IOException When a Selector could not be opened.
+     */
+    public GameServer(int port, int eventLoopCount, boolean isThreadPerTable) throws IOException {
+        this(port, eventLoopCount, isThreadPerTable, AIPlayer.AIStrategy.Random);
+    }
+
+    /**
+     * Creates a server ready to be started.
+     *
+     * @param port The port to listen on, or 0 to use any free port.
+     * @param eventLoopCount Number of event loop threads to use.
+     * @param isThreadPerTable True to run each table on its own thread once it starts.
+     * @param aiStrategy The strategy of the AIPlayers put in the seats without a client.
+     * @throws IOException When a Selector could not be opened.
+     */
+    public GameServer(int port, int eventLoopCount, boolean isThreadPerTable, AIPlayer.AIStrategy aiStrategy) throws IOException {
+        this.port = port;
+        this.isThreadPerTable = isThreadPerTable;
+        this.aiStrategy = aiStrategy;
+        arbitrationWindow = InputSequencer.DEFAULT_WINDOW;
+        matchmaker = new Matchmaker(this::formTable);
+        connectionCount = new AtomicInteger();
+        tableCount = new AtomicInteger();
+        nextTableID = new AtomicInteger();
+        tableEventLoops = new ConcurrentHashMap<>();
+        eventLoops = new EventLoop[eventLoopCount];
+        for(int i = 0; i < eventLoopCount; i++) {
+            eventLoops[i] = new EventLoop(i);
+        }
+    }
+
+    /**
+     * Creates the table for a Match on the event loop that owns most of its clients and sends
+     * every client to it. Called by the Matchmaker on whichever event loop formed the Match.
+     *
+     * @param match The clients put together and the rules they asked for.
+     */
+    private void formTable(Matchmaker.Match match) {
+        List<Matchmaker.Ticket> tickets = match.getTickets();
+        int[] ticketCounts = new int[eventLoops.length];
+        int ownerID = tickets.get(0).getEventLoopID();
+        for(Matchmaker.Ticket ticket : tickets) {
+            if(++ticketCounts[ticket.getEventLoopID()] > ticketCounts[ownerID]) {
+                ownerID = ticket.getEventLoopID();
+            }
+        }
+        EventLoop owner = eventLoops[ownerID];
+        int tableID = nextTableID.getAndIncrement();
+        RuleSet ruleSet = match.createRuleSet();
+        // The table is opened before any client reaches it because each event loop runs its tasks in order.
+        owner.execute(() -> owner.openTable(tableID, ruleSet, tickets.size()));
+        for(Matchmaker.Ticket ticket : tickets) {
+            EventLoop eventLoop = eventLoops[ticket.getEventLoopID()];
+            eventLoop.execute(() -> eventLoop.sendToTable(ticket, owner, tableID));
+        }
+    }
+
+    /**
+     * Sets how long each table holds JumpIn, CallUNO, and AntiUno so that those sent at nearly
+     * the same time are applied in the order they were received. Must be set before starting.
+     *
+     * @param arbitrationWindow Time in ms to hold them for, or 0 to apply every message as it arrives.
+     */
+    public void setArbitrationWindow(int arbitrationWindow) {
+        this.arbitrationWindow = arbitrationWindow;
+    }
+
+    /**
+     * Opens a table on the event loop chosen by its tableID with every seat reserved for a client
+     * matched by a ShardCoordinator. Each client claims their seat with Resume.
+     *
+     * @param tableID Unique ID for the table given by the coordinator.
+     * @param ruleSet The rules the clients asked for.
+     * @param playerNames The name of each client in order of seatID.
+     * @param resumeTokens The token each client was sent with Seated in order of seatID.
+     * @param onOpened Called on the event loop once the table is ready for the clients.
+     */
+    public void openReservedTable(int tableID, RuleSet ruleSet, String[] playerNames, long[] resumeTokens, Runnable onOpened) {
+        EventLoop owner = eventLoops[Math.floorMod(tableID, eventLoops.length)];
+        owner.execute(() -> {
+            GameTable table = owner.openTable(tableID, ruleSet, playerNames.length);
+            for(int i = 0; i < playerNames.length; i++) {
+                table.reserveSeat(playerNames[i], resumeTokens[i]);
+            }
+            onOpened.run();
+        });
+    }
+
+    /**
+     * Stops a table so it can be moved to another process and passes on its state. The table is
+     * removed on the next tick of its event loop.
+     *
+     * @param tableID The table to export.
+     * @param exporter Called with the state from GameTable.exportTable(), or null if there is no such table.
+     *                 It is called on the event loop or the table's runner.
+     */
+    public void exportTable(int tableID, Consumer<ByteBuffer> exporter) {
+        EventLoop owner = tableEventLoops.get(tableID);
+        if(owner == null) {
+            exporter.accept(null);
+        } else {
+            owner.execute(() -> owner.exportTable(tableID, exporter));
+        }
+    }
+
+    /**
+     * Hosts a table moved from another process on the event loop chosen by its tableID. Its
+     * clients take back their seats with Resume.
+     *
+     * @param tableID The table being moved.
+     * @param state The state from GameTable.exportTable().
+     * @param importer Called on the event loop with true once the table is hosted, or false if it could not be.
+     */
+    public void importTable(int tableID, ByteBuffer state, Consumer<Boolean> importer) {
+        EventLoop owner = eventLoops[Math.floorMod(tableID, eventLoops.length)];
+        owner.execute(() -> owner.importTable(state, importer));
+    }
+
+    /**
+     * Sets the address to listen on, such as the loopback address for a ShardWorker. Must be set before starting.
+     *
+     * @param bindAddress The address, or null to listen on every address.
+     */
+    public void setBindAddress(InetAddress bindAddress) {
+        this.bindAddress = bindAddress;
+    }
+
+    /**
+     * Sets what to call when a table is removed because it was abandoned or exported. Must be set before starting.
+     *
+     * @param tableClosedListener Called on the event loop with the tableID of each table removed.
+     */
+    public void setTableClosedListener(IntConsumer tableClosedListener) {
+        this.tableClosedListener = tableClosedListener;
+    }
+
+    /**
+     * Sets the folder of the GameRecordStore that every round hosted is appended to. Must be set before starting.
+     *
+     * @param recordFolder The folder, or null to not record rounds.
+     */
+    public void setRecordFolder(Path recordFolder) {
+        this.recordFolder = recordFolder;
+    }
+
+    /**
+     * Sets the folder AIDecisionTelemetry writes every AIPlayer decision to. Must be set before starting.
+     *
+     * @param decisionFolder The folder, or null to not record decisions.
+     */
+    public void setDecisionFolder(Path decisionFolder) {
+        this.decisionFolder = decisionFolder;
+    }
+
+    /**
+     * Starts listening for connections and starts the event loops.
+     *
+     * @throws IOException When the port could not be listened on or the record store could not be opened.
+     */
+    public void start() throws IOException {
+        if(recordFolder != null) {
+            recordStore = new GameRecordStore(recordFolder);
+            GameEventLog.setRecordStore(recordStore);
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "Recording rounds to {}.", recordFolder);
+        }
+        if(decisionFolder != null) {
+            Files.createDirectories(decisionFolder);
+            AIDecisionTelemetry.setOutputFolder(decisionFolder);
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "Recording AI decisions to {}.", decisionFolder);
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(bindAddress, port), ACCEPT_BACKLOG);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(eventLoops[0].selector, SelectionKey.OP_ACCEPT);
+        isRunning = true;
+        for(EventLoop eventLoop : eventLoops) {
+            eventLoop.thread.start();
+        }
+        GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "Game server listening on port {} with {} event loops.",
+                getPort(), eventLoops.length);
+        if(isThreadPerTable) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "Running each table on its own {} thread.",
+                    TableRunner.usesVirtualThreads() ? "virtual" : "platform");
+        }
+    }
+
+    /**
+     * Stops the event loops, closing every connection, and stops listening.
+     */
+    public void stop() {
+        isRunning = false;
+        for(EventLoop eventLoop : eventLoops) {
+            eventLoop.selector.wakeup();
+        }
+        for(EventLoop eventLoop : eventLoops) {
+            try {
+                eventLoop.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Debug, "Failed to close server channel. {}", e.getMessage());
+        }
+        if(recordStore != null) {
+            GameEventLog.setRecordStore(null);
+            try {
+                recordStore.close();
+            } catch (IOException e) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Failed to seal record store. {}", e.getMessage());
+            }
+            recordStore = null;
+        }
+        if(decisionFolder != null) {
+            AIDecisionTelemetry.setOutputFolder(null);
+        }
+    }
+
+    /**
+     * Gets the port the server is listening on.
+     *
+     * @return The port, which is the one chosen by the system when started with port 0.
+     */
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return port;
+        }
+    }
+
+    /**
+     * Gets the number of connections open.
+     *
+     * @return The connection count across all event loops.
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Gets the number of clients waiting in the Matchmaker for a table.
+     *
+     * @return The count across all event loops.
+     */
+    public int getWaitingCount() {
+        return matchmaker.getWaitingCount();
+    }
+
+    /**
+     * Gets the number of tables that have not been abandoned.
+     *
+     * @return The table count across all event loops.
+     */
+    public int getTableCount() {
+        return tableCount.get();
+    }
+
+    /**
+     * Entry point to run a server without the GUI.
+     *
+     * @param args Optionally the port, the number of event loops, true to run each table on its own thread,
+     *             the AIStrategy for the seats without a client, the arbitration window in ms, and the
+     *             folder to record every round to, and the folder to record every AI decision to.
+     * @throws IOException When the server could not be started.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int eventLoopCount = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        boolean isThreadPerTable = args.length > 2 && Boolean.parseBoolean(args[2]);
+        AIPlayer.AIStrategy aiStrategy = args.length > 3 ? AIPlayer.AIStrategy.valueOf(args[3]) : AIPlayer.AIStrategy.Random;
+        GameServer server = new GameServer(port, eventLoopCount, isThreadPerTable, aiStrategy);
+        if(args.length > 4) {
+            server.setArbitrationWindow(Integer.parseInt(args[4]));
+        }
+        if(args.length > 5) {
+            server.setRecordFolder(Paths.get(args[5]));
+        }
+        if(args.length > 6) {
+            server.setDecisionFolder(Paths.get(args[6]));
+        }
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            EventLogWriter.shutdown();
+            GameLogger.shutdown();
+        }));
+    }
+}
@@ -0,0 +1,405 @@
+import java.awt.*;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uno
+ *
+ * GameSnapshot class:
+ * The complete state of a round in progress stored in a small versioned
+ * binary format so that it can be saved when the game is closed and
+ * resumed later. The state captured is the rules, the players with their
+ * scores and hands, the deck order, the played pile, the turn order, and
+ * the position within the TurnAction sequence that is running.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class GameSnapshot {
+    /**
+     * Bytes at the start of every saved game to identify the file.
+     */
+    public static final byte[] MAGIC = {'U', 'N', 'O', 'S'};
+    /**
+     * Version of the format. Increased whenever the layout changes so that old saves are rejected.
+     */
+    public static final int FORMAT_VERSION = 1;
+    /**
+     * Name of the file the game in progress is saved to.
+     */
+    public static final String SAVE_FILE = "SavedGame.unosave";
+    /**
+     * Size of the buffer first used to write a snapshot. This fits any normal game, and is doubled when it does not.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * The rules the round was being played with.
+     */
+    private final RuleSet ruleSet;
+    /**
+     * Details to recreate each player in order of their playerID.
+     */
+    private final List<LobbyPlayer> lobbyPlayers;
+    /**
+     * Total score from previous rounds for each player.
+     */
+    private final int[] totalScores;
+    /**
+     * The UNO state for each player.
+     */
+    private final Player.UNOState[] unoStates;
+    /**
+     * The cards in each player's hand.
+     */
+    private final List<List<Card>> hands;
+    /**
+     * The cards in the deck in the order they will be drawn.
+     */
+    private final List<Card> deckCards;
+    /**
+     * The cardID to give the next card created when the deck is refilled.
+     */
+    private int nextCardID;
+    /**
+     * The played pile with the top card last.
+     */
+    private final List<Card> recentCards;
+    /**
+     * The player whose turn it was.
+     */
+    private int currentPlayerID;
+    /**
+     * The direction of turn order.
+     */
+    private boolean isIncreasing;
+    /**
+     * How the running TurnAction sequence was started, or null if there was no sequence running.
+     */
+    private TurnActionFactory.SequenceType sequenceType;
+    /**
+     * Position of the next action to perform within the running sequence.
+     */
+    private int sequenceIndex;
+    /**
+     * The faceValueID of the card that started the running sequence, or -1 when it was drawing a card.
+     */
+    private int sequenceFaceValueID;
+    /**
+     * The data shared by the running sequence.
+     */
+    private final Map<String, Integer> storedData;
+
+    /**
+     * Creates an empty snapshot ready to be filled by read().
+     */
+    private GameSnapshot() {
+        ruleSet = new RuleSet();
+        lobbyPlayers = new ArrayList<>();
+        hands = new ArrayList<>();
+        deckCards = new ArrayList<>();
+        recentCards = new ArrayList<>();
+        storedData = new HashMap<>();
+        totalScores = new int[4];
+        unoStates = new Player.UNOState[4];
+    }
+
+    /**
+     * Writes the state of the game to the file so that it can be resumed with load().
+     *
+     * @param game The game to save.
+     * @param path The file to write to. It is replaced only once the new save is completely written,
+     *             so a crash while saving leaves the previous save.
+     * @throws IOException When the file could not be written.
+     */
+    public static void save(CurrentGameInterface game, Path path) throws IOException {
+        DurableFile.replace(path, write(game));
+    }
+
+    /**
+     * Reads a game saved with save().
+     *
+     * @param path The file to read.
+     * @return The snapshot ready to be used to create a CurrentGameInterface.
+     * @throws IOException When the file could not be read or is not a supported save.
+     */
+    public static GameSnapshot load(Path path) throws IOException {
+        return read(ByteBuffer.wrap(Files.readAllBytes(path)));
+    }
+
+    /**
+     * Gets the path of the file the game in progress is saved to.
+     *
+     * @return The path for SAVE_FILE.
+     */
+    public static Path getSavePath() {
+        return Paths.get(SAVE_FILE);
+    }
+
+    /**
+     * Writes the state of the game into a new buffer. The buffer is grown and the write
+     * repeated if the state does not fit.
+     *
+     * @param game The game to save.
+     * @return A buffer flipped ready to be read containing the saved state.
+     */
+    public static ByteBuffer write(CurrentGameInterface game) {
+        int bufferSize = INITIAL_BUFFER_SIZE;
+        while(true) {
+            ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+            try {
+                write(game, buffer);
+                return buffer.flip();
+            } catch (BufferOverflowException e) {
+                bufferSize *= 2;
+            }
+        }
+    }
+
+    /**
+     * Writes the state of the game into the buffer.
+     *
+     * @param game The game to save.
+     * @param buffer The buffer to write to.
+     * @throws BufferOverflowException When the buffer is too small.
+     */
+    public static void write(CurrentGameInterface game, ByteBuffer buffer) {
+        buffer.put(MAGIC);
+        buffer.put((byte) FORMAT_VERSION);
+        buffer.put((byte) game.getRuleSet().getRuleFlags());
+        buffer.put((byte) game.getRuleSet().getScoreLimitType().ordinal());
+
+        List<Player> players = game.getAllPlayers();
+        GameEventLog.writeVarInt(buffer, players.size());
+        for(Player player : players) {
+            buffer.put((byte) player.getPlayerType().ordinal());
+            buffer.put((byte) (player instanceof AIPlayer ? ((AIPlayer) player).getStrategy().ordinal()
+                                                         : GameEventLog.NO_STRATEGY));
+            byte[] name = player.getPlayerName().getBytes(StandardCharsets.UTF_8);
+            GameEventLog.writeVarInt(buffer, name.length);
+            buffer.put(name);
+            GameEventLog.writeVarInt(buffer, player.getTotalScore());
+            buffer.put((byte) player.getUnoState().ordinal());
+            writeCards(buffer, player.getHand());
+        }
+
+        writeCards(buffer, game.getDeck().getRemainingCards());
+        GameEventLog.writeVarInt(buffer, game.getDeck().getNextCardID());
+        writeCards(buffer, game.getRecentCards());
+        GameEventLog.writeVarInt(buffer, game.getCurrentPlayer().getPlayerID());
+        buffer.put((byte) (game.isIncreasing() ? 1 : 0));
+
+        TurnActionFactory.TurnAction turnAction = game.getPendingTurnAction();
+        if(turnAction == null) {
+            buffer.put((byte) 0);
+            return;
+        }
+        buffer.put((byte) (turnAction.sequenceType.ordinal() + 1));
+        buffer.put((byte) turnAction.sequenceFaceValueID);
+        GameEventLog.writeVarInt(buffer, TurnActionFactory.getSequenceIndex(turnAction));
+        GameEventLog.writeVarInt(buffer, turnAction.storedData.size());
+        for(Map.Entry<String, Integer> entry : turnAction.storedData.entrySet()) {
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            GameEventLog.writeVarInt(buffer, key.length);
+            buffer.put(key);
+            if(entry.getValue() == null) {
+                buffer.put((byte) 0);
+            } else {
+                buffer.put((byte) 1);
+                buffer.putInt(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot written by write().
+     *
+     * @param buffer The buffer to read from.
+     * @return The snapshot ready to be used to create a CurrentGameInterface.
+     * @throws IOException When the data is not a supported save or is incomplete.
+     */
+    public static GameSnapshot read(ByteBuffer buffer) throws IOException {
+        try {
+            for(byte magicByte : MAGIC) {
+                if(buffer.get() != magicByte) {
+                    throw new IOException("Not a saved game.");
+                }
+            }
+            int version = buffer.get();
+            if(version != FORMAT_VERSION) {
+                throw new IOException("Unsupported saved game version " + version);
+            }
+            GameSnapshot snapshot = new GameSnapshot();
+            snapshot.ruleSet.setRuleFlags(buffer.get());
+            snapshot.ruleSet.setScoreLimitType(RuleSet.ScoreLimitType.values()[buffer.get()]);
+
+            int playerCount = GameEventLog.readVarInt(buffer);
+            if(playerCount != 2 && playerCount != 4) {
+                throw new IOException("Saved game has " + playerCount + " players.");
+            }
+            for(int i = 0; i < playerCount; i++) {
+                LobbyPlayer lobbyPlayer = new LobbyPlayer("", Player.PlayerType.values()[buffer.get()],
+                        new Rectangle(0, 0, 0, 0));
+                int strategy = buffer.get() & 0xFF;
+                if(strategy != GameEventLog.NO_STRATEGY) {
+                    lobbyPlayer.setAIStrategy(AIPlayer.AIStrategy.values()[strategy]);
+                }
+                byte[] name = new byte[GameEventLog.readVarInt(buffer)];
+                buffer.get(name);
+                lobbyPlayer.setPlayerName(new String(name, StandardCharsets.UTF_8));
+                snapshot.lobbyPlayers.add(lobbyPlayer);
+                snapshot.totalScores[i] = GameEventLog.readVarInt(buffer);
+                snapshot.unoStates[i] = Player.UNOState.values()[buffer.get()];
+                List<Card> hand = new ArrayList<>();
+                readCards(buffer, hand);
+                snapshot.hands.add(hand);
+            }
+
+            readCards(buffer, snapshot.deckCards);
+            snapshot.nextCardID = GameEventLog.readVarInt(buffer);
+            readCards(buffer, snapshot.recentCards);
+            if(snapshot.recentCards.isEmpty()) {
+                throw new IOException("Saved game has no played cards.");
+            }
+            snapshot.currentPlayerID = GameEventLog.readVarInt(buffer);
+            snapshot.isIncreasing = buffer.get() == 1;
+
+            int sequenceType = buffer.get();
+            if(sequenceType != 0) {
+                snapshot.sequenceType = TurnActionFactory.SequenceType.values()[sequenceType - 1];
+                snapshot.sequenceFaceValueID = buffer.get();
+                snapshot.sequenceIndex = GameEventLog.readVarInt(buffer);
+                int entryCount = GameEventLog.readVarInt(buffer);
+                for(int i = 0; i < entryCount; i++) {
+                    byte[] key = new byte[GameEventLog.readVarInt(buffer)];
+                    buffer.get(key);
+                    snapshot.storedData.put(new String(key, StandardCharsets.UTF_8),
+                            buffer.get() == 1 ? buffer.getInt() : null);
+                }
+            }
+            return snapshot;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Saved game is incomplete or corrupt.", e);
+        }
+    }
+
+    /**
+     * Gets the details needed to recreate each player.
+     *
+     * @return The players in order of their playerID.
+     */
+    public List<LobbyPlayer> getLobbyPlayers() {
+        return lobbyPlayers;
+    }
+
+    /**
+     * Restores the total score from previous rounds to each player.
+     *
+     * @param players The players created from getLobbyPlayers().
+     * @return The same list of players.
+     */
+    public List<Player> restoreTotalScores(List<Player> players) {
+        for(int i = 0; i < players.size(); i++) {
+            players.get(i).restoreTotalScore(totalScores[i]);
+        }
+        return players;
+    }
+
+    /**
+     * Puts the cards back into the hands, deck, and played pile, and resumes the TurnAction
+     * sequence that was running. The game must have been created from this snapshot.
+     *
+     * @param game The game to restore the state into.
+     */
+    public void restore(CurrentGameInterface game) {
+        Deck deck = game.getDeck();
+        GameEventLog eventLog = game.getEventLog();
+        for(int i = 0; i < hands.size(); i++) {
+            Player player = game.getPlayerByID(i);
+            for(Card card : hands.get(i)) {
+                card.position.setPosition(deck.position.x, deck.position.y);
+                eventLog.logCardEvent(GameEventLog.EventType.Deal, i, card);
+                player.addCardToHand(card);
+            }
+            player.setUnoState(unoStates[i]);
+        }
+        deck.restoreCards(deckCards, nextCardID);
+
+        Card topCard = recentCards.get(recentCards.size()-1);
+        eventLog.logCardEvent(GameEventLog.EventType.FirstCard, currentPlayerID, topCard);
+        for(Card card : recentCards) {
+            card.position.setPosition(deck.position.x, deck.position.y);
+            game.placeCard(card);
+        }
+
+        if(sequenceType != null) {
+            game.setCurrentTurnAction(TurnActionFactory.rebuildSequence(sequenceType, sequenceFaceValueID,
+                    storedData, sequenceIndex));
+        }
+    }
+
+    /**
+     * Gets the rules the round was being played with.
+     *
+     * @return The restored rules.
+     */
+    public RuleSet getRuleSet() {
+        return ruleSet;
+    }
+
+    /**
+     * Gets the player whose turn it was.
+     *
+     * @return The current playerID.
+     */
+    public int getCurrentPlayerID() {
+        return currentPlayerID;
+    }
+
+    /**
+     * Gets the direction of turn order.
+     *
+     * @return True if turn order was increasing.
+     */
+    public boolean isIncreasing() {
+        return isIncreasing;
+    }
+
+    /**
+     * Writes the number of cards followed by each card.
+     *
+     * @param buffer The buffer to write to.
+     * @param cards The cards to write.
+     */
+    private static void writeCards(ByteBuffer buffer, List<Card> cards) {
+        GameEventLog.writeVarInt(buffer, cards.size());
+        for(Card card : cards) {
+            GameEventLog.writeCard(buffer, card);
+        }
+    }
+
+    /**
+     * Reads cards written by writeCards().
+     *
+     * @param buffer The buffer to read from.
+     * @param cards The list to add the cards to.
+     */
+    private static void readCards(ByteBuffer buffer, List<Card> cards) {
+        int count = GameEventLog.readVarInt(buffer);
+        for(int i = 0; i < count; i++) {
+            int cardID = GameEventLog.readVarInt(buffer);
+            int faceAndColour = buffer.get();
+            cards.add(new Card(faceAndColour / 5, faceAndColour % 5, cardID));
+        }
+    }
+}
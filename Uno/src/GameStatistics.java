@@ -0,0 +1,293 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+
+/**
+ * Uno
+ *
+ * GameStatistics class:
+ * Aggregates statistics over recorded games. Each record is decoded once and
+ * added to fixed size counters and histograms, and the results from separate
+ * threads are merged at the end, so any number of games can be processed in
+ * parallel using a constant amount of memory.
+ *
+ * The statistics gathered are the win rate by AIStrategy and seat, turns per round,
+ * the +4 challenge success rate, the length of +2/+4 stacking chains, and the round
+ * score of the winner for each ScoreLimitType.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class GameStatistics {
+    /**
+     * Number of strategy categories. One for each AIStrategy and one for players who are not AI.
+     */
+    private static final int STRATEGY_CATEGORIES = AIPlayer.AIStrategy.values().length + 1;
+    /**
+     * The most players a round can have.
+     */
+    private static final int MAX_SEATS = 4;
+
+    /**
+     * Number of rounds aggregated.
+     */
+    private long roundCount;
+    /**
+     * Rounds played for each strategy category and seat.
+     */
+    private final long[][] roundsPlayed;
+    /**
+     * Rounds won for each strategy category and seat.
+     */
+    private final long[][] roundsWon;
+    /**
+     * Number of turns in each round.
+     */
+    private final StatHistogram turnsPerRound;
+    /**
+     * Number of +4 cards that were challenged.
+     */
+    private long challengeCount;
+    /**
+     * Number of challenges where the player of the +4 could have played another card.
+     */
+    private long challengeSuccessCount;
+    /**
+     * Number of +2 and +4 cards played in a row before someone had to draw.
+     */
+    private final StatHistogram stackingChainLength;
+    /**
+     * The round score of the winner for each ScoreLimitType.
+     */
+    private final StatHistogram[] scoreByLimitType;
+
+    /**
+     * Creates empty statistics ready to add rounds to.
+     */
+    public GameStatistics() {
+        roundsPlayed = new long[STRATEGY_CATEGORIES][MAX_SEATS];
+        roundsWon = new long[STRATEGY_CATEGORIES][MAX_SEATS];
+        turnsPerRound = new StatHistogram();
+        stackingChainLength = new StatHistogram();
+        scoreByLimitType = new StatHistogram[RuleSet.ScoreLimitType.values().length];
+        for(int i = 0; i < scoreByLimitType.length; i++) {
+            scoreByLimitType[i] = new StatHistogram();
+        }
+    }
+
+    /**
+     * Aggregates every round in a GameRecordStore using all available processors.
+     *
+     * @param folder Folder containing the store's segment files.
+     * @return The combined statistics.
+     * @throws IOException When a segment could not be read.
+     */
+    public static GameStatistics aggregate(Path folder) throws IOException {
+        return aggregate(GameRecordStore.openSegments(folder));
+    }
+
+    /**
+     * Aggregates every round in the segments using all available processors.
+     *
+     * @param segments The segments to read.
+     * @return The combined statistics.
+     */
+    public static GameStatistics aggregate(List<GameRecordSegment> segments) {
+        return StreamSupport.stream(new GameRecordSpliterator(segments), true)
+                .collect(GameStatistics::new, GameStatistics::addRound, GameStatistics::merge);
+    }
+
+    /**
+     * Decodes a recorded round and adds it to the statistics. Rounds that did not finish are ignored.
+     *
+     * @param record A complete event log.
+     */
+    public void addRound(ByteBuffer record) {
+        GameRecordReader reader = new GameRecordReader(record);
+        int turns = 0;
+        int winnerID = -1;
+        int winnerScore = 0;
+        int challenges = 0;
+        int challengeSuccesses = 0;
+        StackingChainCounter stackingChain = new StackingChainCounter();
+        while(reader.nextEvent()) {
+            int endedChainLength = stackingChain.addEvent(reader);
+            if(endedChainLength > 0) stackingChainLength.record(endedChainLength);
+            switch (reader.getEventType()) {
+                case NextTurn -> turns++;
+                case ChallengeResult -> {
+                    challenges++;
+                    if(reader.getValue() == 1) challengeSuccesses++;
+                }
+                case RoundEnd -> {
+                    winnerID = reader.getPlayerID();
+                    winnerScore = reader.getValue();
+                }
+            }
+        }
+        if(winnerID == -1) return;
+        if(stackingChain.getChainLength() > 0) stackingChainLength.record(stackingChain.getChainLength());
+
+        roundCount++;
+        for(int playerID = 0; playerID < reader.getPlayerCount() && playerID < MAX_SEATS; playerID++) {
+            int category = getStrategyCategory(reader.getStrategy(playerID));
+            roundsPlayed[category][playerID]++;
+            if(playerID == winnerID) {
+                roundsWon[category][playerID]++;
+            }
+        }
+        turnsPerRound.record(turns);
+        challengeCount += challenges;
+        challengeSuccessCount += challengeSuccesses;
+        scoreByLimitType[reader.getScoreLimitType().ordinal()].record(winnerScore);
+    }
+
+    /**
+     * Adds the statistics gathered by another instance to this one.
+     *
+     * @param other The statistics to add.
+     */
+    public void merge(GameStatistics other) {
+        roundCount += other.roundCount;
+        for(int category = 0; category < STRATEGY_CATEGORIES; category++) {
+            for(int seat = 0; seat < MAX_SEATS; seat++) {
+                roundsPlayed[category][seat] += other.roundsPlayed[category][seat];
+                roundsWon[category][seat] += other.roundsWon[category][seat];
+            }
+        }
+        turnsPerRound.merge(other.turnsPerRound);
+        challengeCount += other.challengeCount;
+        challengeSuccessCount += other.challengeSuccessCount;
+        stackingChainLength.merge(other.stackingChainLength);
+        for(int i = 0; i < scoreByLimitType.length; i++) {
+            scoreByLimitType[i].merge(other.scoreByLimitType[i]);
+        }
+    }
+
+    /**
+     * Gets the number of finished rounds aggregated.
+     *
+     * @return The round count.
+     */
+    public long getRoundCount() {
+        return roundCount;
+    }
+
+    /**
+     * Gets the fraction of rounds won by players with a strategy in a seat.
+     *
+     * @param strategy The strategy, or null for players who are not AI.
+     * @param seat The playerID.
+     * @return The win rate from 0 to 1, or 0 if there were no rounds.
+     */
+    public double getWinRate(AIPlayer.AIStrategy strategy, int seat) {
+        int category = strategy == null ? STRATEGY_CATEGORIES - 1 : strategy.ordinal();
+        long played = roundsPlayed[category][seat];
+        return played == 0 ? 0 : (double) roundsWon[category][seat] / played;
+    }
+
+    /**
+     * Gets the distribution of the number of turns in each round.
+     *
+     * @return The histogram of turns per round.
+     */
+    public StatHistogram getTurnsPerRound() {
+        return turnsPerRound;
+    }
+
+    /**
+     * Gets the fraction of +4 challenges that succeeded.
+     *
+     * @return The success rate from 0 to 1, or 0 if there were no challenges.
+     */
+    public double getChallengeSuccessRate() {
+        return challengeCount == 0 ? 0 : (double) challengeSuccessCount / challengeCount;
+    }
+
+    /**
+     * Gets the distribution of the number of +2 and +4 cards played in a row before someone had to draw.
+     *
+     * @return The histogram of chain lengths.
+     */
+    public StatHistogram getStackingChainLength() {
+        return stackingChainLength;
+    }
+
+    /**
+     * Gets the distribution of the winner's round score for a ScoreLimitType.
+     *
+     * @param scoreLimitType The score limit to look up.
+     * @return The histogram of winning scores.
+     */
+    public StatHistogram getScoreDistribution(RuleSet.ScoreLimitType scoreLimitType) {
+        return scoreByLimitType[scoreLimitType.ordinal()];
+    }
+
+    /**
+     * Creates a readable report of all the statistics.
+     *
+     * @return The report with one statistic per line.
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append("Rounds: ").append(roundCount).append('\n');
+        report.append("Win rate by strategy and seat:\n");
+        for(int category = 0; category < STRATEGY_CATEGORIES; category++) {
+            String name = category == STRATEGY_CATEGORIES - 1 ? "Player"
+                                        : AIPlayer.AIStrategy.values()[category].toString();
+            report.append(String.format("  %-10s", name));
+            for(int seat = 0; seat < MAX_SEATS; seat++) {
+                long played = roundsPlayed[category][seat];
+                report.append(played == 0 ? "       -      "
+                        : String.format(" %5.1f%% (%5d)", 100.0 * roundsWon[category][seat] / played, played));
+            }
+            report.append('\n');
+        }
+        report.append("Turns per round: ").append(turnsPerRound).append('\n');
+        report.append(String.format("+4 challenge success rate: %.1f%% of %d%n",
+                100 * getChallengeSuccessRate(), challengeCount));
+        report.append("Stacking chain length: ").append(stackingChainLength).append('\n');
+        report.append("Winning score by score limit:\n");
+        for(RuleSet.ScoreLimitType scoreLimitType : RuleSet.ScoreLimitType.values()) {
+            StatHistogram scores = scoreByLimitType[scoreLimitType.ordinal()];
+            if(scores.getCount() > 0) {
+                report.append(String.format("  %-10s %s%n", scoreLimitType, scores));
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Entry point to print the statistics for every round in a GameRecordStore, such as one
+     * filled by a GameServer given a record folder.
+     *
+     * @param args The folder containing the store's segment files.
+     * @throws IOException When a segment could not be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Usage: java GameStatistics recordFolder");
+        } else {
+            long startTime = System.nanoTime();
+            GameStatistics statistics = aggregate(Paths.get(args[0]));
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "Aggregated in {} ms\n{}",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), statistics);
+        }
+        GameLogger.shutdown();
+    }
+
+    /**
+     * Maps a strategy from a record to its category.
+     *
+     * @param strategy The AIStrategy ordinal, or GameEventLog.NO_STRATEGY.
+     * @return The index into roundsPlayed and roundsWon.
+     */
+    private static int getStrategyCategory(int strategy) {
+        return strategy < STRATEGY_CATEGORIES - 1 ? strategy : STRATEGY_CATEGORIES - 1;
+    }
+}
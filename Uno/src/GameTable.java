@@ -0,0 +1,1517 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Uno
+ *
+ * GameTable class:
+ * Defines a table hosted by the GameServer where remote clients play in the seats
+ * of a CurrentGameInterface. The table is created for the clients the Matchmaker put
+ * together and starts once they have all been seated, with AIPlayers in the seats left
+ * over. Every method must be called from the event loop thread
+ * that owns the table, and the game is bound to that thread before it is used.
+ * The client being waited on has RuleSet.getDefaultTimeOut() seconds to act before the
+ * default choice is made for them. On an event loop the timeout is scheduled on the
+ * loop's TimerWheel, and on a runner the thread parks until the deadline.
+ * When the table is given a TableRunner it is handed over to the runner's thread as
+ * soon as it starts, and calls from the event loop are passed on through its mailbox.
+ * WireProtocol messages from clients are turned into the same actions the GUI issues.
+ *
+ * Each client is sent a Snapshot of the whole state it can see when a round starts and
+ * every SNAPSHOT_INTERVAL Deltas after that. A Delta only carries what changed since the
+ * last frame, starting with a byte of DELTA flags. The public part is found and encoded
+ * once for the table, and then each seat adds the cards that entered or left its hand.
+ *
+ * Snapshot: turnNumber, currentPlayerID | isIncreasing << 7, topCard, playerCount,
+ *   handSize..., Decision, totalScore..., handCount, card...
+ * Delta: flags, then for each flag set in order:
+ *   DELTA_TURN (turnNumber, currentPlayerID | isIncreasing << 7), DELTA_TOP_CARD (card),
+ *   DELTA_HAND_SIZES (count, then playerID and handSize for each), DELTA_DECISION (Decision),
+ *   DELTA_CARDS_ADDED (count, card...), DELTA_CARDS_REMOVED (count, cardID...).
+ *
+ * Spectators are sent every frame broadcast to the seats along with the public part of each
+ * Delta and Snapshots with an empty hand. These are encoded once and shared by every spectator
+ * through the SpectatorGroup, which stays on the event loop. Every hand is revealed to everyone
+ * with HandsRevealed when a round ends.
+ *
+ * A client who disconnects keeps their seat. Every frame sent to a seat is kept in a
+ * FrameHistory, including while the seat is empty, so a client that comes back with
+ * Resume and the seat's resumeToken is sent only the frames it missed. When they are
+ * no longer kept it is sent the players and a Snapshot instead. A started table stays
+ * open for RESUME_TIMEOUT after the last client leaves.
+ *
+ * Clients race each other to JumpIn, AntiUno, and CallUNO once they can be caught with one
+ * card, so these open a short window in the table's InputSequencer instead of being applied
+ * as they arrive. Other messages received in the window are only held if they could change
+ * the result of a held race; see shouldHold(). Held messages are applied together once the
+ * window closes, in the order the event loops read them.
+ * Messages read at the same time go to the seat that comes first after the current player
+ * in the direction of play, so every race has one result however the threads were scheduled.
+ *
+ * A table can also be opened with its seats reserved for clients seated elsewhere, who claim
+ * them with Resume and the resumeToken they were given. This is how a ShardWorker hosts the
+ * tables formed by the ShardCoordinator. A table can be exported to move it to another
+ * process, which stops it and encodes the seats, players, scores, and a GameSnapshot of the
+ * round. The imported table reserves every seat that could be resumed and carries on with the
+ * round once it is next updated, sending each seat the players and a Snapshot.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class GameTable {
+    /**
+     * Time in ms a table waits for the clients matched to it before starting without those that have not arrived.
+     */
+    public static final int FILL_WITH_AI_DELAY = 10000;
+    /**
+     * Time in ms between a round ending and the next round starting.
+     */
+    public static final int NEXT_ROUND_DELAY = 5000;
+    /**
+     * Time in ms a started table waits for a client to resume once every client has left.
+     */
+    public static final int RESUME_TIMEOUT = 60000;
+    /**
+     * Most bytes of frames kept for each seat. Enough for the frames of around 30 turns.
+     */
+    private static final int HISTORY_SIZE = 2048;
+    /**
+     * Most frames kept for each seat.
+     */
+    private static final int HISTORY_FRAMES = 128;
+    /**
+     * Creates the resumeTokens, which must not be guessable.
+     */
+    private static final SecureRandom tokenGenerator = new SecureRandom();
+
+    /**
+     * Unique ID of the table on the server.
+     */
+    private final int tableID;
+    /**
+     * The clients in each seat indexed by playerID. Empty seats are null.
+     */
+    private final ClientConnection[] seats;
+    /**
+     * The name each client joined with indexed by playerID, or null for seats never taken.
+     */
+    private final String[] playerNames;
+    /**
+     * The token a client must send with Resume to take back each seat, or 0 for seats that cannot be resumed.
+     * Only changed on the event loop.
+     */
+    private final long[] resumeTokens;
+    /**
+     * The frames sent to each seat that can be resumed, otherwise null.
+     */
+    private final FrameHistory[] histories;
+    /**
+     * True for seats held for a client that has not yet claimed them with Resume. Their claim is not announced with Returned.
+     */
+    private final boolean[] isReserved;
+    /**
+     * System.nanoTime() when the last client left the table.
+     */
+    private long desertedTime;
+    /**
+     * The rules the games at the table are played with.
+     */
+    private final RuleSet ruleSet;
+    /**
+     * Number of seats that have been taken including by clients who have since left.
+     */
+    private int seatsTaken;
+    /**
+     * Number of clients matched to the table that have not yet been seated or given up on.
+     */
+    private int pendingClientCount;
+    /**
+     * The strategy of the AIPlayers put in the seats without a client.
+     */
+    private final AIPlayer.AIStrategy aiStrategy;
+    /**
+     * The players in the game. Null until the table starts.
+     */
+    private List<Player> players;
+    /**
+     * The round being played, or the last round if it has ended. Null until the table starts.
+     */
+    private CurrentGameInterface game;
+    /**
+     * The round the table was playing when it was exported, until it is resumed here. Otherwise null.
+     */
+    private GameSnapshot importedRound;
+    /**
+     * True once the table has been exported and must be removed without sending anything more.
+     */
+    private boolean isMigrated;
+    /**
+     * Time in ms spent waiting for clients, or for the next round after the round ended.
+     */
+    private int waitTimer;
+    /**
+     * Size of the frameBuffer. Large enough for a Snapshot or Delta holding every card in the deck.
+     */
+    private static final int FRAME_BUFFER_SIZE = 1024;
+
+    /**
+     * Buffer used to build frames before they are sent.
+     */
+    private final ByteBuffer frameBuffer;
+    /**
+     * Runs the table on its own thread once started, or null to update it on the event loop.
+     */
+    private TableRunner runner;
+    /**
+     * True when any of the players is an AIPlayer, so the table must keep ticking for them.
+     */
+    private boolean hasAIPlayers;
+    /**
+     * The event loop's wheel that timeouts are scheduled on until a runner takes over.
+     */
+    private final TimerWheel timerWheel;
+    /**
+     * The timeout for the client being waited on when scheduled on the timerWheel, or null.
+     */
+    private TimerWheel.Timeout timeOut;
+    /**
+     * System.nanoTime() when the client being waited on runs out of time on a runner, or 0 when not waiting.
+     */
+    private long timeOutDeadline;
+    /**
+     * Holds contested messages until their window closes. Only used from the thread that owns the table.
+     */
+    private InputSequencer sequencer;
+    /**
+     * The clients watching the table. Only used from the event loop.
+     */
+    private final SpectatorGroup spectators;
+    /**
+     * True when the spectators asked for a Snapshot while the table is updated on the event loop.
+     */
+    private boolean isSpectatorSnapshotDue;
+
+    /**
+     * Counts the state sent by the tables on the event loop.
+     */
+    private final WireProtocol.Statistics statistics;
+    /**
+     * The turnNumber last sent to the clients.
+     */
+    private int sentTurnNumber;
+    /**
+     * The current playerID last sent to the clients.
+     */
+    private int sentCurrentPlayerID;
+    /**
+     * The direction of play last sent to the clients.
+     */
+    private boolean sentIsIncreasing;
+    /**
+     * The cardID of the top card last sent to the clients.
+     */
+    private int sentTopCardID;
+    /**
+     * The faceValueID * 5 + colourID of the top card last sent. A wild changes colour without changing cardID.
+     */
+    private int sentTopCardValue;
+    /**
+     * The hand size of each player last sent to the clients.
+     */
+    private int[] sentHandSizes;
+    /**
+     * The Decision last sent to the clients.
+     */
+    private WireProtocol.Decision sentDecision;
+    /**
+     * The cardIDs of the hand last sent to each seat.
+     */
+    private final List<List<Integer>> sentHands;
+    /**
+     * Number of Deltas sent to each seat since its last Snapshot.
+     */
+    private final int[] deltasSinceSnapshot;
+
+    /**
+     * Creates an empty table waiting for the clients matched to it.
+     *
+     * @param tableID Unique ID of the table on the server.
+     * @param ruleSet The rules to play with. The table has 2 seats when they are for two players, otherwise 4.
+     * @param clientCount Number of clients matched to the table, at most the number of seats.
+     * @param aiStrategy The strategy of the AIPlayers put in the seats without a client.
+     * @param statistics Counts the state sent by the tables on the event loop.
+     * @param timerWheel The event loop's wheel to schedule timeouts on.
+     */
+    public GameTable(int tableID, RuleSet ruleSet, int clientCount, AIPlayer.AIStrategy aiStrategy,
+                     WireProtocol.Statistics statistics, TimerWheel timerWheel) {
+        this.tableID = tableID;
+        this.ruleSet = ruleSet;
+        this.aiStrategy = aiStrategy;
+        this.statistics = statistics;
+        this.timerWheel = timerWheel;
+        pendingClientCount = clientCount;
+        int seatCount = ruleSet.getOnlyTwoPlayers() ? 2 : 4;
+        seats = new ClientConnection[seatCount];
+        playerNames = new String[seatCount];
+        resumeTokens = new long[seatCount];
+        histories = new FrameHistory[seatCount];
+        isReserved = new boolean[seatCount];
+        sentHands = new ArrayList<>();
+        for(int i = 0; i < seatCount; i++) {
+            sentHands.add(new ArrayList<>());
+        }
+        deltasSinceSnapshot = new int[seatCount];
+        frameBuffer = ByteBuffer.allocate(FRAME_BUFFER_SIZE);
+        spectators = new SpectatorGroup(this::requestSpectatorSnapshot);
+        sequencer = new InputSequencer(InputSequencer.DEFAULT_WINDOW);
+    }
+
+    /**
+     * Gets the unique ID of the table.
+     *
+     * @return The tableID.
+     */
+    public int getTableID() {
+        return tableID;
+    }
+
+    /**
+     * Sets the runner that takes over the table once it starts. Must be set before any client joins.
+     *
+     * @param runner The runner for the table.
+     */
+    public void setRunner(TableRunner runner) {
+        this.runner = runner;
+    }
+
+    /**
+     * Sets how long contested messages are held so that those sent at nearly the same time
+     * are applied in the order they were received. Must be set before any client joins.
+     *
+     * @param windowMillis Time in ms to hold them for, or 0 to apply every message as it arrives.
+     */
+    public void setArbitrationWindow(int windowMillis) {
+        sequencer = new InputSequencer(windowMillis);
+    }
+
+    /**
+     * Gets the runner that takes over the table once it starts.
+     *
+     * @return The runner, or null when the table is updated on the event loop.
+     */
+    public TableRunner getRunner() {
+        return runner;
+    }
+
+    /**
+     * Gets the clients watching the table. Must be called from the event loop.
+     *
+     * @return The table's spectators.
+     */
+    public SpectatorGroup getSpectators() {
+        return spectators;
+    }
+
+    /**
+     * Checks if every client has left the table and stopped waiting for them to resume. A table
+     * handed to a runner is abandoned once its thread has finished.
+     *
+     * @return True once the table can be removed.
+     */
+    public boolean isAbandoned() {
+        if(isRunnerStarted()) return runner.isFinished();
+        return isDeserted();
+    }
+
+    /**
+     * Checks if every seat is empty and the clients can no longer resume. A table that has not
+     * started is deserted once every seat is empty and no more clients are on their way.
+     * Must be called from the thread that owns the table.
+     *
+     * @return True once nobody is seated and RESUME_TIMEOUT has passed since the last client left.
+     */
+    public boolean isDeserted() {
+        if(isMigrated) return true;
+        if(!hasNoClients()) return false;
+        if(players == null) return pendingClientCount == 0;
+        return System.nanoTime() - desertedTime >= TimeUnit.MILLISECONDS.toNanos(RESUME_TIMEOUT);
+    }
+
+    /**
+     * Checks if every seat is empty. Must be called from the thread that owns the table.
+     *
+     * @return True once nobody is seated at the table.
+     */
+    public boolean hasNoClients() {
+        for(ClientConnection seat : seats) {
+            if(seat != null) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Seats a client matched to the table at the next free seat. The game starts once every
+     * client matched has been seated or given up on.
+     *
+     * @param connection The client joining.
+     * @param playerName The name to show for the client.
+     */
+    public void addConnection(ClientConnection connection, String playerName) {
+        pendingClientCount--;
+        int seatID = seatsTaken++;
+        seats[seatID] = connection;
+        playerNames[seatID] = playerName;
+        connection.setSeat(this, seatID, playerName);
+        long resumeToken = createResumeToken();
+        resumeTokens[seatID] = resumeToken;
+        histories[seatID] = new FrameHistory(HISTORY_SIZE, HISTORY_FRAMES);
+        ByteBuffer frame = WireProtocol.beginFrame(frameBuffer, WireProtocol.ServerMessage.Seated.ordinal());
+        GameEventLog.writeVarInt(frame, tableID);
+        frame.put((byte) seatID);
+        frame.put((byte) seats.length);
+        frame.putLong(resumeToken);
+        send(connection, WireProtocol.endFrame(frame));
+        if(pendingClientCount == 0) {
+            startTable();
+        }
+    }
+
+    /**
+     * Holds the next free seat for a client matched to the table somewhere else. The client
+     * claims it by sending Resume with the resumeToken and a frameCount of 0, and the game
+     * starts once every seat reserved has been claimed. Must be called before any client arrives.
+     *
+     * @param playerName The name the client joined with.
+     * @param resumeToken The token the client was sent with Seated, from createResumeToken().
+     */
+    public void reserveSeat(String playerName, long resumeToken) {
+        int seatID = seatsTaken++;
+        playerNames[seatID] = playerName;
+        resumeTokens[seatID] = resumeToken;
+        histories[seatID] = new FrameHistory(HISTORY_SIZE, HISTORY_FRAMES);
+        isReserved[seatID] = true;
+    }
+
+    /**
+     * Creates a token that a client must send to resume its seat.
+     *
+     * @return A random token that is never 0.
+     */
+    public static long createResumeToken() {
+        long resumeToken;
+        do {
+            resumeToken = tokenGenerator.nextLong();
+        } while(resumeToken == 0);
+        return resumeToken;
+    }
+
+    /**
+     * Checks if the players have been created and the table handed to its runner, if it has one.
+     *
+     * @return True once the table has started.
+     */
+    public boolean hasStarted() {
+        return players != null;
+    }
+
+    /**
+     * Checks if the table is still waiting for clients matched to it.
+     *
+     * @return True until every client matched has been seated or given up on.
+     */
+    public boolean isWaitingForClients() {
+        return players == null && pendingClientCount > 0;
+    }
+
+    /**
+     * Gives up on a client matched to the table who left before they could be seated. The game
+     * starts if the others have all been seated, and a table nobody reached is deserted.
+     */
+    public void cancelPendingClient() {
+        pendingClientCount--;
+        if(pendingClientCount == 0 && players == null && !hasNoClients()) {
+            startTable();
+        }
+    }
+
+    /**
+     * Checks if a client can take back a seat. Must be called from the event loop.
+     *
+     * @param seatID The seat to take back.
+     * @param resumeToken The token the client was sent with Seated.
+     * @return True if the seat can be resumed with the token.
+     */
+    public boolean canResume(int seatID, long resumeToken) {
+        return seatID < seats.length && resumeTokens[seatID] != 0 && resumeTokens[seatID] == resumeToken;
+    }
+
+    /**
+     * Seats a client who reconnected in the seat they had, replacing any connection still there.
+     * They are sent Resumed and then the frames they missed, passing through the runner's thread
+     * once a runner has taken over. Must be called from the event loop after canResume().
+     *
+     * @param connection The client who reconnected.
+     * @param seatID The seat to take back.
+     * @param frameCount Number of frames the client received in the seat before it disconnected.
+     */
+    public void resumeConnection(ClientConnection connection, int seatID, int frameCount) {
+        connection.setSeat(this, seatID, playerNames[seatID]);
+        if(isRunnerStarted()) {
+            runner.execute(() -> resumeConnectionNow(connection, frameCount));
+        } else {
+            resumeConnectionNow(connection, frameCount);
+        }
+    }
+
+    /**
+     * Seats a client who reconnected on the thread that owns the table and catches them up.
+     * The others are told with Returned if the seat was empty. A client claiming a reserved
+     * seat is not announced, and the table starts once the last reserved seat is claimed.
+     *
+     * @param connection The client who reconnected, already given its seat.
+     * @param frameCount Number of frames the client received in the seat before it disconnected.
+     */
+    private void resumeConnectionNow(ClientConnection connection, int frameCount) {
+        int seatID = connection.getSeatID();
+        boolean wasEmpty = seats[seatID] == null && !isReserved[seatID];
+        boolean isClaimed = isReserved[seatID];
+        isReserved[seatID] = false;
+        seats[seatID] = connection;
+        FrameHistory history = histories[seatID];
+        boolean isReplayed = history.isKept(frameCount);
+        ByteBuffer frame = WireProtocol.beginFrame(frameBuffer, WireProtocol.ServerMessage.Resumed.ordinal());
+        frame.put((byte) seatID);
+        GameEventLog.writeVarInt(frame, isReplayed ? frameCount : history.getNextFrame());
+        send(connection, WireProtocol.endFrame(frame));
+        if(isReplayed) {
+            history.replay(frameCount, missedFrame -> send(connection, missedFrame));
+        } else if(players != null) {
+            for(int i = 0; i < players.size(); i++) {
+                sendToSeat(seatID, encodePlayerInfo(frameBuffer, i));
+            }
+            if(game != null && !game.isRoundOver()) {
+                sendSnapshot(seatID);
+            }
+        }
+        if(wasEmpty) {
+            frame = WireProtocol.beginFrame(frameBuffer, WireProtocol.ServerMessage.Returned.ordinal());
+            frame.put((byte) seatID);
+            broadcast(WireProtocol.endFrame(frame));
+        }
+        if(isClaimed && players == null && --pendingClientCount == 0) {
+            startTable();
+        }
+    }
+
+    /**
+     * Adds a client watching the table. They are sent Watching and the players if the table
+     * has started, followed by a Snapshot once the table gets to it. Must be called from the event loop.
+     *
+     * @param connection The client who asked to watch.
+     */
+    public void addSpectator(ClientConnection connection) {
+        connection.setSpectating(this);
+        // The frameBuffer may belong to the runner's thread, so the frames are built separately.
+        ByteBuffer frame = WireProtocol.beginFrame(ByteBuffer.allocate(16), WireProtocol.ServerMessage.Watching.ordinal());
+        GameEventLog.writeVarInt(frame, tableID);
+        frame.put((byte) seats.length);
+        connection.send(WireProtocol.endFrame(frame));
+        if(players != null) {
+            ByteBuffer playerInfo = ByteBuffer.allocate(128);
+            for(int i = 0; i < players.size(); i++) {
+                connection.send(encodePlayerInfo(playerInfo, i));
+            }
+        }
+        spectators.add(connection);
+    }
+
+    /**
+     * Removes a client who stopped watching the table. Must be called from the event loop.
+     *
+     * @param connection The spectator who left.
+     */
+    public void removeSpectator(ClientConnection connection) {
+        spectators.remove(connection);
+    }
+
+    /**
+     * Empties the seat of a client who disconnected. Their player stays in the game.
+     *
+     * @param connection The client who left.
+     */
+    public void removeConnection(ClientConnection connection) {
+        if(isRunnerStarted()) {
+            runner.execute(() -> removeConnectionNow(connection));
+        } else {
+            removeConnectionNow(connection);
+        }
+    }
+
+    /**
+     * Empties the seat of a client who disconnected on the thread that owns the table.
+     *
+     * @param connection The client who left.
+     */
+    private void removeConnectionNow(ClientConnection connection) {
+        if(seats[connection.getSeatID()] != connection) return;
+        seats[connection.getSeatID()] = null;
+        if(hasNoClients()) {
+            desertedTime = System.nanoTime();
+        }
+        ByteBuffer frame = WireProtocol.beginFrame(frameBuffer, WireProtocol.ServerMessage.Left.ordinal());
+        frame.put((byte) connection.getSeatID());
+        broadcast(WireProtocol.endFrame(frame));
+    }
+
+    /**
+     * Updates the table from the event loop. Does nothing once a runner has taken over the table.
+     * Tables only waiting on their clients are skipped because a message or the timeout on the
+     * timerWheel will move them on.
+     *
+     * @param deltaTime Time since last update.
+     */
+    public void update(int deltaTime) {
+        if(isRunnerStarted()) return;
+        if(isSpectatorSnapshotDue) {
+            publishSpectatorSnapshot();
+        }
+        if(getParkTime() != Long.MAX_VALUE) {
+            updateTable(deltaTime);
+        }
+    }
+
+    /**
+     * Starts the table once it has waited long enough, or updates the round and sends
+     * any changes. The next round is started a short time after a round ends.
+     * Must be called from the thread that owns the table.
+     *
+     * @param deltaTime Time since last update.
+     */
+    public void updateTable(int deltaTime) {
+        if(players == null) {
+            waitTimer += deltaTime;
+            if(waitTimer >= FILL_WITH_AI_DELAY) {
+                // A client lost while being handed over between event loops never arrives.
+                pendingClientCount = 0;
+                if(!hasNoClients()) {
+                    startTable();
+                }
+            }
+            return;
+        }
+        // A runner starts the first round on its own thread, and an imported table carries on with its round.
+        if(game == null) {
+            if(importedRound != null) {
+                resumeRound();
+            } else {
+                startRound();
+            }
+            return;
+        }
+        CurrentGameInterface.bindToCurrentThread(game);
+        if(sequencer.isDue(System.nanoTime())) {
+            resolveInputs();
+        }
+        if(timeOutDeadline != 0 && System.nanoTime() - timeOutDeadline >= 0) {
+            handleTimeOut();
+        }
+        if(game.isRoundOver()) {
+            waitTimer += deltaTime;
+            if(waitTimer >= NEXT_ROUND_DELAY) {
+                startRound();
+            }
+            return;
+        }
+        game.update(deltaTime);
+        sendChanges();
+        if(game.isRoundOver()) {
+            sendRoundEnd();
+        }
+    }
+
+    /**
+     * Gets how long the table can go without an update. Tables where only clients can act
+     * next wait for a message or for the client to run out of time. A table every client has
+     * left wakes by the time RESUME_TIMEOUT runs out so that it can be removed. A table holding
+     * contested messages wakes when their window closes.
+     *
+     * @return Time in ms to park for, Long.MAX_VALUE to park until a message arrives or the
+     *         timerWheel expires the timeout, or 0 to keep ticking.
+     */
+    public long getParkTime() {
+        if(game == null || hasAIPlayers) return 0;
+        long parkTime = 0;
+        if(game.isRoundOver()) {
+            parkTime = Math.max(1, NEXT_ROUND_DELAY - waitTimer);
+        } else if(game.getCurrentTurnAction() == null || game.getWaitingDecisionAction() != null) {
+            parkTime = timeOutDeadline == 0 ? Long.MAX_VALUE
+                    : Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeOutDeadline - System.nanoTime()));
+        }
+        if(parkTime != 0 && sequencer.isOpen()) {
+            parkTime = Math.min(parkTime, sequencer.getTimeLeft(System.nanoTime()));
+        }
+        if(parkTime != 0 && hasNoClients()) {
+            long resumeTimeLeft = RESUME_TIMEOUT - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - desertedTime);
+            parkTime = Math.min(parkTime, Math.max(1, resumeTimeLeft));
+        }
+        return parkTime;
+    }
+
+    /**
+     * Performs a message sent by a client seated at the table, passing it to the runner's
+     * thread once a runner has taken over.
+     *
+     * @param connection The client who sent the message.
+     * @param messageType The type of message, which is never Join.
+     * @param payload The rest of the frame after the message type. Only valid until this returns.
+     * @param receiveTime System.nanoTime() when the event loop read the message.
+     */
+    public void handleMessage(ClientConnection connection, WireProtocol.ClientMessage messageType, ByteBuffer payload, long receiveTime) {
+        if(isRunnerStarted()) {
+            ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+            copy.put(payload).flip();
+            runner.execute(() -> handleMessageNow(connection, messageType, copy, receiveTime));
+        } else {
+            handleMessageNow(connection, messageType, payload, receiveTime);
+        }
+    }
+
+    /**
+     * Performs a message on the thread that owns the table, or holds it in the sequencer
+     * while a contested message's window is open.
+     *
+     * @param connection The client who sent the message.
+     * @param messageType The type of message, which is never Join.
+     * @param payload The rest of the frame after the message type.
+     * @param receiveTime System.nanoTime() when the event loop read the message.
+     */
+    private void handleMessageNow(ClientConnection connection, WireProtocol.ClientMessage messageType, ByteBuffer payload, long receiveTime) {
+        if(game != null && !game.isRoundOver() && shouldHold(connection, messageType)) {
+            if(sequencer.add(connection, messageType, payload, receiveTime)) {
+                resolveInputs();
+            }
+        } else if(applyMessage(connection, messageType, payload)) {
+            sendChanges();
+        }
+    }
+
+    /**
+     * Checks if a message must wait in the sequencer. JumpIn and AntiUno race other clients, as
+     * does CallUNO from a player who can already be caught with one card. Calling UNO before
+     * playing the second to last card can not be raced, as AntiUno only catches players with one
+     * card, so it is applied at once along with the move after it. While a window is open every
+     * other message is held behind a JumpIn, as a jump-in races the current player's turn, and a
+     * message from a player with two or fewer cards who has not called UNO is held behind an
+     * AntiUno, as it could make them someone the AntiUno catches.
+     *
+     * @param connection The client who sent the message.
+     * @param messageType The type of message.
+     * @return True if the message must be added to the sequencer.
+     */
+    private boolean shouldHold(ClientConnection connection, WireProtocol.ClientMessage messageType) {
+        Player player = game.getPlayerByID(connection.getSeatID());
+        boolean isContested = switch (messageType) {
+            case JumpIn, AntiUno -> true;
+            case CallUNO -> player.getUnoState() == Player.UNOState.NotSafe;
+            default -> false;
+        };
+        boolean canConflict = sequencer.isHolding(WireProtocol.ClientMessage.JumpIn)
+                || (sequencer.isHolding(WireProtocol.ClientMessage.AntiUno)
+                    && player.getUnoState() != Player.UNOState.Called && player.getHand().size() <= 2);
+        return sequencer.shouldHold(connection.getSeatID(), isContested, canConflict);
+    }
+
+    /**
+     * Applies every message held by the sequencer in order and then sends the changes once.
+     */
+    private void resolveInputs() {
+        CurrentGameInterface.bindToCurrentThread(game);
+        int currentPlayerID = game.getCurrentPlayer().getPlayerID();
+        int direction = game.isIncreasing() ? 1 : -1;
+        int seatCount = seats.length;
+        int seatsInvolved = sequencer.resolve(seatID -> Math.floorMod((seatID - currentPlayerID) * direction, seatCount),
+                input -> applyMessage(input.getConnection(), input.getMessageType(), input.getPayload()));
+        statistics.recordArbitration(seatsInvolved > 1);
+        // When the round ended before the window closed every message was refused and the end has already been sent.
+        if(!game.isRoundOver()) {
+            sendChanges();
+        }
+    }
+
+    /**
+     * Performs a message for a client. Messages that are not allowed right now are answered with an Error.
+     *
+     * @param connection The client who sent the message.
+     * @param messageType The type of message, which is never Join.
+     * @param payload The rest of the frame after the message type.
+     * @return True if the message was performed and the changes need to be sent.
+     */
+    private boolean applyMessage(ClientConnection connection, WireProtocol.ClientMessage messageType, ByteBuffer payload) {
+        // A client that resumed on a new connection replaces the old one, which may still be open.
+        if(seats[connection.getSeatID()] != connection) {
+            sendError(connection, messageType, WireProtocol.ErrorCode.NotSeated);
+            return false;
+        }
+        if(game == null || game.isRoundOver()) {
+            sendError(connection, messageType, WireProtocol.ErrorCode.NoRound);
+            return false;
+        }
+        CurrentGameInterface.bindToCurrentThread(game);
+        int playerID = connection.getSeatID();
+        Player player = game.getPlayerByID(playerID);
+        boolean isAllowed;
+        try {
+            isAllowed = switch (messageType) {
+                case Draw -> game.beginDrawCard(playerID);
+                case Play -> game.beginPlayCard(playerID, player.getCardByID(GameEventLog.readVarInt(payload)));
+                case JumpIn -> jumpIn(player, GameEventLog.readVarInt(payload));
+                case CallUNO -> callUNO(player);
+                case AntiUno -> callAntiUno(player);
+                case Join -> false;
+                default -> applyDecision(player, messageType, payload);
+            };
+        } catch (BufferUnderflowException e) {
+            sendError(connection, messageType, WireProtocol.ErrorCode.InvalidMessage);
+            return false;
+        }
+        if(!isAllowed) {
+            sendError(connection, messageType, WireProtocol.ErrorCode.NotAllowed);
+        }
+        return true;
+    }
+
+    /**
+     * Creates the players for every seat and starts the first round. Seats without a client
+     * are given to AIPlayers. A table with a runner is handed over to it to play the rounds.
+     */
+    private void startTable() {
+        players = new ArrayList<>();
+        for(int i = 0; i < seats.length; i++) {
+            Rectangle bounds = new Rectangle(0, 0, GamePanel.PANEL_WIDTH, GamePanel.PANEL_HEIGHT);
+            if(seats[i] != null) {
+                players.add(new Player(i, seats[i].getPlayerName(), Player.PlayerType.NetworkPlayer, bounds, false));
+            } else {
+                players.add(new AIPlayer(i, "AI_" + i, bounds, aiStrategy, false));
+                hasAIPlayers = true;
+                // A client who left before the table started has lost the seat to the AIPlayer.
+                resumeTokens[i] = 0;
+                histories[i] = null;
+                isReserved[i] = false;
+            }
+            broadcast(encodePlayerInfo(frameBuffer, i));
+        }
+        if(runner != null) {
+            runner.start();
+        } else {
+            startRound();
+        }
+    }
+
+    /**
+     * Encodes the PlayerInfo frame for a player.
+     *
+     * @param buffer The buffer to encode into.
+     * @param playerID The player to describe.
+     * @return The frame ready for reading.
+     */
+    private ByteBuffer encodePlayerInfo(ByteBuffer buffer, int playerID) {
+        ByteBuffer frame = WireProtocol.beginFrame(buffer, WireProtocol.ServerMessage.PlayerInfo.ordinal());
+        frame.put((byte) playerID);
+        frame.put((byte) players.get(playerID).getPlayerType().ordinal());
+        WireProtocol.writeName(frame, players.get(playerID).getPlayerName());
+        return WireProtocol.endFrame(frame);
+    }
+
+    /**
+     * Starts a new round with the same players and sends everyone a Snapshot of it.
+     */
+    private void startRound() {
+        waitTimer = 0;
+        game = new CurrentGameInterface(new Rectangle(0, 0, GamePanel.PANEL_WIDTH, GamePanel.PANEL_HEIGHT), players, ruleSet);
+        broadcast(WireProtocol.endFrame(WireProtocol.beginFrame(frameBuffer, WireProtocol.ServerMessage.RoundStart.ordinal())));
+        long startTime = System.nanoTime();
+        resetSentState();
+        for(int i = 0; i < seats.length; i++) {
+            if(histories[i] != null) {
+                sendSnapshot(i);
+            }
+        }
+        if(spectators.hasSpectators()) {
+            publishSpectatorSnapshot();
+        }
+        statistics.recordEncodeTime(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Carries on with the round the table was playing when it was exported and sends every
+     * seat and the spectators a Snapshot of it.
+     */
+    private void resumeRound() {
+        waitTimer = 0;
+        game = new CurrentGameInterface(new Rectangle(0, 0, GamePanel.PANEL_WIDTH, GamePanel.PANEL_HEIGHT), players, ruleSet, importedRound);
+        importedRound = null;
+        long startTime = System.nanoTime();
+        resetSentState();
+        for(int i = 0; i < seats.length; i++) {
+            if(histories[i] != null) {
+                sendSnapshot(i);
+            }
+        }
+        if(spectators.hasSpectators()) {
+            publishSpectatorSnapshot();
+        }
+        statistics.recordEncodeTime(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Stores the state of a round that was just created as the state last sent and starts timing the current player.
+     */
+    private void resetSentState() {
+        sentTurnNumber = game.getTurnNumber();
+        sentCurrentPlayerID = game.getCurrentPlayer().getPlayerID();
+        sentIsIncreasing = game.isIncreasing();
+        sentTopCardID = game.getTopCard().getCardID();
+        sentTopCardValue = getCardValue(game.getTopCard());
+        sentHandSizes = new int[players.size()];
+        for(int i = 0; i < players.size(); i++) {
+            sentHandSizes[i] = players.get(i).getHand().size();
+        }
+        sentDecision = getWaitingDecision();
+        restartTimeOut(sentDecision);
+    }
+
+    /**
+     * Sends a Delta to each client with the changes since the last frame they were sent.
+     * Clients that are due a Snapshot are sent that instead. Nothing is sent when nothing changed.
+     */
+    private void sendChanges() {
+        long startTime = System.nanoTime();
+        int turnNumber = game.getTurnNumber();
+        int currentPlayerID = game.getCurrentPlayer().getPlayerID();
+        boolean isIncreasing = game.isIncreasing();
+        Card topCard = game.getTopCard();
+        WireProtocol.Decision decision = getWaitingDecision();
+        int publicFlags = 0;
+        if(turnNumber != sentTurnNumber || currentPlayerID != sentCurrentPlayerID || isIncreasing != sentIsIncreasing) {
+            publicFlags |= WireProtocol.DELTA_TURN;
+            if(turnNumber != sentTurnNumber) {
+                statistics.recordTurn();
+            }
+        }
+        if(topCard.getCardID() != sentTopCardID || getCardValue(topCard) != sentTopCardValue) {
+            publicFlags |= WireProtocol.DELTA_TOP_CARD;
+        }
+        int changedHandSizes = 0;
+        for(int i = 0; i < players.size(); i++) {
+            if(players.get(i).getHand().size() != sentHandSizes[i]) {
+                changedHandSizes++;
+            }
+        }
+        if(changedHandSizes > 0) {
+            publicFlags |= WireProtocol.DELTA_HAND_SIZES;
+        }
+        if(decision != sentDecision) {
+            publicFlags |= WireProtocol.DELTA_DECISION;
+        }
+
+        // The public part is the same for every seat so it is encoded once and copied into each frame.
+        ByteBuffer frame = frameBuffer;
+        WireProtocol.beginFrame(frame, WireProtocol.ServerMessage.Delta.ordinal());
+        frame.put((byte) 0);
+        if((publicFlags & WireProtocol.DELTA_TURN) != 0) {
+            GameEventLog.writeVarInt(frame, turnNumber);
+            frame.put((byte) (currentPlayerID | (isIncreasing ? 0x80 : 0)));
+        }
+        if((publicFlags & WireProtocol.DELTA_TOP_CARD) != 0) {
+            GameEventLog.writeCard(frame, topCard);
+        }
+        if(changedHandSizes > 0) {
+            frame.put((byte) changedHandSizes);
+            for(int i = 0; i < players.size(); i++) {
+                int handSize = players.get(i).getHand().size();
+                if(handSize != sentHandSizes[i]) {
+                    frame.put((byte) i);
+                    GameEventLog.writeVarInt(frame, handSize);
+                    sentHandSizes[i] = handSize;
+                }
+            }
+        }
+        if(decision != sentDecision) {
+            frame.put((byte) decision.ordinal());
+        }
+        int publicEnd = frame.position();
+        if(publicFlags != 0 && spectators.hasSpectators()) {
+            frame.put(WireProtocol.LENGTH_SIZE + 1, (byte) publicFlags);
+            publish(WireProtocol.endFrame(frame));
+        }
+        if((publicFlags & (WireProtocol.DELTA_TURN | WireProtocol.DELTA_DECISION)) != 0) {
+            restartTimeOut(decision);
+        }
+        sentTurnNumber = turnNumber;
+        sentCurrentPlayerID = currentPlayerID;
+        sentIsIncreasing = isIncreasing;
+        sentTopCardID = topCard.getCardID();
+        sentTopCardValue = getCardValue(topCard);
+        sentDecision = decision;
+
+        int snapshotSeats = 0;
+        for(int i = 0; i < seats.length; i++) {
+            if(histories[i] == null) continue;
+            List<Card> hand = players.get(i).getHand();
+            List<Integer> sentHand = sentHands.get(i);
+            int addedCount = 0;
+            for(Card card : hand) {
+                if(!sentHand.contains(card.getCardID())) addedCount++;
+            }
+            // Every card still held that is not new was sent before, so the rest of the sent hand was removed.
+            int removedCount = sentHand.size() - (hand.size() - addedCount);
+            if(publicFlags == 0 && addedCount == 0 && removedCount == 0) continue;
+            if(deltasSinceSnapshot[i] >= WireProtocol.SNAPSHOT_INTERVAL) {
+                snapshotSeats |= 1 << i;
+                continue;
+            }
+            int flags = publicFlags;
+            frame.limit(frame.capacity()).position(publicEnd);
+            if(addedCount > 0) {
+                flags |= WireProtocol.DELTA_CARDS_ADDED;
+                GameEventLog.writeVarInt(frame, addedCount);
+                for(Card card : hand) {
+                    if(!sentHand.contains(card.getCardID())) {
+                        GameEventLog.writeCard(frame, card);
+                    }
+                }
+            }
+            if(removedCount > 0) {
+                flags |= WireProtocol.DELTA_CARDS_REMOVED;
+                GameEventLog.writeVarInt(frame, removedCount);
+                for(Integer cardID : sentHand) {
+                    if(players.get(i).getCardByID(cardID) == null) {
+                        GameEventLog.writeVarInt(frame, cardID);
+                    }
+                }
+            }
+            frame.put(WireProtocol.LENGTH_SIZE + 1, (byte) flags);
+            sendState(i, WireProtocol.endFrame(frame));
+            deltasSinceSnapshot[i]++;
+            rememberHand(i);
+        }
+        // Snapshots reuse the frame buffer so they are sent once the public part is no longer needed.
+        for(int i = 0; i < seats.length; i++) {
+            if((snapshotSeats & (1 << i)) != 0) {
+                sendSnapshot(i);
+            }
+        }
+        statistics.recordEncodeTime(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Sends a seat everything it can see of the round and starts counting Deltas again.
+     *
+     * @param seatID The seat to send the Snapshot to.
+     */
+    private void sendSnapshot(int seatID) {
+        sendState(seatID, encodeSnapshot(players.get(seatID).getHand()));
+        deltasSinceSnapshot[seatID] = 0;
+        rememberHand(seatID);
+    }
+
+    /**
+     * Publishes a Snapshot without a hand to catch up the spectators that are behind.
+     * Must be called from the thread that owns the table.
+     */
+    private void publishSpectatorSnapshot() {
+        isSpectatorSnapshotDue = false;
+        if(game == null) return;
+        publish(encodeSnapshot(Collections.emptyList()));
+    }
+
+    /**
+     * Asks for a Snapshot for the spectators on the thread that owns the table. Called by the
+     * SpectatorGroup on the event loop.
+     */
+    private void requestSpectatorSnapshot() {
+        if(isRunnerStarted()) {
+            runner.execute(this::publishSpectatorSnapshot);
+        } else {
+            isSpectatorSnapshotDue = true;
+        }
+    }
+
+    /**
+     * Encodes a Snapshot of the round into the frameBuffer.
+     *
+     * @param hand The hand to include.
+     * @return The frame ready for reading.
+     */
+    private ByteBuffer encodeSnapshot(List<Card> hand) {
+        ByteBuffer frame = WireProtocol.beginFrame(frameBuffer, WireProtocol.ServerMessage.Snapshot.ordinal());
+        GameEventLog.writeVarInt(frame, game.getTurnNumber());
+        frame.put((byte) (game.getCurrentPlayer().getPlayerID() | (game.isIncreasing() ? 0x80 : 0)));
+        GameEventLog.writeCard(frame, game.getTopCard());
+        frame.put((byte) players.size());
+        for(Player player : players) {
+            GameEventLog.writeVarInt(frame, player.getHand().size());
+        }
+        frame.put((byte) getWaitingDecision().ordinal());
+        for(Player player : players) {
+            GameEventLog.writeVarInt(frame, player.getTotalScore());
+        }
+        GameEventLog.writeVarInt(frame, hand.size());
+        for(Card card : hand) {
+            GameEventLog.writeCard(frame, card);
+        }
+        return WireProtocol.endFrame(frame);
+    }
+
+    /**
+     * Sends a Snapshot or Delta to a seat and counts its size.
+     *
+     * @param seatID The seat to send to.
+     * @param frame The frame ready for reading.
+     */
+    private void sendState(int seatID, ByteBuffer frame) {
+        statistics.recordFrame(frame.remaining());
+        sendToSeat(seatID, frame);
+    }
+
+    /**
+     * Adds a frame to a seat's history and sends it to the client in the seat if there is one.
+     *
+     * @param seatID A seat that can be resumed.
+     * @param frame The frame ready for reading.
+     */
+    private void sendToSeat(int seatID, ByteBuffer frame) {
+        histories[seatID].add(frame);
+        if(seats[seatID] != null) {
+            send(seats[seatID], frame);
+        }
+    }
+
+    /**
+     * Stores the cardIDs in a seat's hand as the hand it was last sent.
+     *
+     * @param seatID The seat that was sent its hand.
+     */
+    private void rememberHand(int seatID) {
+        List<Integer> sentHand = sentHands.get(seatID);
+        sentHand.clear();
+        for(Card card : players.get(seatID).getHand()) {
+            sentHand.add(card.getCardID());
+        }
+    }
+
+    /**
+     * Sends the winner and scores of the round that just ended, then reveals every hand.
+     */
+    private void sendRoundEnd() {
+        Player winner = players.stream().filter(player -> player.getHand().isEmpty()).findFirst().orElse(players.get(0));
+        ByteBuffer frame = WireProtocol.beginFrame(frameBuffer, WireProtocol.ServerMessage.RoundEnd.ordinal());
+        frame.put((byte) winner.getPlayerID());
+        GameEventLog.writeVarInt(frame, winner.getCurrentRoundScore());
+        frame.put((byte) players.size());
+        for(Player player : players) {
+            GameEventLog.writeVarInt(frame, player.getTotalScore());
+        }
+        broadcast(WireProtocol.endFrame(frame));
+
+        game.revealHands();
+        frame = WireProtocol.beginFrame(frameBuffer, WireProtocol.ServerMessage.HandsRevealed.ordinal());
+        frame.put((byte) players.size());
+        for(Player player : players) {
+            GameEventLog.writeVarInt(frame, player.getHand().size());
+            for(Card card : player.getHand()) {
+                GameEventLog.writeCard(frame, card);
+            }
+        }
+        broadcast(WireProtocol.endFrame(frame));
+    }
+
+    /**
+     * Stops the table so it can be moved to another process and passes on its encoded state,
+     * on the runner's thread once a runner has taken over. Contested messages still held are
+     * applied first. The table is deserted afterwards and nothing more is sent to its seats.
+     * Must be called from the event loop.
+     *
+     * @param exporter Called with the state ready for reading, or null if the table was already exported.
+     */
+    public void exportTable(Consumer<ByteBuffer> exporter) {
+        if(isRunnerStarted()) {
+            runner.execute(() -> exporter.accept(exportNow()));
+        } else {
+            exporter.accept(exportNow());
+        }
+    }
+
+    /**
+     * Encodes the state of the table on the thread that owns it and stops it.
+     * State: tableID, RuleSet signature, seatCount, name and 8 byte resumeToken for each seat,
+     *   hasStarted, then if started isAIPlayer, strategy, and totalScore for each player,
+     *   isRoundInProgress, then if in progress the round from GameSnapshot.write().
+     *
+     * @return The state ready for reading, or null if the table was already exported.
+     */
+    private ByteBuffer exportNow() {
+        if(isMigrated) return null;
+        if(importedRound != null) {
+            resumeRound();
+        }
+        if(game != null) {
+            CurrentGameInterface.bindToCurrentThread(game);
+            if(sequencer.isOpen()) {
+                resolveInputs();
+            }
+        }
+        ByteBuffer round = game != null && !game.isRoundOver() ? GameSnapshot.write(game) : null;
+        ByteBuffer state = ByteBuffer.allocate(256 + (round != null ? round.remaining() : 0));
+        GameEventLog.writeVarInt(state, tableID);
+        GameEventLog.writeVarInt(state, ruleSet.getSignature());
+        state.put((byte) seats.length);
+        for(int i = 0; i < seats.length; i++) {
+            WireProtocol.writeName(state, playerNames[i] != null ? playerNames[i] : "");
+            state.putLong(resumeTokens[i]);
+        }
+        state.put((byte) (players != null ? 1 : 0));
+        if(players != null) {
+            for(Player player : players) {
+                state.put((byte) (player instanceof AIPlayer ? 1 : 0));
+                state.put((byte) (player instanceof AIPlayer ? ((AIPlayer) player).getStrategy().ordinal() : GameEventLog.NO_STRATEGY));
+                GameEventLog.writeVarInt(state, player.getTotalScore());
+            }
+        }
+        state.put((byte) (round != null ? 1 : 0));
+        if(round != null) {
+            state.put(round);
+        }
+        isMigrated = true;
+        cancelTimeOut();
+        Arrays.fill(seats, null);
+        return state.flip();
+    }
+
+    /**
+     * Creates a table from the state of a table exported by another process. Every seat that
+     * could be resumed is reserved for its client, and a started table carries on with the
+     * round once it is first updated. A table that had not started waits for its clients again.
+     *
+     * @param state The state from exportTable(), ready for reading.
+     * @param aiStrategy The strategy of the AIPlayers put in the seats without a client.
+     * @param statistics Counts the state sent by the tables on the event loop.
+     * @param timerWheel The event loop's wheel to schedule timeouts on.
+     * @return The table ready to be registered with an event loop.
+     * @throws IOException When the state is incomplete or not valid.
+     */
+    public static GameTable importTable(ByteBuffer state, AIPlayer.AIStrategy aiStrategy, WireProtocol.Statistics statistics,
+                                        TimerWheel timerWheel) throws IOException {
+        try {
+            int tableID = GameEventLog.readVarInt(state);
+            int signature = GameEventLog.readVarInt(state);
+            if(!RuleSet.isValidSignature(signature)) {
+                throw new IOException("Table has invalid rules " + signature);
+            }
+            RuleSet ruleSet = new RuleSet();
+            ruleSet.setSignature(signature);
+            GameTable table = new GameTable(tableID, ruleSet, 0, aiStrategy, statistics, timerWheel);
+            int seatCount = state.get();
+            if(seatCount != table.seats.length) {
+                throw new IOException("Table has " + seatCount + " seats.");
+            }
+            for(int i = 0; i < seatCount; i++) {
+                String playerName = WireProtocol.readName(state);
+                long resumeToken = state.getLong();
+                if(resumeToken != 0) {
+                    table.reserveSeat(playerName, resumeToken);
+                    table.pendingClientCount++;
+                } else {
+                    table.seatsTaken++;
+                }
+            }
+            if(state.get() == 1) {
+                table.players = new ArrayList<>();
+                for(int i = 0; i < seatCount; i++) {
+                    boolean isAIPlayer = state.get() == 1;
+                    int strategy = state.get() & 0xFF;
+                    Rectangle bounds = new Rectangle(0, 0, GamePanel.PANEL_WIDTH, GamePanel.PANEL_HEIGHT);
+                    Player player = isAIPlayer ? new AIPlayer(i, "AI_" + i, bounds, AIPlayer.AIStrategy.values()[strategy], false)
+                            : new Player(i, table.playerNames[i], Player.PlayerType.NetworkPlayer, bounds, false);
+                    player.restoreTotalScore(GameEventLog.readVarInt(state));
+                    table.players.add(player);
+                    table.hasAIPlayers |= isAIPlayer;
+                }
+                table.pendingClientCount = 0;
+                if(state.get() == 1) {
+                    table.importedRound = GameSnapshot.read(state);
+                }
+                // Each seat is caught up from the start of its new history when its client resumes.
+                for(int i = 0; i < seatCount; i++) {
+                    if(table.histories[i] == null) continue;
+                    for(int playerID = 0; playerID < seatCount; playerID++) {
+                        table.sendToSeat(i, table.encodePlayerInfo(table.frameBuffer, playerID));
+                    }
+                }
+            }
+            table.desertedTime = System.nanoTime();
+            return table;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Table state is incomplete or corrupt.", e);
+        }
+    }
+
+    /**
+     * Cancels the timeout for the client being waited on. Used when the table is discarded.
+     */
+    public void cancelTimeOut() {
+        timerWheel.cancel(timeOut);
+        timeOut = null;
+        timeOutDeadline = 0;
+    }
+
+    /**
+     * Starts timing the current player when a client is being waited on, replacing any earlier
+     * timeout. The timeout is cancelled when nobody is being waited on.
+     *
+     * @param decision What the current player is being waited on for.
+     */
+    private void restartTimeOut(WireProtocol.Decision decision) {
+        cancelTimeOut();
+        if(game.isRoundOver() || decision == WireProtocol.Decision.Busy
+                || game.getCurrentPlayer().getPlayerType() != Player.PlayerType.NetworkPlayer) {
+            return;
+        }
+        long delay = TimeUnit.SECONDS.toMillis(ruleSet.getDefaultTimeOut());
+        if(isRunnerStarted()) {
+            timeOutDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+        } else {
+            timeOut = timerWheel.schedule(this::handleTimeOut, delay, TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+        }
+    }
+
+    /**
+     * Makes the default choice for a client who ran out of time and sends the changes.
+     */
+    private void handleTimeOut() {
+        timeOut = null;
+        timeOutDeadline = 0;
+        if(game == null || game.isRoundOver()) return;
+        CurrentGameInterface.bindToCurrentThread(game);
+        game.applyTimeOut();
+        sendChanges();
+    }
+
+    /**
+     * Gets what the current player is being waited on for.
+     *
+     * @return The TurnDecisionAction waiting for the current player, Busy while other actions are running,
+     *         or None when the current player can start their turn.
+     */
+    private WireProtocol.Decision getWaitingDecision() {
+        TurnActionFactory.TurnDecisionAction decision = game.getWaitingDecisionAction();
+        if(decision != null) return WireProtocol.Decision.fromFlagName(decision.flagName);
+        return game.getCurrentTurnAction() != null ? WireProtocol.Decision.Busy : WireProtocol.Decision.None;
+    }
+
+    /**
+     * Applies a choice for the decision waiting on the player in the same way as the decision overlays.
+     *
+     * @param player The player making the choice.
+     * @param messageType The decision being made, must match the one waiting.
+     * @param payload The choice: colourID for WildColour, 0 keep or 1 play for KeepOrPlay, the playerID
+     *                for OtherPlayer, 0 decline, 1 challenge, or 2 and a cardID to stack for IsChallenging,
+     *                0 decline or 1 and a cardID to stack for IsStacking.
+     * @return True if the choice was valid and applied.
+     */
+    private boolean applyDecision(Player player, WireProtocol.ClientMessage messageType, ByteBuffer payload) {
+        TurnActionFactory.TurnDecisionAction decision = game.getWaitingDecisionAction();
+        if(decision == null || game.getCurrentPlayer() != player || !decision.flagName.equals(messageType.getFlagName())) {
+            return false;
+        }
+        int value = payload.get() & 0xFF;
+        switch (messageType) {
+            case WildColour -> {
+                if(value > 3) return false;
+                decision.injectProperty("colourID", value);
+                decision.injectFlagProperty(1);
+            }
+            case KeepOrPlay -> {
+                if(value != 0 && value != 1) return false;
+                decision.injectFlagProperty(value);
+            }
+            case OtherPlayer -> {
+                if(value >= players.size() || value == player.getPlayerID()) return false;
+                decision.injectFlagProperty(value);
+            }
+            case IsChallenging -> {
+                if(value == 1 && !ruleSet.getNoBluffingRule()) {
+                    decision.injectProperty("isChaining", 0);
+                    decision.injectFlagProperty(1);
+                } else if(value == 0) {
+                    decision.injectProperty("isChaining", 0);
+                    decision.injectFlagProperty(0);
+                } else if(value == 2) {
+                    Card card = player.getCardByID(GameEventLog.readVarInt(payload));
+                    if(!ruleSet.canStackCards() || card == null || card.getFaceValueID() != 13) return false;
+                    injectStackedCard(decision, card);
+                    decision.injectProperty("isChaining", 1);
+                    decision.injectFlagProperty(0);
+                } else {
+                    return false;
+                }
+            }
+            case IsStacking -> {
+                if(value == 0) {
+                    decision.injectFlagProperty(0);
+                } else {
+                    Card card = player.getCardByID(GameEventLog.readVarInt(payload));
+                    if(value != 1 || card == null || card.getFaceValueID() != 10) return false;
+                    injectStackedCard(decision, card);
+                    decision.injectFlagProperty(1);
+                }
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores the card being stacked in the decision so it is played next.
+     *
+     * @param decision The decision being made.
+     * @param card The card being stacked.
+     */
+    private void injectStackedCard(TurnActionFactory.TurnDecisionAction decision, Card card) {
+        decision.injectProperty("faceValueID", card.getFaceValueID());
+        decision.injectProperty("colourID", card.getColourID());
+        decision.injectProperty("cardID", card.getCardID());
+    }
+
+    /**
+     * Jumps in with a card if the rules allow it.
+     *
+     * @param player The player jumping in.
+     * @param cardID The card to jump in with.
+     * @return True if the jump in was allowed.
+     */
+    private boolean jumpIn(Player player, int cardID) {
+        Card card = player.getCardByID(cardID);
+        return ruleSet.allowJumpInRule() && card != null && game.jumpIn(player.getPlayerID(), card);
+    }
+
+    /**
+     * Calls UNO for the player when the UnoButton would be available to them.
+     *
+     * @param player The player calling UNO.
+     * @return True if UNO could be called.
+     */
+    private boolean callUNO(Player player) {
+        boolean canCall = player.getUnoState() == Player.UNOState.NotSafe
+                || (player.getUnoState() == Player.UNOState.Safe && game.getCurrentPlayer() == player
+                    && player.getHand().size() == 2);
+        if(canCall) {
+            game.callUNO(player.getPlayerID());
+        }
+        return canCall;
+    }
+
+    /**
+     * Calls out every other player who has one card and has not called UNO, the same as the AntiUnoButton.
+     *
+     * @param player The player calling them out.
+     * @return True if anyone was called out.
+     */
+    private boolean callAntiUno(Player player) {
+        boolean calledOut = false;
+        for(Player otherPlayer : players) {
+            if(otherPlayer != player && !otherPlayer.isSafe() && otherPlayer.getHand().size() == 1) {
+                game.applyAntiUno(otherPlayer.getPlayerID());
+                calledOut = true;
+            }
+        }
+        return calledOut;
+    }
+
+    /**
+     * Sends a frame to every seat that can be resumed and to the spectators.
+     *
+     * @param frame The frame ready for reading.
+     */
+    private void broadcast(ByteBuffer frame) {
+        for(int i = 0; i < seats.length; i++) {
+            if(histories[i] != null) {
+                sendToSeat(i, frame);
+            }
+        }
+        if(spectators.hasSpectators()) {
+            publish(frame);
+        }
+    }
+
+    /**
+     * Publishes a frame to the spectators, through the runner once it has taken over the table.
+     *
+     * @param frame The frame ready for reading. It is copied once and shared by every spectator.
+     */
+    private void publish(ByteBuffer frame) {
+        ByteBuffer shared = WireProtocol.shareFrame(frame);
+        if(isRunnerStarted()) {
+            runner.publish(spectators, shared);
+        } else {
+            spectators.publish(shared);
+        }
+    }
+
+    /**
+     * Sends a frame to a client, through the runner once it has taken over the table.
+     *
+     * @param connection The client to send to.
+     * @param frame The frame ready for reading.
+     */
+    private void send(ClientConnection connection, ByteBuffer frame) {
+        if(isRunnerStarted()) {
+            runner.send(connection, frame);
+        } else {
+            connection.send(frame);
+        }
+    }
+
+    /**
+     * Sends an Error frame telling a client their message was rejected.
+     *
+     * @param connection The client who sent the message.
+     * @param messageType The message rejected.
+     * @param errorCode The reason it was rejected.
+     */
+    private void sendError(ClientConnection connection, WireProtocol.ClientMessage messageType, WireProtocol.ErrorCode errorCode) {
+        ByteBuffer frame = WireProtocol.beginFrame(frameBuffer, WireProtocol.ServerMessage.Error.ordinal());
+        frame.put((byte) messageType.ordinal());
+        frame.put((byte) errorCode.ordinal());
+        send(connection, WireProtocol.endFrame(frame));
+    }
+
+    /**
+     * Checks if a runner has taken over the table.
+     *
+     * @return True once the table has started with a runner.
+     */
+    private boolean isRunnerStarted() {
+        return runner != null && runner.isStarted();
+    }
+
+    /**
+     * Packs the faceValueID and colourID of a card the same way GameEventLog.writeCard() does.
+     *
+     * @param card The card to pack.
+     * @return The faceValueID * 5 + colourID.
+     */
+    private static int getCardValue(Card card) {
+        return card.getFaceValueID() * 5 + card.getColourID();
+    }
+}
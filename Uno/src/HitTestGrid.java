@@ -0,0 +1,115 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Uno
+ *
+ * HitTestGrid class:
+ * A uniform grid over a collection of rectangles used to quickly find which
+ * rectangle is at a position without checking every rectangle. Each cell
+ * stores the rectangles overlapping it in the order they were added.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class HitTestGrid<T extends Rectangle> {
+    /**
+     * Extra distance added around each rectangle when placing it in cells.
+     * Allows rectangles to be moved by up to this amount without rebuilding.
+     */
+    private final int margin;
+    /**
+     * The cells of the grid stored row by row. Lists are kept between rebuilds to be reused.
+     */
+    private final List<List<T>> cells;
+    /**
+     * Top left corner of the grid.
+     */
+    private int originX, originY;
+    /**
+     * Size of every cell in the grid.
+     */
+    private int cellWidth, cellHeight;
+    /**
+     * Number of cells across and down the grid.
+     */
+    private int columns, rows;
+
+    /**
+     * Creates an empty grid.
+     *
+     * @param margin Extra distance added around each rectangle when placing it in cells.
+     */
+    public HitTestGrid(int margin) {
+        this.margin = margin;
+        cells = new ArrayList<>();
+        columns = rows = 0;
+    }
+
+    /**
+     * Rebuilds the grid to fit around all the items. The cell size is set to
+     * the size of the largest item so each item only covers a few cells.
+     *
+     * @param items The items to place in the grid. Earlier items take priority in getItemAt().
+     */
+    public void rebuild(List<T> items) {
+        for(int i = 0; i < columns * rows; i++) {
+            cells.get(i).clear();
+        }
+        if(items.isEmpty()) {
+            columns = rows = 0;
+            return;
+        }
+
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        cellWidth = cellHeight = 1;
+        for(T item : items) {
+            minX = Math.min(minX, item.position.x - margin);
+            minY = Math.min(minY, item.position.y - margin);
+            maxX = Math.max(maxX, item.position.x + item.width + margin);
+            maxY = Math.max(maxY, item.position.y + item.height + margin);
+            cellWidth = Math.max(cellWidth, item.width);
+            cellHeight = Math.max(cellHeight, item.height);
+        }
+        originX = minX;
+        originY = minY;
+        columns = (maxX - minX) / cellWidth + 1;
+        rows = (maxY - minY) / cellHeight + 1;
+        while(cells.size() < columns * rows) {
+            cells.add(new ArrayList<>());
+        }
+
+        for(T item : items) {
+            int startColumn = (item.position.x - margin - originX) / cellWidth;
+            int endColumn = (item.position.x + item.width + margin - originX) / cellWidth;
+            int startRow = (item.position.y - margin - originY) / cellHeight;
+            int endRow = (item.position.y + item.height + margin - originY) / cellHeight;
+            for(int row = startRow; row <= endRow; row++) {
+                for(int column = startColumn; column <= endColumn; column++) {
+                    cells.get(row * columns + column).add(item);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the first item that was added to the grid containing the position.
+     *
+     * @param targetPosition Position to look up.
+     * @return The first item containing the position, or null if there are none.
+     */
+    public T getItemAt(Position targetPosition) {
+        if(targetPosition.x < originX || targetPosition.y < originY) return null;
+        int column = (targetPosition.x - originX) / cellWidth;
+        int row = (targetPosition.y - originY) / cellHeight;
+        if(column >= columns || row >= rows) return null;
+
+        for(T item : cells.get(row * columns + column)) {
+            if(item.isPositionInside(targetPosition)) {
+                return item;
+            }
+        }
+        return null;
+    }
+}
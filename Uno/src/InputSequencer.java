@@ -0,0 +1,273 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Uno
+ *
+ * InputSequencer class:
+ * Defines the order a GameTable applies messages in when clients race each other. A message
+ * that can be contested, such as JumpIn or AntiUno, opens a short window instead of being
+ * applied at once. The table decides which messages are contested. While the window is open
+ * other messages are only held when the table says they could change the result of a held
+ * race, or when their seat already has a message held, so uncontested moves are not delayed.
+ * When the window closes the held messages are applied in the order they were received. Messages are stamped by
+ * the event loop that read them, so the order does not depend on which event loop or thread
+ * got to them first. Messages with the same stamp are ordered by a priority chosen by the
+ * table, and then by the order they were added, so the result is always the same.
+ *
+ * Only the thread that owns the table uses the sequencer, so it needs no locks. The held
+ * messages are kept in Inputs allocated up front and reused.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class InputSequencer {
+    /**
+     * Time in ms the window stays open when none is chosen.
+     */
+    public static final int DEFAULT_WINDOW = 30;
+    /**
+     * Most messages held in a window. The window closes early once it is full.
+     */
+    private static final int CAPACITY = 32;
+
+    /**
+     * Uno
+     *
+     * Input class:
+     * Defines a message held until the window closes.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    public static class Input {
+        /**
+         * The client who sent the message.
+         */
+        private ClientConnection connection;
+        /**
+         * The type of message.
+         */
+        private WireProtocol.ClientMessage messageType;
+        /**
+         * A copy of the payload ready for reading.
+         */
+        private final ByteBuffer payload;
+        /**
+         * System.nanoTime() when the event loop read the message.
+         */
+        private long receiveTime;
+        /**
+         * Priority for messages with the same receiveTime. Lower goes first.
+         */
+        private int priority;
+        /**
+         * Number of messages added to the window before this one.
+         */
+        private int arrival;
+
+        /**
+         * Creates an empty Input.
+         */
+        private Input() {
+            payload = ByteBuffer.allocate(WireProtocol.MAX_CLIENT_FRAME_SIZE);
+        }
+
+        /**
+         * Gets the client who sent the message.
+         *
+         * @return The client's connection.
+         */
+        public ClientConnection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Gets the type of message.
+         *
+         * @return The ClientMessage.
+         */
+        public WireProtocol.ClientMessage getMessageType() {
+            return messageType;
+        }
+
+        /**
+         * Gets the payload of the message.
+         *
+         * @return The payload ready for reading. Only valid until the Input is applied.
+         */
+        public ByteBuffer getPayload() {
+            return payload;
+        }
+
+        /**
+         * Checks if the Input goes before another.
+         *
+         * @param other The Input to compare with.
+         * @return True if this Input is applied first.
+         */
+        private boolean isBefore(Input other) {
+            if(receiveTime != other.receiveTime) return receiveTime - other.receiveTime < 0;
+            if(priority != other.priority) return priority < other.priority;
+            return arrival < other.arrival;
+        }
+    }
+
+    /**
+     * The held messages with the first size in use.
+     */
+    private final Input[] inputs;
+    /**
+     * Time in nanoseconds a window stays open, or 0 to apply every message at once.
+     */
+    private final long window;
+    /**
+     * Number of messages held.
+     */
+    private int size;
+    /**
+     * System.nanoTime() when the open window closes.
+     */
+    private long deadline;
+
+    /**
+     * Creates a sequencer with no window open.
+     *
+     * @param windowMillis Time in ms a window stays open, or 0 to never hold messages.
+     */
+    public InputSequencer(int windowMillis) {
+        window = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        inputs = new Input[CAPACITY];
+        for(int i = 0; i < CAPACITY; i++) {
+            inputs[i] = new Input();
+        }
+    }
+
+    /**
+     * Checks if a message should be held rather than applied at once. Contested messages open
+     * a window or join the open one. While a window is open other messages are held when they
+     * could change the result of a held race, or when their seat has a message held so that a
+     * client's messages are applied in the order it sent them.
+     *
+     * @param seatID The seat of the client who sent the message.
+     * @param isContested True if the message races other clients' messages.
+     * @param canConflict True if applying the message before those held could change their result.
+     * @return True if the message must be added.
+     */
+    public boolean shouldHold(int seatID, boolean isContested, boolean canConflict) {
+        if(window == 0) return false;
+        if(isContested) return true;
+        return size > 0 && (canConflict || isHoldingFrom(seatID));
+    }
+
+    /**
+     * Checks if a message of a type is held in the open window.
+     *
+     * @param messageType The type of message.
+     * @return True if any held message is of the type.
+     */
+    public boolean isHolding(WireProtocol.ClientMessage messageType) {
+        for(int i = 0; i < size; i++) {
+            if(inputs[i].messageType == messageType) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a seat has a message held in the open window.
+     *
+     * @param seatID The seat to look for.
+     * @return True if any held message was sent from the seat.
+     */
+    private boolean isHoldingFrom(int seatID) {
+        for(int i = 0; i < size; i++) {
+            if(inputs[i].connection.getSeatID() == seatID) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Holds a message until the window closes, opening the window if it is the first.
+     *
+     * @param connection The client who sent the message.
+     * @param messageType The type of message.
+     * @param payload The rest of the frame after the message type. It is copied.
+     * @param receiveTime System.nanoTime() when the event loop read the message.
+     * @return True when the window is full and must be resolved now.
+     */
+    public boolean add(ClientConnection connection, WireProtocol.ClientMessage messageType, ByteBuffer payload, long receiveTime) {
+        if(size == 0) {
+            deadline = receiveTime + window;
+        }
+        Input input = inputs[size];
+        input.connection = connection;
+        input.messageType = messageType;
+        input.payload.clear();
+        input.payload.put(payload).flip();
+        input.receiveTime = receiveTime;
+        input.arrival = size;
+        size++;
+        return size == CAPACITY;
+    }
+
+    /**
+     * Checks if a window is open.
+     *
+     * @return True while messages are held.
+     */
+    public boolean isOpen() {
+        return size > 0;
+    }
+
+    /**
+     * Checks if the open window should be resolved.
+     *
+     * @param now System.nanoTime().
+     * @return True when a window is open and its time is up.
+     */
+    public boolean isDue(long now) {
+        return size > 0 && now - deadline >= 0;
+    }
+
+    /**
+     * Gets the time left until the open window closes.
+     *
+     * @param now System.nanoTime().
+     * @return Time in ms, at least 1.
+     */
+    public long getTimeLeft(long now) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - now));
+    }
+
+    /**
+     * Closes the window and applies every message held in order.
+     *
+     * @param seatPriority Gives the priority of each seatID for messages received at the same time. Lower goes first.
+     * @param applier Called with each Input in order.
+     * @return Number of different seats that sent messages in the window.
+     */
+    public int resolve(IntUnaryOperator seatPriority, Consumer<Input> applier) {
+        int seats = 0;
+        for(int i = 0; i < size; i++) {
+            Input input = inputs[i];
+            input.priority = seatPriority.applyAsInt(input.connection.getSeatID());
+            seats |= 1 << input.connection.getSeatID();
+            // Insertion sort, as there are only ever a few and they mostly arrive in order.
+            int j = i;
+            while(j > 0 && input.isBefore(inputs[j-1])) {
+                inputs[j] = inputs[j-1];
+                j--;
+            }
+            inputs[j] = input;
+        }
+        int count = size;
+        size = 0;
+        for(int i = 0; i < count; i++) {
+            applier.accept(inputs[i]);
+            inputs[i].connection = null;
+        }
+        return Integer.bitCount(seats);
+    }
+}
@@ -0,0 +1,1122 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uno
+ *
+ * LoadTestClient class:
+ * Generates load on a GameServer by playing as thousands of remote bots over loopback
+ * connections from a single thread. Each bot joins a table with the WireProtocol, follows
+ * the round with a RemoteGameState, and makes the same choices an AIPlayer with its
+ * AIStrategy would after a think time drawn from a configurable distribution. Bots can be
+ * made to disconnect at random and Resume their seat a short time later. The time from
+ * sending Resume until Resumed arrives is recorded along with how many were caught up
+ * with the frames they missed instead of a Snapshot. Bots can also be made to race each
+ * other, calling AntiUno on any opponent left with one card and jumping in with an identical
+ * card after a reaction time, to load the server's arbitration of contested messages.
+ *
+ * Every REPORT_INTERVAL the turns completed by bots per second and the decision round trip
+ * latency are logged. The latency is the time from a bot sending a move or decision until
+ * the server's answer arrives, recorded in microseconds in a StatHistogram. When the server
+ * is embedded in the same process the bytes allocated by its threads are also sampled every
+ * SAMPLE_INTERVAL and recorded as KB/s. Runner threads that finish between samples are not counted,
+ * and neither are virtual threads. The peak number of platform threads is also logged.
+ *
+ * To compare how tables are run, the embedded server can be started in each ServerMode, or
+ * compare runs the same load against each mode in turn and logs a summary of each at the end.
+ *
+ * Run with: java LoadTestClient [server] [botCount] [seconds] [thinkTime] [churnPercentPerMinute] [raceTime]
+ *   server: embedded to start a GameServer in this process with tables run by the event loops,
+ *           embedded-platform or embedded-virtual to run each table on its own platform or virtual
+ *           thread, compare to run each of those in turn for the given seconds, or host:port.
+ *           Default embedded.
+ *   thinkTime: fixed:ms, uniform:minMs:maxMs, exponential:meanMs, or lognormal:medianMs:sigma.
+ *              Default exponential:200.
+ *   churnPercentPerMinute: Percentage of the bots that disconnect each minute. Default 0.
+ *   raceTime: none, or a distribution in the same form as thinkTime for the reaction time before
+ *             a bot races. Racing bots join tables that allow jumping in. Default none.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class LoadTestClient {
+    /**
+     * Number of seats at the tables the bots join.
+     */
+    public static final int SEAT_COUNT = 4;
+    /**
+     * Time in ms between each report of the results so far.
+     */
+    public static final int REPORT_INTERVAL = 5000;
+    /**
+     * Time in ms between churning bots and sampling the server's allocation.
+     */
+    public static final int SAMPLE_INTERVAL = 1000;
+    /**
+     * Time in ms a bot waits after disconnecting before it connects again.
+     */
+    public static final int RECONNECT_DELAY = 1000;
+    /**
+     * Time in ms covered by each tick of the TimerWheel used for think times.
+     */
+    private static final int TICK_DURATION = 2;
+    /**
+     * Number of buckets in the TimerWheel.
+     */
+    private static final int TIMER_WHEEL_SIZE = 2048;
+    /**
+     * Longest think time in ms any distribution can give.
+     */
+    private static final int MAX_THINK_TIME = 60000;
+    /**
+     * Returned by chooseRace() when the bot should call AntiUno.
+     */
+    private static final int ANTI_UNO = -1;
+    /**
+     * Returned by chooseRace() when there is nothing to race for.
+     */
+    private static final int NO_RACE = -2;
+
+    /**
+     * The ways an embedded server can run its tables.
+     * EventLoop: Tables are updated by the event loop that owns them.
+     * PlatformThreads: Each table is run by a TableRunner on a platform thread.
+     * VirtualThreads: Each table is run by a TableRunner on a virtual thread when the runtime has them.
+     */
+    public enum ServerMode {
+        EventLoop("embedded"), PlatformThreads("embedded-platform"), VirtualThreads("embedded-virtual");
+
+        /**
+         * The server argument that selects the mode.
+         */
+        private final String argument;
+
+        /**
+         * Sets the argument for the mode.
+         *
+         * @param argument The server argument that selects the mode.
+         */
+        ServerMode(String argument) {
+            this.argument = argument;
+        }
+
+        /**
+         * Finds the mode selected by a server argument.
+         *
+         * @param argument The server argument.
+         * @return The mode, or null if the argument is not an embedded mode.
+         */
+        public static ServerMode fromArgument(String argument) {
+            for(ServerMode mode : values()) {
+                if(mode.argument.equals(argument)) {
+                    return mode;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Uno
+     *
+     * ThinkTime class:
+     * Defines the distribution that the time a bot waits before each move is drawn from.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    public static class ThinkTime {
+        /**
+         * The shapes of distribution available.
+         * Fixed: Always the first parameter.
+         * Uniform: Evenly spread between the two parameters.
+         * Exponential: Mean of the first parameter, most moves quick with a long tail.
+         * LogNormal: Median of the first parameter with the second as the spread of its logarithm.
+         */
+        public enum Distribution { Fixed, Uniform, Exponential, LogNormal }
+
+        /**
+         * The shape of the distribution.
+         */
+        private final Distribution distribution;
+        /**
+         * The first parameter in ms.
+         */
+        private final double first;
+        /**
+         * The second parameter, or 0 if the distribution has one.
+         */
+        private final double second;
+
+        /**
+         * Creates a distribution.
+         *
+         * @param distribution The shape of the distribution.
+         * @param first The first parameter in ms.
+         * @param second The second parameter, or 0 if the distribution has one.
+         */
+        public ThinkTime(Distribution distribution, double first, double second) {
+            this.distribution = distribution;
+            this.first = first;
+            this.second = second;
+        }
+
+        /**
+         * Parses a distribution written as its name and parameters separated by colons, such as exponential:200.
+         *
+         * @param text The distribution to parse.
+         * @return The distribution.
+         * @throws IllegalArgumentException When the text is not a known distribution with the right parameters.
+         */
+        public static ThinkTime parse(String text) {
+            String[] parts = text.split(":");
+            for(Distribution distribution : Distribution.values()) {
+                if(!distribution.name().equalsIgnoreCase(parts[0])) continue;
+                int parameterCount = distribution == Distribution.Uniform || distribution == Distribution.LogNormal ? 2 : 1;
+                if(parts.length != parameterCount + 1) break;
+                return new ThinkTime(distribution, Double.parseDouble(parts[1]),
+                        parameterCount == 2 ? Double.parseDouble(parts[2]) : 0);
+            }
+            throw new IllegalArgumentException("Unknown think time " + text);
+        }
+
+        /**
+         * Draws the next think time.
+         *
+         * @param random The source of randomness.
+         * @return Time in ms between 0 and MAX_THINK_TIME.
+         */
+        public int next(Random random) {
+            double value = switch (distribution) {
+                case Fixed -> first;
+                case Uniform -> first + random.nextDouble() * (second - first);
+                case Exponential -> -first * Math.log(1 - random.nextDouble());
+                case LogNormal -> first * Math.exp(second * random.nextGaussian());
+            };
+            return (int) Math.max(0, Math.min(MAX_THINK_TIME, value));
+        }
+
+        /**
+         * Describes the distribution the same way it is parsed.
+         *
+         * @return The name and parameters.
+         */
+        @Override
+        public String toString() {
+            String text = distribution.name().toLowerCase() + ":" + (int) first;
+            if(distribution == Distribution.Uniform) return text + ":" + (int) second;
+            if(distribution == Distribution.LogNormal) return text + ":" + second;
+            return text;
+        }
+    }
+
+    /**
+     * Uno
+     *
+     * RemoteBot class:
+     * Defines a single bot's connection and what it knows about its round.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    private static class RemoteBot {
+        /**
+         * Number used to name the bot.
+         */
+        private final int botID;
+        /**
+         * The strategy the bot plays with.
+         */
+        private final AIPlayer.AIStrategy strategy;
+        /**
+         * Bytes read that do not yet make up a complete frame.
+         */
+        private final ByteBuffer inputBuffer;
+        /**
+         * The connection to the server, or null while disconnected.
+         */
+        private SocketChannel channel;
+        /**
+         * The registration of the channel with the Selector, or null while disconnected.
+         */
+        private SelectionKey key;
+        /**
+         * The round as seen by the bot.
+         */
+        private RemoteGameState state;
+        /**
+         * The playerID of the bot's seat, or -1 before it is seated.
+         */
+        private int seatID;
+        /**
+         * The table the bot was seated at.
+         */
+        private int tableID;
+        /**
+         * The token sent with Seated for taking back the seat, or 0 when the bot must join a new table.
+         */
+        private long resumeToken;
+        /**
+         * System.nanoTime() when Resume was sent, or 0 when not resuming.
+         */
+        private long resumeSentTime;
+        /**
+         * The move waiting for the think time to pass, or null.
+         */
+        private TimerWheel.Timeout pendingMove;
+        /**
+         * System.nanoTime() when the move waiting for an answer was sent, or 0 when not waiting.
+         */
+        private long moveSentTime;
+        /**
+         * The decision waited on when the move waiting for an answer was sent.
+         */
+        private WireProtocol.Decision moveDecision;
+        /**
+         * Number of cards in the bot's hand when the move waiting for an answer was sent.
+         */
+        private int moveHandSize;
+        /**
+         * The race waiting for the reaction time to pass, or null.
+         */
+        private TimerWheel.Timeout pendingRace;
+        /**
+         * The turnNumber the bot last raced on, so it races at most once each turn.
+         */
+        private int raceTurnNumber = -1;
+
+        /**
+         * Creates a disconnected bot.
+         *
+         * @param botID Number used to name the bot.
+         * @param strategy The strategy the bot plays with, which must not be Random.
+         */
+        private RemoteBot(int botID, AIPlayer.AIStrategy strategy) {
+            this.botID = botID;
+            this.strategy = strategy;
+            inputBuffer = ByteBuffer.allocate(2 * (WireProtocol.LENGTH_SIZE + WireProtocol.MAX_FRAME_SIZE));
+        }
+
+        /**
+         * Checks if the server is waiting on the bot to make a move or decision.
+         *
+         * @return True when it is the bot's turn and nothing is running.
+         */
+        private boolean isWaitingOnBot() {
+            return channel != null && state.hasSnapshot() && state.getCurrentPlayerID() == seatID
+                    && state.getDecision() != WireProtocol.Decision.Busy;
+        }
+    }
+
+    /**
+     * The server to connect to.
+     */
+    private final InetSocketAddress address;
+    /**
+     * The distribution of think times before each move.
+     */
+    private final ThinkTime thinkTime;
+    /**
+     * Percentage of the bots that disconnect each minute.
+     */
+    private final double churnPercentPerMinute;
+    /**
+     * The distribution of reaction times before a bot races, or null when bots do not race.
+     */
+    private final ThinkTime raceTime;
+    /**
+     * Every bot whether connected or not.
+     */
+    private final List<RemoteBot> bots;
+    /**
+     * Selector for every bot's connection.
+     */
+    private final Selector selector;
+    /**
+     * Schedules moves once their think time has passed and reconnects.
+     */
+    private final TimerWheel timerWheel;
+    /**
+     * The rules used by the tables on the server, to make the same choices as an AIPlayer.
+     */
+    private final RuleSet ruleSet;
+    /**
+     * The source of randomness for think times and churn.
+     */
+    private final Random random;
+    /**
+     * Decision round trip latency in microseconds since the last report.
+     */
+    private StatHistogram intervalLatency;
+    /**
+     * Decision round trip latency in microseconds for the whole run.
+     */
+    private final StatHistogram totalLatency;
+    /**
+     * Time in microseconds from sending Resume until Resumed arrived.
+     */
+    private final StatHistogram resumeLatency;
+    /**
+     * The server's allocation rate in KB/s for each sample.
+     */
+    private final StatHistogram allocationRate;
+    /**
+     * Bytes allocated by each of the server's threads at the last sample indexed by thread ID.
+     */
+    private final Map<Long, Long> allocatedBytes;
+    /**
+     * True when the server is in this process so its allocation can be measured.
+     */
+    private final boolean isServerEmbedded;
+    /**
+     * Number of turns finished by bots since the last report.
+     */
+    private long intervalTurns;
+    /**
+     * Number of turns finished by bots.
+     */
+    private long totalTurns;
+    /**
+     * Number of rounds finished at tables where a bot holds the first seat.
+     */
+    private long roundCount;
+    /**
+     * Number of moves and decisions sent.
+     */
+    private long moveCount;
+    /**
+     * Number of Error frames received.
+     */
+    private long errorCount;
+    /**
+     * Number of bots disconnected on purpose.
+     */
+    private long churnCount;
+    /**
+     * Number of connections that failed or were closed by the server.
+     */
+    private long failureCount;
+    /**
+     * Number of resumes caught up with the frames missed.
+     */
+    private long replayedCount;
+    /**
+     * Number of resumes caught up with a Snapshot because the frames missed were no longer kept.
+     */
+    private long snapshotCount;
+    /**
+     * Number of resumes rejected by the server, after which the bot joins a new table.
+     */
+    private long rejectedCount;
+    /**
+     * Number of times a bot was resumed without asking because its table moved to another server.
+     */
+    private long movedCount;
+    /**
+     * Number of JumpIn and AntiUno messages sent.
+     */
+    private long raceCount;
+    /**
+     * Number of JumpIn and AntiUno messages refused because another player got there first or it was too late.
+     */
+    private long lostRaceCount;
+    /**
+     * Time in ms the last run lasted after the bots connected.
+     */
+    private long runDuration;
+    /**
+     * Most platform threads alive at once during the last run when the server is embedded.
+     */
+    private int peakThreadCount;
+
+    /**
+     * Creates the bots ready to be run.
+     *
+     * @param address The server to connect to.
+     * @param botCount Number of bots to play as.
+     * @param thinkTime The distribution of think times before each move.
+     * @param churnPercentPerMinute Percentage of the bots that disconnect each minute.
+     * @param raceTime The distribution of reaction times before a bot races, or null for bots that do not race.
+     * @param isServerEmbedded True when the server is in this process so its allocation can be measured.
+     * @throws IOException When the Selector could not be opened.
+     */
+    public LoadTestClient(InetSocketAddress address, int botCount, ThinkTime thinkTime, double churnPercentPerMinute,
+                          ThinkTime raceTime, boolean isServerEmbedded) throws IOException {
+        this.address = address;
+        this.thinkTime = thinkTime;
+        this.churnPercentPerMinute = churnPercentPerMinute;
+        this.raceTime = raceTime;
+        this.isServerEmbedded = isServerEmbedded;
+        selector = Selector.open();
+        timerWheel = new TimerWheel(TICK_DURATION, TIMER_WHEEL_SIZE, getTime());
+        ruleSet = new RuleSet();
+        ruleSet.setTwoPlayers(SEAT_COUNT == 2);
+        ruleSet.setAllowJumpInRule(raceTime != null);
+        random = new Random();
+        intervalLatency = new StatHistogram();
+        totalLatency = new StatHistogram();
+        resumeLatency = new StatHistogram();
+        allocationRate = new StatHistogram();
+        allocatedBytes = new HashMap<>();
+        bots = new ArrayList<>();
+        for(int i = 0; i < botCount; i++) {
+            bots.add(new RemoteBot(i, AIPlayer.chooseRandomStrategy()));
+        }
+    }
+
+    /**
+     * Connects every bot and plays until the duration has passed, logging the results
+     * every REPORT_INTERVAL and in full at the end.
+     *
+     * @param duration Time in ms to run for.
+     * @throws IOException When the Selector fails.
+     */
+    public void run(long duration) throws IOException {
+        long startTime = getTime();
+        for(RemoteBot bot : bots) {
+            connect(bot);
+        }
+        GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "Load test connected {} bots in {} ms with think time {}.",
+                bots.size(), getTime() - startTime, thinkTime);
+        startTime = getTime();
+        sampleAllocation();
+        if(isServerEmbedded) {
+            ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+        }
+        long nextSample = startTime + SAMPLE_INTERVAL;
+        long nextReport = startTime + REPORT_INTERVAL;
+        long endTime = startTime + duration;
+        long lastReport = startTime;
+        long lastSample = startTime;
+        long now = startTime;
+        while(now < endTime) {
+            selector.select(this::handleReadyKey, TICK_DURATION);
+            now = getTime();
+            timerWheel.advance(now);
+            if(now >= nextSample) {
+                churnBots();
+                if(isServerEmbedded) {
+                    long kilobytesPerSecond = sampleAllocation() * 1000 / 1024 / Math.max(1, now - lastSample);
+                    allocationRate.record((int) Math.min(Integer.MAX_VALUE, kilobytesPerSecond));
+                }
+                lastSample = now;
+                nextSample = now + SAMPLE_INTERVAL;
+            }
+            if(now >= nextReport) {
+                report(now - startTime, now - lastReport);
+                lastReport = now;
+                nextReport = now + REPORT_INTERVAL;
+            }
+        }
+        GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info,
+                "Load test finished after {} s: {} turns ({} turns/s), {} rounds, {} moves, {} errors, {} churned, {} failed connections.",
+                (now - startTime) / 1000, totalTurns, totalTurns * 1000 / Math.max(1, now - startTime), roundCount,
+                moveCount, errorCount, churnCount, failureCount);
+        GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "Decision round trip us: {}", describe(totalLatency));
+        if(resumeLatency.getCount() > 0 || rejectedCount > 0 || movedCount > 0) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info,
+                    "Resume us: {}, {} replayed, {} with a Snapshot, {} rejected, {} moved",
+                    describe(resumeLatency), replayedCount, snapshotCount, rejectedCount, movedCount);
+        }
+        if(raceTime != null) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "Races with reaction time {}: {} sent, {} lost",
+                    raceTime, raceCount, lostRaceCount);
+        }
+        runDuration = now - startTime;
+        if(isServerEmbedded) {
+            peakThreadCount = ManagementFactory.getThreadMXBean().getPeakThreadCount();
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "Server allocation KB/s: {}, peak threads {}",
+                    describe(allocationRate), peakThreadCount);
+        }
+        for(RemoteBot bot : bots) {
+            disconnect(bot);
+        }
+        selector.close();
+    }
+
+    /**
+     * Summarises the last run on one line for comparing runs.
+     *
+     * @return The turns per second, decision round trip latency, allocation, peak threads, and errors.
+     */
+    public String getSummary() {
+        return String.format("%d turns/s, decision round trip us: %s, allocation KB/s p50=%d, peak threads %d, %d errors, %d failed connections",
+                totalTurns * 1000 / Math.max(1, runDuration), describe(totalLatency), allocationRate.getValueAtPercentile(50),
+                peakThreadCount, errorCount, failureCount);
+    }
+
+    /**
+     * Logs the turns per second and latency since the last report.
+     *
+     * @param elapsed Time in ms since the run started.
+     * @param interval Time in ms since the last report.
+     */
+    private void report(long elapsed, long interval) {
+        int connectedCount = 0;
+        for(RemoteBot bot : bots) {
+            if(bot.channel != null) connectedCount++;
+        }
+        GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info,
+                "Load test {} s: {} bots connected, {} turns/s, decision round trip us: {}, {} errors",
+                elapsed / 1000, connectedCount, intervalTurns * 1000 / Math.max(1, interval), describe(intervalLatency), errorCount);
+        intervalTurns = 0;
+        intervalLatency = new StatHistogram();
+    }
+
+    /**
+     * Describes a histogram with the percentiles used for latency.
+     *
+     * @param histogram The histogram to describe.
+     * @return The count, p50, p99, p999, and max.
+     */
+    private static String describe(StatHistogram histogram) {
+        return String.format("n=%d p50=%d p99=%d p999=%d max=%d", histogram.getCount(), histogram.getValueAtPercentile(50),
+                histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9), histogram.getMax());
+    }
+
+    /**
+     * Opens a connection for a bot and asks to resume its seat, or to join a table if it has none.
+     * Failed connections are tried again after RECONNECT_DELAY.
+     *
+     * @param bot The disconnected bot.
+     */
+    private void connect(RemoteBot bot) {
+        try {
+            bot.channel = SocketChannel.open(address);
+            bot.channel.configureBlocking(false);
+            bot.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            bot.key = bot.channel.register(selector, SelectionKey.OP_READ, bot);
+            bot.inputBuffer.clear();
+            if(bot.resumeToken == 0) {
+                join(bot);
+                return;
+            }
+            ByteBuffer frame = WireProtocol.beginFrame(ByteBuffer.allocate(32), WireProtocol.ClientMessage.Resume.ordinal());
+            frame.put((byte) WireProtocol.PROTOCOL_VERSION);
+            GameEventLog.writeVarInt(frame, bot.tableID);
+            frame.put((byte) bot.seatID);
+            frame.putLong(bot.resumeToken);
+            GameEventLog.writeVarInt(frame, bot.state.getFrameCount());
+            bot.resumeSentTime = System.nanoTime();
+            write(bot, WireProtocol.endFrame(frame));
+        } catch (IOException e) {
+            failureCount++;
+            disconnect(bot);
+            timerWheel.schedule(() -> connect(bot), RECONNECT_DELAY, getTime());
+        }
+    }
+
+    /**
+     * Asks to join a table with a new state.
+     *
+     * @param bot The connected bot.
+     * @throws IOException When the frame could not be written.
+     */
+    private void join(RemoteBot bot) throws IOException {
+        bot.state = new RemoteGameState();
+        bot.seatID = -1;
+        ByteBuffer frame = WireProtocol.beginFrame(ByteBuffer.allocate(64), WireProtocol.ClientMessage.Join.ordinal());
+        frame.put((byte) WireProtocol.PROTOCOL_VERSION);
+        frame.put((byte) SEAT_COUNT);
+        WireProtocol.writeName(frame, "Bot" + bot.botID);
+        GameEventLog.writeVarInt(frame, ruleSet.getSignature());
+        write(bot, WireProtocol.endFrame(frame));
+    }
+
+    /**
+     * Closes a bot's connection and forgets any move it was waiting to make.
+     *
+     * @param bot The bot to disconnect.
+     */
+    private void disconnect(RemoteBot bot) {
+        timerWheel.cancel(bot.pendingMove);
+        bot.pendingMove = null;
+        timerWheel.cancel(bot.pendingRace);
+        bot.pendingRace = null;
+        bot.moveSentTime = 0;
+        bot.resumeSentTime = 0;
+        if(bot.channel == null) return;
+        bot.key.cancel();
+        try {
+            bot.channel.close();
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Debug, "Failed to close connection. {}", e.getMessage());
+        }
+        bot.channel = null;
+        bot.key = null;
+    }
+
+    /**
+     * Disconnects a random share of the connected bots, each resuming after RECONNECT_DELAY.
+     */
+    private void churnBots() {
+        double expected = bots.size() * churnPercentPerMinute / 100 * SAMPLE_INTERVAL / 60000;
+        int count = (int) expected + (random.nextDouble() < expected - (int) expected ? 1 : 0);
+        for(int i = 0; i < count; i++) {
+            RemoteBot bot = bots.get(random.nextInt(bots.size()));
+            if(bot.channel == null) continue;
+            churnCount++;
+            disconnect(bot);
+            timerWheel.schedule(() -> connect(bot), RECONNECT_DELAY, getTime());
+        }
+    }
+
+    /**
+     * Reads every frame available for a bot. Bots whose connection was closed by the server reconnect.
+     *
+     * @param key The key that is ready.
+     */
+    private void handleReadyKey(SelectionKey key) {
+        RemoteBot bot = (RemoteBot) key.attachment();
+        try {
+            int readCount;
+            while((readCount = bot.channel.read(bot.inputBuffer)) > 0) {
+                bot.inputBuffer.flip();
+                ByteBuffer frame;
+                while((frame = WireProtocol.nextFrame(bot.inputBuffer, WireProtocol.MAX_FRAME_SIZE)) != null) {
+                    handleFrame(bot, frame);
+                    if(bot.channel == null) return;
+                }
+                bot.inputBuffer.compact();
+            }
+            if(readCount < 0) {
+                throw new IOException("Connection closed by server.");
+            }
+        } catch (IOException e) {
+            failureCount++;
+            disconnect(bot);
+            timerWheel.schedule(() -> connect(bot), RECONNECT_DELAY, getTime());
+        }
+    }
+
+    /**
+     * Applies a frame from the server to the bot and schedules its next move if it is waited on.
+     *
+     * @param bot The bot the frame was sent to.
+     * @param frame The message type and payload.
+     * @throws IOException When a bot whose resume was rejected could not ask to join.
+     */
+    private void handleFrame(RemoteBot bot, ByteBuffer frame) throws IOException {
+        int messageTypeID = frame.get(frame.position()) & 0xFF;
+        if(messageTypeID == WireProtocol.ServerMessage.Seated.ordinal()) {
+            frame.get();
+            bot.tableID = GameEventLog.readVarInt(frame);
+            bot.seatID = frame.get();
+            frame.get();
+            bot.resumeToken = frame.getLong();
+            return;
+        }
+        if(messageTypeID == WireProtocol.ServerMessage.Resumed.ordinal()) {
+            if(bot.resumeSentTime == 0) {
+                // A ShardCoordinator resumes the bot itself after moving its table, and any move held meanwhile is answered.
+                movedCount++;
+                bot.state.apply(frame);
+                return;
+            }
+            int latency = (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - bot.resumeSentTime));
+            resumeLatency.record(latency);
+            bot.resumeSentTime = 0;
+            int frameCount = bot.state.getFrameCount();
+            bot.state.apply(frame);
+            if(bot.state.getFrameCount() == frameCount) {
+                replayedCount++;
+            } else {
+                snapshotCount++;
+            }
+            // The move waiting when the bot disconnected was forgotten and nothing may have been missed.
+            considerMove(bot);
+            return;
+        }
+        if(messageTypeID == WireProtocol.ServerMessage.Error.ordinal()
+                && frame.get(frame.position() + 1) == WireProtocol.ClientMessage.Resume.ordinal()) {
+            rejectedCount++;
+            bot.resumeSentTime = 0;
+            bot.resumeToken = 0;
+            join(bot);
+            return;
+        }
+        if(messageTypeID == WireProtocol.ServerMessage.Error.ordinal() && isRace(frame.get(frame.position() + 1))) {
+            lostRaceCount++;
+            return;
+        }
+        if(messageTypeID == WireProtocol.ServerMessage.Error.ordinal()) {
+            errorCount++;
+            recordAnswer(bot);
+            considerMove(bot);
+            return;
+        }
+        boolean hadSnapshot = bot.state.hasSnapshot();
+        int previousTurnNumber = bot.state.getTurnNumber();
+        int previousPlayerID = bot.state.getCurrentPlayerID();
+        WireProtocol.ServerMessage messageType = bot.state.apply(frame);
+        if(messageType == WireProtocol.ServerMessage.Snapshot || messageType == WireProtocol.ServerMessage.Delta) {
+            if(hadSnapshot && previousPlayerID == bot.seatID && bot.state.getTurnNumber() != previousTurnNumber) {
+                intervalTurns++;
+                totalTurns++;
+            }
+            // A ShardCoordinator holds a move sent while the table moved until the bot has been caught up on the new
+            // worker, so state that is still waiting on the move is not the answer and the move is not made again.
+            if(bot.moveSentTime != 0 && isMoveWaiting(bot, messageType == WireProtocol.ServerMessage.Snapshot)) return;
+            recordAnswer(bot);
+            considerMove(bot);
+            considerRace(bot);
+        } else if(messageType == WireProtocol.ServerMessage.RoundEnd && bot.seatID == 0) {
+            roundCount++;
+        }
+    }
+
+    /**
+     * Checks if the bot still sees the state it sent the move waiting for an answer from.
+     * The turnNumber is not compared because a table moved to another worker counts turns from 0 again.
+     *
+     * @param bot The bot waiting for an answer.
+     * @param isSnapshot True for a Snapshot, which shows the server Busy while a moved table resumes its TurnAction sequence.
+     * @return True if it is still the bot's turn with the same number of cards in its hand and the same decision
+     *         waited on, or a Snapshot shows the server busy before it reaches the decision.
+     */
+    private boolean isMoveWaiting(RemoteBot bot, boolean isSnapshot) {
+        WireProtocol.Decision decision = bot.state.getDecision();
+        return bot.state.getCurrentPlayerID() == bot.seatID
+                && (decision == bot.moveDecision || isSnapshot && decision == WireProtocol.Decision.Busy)
+                && bot.state.getHand().size() == bot.moveHandSize;
+    }
+
+    /**
+     * Records the round trip latency when the bot was waiting for the answer to a move.
+     *
+     * @param bot The bot that was sent a frame.
+     */
+    private void recordAnswer(RemoteBot bot) {
+        if(bot.moveSentTime == 0) return;
+        int latency = (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - bot.moveSentTime));
+        intervalLatency.record(latency);
+        totalLatency.record(latency);
+        bot.moveSentTime = 0;
+    }
+
+    /**
+     * Schedules the bot's next move after a think time when the server is waiting on it.
+     *
+     * @param bot The bot to check.
+     */
+    private void considerMove(RemoteBot bot) {
+        if(bot.pendingMove != null || bot.moveSentTime != 0 || !bot.isWaitingOnBot()) return;
+        bot.pendingMove = timerWheel.schedule(() -> makeMove(bot), thinkTime.next(random), getTime());
+    }
+
+    /**
+     * Makes the move or decision an AIPlayer with the bot's strategy would make.
+     *
+     * @param bot The bot whose think time has passed.
+     */
+    private void makeMove(RemoteBot bot) {
+        bot.pendingMove = null;
+        if(bot.moveSentTime != 0 || !bot.isWaitingOnBot()) return;
+        RemoteGameState state = bot.state;
+        List<Card> hand = state.getHand();
+        switch (state.getDecision()) {
+            case None -> {
+                Card topCard = state.getTopCard();
+                List<Card> validMoves = Player.getValidMoves(hand, topCard.getFaceValueID(), topCard.getColourID());
+                if(validMoves.isEmpty()) {
+                    sendMove(bot, WireProtocol.ClientMessage.Draw);
+                } else {
+                    Card card = AIPlayer.chooseCard(bot.strategy, validMoves);
+                    checkCallUNO(bot);
+                    sendMove(bot, WireProtocol.ClientMessage.Play, card.getCardID());
+                }
+            }
+            case WildColour -> sendMove(bot, WireProtocol.ClientMessage.WildColour, AIPlayer.chooseWildColour(hand));
+            case KeepOrPlay -> {
+                checkCallUNO(bot);
+                sendMove(bot, WireProtocol.ClientMessage.KeepOrPlay, 1);
+            }
+            case OtherPlayer -> sendMove(bot, WireProtocol.ClientMessage.OtherPlayer, chooseSwapTarget(bot));
+            case IsChallenging -> {
+                Card card = findCard(hand, 13);
+                if(ruleSet.canStackCards() && card != null) {
+                    checkCallUNO(bot);
+                    sendMove(bot, WireProtocol.ClientMessage.IsChallenging, 2, card.getCardID());
+                } else {
+                    sendMove(bot, WireProtocol.ClientMessage.IsChallenging, ruleSet.getNoBluffingRule() ? 0 : random.nextInt(2));
+                }
+            }
+            case IsStacking -> {
+                Card card = findCard(hand, 10);
+                if(ruleSet.canStackCards() && card != null) {
+                    checkCallUNO(bot);
+                    sendMove(bot, WireProtocol.ClientMessage.IsStacking, 1, card.getCardID());
+                } else {
+                    sendMove(bot, WireProtocol.ClientMessage.IsStacking, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedules a race after a reaction time when the bot can call AntiUno or jump in. Only done once each turn.
+     *
+     * @param bot The bot to check.
+     */
+    private void considerRace(RemoteBot bot) {
+        if(raceTime == null || bot.pendingRace != null || bot.channel == null || !bot.state.hasSnapshot()
+                || bot.state.getTurnNumber() == bot.raceTurnNumber || chooseRace(bot) == NO_RACE) return;
+        bot.raceTurnNumber = bot.state.getTurnNumber();
+        bot.pendingRace = timerWheel.schedule(() -> race(bot), raceTime.next(random), getTime());
+    }
+
+    /**
+     * Sends the race chosen if it is still possible once the reaction time has passed.
+     *
+     * @param bot The bot whose reaction time has passed.
+     */
+    private void race(RemoteBot bot) {
+        bot.pendingRace = null;
+        if(bot.channel == null) return;
+        int race = chooseRace(bot);
+        if(race == NO_RACE) return;
+        raceCount++;
+        if(race == ANTI_UNO) {
+            sendMessage(bot, WireProtocol.ClientMessage.AntiUno);
+        } else {
+            sendMessage(bot, WireProtocol.ClientMessage.JumpIn, race);
+        }
+    }
+
+    /**
+     * Chooses how the bot races. Calling AntiUno on an opponent with one card is preferred
+     * over jumping in with a card identical to the top card.
+     *
+     * @param bot The bot racing.
+     * @return The cardID to jump in with, ANTI_UNO, or NO_RACE when there is nothing to race for.
+     */
+    private static int chooseRace(RemoteBot bot) {
+        RemoteGameState state = bot.state;
+        for(int i = 0; i < state.getPlayerCount(); i++) {
+            if(i != bot.seatID && state.getHandSize(i) == 1) return ANTI_UNO;
+        }
+        if(state.getCurrentPlayerID() == bot.seatID || state.getDecision() != WireProtocol.Decision.None) return NO_RACE;
+        Card topCard = state.getTopCard();
+        for(Card card : state.getHand()) {
+            if(card.getFaceValueID() == topCard.getFaceValueID() && card.getColourID() == topCard.getColourID()) return card.getCardID();
+        }
+        return NO_RACE;
+    }
+
+    /**
+     * Checks if a message is one the bots race each other to send.
+     *
+     * @param messageTypeID The ClientMessage ordinal.
+     * @return True for JumpIn and AntiUno.
+     */
+    private static boolean isRace(int messageTypeID) {
+        return messageTypeID == WireProtocol.ClientMessage.JumpIn.ordinal() || messageTypeID == WireProtocol.ClientMessage.AntiUno.ordinal();
+    }
+
+    /**
+     * Calls UNO with the same chance as an AIPlayer when the bot is about to play down to one card.
+     *
+     * @param bot The bot making a move.
+     */
+    private void checkCallUNO(RemoteBot bot) {
+        if(bot.state.getHand().size() == 2 && random.nextInt(100) < 70) {
+            sendMessage(bot, WireProtocol.ClientMessage.CallUNO);
+        }
+    }
+
+    /**
+     * Chooses the other player with the fewest cards to swap hands with, the same as an AIPlayer.
+     *
+     * @param bot The bot choosing.
+     * @return The playerID to swap with.
+     */
+    private static int chooseSwapTarget(RemoteBot bot) {
+        int chosenPlayerID = bot.seatID;
+        int cardCount = Integer.MAX_VALUE;
+        for(int i = 0; i < bot.state.getPlayerCount(); i++) {
+            if(i != bot.seatID && bot.state.getHandSize(i) < cardCount) {
+                chosenPlayerID = i;
+                cardCount = bot.state.getHandSize(i);
+            }
+        }
+        return chosenPlayerID;
+    }
+
+    /**
+     * Finds the first card in a hand with a faceValueID.
+     *
+     * @param hand The hand to search.
+     * @param faceValueID The face value to find.
+     * @return The card, or null if there is none.
+     */
+    private static Card findCard(List<Card> hand, int faceValueID) {
+        for(Card card : hand) {
+            if(card.getFaceValueID() == faceValueID) return card;
+        }
+        return null;
+    }
+
+    /**
+     * Sends a move or decision and starts timing the round trip.
+     *
+     * @param bot The bot sending.
+     * @param messageType The message to send.
+     * @param values The payload, each written as a varint.
+     */
+    private void sendMove(RemoteBot bot, WireProtocol.ClientMessage messageType, int... values) {
+        moveCount++;
+        bot.moveSentTime = System.nanoTime();
+        bot.moveDecision = bot.state.getDecision();
+        bot.moveHandSize = bot.state.getHand().size();
+        sendMessage(bot, messageType, values);
+    }
+
+    /**
+     * Sends a message. Values below 128 are written as a single byte, matching the payloads that expect a byte.
+     *
+     * @param bot The bot sending.
+     * @param messageType The message to send.
+     * @param values The payload, each written as a varint.
+     */
+    private void sendMessage(RemoteBot bot, WireProtocol.ClientMessage messageType, int... values) {
+        if(bot.channel == null) return;
+        ByteBuffer frame = WireProtocol.beginFrame(ByteBuffer.allocate(WireProtocol.LENGTH_SIZE + WireProtocol.MAX_CLIENT_FRAME_SIZE),
+                messageType.ordinal());
+        for(int value : values) {
+            GameEventLog.writeVarInt(frame, value);
+        }
+        try {
+            write(bot, WireProtocol.endFrame(frame));
+        } catch (IOException e) {
+            failureCount++;
+            disconnect(bot);
+            timerWheel.schedule(() -> connect(bot), RECONNECT_DELAY, getTime());
+        }
+    }
+
+    /**
+     * Writes a frame in full. Frames from bots are small enough to always fit in the socket's buffer.
+     *
+     * @param bot The bot sending.
+     * @param frame The frame ready for reading.
+     * @throws IOException When the channel could not be written to or was full.
+     */
+    private static void write(RemoteBot bot, ByteBuffer frame) throws IOException {
+        bot.channel.write(frame);
+        if(frame.hasRemaining()) {
+            throw new IOException("Server is not reading.");
+        }
+    }
+
+    /**
+     * Finds the bytes allocated by the server's threads since the last sample.
+     *
+     * @return The bytes allocated, or 0 when the server is not embedded.
+     */
+    private long sampleAllocation() {
+        if(!isServerEmbedded) return 0;
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = 0;
+        for(ThreadInfo info : threadBean.getThreadInfo(threadBean.getAllThreadIds())) {
+            if(info == null || !(info.getThreadName().startsWith("GameServer-") || info.getThreadName().startsWith("GameTable-"))) {
+                continue;
+            }
+            long bytes = threadBean.getThreadAllocatedBytes(info.getThreadId());
+            if(bytes < 0) continue;
+            Long previous = allocatedBytes.put(info.getThreadId(), bytes);
+            allocated += bytes - (previous == null ? 0 : previous);
+        }
+        return allocated;
+    }
+
+    /**
+     * Gets the current time for the TimerWheel.
+     *
+     * @return System.nanoTime() in ms.
+     */
+    private static long getTime() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * Starts a GameServer in this process running its tables in the mode given, and runs a load test against it.
+     *
+     * @param mode How the server runs its tables.
+     * @param botCount Number of bots to play as.
+     * @param seconds Time to run for after the bots connect.
+     * @param thinkTime The distribution of think times before each move.
+     * @param churnPercentPerMinute Percentage of the bots that disconnect each minute.
+     * @param raceTime The distribution of reaction times before a bot races, or null for bots that do not race.
+     * @return The summary of the run.
+     * @throws IOException When the server could not be started or the Selector failed.
+     */
+    private static String runEmbedded(ServerMode mode, int botCount, int seconds, ThinkTime thinkTime,
+                                      double churnPercentPerMinute, ThinkTime raceTime) throws IOException {
+        TableRunner.setVirtualThreadsAllowed(mode != ServerMode.PlatformThreads);
+        GameServer embeddedServer = new GameServer(0, Runtime.getRuntime().availableProcessors(), mode != ServerMode.EventLoop);
+        embeddedServer.start();
+        try {
+            LoadTestClient client = new LoadTestClient(new InetSocketAddress("127.0.0.1", embeddedServer.getPort()),
+                    botCount, thinkTime, churnPercentPerMinute, raceTime, true);
+            client.run(TimeUnit.SECONDS.toMillis(seconds));
+            return client.getSummary();
+        } finally {
+            embeddedServer.stop();
+        }
+    }
+
+    /**
+     * Entry point to run a load test.
+     *
+     * @param args Optionally the server, the number of bots, the seconds to run for, the think time, the churn, and the race time.
+     * @throws IOException When the server could not be started or the Selector failed.
+     */
+    public static void main(String[] args) throws IOException {
+        String server = args.length > 0 ? args[0] : ServerMode.EventLoop.argument;
+        int botCount = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+        ThinkTime thinkTime = ThinkTime.parse(args.length > 3 ? args[3] : "exponential:200");
+        double churnPercentPerMinute = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+        ThinkTime raceTime = args.length > 5 && !args[5].equals("none") ? ThinkTime.parse(args[5]) : null;
+        ServerMode serverMode = ServerMode.fromArgument(server);
+        if(server.equals("compare")) {
+            List<String> summaries = new ArrayList<>();
+            for(ServerMode mode : ServerMode.values()) {
+                if(mode == ServerMode.VirtualThreads && !TableRunner.hasVirtualThreads()) {
+                    summaries.add(mode + ": skipped, this Java runtime has no virtual threads");
+                    continue;
+                }
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "Load test running tables with {}.", mode);
+                summaries.add(mode + ": " + runEmbedded(mode, botCount, seconds, thinkTime, churnPercentPerMinute, raceTime));
+            }
+            for(String summary : summaries) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "Compared {}", summary);
+            }
+        } else if(serverMode != null) {
+            if(serverMode == ServerMode.VirtualThreads && !TableRunner.hasVirtualThreads()) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Warning,
+                        "This Java runtime has no virtual threads, so platform threads are used.");
+            }
+            runEmbedded(serverMode, botCount, seconds, thinkTime, churnPercentPerMinute, raceTime);
+        } else {
+            int separator = server.lastIndexOf(':');
+            InetSocketAddress address = new InetSocketAddress(server.substring(0, separator), Integer.parseInt(server.substring(separator + 1)));
+            LoadTestClient client = new LoadTestClient(address, botCount, thinkTime, churnPercentPerMinute, raceTime, false);
+            client.run(TimeUnit.SECONDS.toMillis(seconds));
+        }
+        GameLogger.shutdown();
+    }
+}
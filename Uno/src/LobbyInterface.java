@@ -1,16 +1,16 @@
 import java.awt.*;
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Scanner;
 
 /**
  * Uno
  *
  * LobbyInterface class:
  * Shows a lobby to setup the players and ruleset ready to start a game.
+ * The rules, names, and strategies start as they were last used from the
+ * PlayerProfile. If the profile is still loading the lobby is shown with
+ * defaults and updated once it has loaded, unless the user has already
+ * changed something.
  *
  * @author Peter Mitchell
  * @version 2021.1
@@ -24,6 +24,10 @@ public class LobbyInterface extends WndInterface {
      * List of buttons visible on the lobby interface.
      */
     private final List<Button> buttonList;
+    /**
+     * Grid over the buttons to look up the button under the mouse.
+     */
+    private final ButtonHitGrid buttonHitGrid;
     /**
      * Reference to the GamePanel for callbacks.
      */
@@ -32,6 +36,11 @@ public class LobbyInterface extends WndInterface {
      * The RuleSet being configured.
      */
     private final RuleSet ruleSet;
+    /**
+     * True once the rules and players have been set from the PlayerProfile, or once the user
+     * has changed them so that a profile finishing loading later does not overwrite their choices.
+     */
+    private boolean isProfileApplied;
 
     /**
      * String showing the stack rule state.
@@ -74,15 +83,15 @@ public class LobbyInterface extends WndInterface {
     public LobbyInterface(Rectangle bounds, GamePanel gamePanel) {
         super(bounds);
         this.gamePanel = gamePanel;
-        List<String> aiNames = getRandomAINameList();
+        List<String> aiNames = new ArrayList<>();
         playerList = new ArrayList<>();
         playerList.add(new LobbyPlayer("Player", Player.PlayerType.ThisPlayer,
                 new Rectangle(new Position(20,100),bounds.width/2, 100)));
-        playerList.add(new LobbyPlayer(aiNames.get(0), Player.PlayerType.AIPlayer,
+        playerList.add(new LobbyPlayer(getAIName(aiNames, 0), Player.PlayerType.AIPlayer,
                 new Rectangle(new Position(20,100+120),bounds.width/2, 100)));
-        playerList.add(new LobbyPlayer(aiNames.get(1), Player.PlayerType.AIPlayer,
+        playerList.add(new LobbyPlayer(getAIName(aiNames, 1), Player.PlayerType.AIPlayer,
                 new Rectangle(new Position(20,100+120*2),bounds.width/2, 100)));
-        playerList.add(new LobbyPlayer(aiNames.get(2), Player.PlayerType.AIPlayer,
+        playerList.add(new LobbyPlayer(getAIName(aiNames, 2), Player.PlayerType.AIPlayer,
                 new Rectangle(new Position(20,100+120*3),bounds.width/2, 100)));
 
         buttonList = new ArrayList<>();
@@ -91,6 +100,8 @@ public class LobbyInterface extends WndInterface {
         buttonList.add(new Button(new Position(bounds.width*3/4-150, bounds.height-100),300,60,
                 "Start Game", 2));
         ruleSet = new RuleSet();
+        isProfileApplied = false;
+        applyProfile();
         updateAllRuleLabels();
         buttonList.add(new Button(new Position(bounds.width/2+120, 145),150,40, "Toggle Rule", 3));
         buttonList.add(new Button(new Position(bounds.width/2+120, 195),150,40, "Toggle Rule", 4));
@@ -100,16 +111,23 @@ public class LobbyInterface extends WndInterface {
         buttonList.add(new Button(new Position(bounds.width/2+120, 435),150,40, "Toggle Rule", 8));
         buttonList.add(new Button(new Position(bounds.width/2+120, 485),150,40, "Cycle Limit", 9));
         buttonList.add(new Button(new Position(bounds.width*3/4-100, 535),200,40, "Reset To Default", 10));
+        buttonList.add(new Button(new Position(bounds.width/2-100, bounds.height-90),200,40, "Watch Last Replay", 11));
+        buttonList.add(new Button(new Position(bounds.width/2-100, bounds.height-140),200,40, "Resume Saved Game", 12));
+        buttonHitGrid = new ButtonHitGrid();
+        buttonHitGrid.rebuild(buttonList);
     }
 
     /**
-     * Does nothing.
+     * Applies the PlayerProfile if it was still loading when the lobby was created
+     * and the user has not changed anything since.
      *
      * @param deltaTime Time since last update.
      */
     @Override
     public void update(int deltaTime) {
-
+        if(!isProfileApplied && applyProfile()) {
+            updateAllRuleLabels();
+        }
     }
 
     /**
@@ -172,7 +190,7 @@ public class LobbyInterface extends WndInterface {
     public void handleMouseMove(Position mousePosition) {
         if(!isEnabled()) return;
 
-        buttonList.forEach(button -> button.setHovering(button.isPositionInside(mousePosition)));
+        buttonHitGrid.updateHover(mousePosition);
         playerList.forEach(lobbyPlayer -> lobbyPlayer.updateHoverState(mousePosition));
     }
 
@@ -187,13 +205,15 @@ public class LobbyInterface extends WndInterface {
     public void handleMousePress(Position mousePosition, boolean isLeft) {
         if(!isEnabled()) return;
 
-        buttonList.forEach(button -> {
-            if(button.isPositionInside(mousePosition))
-                handleButtonPress(button.getActionID());
-        });
+        Button pressedButton = buttonHitGrid.getItemAt(mousePosition);
+        if(pressedButton != null) {
+            handleButtonPress(pressedButton.getActionID());
+        }
         playerList.forEach(lobbyPlayer -> {
-            if (lobbyPlayer.isPositionInside(mousePosition))
+            if (lobbyPlayer.isPositionInside(mousePosition)) {
+                isProfileApplied = true;
                 lobbyPlayer.handleClick();
+            }
         });
     }
 
@@ -203,9 +223,11 @@ public class LobbyInterface extends WndInterface {
      * @param actionID ID mapped to an action relevant to the button.
      */
     private void handleButtonPress(int actionID) {
+        // The user's choices take priority over a profile that has not loaded yet.
+        isProfileApplied = true;
         switch (actionID) {
             case 1 -> toggleNumberOfPlayers();
-            case 2 -> gamePanel.startGame(playerList, ruleSet);
+            case 2 -> startGame();
             case 3 -> toggleStackRule();
             case 4 -> toggleDrawTillCanPlayRule();
             case 5 -> toggleSevenZeroRule();
@@ -214,7 +236,20 @@ public class LobbyInterface extends WndInterface {
             case 8 -> toggleNoBluffingRule();
             case 9 -> cycleScoreLimit();
             case 10 -> resetRulesToDefault();
+            case 11 -> gamePanel.startReplay();
+            case 12 -> gamePanel.resumeSavedGame();
+        }
+    }
+
+    /**
+     * Remembers the rules and players in the PlayerProfile and starts the game.
+     */
+    private void startGame() {
+        PlayerProfile profile = PlayerProfile.getIfLoaded();
+        if(profile != null) {
+            profile.storeLobby(ruleSet, playerList);
         }
+        gamePanel.startGame(playerList, ruleSet);
     }
 
     /**
@@ -374,21 +409,34 @@ public class LobbyInterface extends WndInterface {
     }
 
     /**
-     * Loads a list of names from AINameList.txt and randomly sorts it ready for use.
+     * Sets the rules, names, and strategies to those stored in the PlayerProfile if it has loaded.
+     * The labels need to be updated afterwards.
      *
-     * @return A list of names read in from the file.
-     */
-    private List<String> getRandomAINameList() {
-        List<String> names = new ArrayList<>();
-        try {
-            Scanner scan = new Scanner(new File("AINameList.txt"));
-            while(scan.hasNextLine()) {
-                names.add(scan.nextLine().trim());
-            }
-        } catch (FileNotFoundException e) {
-            System.out.println("Failed to read name list. File not found.");
+     * @return True if the profile was applied.
+     */
+    private boolean applyProfile() {
+        PlayerProfile profile = PlayerProfile.getIfLoaded();
+        if(profile == null) return false;
+        ruleSet.setRuleFlags(profile.getRuleSet().getRuleFlags());
+        ruleSet.setScoreLimitType(profile.getRuleSet().getScoreLimitType());
+        playerList.get(0).setPlayerName(profile.getPlayerName());
+        List<String> aiNames = profile.getShuffledAINames();
+        for(int i = 0; i < PlayerProfile.AI_SLOT_COUNT; i++) {
+            playerList.get(i + 1).setPlayerName(getAIName(aiNames, i));
+            playerList.get(i + 1).setAIStrategy(profile.getAIStrategy(i));
         }
-        Collections.shuffle(names);
-        return names;
+        isProfileApplied = true;
+        return true;
+    }
+
+    /**
+     * Gets a name for an AI player from the name list, or a numbered name when the list is too short.
+     *
+     * @param aiNames The shuffled names to choose from.
+     * @param index Which AI player the name is for.
+     * @return The name to use.
+     */
+    private String getAIName(List<String> aiNames, int index) {
+        return index < aiNames.size() ? aiNames.get(index) : "AI " + (index + 1);
     }
 }
@@ -111,6 +111,16 @@ public class LobbyPlayer extends Rectangle {
         return aiStrategy;
     }
 
+    /**
+     * Sets the strategy for this player. This is only relevant for AIPlayer types.
+     *
+     * @param aiStrategy The strategy to be used for the AI.
+     */
+    public void setAIStrategy(AIPlayer.AIStrategy aiStrategy) {
+        this.aiStrategy = aiStrategy;
+        strategyStr = "Strategy: " + aiStrategy.toString();
+    }
+
     /**
      * Handles the click to either iterate the strategy for AI or choose a new name for the player.
      */
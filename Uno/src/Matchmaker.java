@@ -0,0 +1,338 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Uno
+ *
+ * Matchmaker class:
+ * Groups the clients waiting to play by the signature of the RuleSet they asked for and
+ * forms a Match as soon as a bucket has enough of them to fill a table. Clients that have
+ * waited BACKFILL_DELAY are put in a Match with whoever else is waiting in the bucket and
+ * the empty seats are left for AIPlayers.
+ *
+ * Safe to use from every event loop at once without locking. Each bucket is a lock-free
+ * queue of Tickets with a count of the Tickets not yet taken. A join adds its Ticket and
+ * then counts it, and whoever sees the count reach a table's worth takes that many off the
+ * count before taking the Tickets off the queue. A Ticket is claimed with a single compare
+ * and set, so a client that leaves while waiting is never put in a Match and is never in
+ * two. Tickets taken when too few could be claimed are put back at the end of the queue.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class Matchmaker {
+    /**
+     * Time in ms a client waits for others to join before a table is formed with AIPlayers in the empty seats.
+     */
+    public static final int BACKFILL_DELAY = 10000;
+
+    /**
+     * Uno
+     *
+     * Ticket class:
+     * Defines a client waiting in a bucket for a table.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    public static class Ticket {
+        /**
+         * The client waiting.
+         */
+        private final ClientConnection connection;
+        /**
+         * The name the client joined with.
+         */
+        private final String playerName;
+        /**
+         * Index of the event loop that owns the client's connection.
+         */
+        private final int eventLoopID;
+        /**
+         * System.nanoTime() when the client joined.
+         */
+        private final long joinTime;
+        /**
+         * Set once the Ticket has been put in a Match or cancelled.
+         */
+        private final AtomicBoolean isClaimed;
+        /**
+         * The bucket the Ticket waits in.
+         */
+        private final Bucket bucket;
+
+        /**
+         * Creates a Ticket for a client.
+         *
+         * @param connection The client waiting.
+         * @param playerName The name the client joined with.
+         * @param eventLoopID Index of the event loop that owns the client's connection.
+         * @param bucket The bucket the Ticket waits in.
+         */
+        private Ticket(ClientConnection connection, String playerName, int eventLoopID, Bucket bucket) {
+            this.connection = connection;
+            this.playerName = playerName;
+            this.eventLoopID = eventLoopID;
+            this.bucket = bucket;
+            joinTime = System.nanoTime();
+            isClaimed = new AtomicBoolean();
+        }
+
+        /**
+         * Gets the client waiting.
+         *
+         * @return The client's connection.
+         */
+        public ClientConnection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Gets the name the client joined with.
+         *
+         * @return The player name.
+         */
+        public String getPlayerName() {
+            return playerName;
+        }
+
+        /**
+         * Gets the event loop that owns the client's connection.
+         *
+         * @return Index of the event loop.
+         */
+        public int getEventLoopID() {
+            return eventLoopID;
+        }
+    }
+
+    /**
+     * Uno
+     *
+     * Match class:
+     * Defines the clients put together at a new table and the rules they asked for.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    public static class Match {
+        /**
+         * The signature of the RuleSet the table is played with.
+         */
+        private final int signature;
+        /**
+         * The clients in the order they joined. There may be fewer than the table has seats.
+         */
+        private final List<Ticket> tickets;
+
+        /**
+         * Creates a Match.
+         *
+         * @param signature The signature of the RuleSet the table is played with.
+         * @param tickets The clients in the order they joined.
+         */
+        private Match(int signature, List<Ticket> tickets) {
+            this.signature = signature;
+            this.tickets = tickets;
+        }
+
+        /**
+         * Creates the RuleSet the clients asked for.
+         *
+         * @return A new RuleSet set from the signature.
+         */
+        public RuleSet createRuleSet() {
+            RuleSet ruleSet = new RuleSet();
+            ruleSet.setSignature(signature);
+            return ruleSet;
+        }
+
+        /**
+         * Gets the clients put together.
+         *
+         * @return The clients in the order they joined.
+         */
+        public List<Ticket> getTickets() {
+            return tickets;
+        }
+    }
+
+    /**
+     * Uno
+     *
+     * Bucket class:
+     * Defines the clients waiting for tables with the same RuleSet signature.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    private static class Bucket {
+        /**
+         * The signature of the RuleSet the clients asked for.
+         */
+        private final int signature;
+        /**
+         * Number of seats at the tables formed from the bucket.
+         */
+        private final int seatCount;
+        /**
+         * The Tickets in the order they joined. Cancelled Tickets stay until they reach the front.
+         */
+        private final Queue<Ticket> tickets;
+        /**
+         * Number of Tickets in the queue that have not been cancelled or taken for a Match.
+         */
+        private final AtomicInteger waitingCount;
+
+        /**
+         * Creates an empty bucket.
+         *
+         * @param signature The signature of the RuleSet the clients asked for.
+         */
+        private Bucket(int signature) {
+            this.signature = signature;
+            seatCount = (signature & RuleSet.TWO_PLAYERS_FLAG) != 0 ? 2 : 4;
+            tickets = new ConcurrentLinkedQueue<>();
+            waitingCount = new AtomicInteger();
+        }
+    }
+
+    /**
+     * The bucket for each RuleSet signature. Buckets are kept once created.
+     */
+    private final Map<Integer, Bucket> buckets;
+    /**
+     * Called with each Match formed, on the thread that formed it.
+     */
+    private final Consumer<Match> matchHandler;
+    /**
+     * Number of clients waiting in every bucket.
+     */
+    private final AtomicInteger waitingCount;
+
+    /**
+     * Creates a Matchmaker with no clients waiting.
+     *
+     * @param matchHandler Called with each Match formed. It may be called from any thread that uses the Matchmaker.
+     */
+    public Matchmaker(Consumer<Match> matchHandler) {
+        this.matchHandler = matchHandler;
+        buckets = new ConcurrentHashMap<>();
+        waitingCount = new AtomicInteger();
+    }
+
+    /**
+     * Adds a client to the bucket for their rules. When that fills a table the Match is formed
+     * before returning.
+     *
+     * @param connection The client joining.
+     * @param playerName The name the client joined with.
+     * @param signature A valid signature from RuleSet.getSignature().
+     * @param eventLoopID Index of the event loop that owns the client's connection.
+     * @return The Ticket that can be cancelled if the client leaves.
+     */
+    public Ticket join(ClientConnection connection, String playerName, int signature, int eventLoopID) {
+        Bucket bucket = buckets.get(signature);
+        if(bucket == null) {
+            bucket = buckets.computeIfAbsent(signature, Bucket::new);
+        }
+        Ticket ticket = new Ticket(connection, playerName, eventLoopID, bucket);
+        bucket.tickets.add(ticket);
+        waitingCount.incrementAndGet();
+        // The Ticket is only counted once it is in the queue, so a full count always has the Tickets to match it.
+        if(bucket.waitingCount.incrementAndGet() >= bucket.seatCount) {
+            formMatch(bucket, bucket.seatCount);
+        }
+        return ticket;
+    }
+
+    /**
+     * Removes a client who left while waiting.
+     *
+     * @param ticket The Ticket returned by join().
+     * @return True if the Ticket was cancelled, or false if it had already been put in a Match.
+     */
+    public boolean cancel(Ticket ticket) {
+        if(!ticket.isClaimed.compareAndSet(false, true)) return false;
+        ticket.bucket.waitingCount.decrementAndGet();
+        waitingCount.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Forms a Match from each bucket where the first client has waited BACKFILL_DELAY, with
+     * as many of the others waiting as fit. Called regularly by one of the event loops.
+     */
+    public void backfill() {
+        long now = System.nanoTime();
+        long backfillDelay = TimeUnit.MILLISECONDS.toNanos(BACKFILL_DELAY);
+        for(Bucket bucket : buckets.values()) {
+            Ticket first;
+            while((first = bucket.tickets.peek()) != null) {
+                if(first.isClaimed.get()) {
+                    // Cancelled Tickets are dropped from the front. remove() only drops this one.
+                    bucket.tickets.remove(first);
+                } else if(now - first.joinTime >= backfillDelay) {
+                    if(!formMatch(bucket, Math.min(bucket.seatCount, bucket.waitingCount.get()))) break;
+                } else {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of clients waiting for a table.
+     *
+     * @return The count across every bucket.
+     */
+    public int getWaitingCount() {
+        return waitingCount.get();
+    }
+
+    /**
+     * Takes clients from a bucket and passes them to the matchHandler as a Match. Nothing
+     * is formed when another thread took the clients first.
+     *
+     * @param bucket The bucket to take the clients from.
+     * @param size Number of clients to take, at most the bucket's seatCount.
+     * @return True if a Match was formed.
+     */
+    private boolean formMatch(Bucket bucket, int size) {
+        if(size <= 0) return false;
+        while(true) {
+            int count;
+            do {
+                count = bucket.waitingCount.get();
+                if(count < size) return false;
+            } while(!bucket.waitingCount.compareAndSet(count, count - size));
+            List<Ticket> tickets = new ArrayList<>(size);
+            Ticket ticket;
+            while(tickets.size() < size && (ticket = bucket.tickets.poll()) != null) {
+                if(ticket.isClaimed.compareAndSet(false, true)) {
+                    tickets.add(ticket);
+                }
+            }
+            if(tickets.size() == size) {
+                waitingCount.addAndGet(-size);
+                matchHandler.accept(new Match(bucket.signature, tickets));
+                return true;
+            }
+            // Tickets were cancelled after being counted and their cancel took them off the count as well,
+            // so the Tickets taken are put back and the whole size returned to the count before trying again.
+            for(Ticket taken : tickets) {
+                taken.isClaimed.set(false);
+                bucket.tickets.add(taken);
+            }
+            bucket.waitingCount.addAndGet(size);
+        }
+    }
+}
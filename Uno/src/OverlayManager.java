@@ -1,6 +1,5 @@
 import java.awt.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -16,9 +15,27 @@ import java.util.List;
  */
 public class OverlayManager extends WndInterface {
     /**
-     * Interfaces mapped to unique strings.
+     * Types of overlays that can be shown over a specific player.
      */
-    private final Map<String, WndInterface> overlays;
+    public enum GeneralOverlayType { SkipVisual, DrawN, ChallengeSuccess, ChallengeFailed, UNOCalled, AntiUnoCalled, JumpIn }
+
+    /**
+     * Overlays shown over players indexed by [GeneralOverlayType.ordinal()][playerID].
+     */
+    private final WndInterface[][] playerOverlays;
+    /**
+     * Overlays used for making a choice about a TurnDecisionAction.
+     */
+    private final WndInterface wildColourOverlay, keepOrPlayOverlay, playerSelectionOverlay,
+                                challengeOverlay, stackChoiceOverlay;
+    /**
+     * Overlay showing the status of the current TurnDecisionAction to all players.
+     */
+    private final StatusOverlay statusOverlay;
+    /**
+     * The overlays that are currently enabled. Overlays that disable themselves are removed during update().
+     */
+    private final List<WndInterface> activeOverlays;
     /**
      * Current action for an active TurnDecisionAction.
      */
@@ -32,46 +49,42 @@ public class OverlayManager extends WndInterface {
     public OverlayManager(Rectangle bounds, List<Player> playerList) {
         super(bounds);
         setEnabled(true);
-        overlays = new HashMap<>();
-        WildColourSelectorOverlay wildColourSelectorOverlay = new WildColourSelectorOverlay(new Position(bounds.width/2-100,bounds.height/2-100),200,200);
-        KeepOrPlayOverlay keepOrPlayOverlay = new KeepOrPlayOverlay(new Rectangle(new Position(0,0), bounds.width, bounds.height));
-        PlayerSelectionOverlay playerSelectionOverlay = new PlayerSelectionOverlay(new Rectangle(new Position(0,0), bounds.width, bounds.height), playerList);
-        StatusOverlay statusOverlay = new StatusOverlay(new Rectangle(new Position(0,0), bounds.width, bounds.height));
-        ChallengeOverlay challengeOverlay = new ChallengeOverlay(bounds);
-        StackChoiceOverlay stackChoiceOverlay = new StackChoiceOverlay(bounds);
-        overlays.put("wildColour", wildColourSelectorOverlay);
-        overlays.put("keepOrPlay", keepOrPlayOverlay);
-        overlays.put("otherPlayer", playerSelectionOverlay);
-        overlays.put("statusOverlay", statusOverlay);
-        overlays.put("isChallenging", challengeOverlay);
-        overlays.put("isStacking", stackChoiceOverlay);
+        activeOverlays = new ArrayList<>();
+        wildColourOverlay = new WildColourSelectorOverlay(new Position(bounds.width/2-100,bounds.height/2-100),200,200);
+        keepOrPlayOverlay = new KeepOrPlayOverlay(new Rectangle(new Position(0,0), bounds.width, bounds.height));
+        playerSelectionOverlay = new PlayerSelectionOverlay(new Rectangle(new Position(0,0), bounds.width, bounds.height), playerList);
+        statusOverlay = new StatusOverlay(new Rectangle(new Position(0,0), bounds.width, bounds.height));
+        challengeOverlay = new ChallengeOverlay(bounds);
+        stackChoiceOverlay = new StackChoiceOverlay(bounds);
 
-        UnoButton unoButton = new UnoButton(new Position(bounds.position.x + bounds.width - UnoButton.WIDTH-40,
-                bounds.position.y + bounds.height - UnoButton.HEIGHT-40));
-        AntiUnoButton antiUnoButton = new AntiUnoButton(new Position(bounds.position.x + bounds.width - UnoButton.WIDTH-40-100,
-                bounds.position.y + bounds.height - UnoButton.HEIGHT-40));
+        playerOverlays = new WndInterface[GeneralOverlayType.values().length][playerList.size()];
         for(int i = 0; i < playerList.size(); i++) {
             Position playerCentre = playerList.get(i).getCentreOfBounds();
-            PlayerFlashOverlay skipVisualOverlay = new PlayerFlashOverlay(playerCentre, "SKIPPED", Color.RED, 40);
-            overlays.put("SkipVisual"+i,skipVisualOverlay);
-            PlayerFlashOverlay drawNMessageOverlay = new PlayerFlashOverlay(playerCentre, "", Color.RED, 40);
-            overlays.put("DrawN"+i,drawNMessageOverlay);
-            ChallengeSuccessOverlay challengeSuccessOverlay = new ChallengeSuccessOverlay(new Rectangle(playerCentre, 100,100));
-            overlays.put("ChallengeSuccess"+i,challengeSuccessOverlay);
-            ChallengeFailedOverlay challengeFailedOverlay = new ChallengeFailedOverlay(new Rectangle(playerCentre, 100,100));
-            overlays.put("ChallengeFailed"+i,challengeFailedOverlay);
-            UNOCalledOverlay unoCalledOverlay = new UNOCalledOverlay(new Position(playerCentre.x,playerCentre.y+20));
-            overlays.put("UNOCalled"+i,unoCalledOverlay);
-            PlayerFlashOverlay antiUnoOverlay = new PlayerFlashOverlay(new Position(playerCentre.x,playerCentre.y+20),
+            playerOverlays[GeneralOverlayType.SkipVisual.ordinal()][i]
+                    = new PlayerFlashOverlay(playerCentre, "SKIPPED", Color.RED, 40);
+            playerOverlays[GeneralOverlayType.DrawN.ordinal()][i]
+                    = new PlayerFlashOverlay(playerCentre, "", Color.RED, 40);
+            playerOverlays[GeneralOverlayType.ChallengeSuccess.ordinal()][i]
+                    = new ChallengeSuccessOverlay(new Rectangle(playerCentre, 100,100));
+            playerOverlays[GeneralOverlayType.ChallengeFailed.ordinal()][i]
+                    = new ChallengeFailedOverlay(new Rectangle(playerCentre, 100,100));
+            playerOverlays[GeneralOverlayType.UNOCalled.ordinal()][i]
+                    = new UNOCalledOverlay(new Position(playerCentre.x,playerCentre.y+20));
+            playerOverlays[GeneralOverlayType.AntiUnoCalled.ordinal()][i]
+                    = new PlayerFlashOverlay(new Position(playerCentre.x,playerCentre.y+20),
                     "!", new Color(226, 173, 67), 50);
-            overlays.put("AntiUnoCalled"+i,antiUnoOverlay);
-            PlayerFlashOverlay jumpInOverlay = new PlayerFlashOverlay(new Position(playerCentre.x,playerCentre.y+20),
+            playerOverlays[GeneralOverlayType.JumpIn.ordinal()][i]
+                    = new PlayerFlashOverlay(new Position(playerCentre.x,playerCentre.y+20),
                     "JUMPED IN", Color.ORANGE, 40);
-            overlays.put("JumpIn"+i, jumpInOverlay);
         }
-        overlays.put("UnoButton", unoButton);
-        overlays.put("antiUnoButton", antiUnoButton);
-
+        // The buttons are always enabled and decide themselves when they are visible.
+        // Hosted games have no player at this screen to press them.
+        if(CurrentGameInterface.getCurrentGame().getBottomPlayer() != null) {
+            activeOverlays.add(new UnoButton(new Position(bounds.position.x + bounds.width - UnoButton.WIDTH-40,
+                    bounds.position.y + bounds.height - UnoButton.HEIGHT-40)));
+            activeOverlays.add(new AntiUnoButton(new Position(bounds.position.x + bounds.width - UnoButton.WIDTH-40-100,
+                    bounds.position.y + bounds.height - UnoButton.HEIGHT-40)));
+        }
     }
 
     /**
@@ -82,50 +95,62 @@ public class OverlayManager extends WndInterface {
      */
     public void showDecisionOverlay(TurnActionFactory.TurnDecisionAction currentAction) {
         if(currentAction.timeOut) {
+            GameLogger.log(GameLogger.Category.Overlays, GameLogger.Level.Debug, "Showing decision overlay for {}.", currentAction.flagName);
             setEnabled(true);
             if(CurrentGameInterface.getCurrentGame().getCurrentPlayer().getPlayerType() == Player.PlayerType.ThisPlayer) {
-                WndInterface overlayToShow = overlays.get(currentAction.flagName);
+                WndInterface overlayToShow = getDecisionOverlay(currentAction.flagName);
                 if (overlayToShow instanceof TurnDecisionOverlayInterface) {
-                   ((TurnDecisionOverlayInterface)overlayToShow).showOverlay(currentAction);
+                    ((TurnDecisionOverlayInterface)overlayToShow).showOverlay(currentAction);
+                    addActiveOverlay(overlayToShow);
                 }
             }
             overlayAction = currentAction;
-            ((TurnDecisionOverlayInterface)overlays.get("statusOverlay")).showOverlay(currentAction);
+            statusOverlay.showOverlay(currentAction);
+            addActiveOverlay(statusOverlay);
         }
     }
 
     /**
-     * Finds the matching interface and makes it visible if possible.
+     * Shows the overlay of the specified type over a player.
      *
-     * @param overlayName Name that maps to an interface.
+     * @param overlayType The type of overlay to show.
+     * @param playerID The player to show the overlay over.
      */
-    public void showGeneralOverlay(String overlayName) {
-        // Split to allow for parameter inputs separated by ;
-        String[] splitOverlayName = overlayName.split(";");
-        WndInterface overlayToShow = overlays.get(splitOverlayName[0]);
+    public void showGeneralOverlay(GeneralOverlayType overlayType, int playerID) {
+        WndInterface overlayToShow = playerOverlays[overlayType.ordinal()][playerID];
         if(overlayToShow instanceof GeneralOverlayInterface) {
             ((GeneralOverlayInterface)overlayToShow).showOverlay();
-            if(splitOverlayName[0].startsWith("DrawN")) {
-                // Sets the number to be displayed.
-                ((PlayerFlashOverlay)overlayToShow).setMessage("+"+splitOverlayName[1]);
-            }
+            addActiveOverlay(overlayToShow);
         }
     }
 
+    /**
+     * Shows the DrawN overlay over a player with the number of cards they drew.
+     *
+     * @param playerID The player to show the overlay over.
+     * @param drawCount The number of cards to show as drawn.
+     */
+    public void showDrawNOverlay(int playerID, int drawCount) {
+        showGeneralOverlay(GeneralOverlayType.DrawN, playerID);
+        ((PlayerFlashOverlay)playerOverlays[GeneralOverlayType.DrawN.ordinal()][playerID]).setMessage("+"+drawCount);
+    }
+
     /**
      * Hides all the decision overlays automatically called when the TurnAction changes in update().
      */
     public void hideAllDecisionOverlays() {
-        overlays.forEach((key, overlay) -> {
-            if(overlay instanceof TurnDecisionOverlayInterface) {
-                overlay.setEnabled(false);
-            }
-        });
+        wildColourOverlay.setEnabled(false);
+        keepOrPlayOverlay.setEnabled(false);
+        playerSelectionOverlay.setEnabled(false);
+        challengeOverlay.setEnabled(false);
+        stackChoiceOverlay.setEnabled(false);
+        statusOverlay.setEnabled(false);
         setEnabled(false);
     }
 
     /**
      * Updates all the active overlays and hides all the decision overlays if the TurnAction changed.
+     * Any overlays that are no longer enabled are removed from the active overlays.
      *
      * @param deltaTime Time since last update.
      */
@@ -136,11 +161,20 @@ public class OverlayManager extends WndInterface {
             hideAllDecisionOverlays();
         }
 
-        overlays.forEach((key, overlay) -> {
+        int activeCount = 0;
+        for(int i = 0; i < activeOverlays.size(); i++) {
+            WndInterface overlay = activeOverlays.get(i);
             if(overlay.isEnabled()) {
                 overlay.update(deltaTime);
             }
-        });
+            // Checked again because the update may have hidden the overlay.
+            if(overlay.isEnabled()) {
+                activeOverlays.set(activeCount++, overlay);
+            }
+        }
+        while(activeOverlays.size() > activeCount) {
+            activeOverlays.remove(activeOverlays.size()-1);
+        }
     }
 
     /**
@@ -150,11 +184,11 @@ public class OverlayManager extends WndInterface {
      */
     @Override
     public void paint(Graphics g) {
-        overlays.forEach((key, overlay) -> {
+        for(WndInterface overlay : activeOverlays) {
             if(overlay.isEnabled()) {
                 overlay.paint(g);
             }
-        });
+        }
     }
 
     /**
@@ -165,11 +199,14 @@ public class OverlayManager extends WndInterface {
      */
     @Override
     public void handleMousePress(Position mousePosition, boolean isLeft) {
-        overlays.forEach((key, overlay) -> {
+        // Only overlays active before the press receive it. Pressing can show new overlays.
+        int activeCount = activeOverlays.size();
+        for(int i = 0; i < activeCount; i++) {
+            WndInterface overlay = activeOverlays.get(i);
             if(overlay.isEnabled()) {
                 overlay.handleMousePress(mousePosition, isLeft);
             }
-        });
+        }
     }
 
     /**
@@ -179,10 +216,38 @@ public class OverlayManager extends WndInterface {
      */
     @Override
     public void handleMouseMove(Position mousePosition) {
-        overlays.forEach((key, overlay) -> {
+        for(WndInterface overlay : activeOverlays) {
             if(overlay.isEnabled()) {
                 overlay.handleMouseMove(mousePosition);
             }
-        });
+        }
+    }
+
+    /**
+     * Adds the overlay to the collection of active overlays if it is not already there.
+     *
+     * @param overlay The overlay that has just been shown.
+     */
+    private void addActiveOverlay(WndInterface overlay) {
+        if(!activeOverlays.contains(overlay)) {
+            activeOverlays.add(overlay);
+        }
+    }
+
+    /**
+     * Looks up the overlay used to make a choice for a TurnDecisionAction.
+     *
+     * @param flagName The flagName of the TurnDecisionAction.
+     * @return The matching overlay or null if there is no overlay for the decision.
+     */
+    private WndInterface getDecisionOverlay(String flagName) {
+        return switch (flagName) {
+            case "wildColour" -> wildColourOverlay;
+            case "keepOrPlay" -> keepOrPlayOverlay;
+            case "otherPlayer" -> playerSelectionOverlay;
+            case "isChallenging" -> challengeOverlay;
+            case "isStacking" -> stackChoiceOverlay;
+            default -> null;
+        };
     }
 }
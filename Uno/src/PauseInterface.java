@@ -17,6 +17,10 @@ public class PauseInterface extends WndInterface {
      * A list of all the buttons in the interface.
      */
     private final List<Button> buttonList;
+    /**
+     * Grid over the buttons to look up the button under the mouse.
+     */
+    private final ButtonHitGrid buttonHitGrid;
     /**
      * A reference to the GamePanel to call back to it.
      */
@@ -41,12 +45,15 @@ public class PauseInterface extends WndInterface {
                         bounds.width-12, 30, "Return to Lobby", 3));
         buttonList.add(new Button(new Position(bounds.position.x+6, bounds.position.y+6+(30+6)*2+60),
                 bounds.width-12, 30, "Quit", 2));
+        buttonHitGrid = new ButtonHitGrid();
+        buttonHitGrid.rebuild(buttonList);
 
         leftMessages = new ArrayList<>();
         rightMessages = new ArrayList<>();
 
         leftMessages.add("Escape: Pause");
         leftMessages.add("Q: Sort hand");
+        leftMessages.add("+/-: Game Speed");
 
         rightMessages.add("0: Turn on Debug");
         rightMessages.add("9: Reveal All Hands");
@@ -80,11 +87,11 @@ public class PauseInterface extends WndInterface {
 
         g.setColor(new Color(165, 177, 94, 205));
         g.fillRect(bounds.position.x, bounds.position.y, bounds.width, bounds.height);
-        g.fillRect(170, 300, 160, 90);
+        g.fillRect(170, 300, 160, 120);
         g.fillRect(790, 220, 410, 300);
         g.setColor(Color.BLACK);
         g.drawRect(bounds.position.x, bounds.position.y, bounds.width, bounds.height);
-        g.drawRect(170, 300, 160, 90);
+        g.drawRect(170, 300, 160, 120);
         g.drawRect(790, 220, 410, 300);
         g.setFont(new Font("Arial", Font.BOLD, 40));
         int strWidth = g.getFontMetrics().stringWidth("Paused");
@@ -111,9 +118,7 @@ public class PauseInterface extends WndInterface {
     public void handleMouseMove(Position mousePosition) {
         if(!isEnabled()) return;
 
-        for (Button button : buttonList) {
-            button.setHovering(button.isPositionInside(mousePosition));
-        }
+        buttonHitGrid.updateHover(mousePosition);
     }
 
     /**
@@ -126,11 +131,9 @@ public class PauseInterface extends WndInterface {
     public void handleMousePress(Position mousePosition, boolean isLeft) {
         if(!isEnabled()) return;
 
-        for (Button button : buttonList) {
-            if(button.isPositionInside(mousePosition)) {
-                handleButtonAction(button.getActionID());
-                break;
-            }
+        Button pressedButton = buttonHitGrid.getItemAt(mousePosition);
+        if(pressedButton != null) {
+            handleButtonAction(pressedButton.getActionID());
         }
     }
 
@@ -17,8 +17,9 @@ public class Player {
      * Types of players include:
      * ThisPlayer: Only one allowed, this is the player who is playing this game.
      * AIPlayer: Controlled by an AI (should be using an AIPlayer class).
+     * NetworkPlayer: Controlled by a remote client connected to a GameServer.
      */
-    public enum PlayerType { ThisPlayer, AIPlayer}
+    public enum PlayerType { ThisPlayer, AIPlayer, NetworkPlayer }
 
     /**
      * Safe indicates the player is not vulnerable to counter calls.
@@ -27,6 +28,11 @@ public class Player {
      */
     public enum UNOState { Safe, Called, NotSafe }
 
+    /**
+     * Distance the hovered card is moved up to show it is hovered.
+     */
+    private static final int HOVER_OFFSET = 10;
+
     /**
      * The unique ID for this player.
      */
@@ -52,6 +58,10 @@ public class Player {
      * The card that the player is currently hovering their mouse over.
      */
     private Card hoveredCard;
+    /**
+     * Grid built over the card positions to look up the card under the mouse.
+     */
+    private final HitTestGrid<Card> cardHitGrid;
     /**
      * When true the cards for this player are revealed face-up.
      */
@@ -77,6 +87,11 @@ public class Player {
      * The current UNOState that can be Safe, Called, or NotSafe.
      */
     private UNOState unoState;
+    /**
+     * Moves the cards when the hand is laid out. Set by the game the player is in,
+     * and null until then so cards are placed without animating.
+     */
+    private CardAnimator cardAnimator;
 
     /**
      * Initialises the player with an empty hand and defaults to showing cards if
@@ -95,6 +110,7 @@ public class Player {
         this.bounds = bounds;
         this.showPlayerNameLeft = showPlayerNameLeft;
         hand = new ArrayList<>();
+        cardHitGrid = new HitTestGrid<>(HOVER_OFFSET);
         showCards = playerType == PlayerType.ThisPlayer;
         wonRound = false;
         totalScore = currentRoundScore = 0;
@@ -119,7 +135,7 @@ public class Player {
         if(showCards) {
             hand.forEach(card -> card.paint(g));
         } else {
-            hand.forEach(card -> Card.paintCardBack(g, card));
+            hand.forEach(card -> card.paintBack(g));
         }
         g.setFont(new Font("Arial", Font.BOLD, 20));
         int strWidth = g.getFontMetrics().stringWidth(playerName);
@@ -142,11 +158,22 @@ public class Player {
         recalculateCardPositions();
     }
 
+    /**
+     * Sets the animator used to move cards when the hand is laid out.
+     *
+     * @param cardAnimator The animator of the game this player is in.
+     */
+    public void setCardAnimator(CardAnimator cardAnimator) {
+        this.cardAnimator = cardAnimator;
+    }
+
     /**
      * Empties the hand.
      */
     public void emptyHand() {
         hand.clear();
+        hoveredCard = null;
+        cardHitGrid.rebuild(hand);
     }
 
     /**
@@ -186,6 +213,19 @@ public class Player {
      * @return A list of cards that are valid to be played in this context.
      */
     public List<Card> getValidMoves(int curFaceValue, int curColourValue) {
+        return getValidMoves(hand, curFaceValue, curColourValue);
+    }
+
+    /**
+     * Finds every card in a hand that can be played on top of a card with the
+     * faceValue and colourValue given.
+     *
+     * @param hand The cards to check.
+     * @param curFaceValue The faceValue to check against.
+     * @param curColourValue The colourID to check against.
+     * @return A list of cards that are valid to be played in this context.
+     */
+    public static List<Card> getValidMoves(List<Card> hand, int curFaceValue, int curColourValue) {
         List<Card> result = new ArrayList<>();
         for(Card card : hand) {
             if(card.getFaceValueID() == curFaceValue || card.getColourID() == curColourValue
@@ -209,22 +249,22 @@ public class Player {
     }
 
     /**
-     * Updates the hover to check which card is hovered and then updates the
-     * positions of all cards to offset based on hovering.
+     * Updates the hover to check which card is hovered using the grid of card positions.
+     * If the hovered card changed only the previous and new hovered cards are moved.
      *
      * @param mousePosition Position of the mouse cursor.
      */
     public void updateHover(Position mousePosition) {
-        if(hoveredCard != null && !hoveredCard.isPositionInside(mousePosition)) {
-            hoveredCard = null;
+        Card newHoveredCard = cardHitGrid.getItemAt(mousePosition);
+        if(newHoveredCard == hoveredCard) return;
+
+        if(hoveredCard != null) {
+            hoveredCard.position.y += HOVER_OFFSET;
         }
-        for(Card card : hand) {
-            if(card.isPositionInside(mousePosition)) {
-                hoveredCard = card;
-                break;
-            }
+        if(newHoveredCard != null) {
+            newHoveredCard.position.y -= HOVER_OFFSET;
         }
-        recalculateCardPositions();
+        hoveredCard = newHoveredCard;
     }
 
     /**
@@ -234,6 +274,9 @@ public class Player {
      */
     public void removeCard(Card card) {
         hand.remove(card);
+        if(card == hoveredCard) {
+            hoveredCard = null;
+        }
         recalculateCardPositions();
     }
 
@@ -306,7 +349,8 @@ public class Player {
     /**
      * Recalculates positions for all cards by calculating numbers of
      * rows and columns then centring inside the region and applying
-     * positions to all cards in the hand.
+     * positions to all cards in the hand. Cards animate from where they were to
+     * their new positions. Then rebuilds the grid used for hovering.
      */
     private void recalculateCardPositions() {
         int paddingX = -15;
@@ -325,9 +369,14 @@ public class Player {
         }
         for(Card card : hand) {
             // Apply a visual offset to the hovered card
-            int hoverOffset = (card == hoveredCard) ? -10 : 0;
-            card.position.setPosition(bounds.position.x + rowXOffset + x*(Card.CARD_WIDTH+paddingX),
-                                     startY + y*(Card.CARD_HEIGHT+paddingY) + hoverOffset);
+            int hoverOffset = (card == hoveredCard) ? -HOVER_OFFSET : 0;
+            int cardX = bounds.position.x + rowXOffset + x*(Card.CARD_WIDTH+paddingX);
+            int cardY = startY + y*(Card.CARD_HEIGHT+paddingY) + hoverOffset;
+            if(cardAnimator != null) {
+                cardAnimator.moveCard(card, cardX, cardY, CardAnimator.DEFAULT_DURATION);
+            } else {
+                card.position.setPosition(cardX, cardY);
+            }
             x++;
             remainingElements--;
             // Check for iterating to the next row.
@@ -341,6 +390,7 @@ public class Player {
                 }
             }
         }
+        cardHitGrid.rebuild(hand);
     }
 
     /**
@@ -387,6 +437,15 @@ public class Player {
         return currentRoundScore;
     }
 
+    /**
+     * Sets the total score without changing the round score. Used when restoring a saved game.
+     *
+     * @param totalScore The total score from previous rounds.
+     */
+    public void restoreTotalScore(int totalScore) {
+        this.totalScore = totalScore;
+    }
+
     /**
      * Resets the score back to nothing.
      */
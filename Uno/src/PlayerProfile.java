@@ -0,0 +1,393 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uno
+ *
+ * PlayerProfile class:
+ * Settings and statistics kept between runs of the game: the rules and
+ * players last used in the lobby, the list of names for AI players, and the
+ * lifetime record of the player against each AIStrategy. The profile is
+ * loaded once on a background thread when the game starts and then kept in
+ * memory, so building the lobby never waits for the disk. Changes are saved
+ * on the same background thread.
+ *
+ * The file is: MAGIC, format version, RuleSet flags, ScoreLimitType, the player
+ * name, the AIStrategy of each AI slot in the lobby, the AI name list, and then
+ * for each AIStrategy the rounds played against it, rounds won, and points won.
+ * Strings are their length in bytes followed by UTF-8 bytes. All numbers are
+ * variable length integers.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class PlayerProfile {
+    /**
+     * Bytes at the start of every profile to identify the file.
+     */
+    public static final byte[] MAGIC = {'U', 'N', 'O', 'P'};
+    /**
+     * Version of the format. Profiles with any other version are replaced with defaults.
+     */
+    public static final int FORMAT_VERSION = 1;
+    /**
+     * Name of the file the profile is saved to.
+     */
+    public static final String PROFILE_FILE = "Profile.unoprofile";
+    /**
+     * File the names for AI players are imported from when the profile does not have any.
+     */
+    public static final String NAME_LIST_FILE = "AINameList.txt";
+    /**
+     * Number of AI players in the lobby.
+     */
+    public static final int AI_SLOT_COUNT = 3;
+
+    /**
+     * Thread used to load and save the profile.
+     */
+    private static final ExecutorService fileExecutor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "PlayerProfile");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * The profile being loaded or already loaded. Null until load() is called.
+     */
+    private static CompletableFuture<PlayerProfile> loadedProfile;
+
+    /**
+     * The rules last used to start a game.
+     */
+    private final RuleSet ruleSet;
+    /**
+     * The name the player last used.
+     */
+    private String playerName;
+    /**
+     * The strategy last chosen for each AI slot in the lobby.
+     */
+    private final AIPlayer.AIStrategy[] aiStrategies;
+    /**
+     * Names to choose from for AI players.
+     */
+    private final List<String> aiNames;
+    /**
+     * Rounds the player has played against each strategy, indexed by AIStrategy ordinal.
+     */
+    private final int[] roundsPlayed;
+    /**
+     * Rounds the player has won against each strategy, indexed by AIStrategy ordinal.
+     */
+    private final int[] roundsWon;
+    /**
+     * Total round score of the rounds the player has won against each strategy, indexed by AIStrategy ordinal.
+     */
+    private final int[] pointsWon;
+
+    /**
+     * Creates a profile with default rules and no statistics.
+     */
+    private PlayerProfile() {
+        ruleSet = new RuleSet();
+        playerName = "Player";
+        aiStrategies = new AIPlayer.AIStrategy[AI_SLOT_COUNT];
+        for(int i = 0; i < AI_SLOT_COUNT; i++) {
+            aiStrategies[i] = AIPlayer.AIStrategy.Random;
+        }
+        aiNames = new ArrayList<>();
+        roundsPlayed = new int[AIPlayer.AIStrategy.values().length];
+        roundsWon = new int[AIPlayer.AIStrategy.values().length];
+        pointsWon = new int[AIPlayer.AIStrategy.values().length];
+    }
+
+    /**
+     * Starts loading the profile on the background thread if it has not already been started.
+     */
+    public static synchronized void load() {
+        if(loadedProfile == null) {
+            loadedProfile = CompletableFuture.supplyAsync(PlayerProfile::readProfile, fileExecutor);
+        }
+    }
+
+    /**
+     * Gets the profile if it has finished loading.
+     *
+     * @return The profile, or null if it is still loading or load() has not been called.
+     */
+    public static synchronized PlayerProfile getIfLoaded() {
+        if(loadedProfile == null || !loadedProfile.isDone()) return null;
+        return loadedProfile.join();
+    }
+
+    /**
+     * Waits for any saves that have been queued to be written.
+     */
+    public static void waitForSaves() {
+        try {
+            fileExecutor.submit(() -> {}).get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Warning, "Profile may not have been saved. {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the rules last used to start a game.
+     *
+     * @return The stored rules. Copy them before changing them.
+     */
+    public RuleSet getRuleSet() {
+        return ruleSet;
+    }
+
+    /**
+     * Gets the name the player last used.
+     *
+     * @return The player's name.
+     */
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    /**
+     * Gets the strategy last chosen for an AI slot in the lobby.
+     *
+     * @param slot The AI slot from 0 to AI_SLOT_COUNT-1.
+     * @return The strategy.
+     */
+    public AIPlayer.AIStrategy getAIStrategy(int slot) {
+        return aiStrategies[slot];
+    }
+
+    /**
+     * Gets the names for AI players in a random order.
+     *
+     * @return A new shuffled list of names.
+     */
+    public List<String> getShuffledAINames() {
+        List<String> names = new ArrayList<>(aiNames);
+        Collections.shuffle(names);
+        return names;
+    }
+
+    /**
+     * Gets the number of rounds the player has played against a strategy.
+     *
+     * @param strategy The strategy of the opponent.
+     * @return The number of rounds.
+     */
+    public int getRoundsPlayed(AIPlayer.AIStrategy strategy) {
+        return roundsPlayed[strategy.ordinal()];
+    }
+
+    /**
+     * Gets the number of rounds the player has won against a strategy.
+     *
+     * @param strategy The strategy of the opponent.
+     * @return The number of rounds won.
+     */
+    public int getRoundsWon(AIPlayer.AIStrategy strategy) {
+        return roundsWon[strategy.ordinal()];
+    }
+
+    /**
+     * Gets the total round score of the rounds the player has won against a strategy.
+     *
+     * @param strategy The strategy of the opponent.
+     * @return The total points.
+     */
+    public int getPointsWon(AIPlayer.AIStrategy strategy) {
+        return pointsWon[strategy.ordinal()];
+    }
+
+    /**
+     * Remembers the rules and players used to start a game and saves the profile.
+     *
+     * @param ruleSet The rules the game was started with.
+     * @param lobbyPlayers The players in the lobby. The ThisPlayer name and the AI strategies are kept.
+     */
+    public void storeLobby(RuleSet ruleSet, List<LobbyPlayer> lobbyPlayers) {
+        this.ruleSet.setRuleFlags(ruleSet.getRuleFlags());
+        this.ruleSet.setScoreLimitType(ruleSet.getScoreLimitType());
+        int slot = 0;
+        for(LobbyPlayer lobbyPlayer : lobbyPlayers) {
+            if(lobbyPlayer.getPlayerType() == Player.PlayerType.ThisPlayer) {
+                playerName = lobbyPlayer.getPlayerName();
+            } else if(lobbyPlayer.getPlayerType() == Player.PlayerType.AIPlayer && slot < AI_SLOT_COUNT) {
+                aiStrategies[slot++] = lobbyPlayer.getAIStrategy();
+            }
+        }
+        save();
+    }
+
+    /**
+     * Adds a finished round to the player's record against each strategy that was played
+     * against and saves the profile. Rounds without a ThisPlayer are ignored.
+     *
+     * @param players The players in the round after the winner has been set.
+     */
+    public void recordRound(List<Player> players) {
+        Player thisPlayer = players.stream().filter(player -> player.getPlayerType() == Player.PlayerType.ThisPlayer)
+                                    .findFirst().orElse(null);
+        if(thisPlayer == null) return;
+        boolean[] playedAgainst = new boolean[roundsPlayed.length];
+        for(Player player : players) {
+            if(player instanceof AIPlayer) {
+                playedAgainst[((AIPlayer) player).getStrategy().ordinal()] = true;
+            }
+        }
+        for(int strategy = 0; strategy < playedAgainst.length; strategy++) {
+            if(!playedAgainst[strategy]) continue;
+            roundsPlayed[strategy]++;
+            if(thisPlayer.getWon()) {
+                roundsWon[strategy]++;
+                pointsWon[strategy] += thisPlayer.getCurrentRoundScore();
+            }
+        }
+        save();
+    }
+
+    /**
+     * Encodes the profile and queues it to be written on the background thread.
+     * The file is replaced only once the new version has been completely written.
+     */
+    private void save() {
+        ByteBuffer buffer = write();
+        fileExecutor.execute(() -> {
+            Path file = Paths.get(PROFILE_FILE);
+            Path tempFile = Paths.get(PROFILE_FILE + ".tmp");
+            try {
+                Files.write(tempFile, Arrays.copyOfRange(buffer.array(), 0, buffer.limit()));
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Failed to save profile. {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Encodes the profile.
+     *
+     * @return A buffer ready for reading.
+     */
+    private ByteBuffer write() {
+        int size = 64 + playerName.length() * 4;
+        for(String name : aiNames) {
+            size += 5 + name.length() * 4;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size + roundsPlayed.length * 15);
+        buffer.put(MAGIC);
+        GameEventLog.writeVarInt(buffer, FORMAT_VERSION);
+        GameEventLog.writeVarInt(buffer, ruleSet.getRuleFlags());
+        buffer.put((byte) ruleSet.getScoreLimitType().ordinal());
+        writeString(buffer, playerName);
+        for(AIPlayer.AIStrategy strategy : aiStrategies) {
+            buffer.put((byte) strategy.ordinal());
+        }
+        GameEventLog.writeVarInt(buffer, aiNames.size());
+        for(String name : aiNames) {
+            writeString(buffer, name);
+        }
+        for(int strategy = 0; strategy < roundsPlayed.length; strategy++) {
+            GameEventLog.writeVarInt(buffer, roundsPlayed[strategy]);
+            GameEventLog.writeVarInt(buffer, roundsWon[strategy]);
+            GameEventLog.writeVarInt(buffer, pointsWon[strategy]);
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Reads the profile file. When there is no file, or it can not be read, a default profile is
+     * used instead. The AI name list is imported from NAME_LIST_FILE when the profile has no names.
+     *
+     * @return The profile.
+     */
+    private static PlayerProfile readProfile() {
+        PlayerProfile profile = new PlayerProfile();
+        Path file = Paths.get(PROFILE_FILE);
+        if(Files.exists(file)) {
+            try {
+                profile.read(ByteBuffer.wrap(Files.readAllBytes(file)));
+            } catch (IOException | RuntimeException e) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Warning, "Failed to read profile. Using defaults. {}", e.getMessage());
+                profile = new PlayerProfile();
+            }
+        }
+        if(profile.aiNames.isEmpty()) {
+            try {
+                Files.readAllLines(Paths.get(NAME_LIST_FILE), StandardCharsets.UTF_8).stream()
+                        .map(String::trim).filter(name -> !name.isEmpty()).forEach(profile.aiNames::add);
+            } catch (IOException e) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Warning, "Failed to read name list. File not found.");
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Fills the profile from data written by write().
+     *
+     * @param buffer The buffer to read from.
+     * @throws IOException When the data is not a profile or is a different version.
+     * @throws BufferUnderflowException When the data is incomplete.
+     */
+    private void read(ByteBuffer buffer) throws IOException {
+        for(byte magicByte : MAGIC) {
+            if(buffer.get() != magicByte) throw new IOException("Not a profile.");
+        }
+        if(GameEventLog.readVarInt(buffer) != FORMAT_VERSION) throw new IOException("Unsupported profile version.");
+        ruleSet.setRuleFlags(GameEventLog.readVarInt(buffer));
+        ruleSet.setScoreLimitType(RuleSet.ScoreLimitType.values()[buffer.get()]);
+        playerName = readString(buffer);
+        for(int i = 0; i < AI_SLOT_COUNT; i++) {
+            aiStrategies[i] = AIPlayer.AIStrategy.values()[buffer.get()];
+        }
+        int nameCount = GameEventLog.readVarInt(buffer);
+        for(int i = 0; i < nameCount; i++) {
+            aiNames.add(readString(buffer));
+        }
+        for(int strategy = 0; strategy < roundsPlayed.length; strategy++) {
+            roundsPlayed[strategy] = GameEventLog.readVarInt(buffer);
+            roundsWon[strategy] = GameEventLog.readVarInt(buffer);
+            pointsWon[strategy] = GameEventLog.readVarInt(buffer);
+        }
+    }
+
+    /**
+     * Writes a string as its length in bytes followed by the UTF-8 bytes.
+     *
+     * @param buffer The buffer to write to.
+     * @param value The string to write.
+     */
+    private static void writeString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        GameEventLog.writeVarInt(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Reads a string written by writeString().
+     *
+     * @param buffer The buffer to read from.
+     * @return The string.
+     */
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[GameEventLog.readVarInt(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -16,6 +16,10 @@ public class PostGameInterface extends WndInterface {
      * List of buttons visible on the interface.
      */
     private final List<Button> buttonList;
+    /**
+     * Grid over the buttons to look up the button under the mouse.
+     */
+    private final ButtonHitGrid buttonHitGrid;
     /**
      * Reference to the players that are being shown for scores.
      */
@@ -95,6 +99,8 @@ public class PostGameInterface extends WndInterface {
             buttonList.add(new Button(new Position(bounds.width / 2 + 125 + 20, 620), 250, 40,
                     "New Game Same Settings", 3));
         }
+        buttonHitGrid = new ButtonHitGrid();
+        buttonHitGrid.rebuild(buttonList);
     }
 
     /**
@@ -177,10 +183,10 @@ public class PostGameInterface extends WndInterface {
     @Override
     public void handleMousePress(Position mousePosition, boolean isLeft) {
         if(!isEnabled()) return;
-        buttonList.forEach(button -> {
-            if(button.isPositionInside(mousePosition))
-                handleButtonPress(button.getActionID());
-        });
+        Button pressedButton = buttonHitGrid.getItemAt(mousePosition);
+        if(pressedButton != null) {
+            handleButtonPress(pressedButton.getActionID());
+        }
     }
 
     /**
@@ -191,7 +197,7 @@ public class PostGameInterface extends WndInterface {
     @Override
     public void handleMouseMove(Position mousePosition) {
         if(!isEnabled()) return;
-        buttonList.forEach(button -> button.setHovering(button.isPositionInside(mousePosition)));
+        buttonHitGrid.updateHover(mousePosition);
     }
 
     /**
@@ -203,15 +209,7 @@ public class PostGameInterface extends WndInterface {
         switch(actionID) {
             case 1 -> gamePanel.showLobby();
             case 2 -> gamePanel.startNextRound(players, ruleSet);
-            case 3 -> startNewGameWithSameSettings();
+            case 3 -> gamePanel.startNewGame(players, ruleSet);
         }
     }
-
-    /**
-     * Wipes the score of all players and then starts a new game.
-     */
-    private void startNewGameWithSameSettings() {
-        players.forEach(Player::resetScore);
-        gamePanel.startNextRound(players, ruleSet);
-    }
 }
@@ -0,0 +1,331 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Uno
+ *
+ * RemoteGameState class:
+ * Defines the state of a round as seen by a client of the GameServer. The state is
+ * rebuilt from each Snapshot and kept up to date by applying the Deltas that follow.
+ * See GameTable for the layout of both frames. Spectators are sent the same frames
+ * with an empty hand, and everyone is sent every hand with HandsRevealed once a round ends.
+ * The frames received in a seat are counted so the client can Resume after reconnecting.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class RemoteGameState {
+    /**
+     * The turnNumber of the round.
+     */
+    private int turnNumber;
+    /**
+     * The playerID of the player whose turn it is.
+     */
+    private int currentPlayerID;
+    /**
+     * True when play is moving in the increasing playerID direction.
+     */
+    private boolean isIncreasing;
+    /**
+     * The card on top of the recent cards pile.
+     */
+    private Card topCard;
+    /**
+     * Number of cards in each player's hand indexed by playerID.
+     */
+    private int[] handSizes;
+    /**
+     * The total score of each player indexed by playerID.
+     */
+    private int[] totalScores;
+    /**
+     * What the current player is being waited on for.
+     */
+    private WireProtocol.Decision decision;
+    /**
+     * The cards in the client's own hand.
+     */
+    private final List<Card> hand;
+    /**
+     * The cards in each player's hand indexed by playerID once revealed at the end of the round, otherwise empty.
+     */
+    private final List<List<Card>> revealedHands;
+    /**
+     * True once a Snapshot has been applied. Deltas before then are ignored.
+     */
+    private boolean hasSnapshot;
+    /**
+     * Number of frames received in the seat since Seated, as numbered by the server.
+     */
+    private int frameCount;
+
+    /**
+     * Creates an empty state waiting for the first Snapshot.
+     */
+    public RemoteGameState() {
+        hand = new ArrayList<>();
+        revealedHands = new ArrayList<>();
+        handSizes = new int[0];
+        totalScores = new int[0];
+        decision = WireProtocol.Decision.Busy;
+    }
+
+    /**
+     * Applies a frame from the server if it changes the state.
+     *
+     * @param frame The message type and payload of a frame.
+     * @return The type of the frame so the caller can handle the others, or null if the type is not known.
+     */
+    public WireProtocol.ServerMessage apply(ByteBuffer frame) {
+        int messageTypeID = frame.get() & 0xFF;
+        if(messageTypeID >= WireProtocol.ServerMessage.values().length) return null;
+        WireProtocol.ServerMessage messageType = WireProtocol.ServerMessage.values()[messageTypeID];
+        switch (messageType) {
+            case Seated, Error, Watching -> {
+                return messageType;
+            }
+            case Resumed -> {
+                frame.get();
+                frameCount = GameEventLog.readVarInt(frame);
+                return messageType;
+            }
+        }
+        frameCount++;
+        switch (messageType) {
+            case RoundStart -> {
+                hasSnapshot = false;
+                revealedHands.clear();
+            }
+            case Snapshot -> applySnapshot(frame);
+            case Delta -> {
+                if(hasSnapshot) applyDelta(frame);
+            }
+            case RoundEnd -> applyRoundEnd(frame);
+            case HandsRevealed -> applyHandsRevealed(frame);
+        }
+        return messageType;
+    }
+
+    /**
+     * Gets the number of frames received in the seat, which is sent with Resume after reconnecting.
+     *
+     * @return The number of frames received since Seated.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Replaces all of the state with a Snapshot.
+     *
+     * @param payload The Snapshot after the message type.
+     */
+    private void applySnapshot(ByteBuffer payload) {
+        turnNumber = GameEventLog.readVarInt(payload);
+        readCurrentPlayer(payload.get());
+        topCard = WireProtocol.readCard(payload);
+        int playerCount = payload.get();
+        handSizes = new int[playerCount];
+        for(int i = 0; i < playerCount; i++) {
+            handSizes[i] = GameEventLog.readVarInt(payload);
+        }
+        decision = WireProtocol.Decision.values()[payload.get()];
+        totalScores = new int[playerCount];
+        for(int i = 0; i < playerCount; i++) {
+            totalScores[i] = GameEventLog.readVarInt(payload);
+        }
+        hand.clear();
+        int handCount = GameEventLog.readVarInt(payload);
+        for(int i = 0; i < handCount; i++) {
+            hand.add(WireProtocol.readCard(payload));
+        }
+        hasSnapshot = true;
+    }
+
+    /**
+     * Applies the changes in a Delta.
+     *
+     * @param payload The Delta after the message type.
+     */
+    private void applyDelta(ByteBuffer payload) {
+        int flags = payload.get();
+        if((flags & WireProtocol.DELTA_TURN) != 0) {
+            turnNumber = GameEventLog.readVarInt(payload);
+            readCurrentPlayer(payload.get());
+        }
+        if((flags & WireProtocol.DELTA_TOP_CARD) != 0) {
+            topCard = WireProtocol.readCard(payload);
+        }
+        if((flags & WireProtocol.DELTA_HAND_SIZES) != 0) {
+            int changedCount = payload.get();
+            for(int i = 0; i < changedCount; i++) {
+                int playerID = payload.get();
+                handSizes[playerID] = GameEventLog.readVarInt(payload);
+            }
+        }
+        if((flags & WireProtocol.DELTA_DECISION) != 0) {
+            decision = WireProtocol.Decision.values()[payload.get()];
+        }
+        if((flags & WireProtocol.DELTA_CARDS_ADDED) != 0) {
+            int addedCount = GameEventLog.readVarInt(payload);
+            for(int i = 0; i < addedCount; i++) {
+                hand.add(WireProtocol.readCard(payload));
+            }
+        }
+        if((flags & WireProtocol.DELTA_CARDS_REMOVED) != 0) {
+            int removedCount = GameEventLog.readVarInt(payload);
+            for(int i = 0; i < removedCount; i++) {
+                int cardID = GameEventLog.readVarInt(payload);
+                hand.removeIf(card -> card.getCardID() == cardID);
+            }
+        }
+    }
+
+    /**
+     * Stores the total scores from a RoundEnd.
+     *
+     * @param payload The RoundEnd after the message type.
+     */
+    private void applyRoundEnd(ByteBuffer payload) {
+        payload.get();
+        GameEventLog.readVarInt(payload);
+        int playerCount = payload.get();
+        totalScores = new int[playerCount];
+        for(int i = 0; i < playerCount; i++) {
+            totalScores[i] = GameEventLog.readVarInt(payload);
+        }
+        hasSnapshot = false;
+    }
+
+    /**
+     * Stores every player's hand from a HandsRevealed.
+     *
+     * @param payload The HandsRevealed after the message type.
+     */
+    private void applyHandsRevealed(ByteBuffer payload) {
+        revealedHands.clear();
+        int playerCount = payload.get();
+        for(int i = 0; i < playerCount; i++) {
+            int handCount = GameEventLog.readVarInt(payload);
+            List<Card> revealedHand = new ArrayList<>(handCount);
+            for(int j = 0; j < handCount; j++) {
+                revealedHand.add(WireProtocol.readCard(payload));
+            }
+            revealedHands.add(revealedHand);
+        }
+    }
+
+    /**
+     * Reads the current playerID and direction packed into a single byte.
+     *
+     * @param packed The playerID with the direction in the high bit.
+     */
+    private void readCurrentPlayer(byte packed) {
+        currentPlayerID = packed & 0x7F;
+        isIncreasing = (packed & 0x80) != 0;
+    }
+
+    /**
+     * Checks if a Snapshot has been applied for the round being played.
+     *
+     * @return True when the state can be used.
+     */
+    public boolean hasSnapshot() {
+        return hasSnapshot;
+    }
+
+    /**
+     * Gets the turnNumber of the round.
+     *
+     * @return The turnNumber.
+     */
+    public int getTurnNumber() {
+        return turnNumber;
+    }
+
+    /**
+     * Gets the playerID of the player whose turn it is.
+     *
+     * @return The current playerID.
+     */
+    public int getCurrentPlayerID() {
+        return currentPlayerID;
+    }
+
+    /**
+     * Gets the direction of play.
+     *
+     * @return True when play is moving in the increasing playerID direction.
+     */
+    public boolean isIncreasing() {
+        return isIncreasing;
+    }
+
+    /**
+     * Gets the card on top of the recent cards pile.
+     *
+     * @return The top card.
+     */
+    public Card getTopCard() {
+        return topCard;
+    }
+
+    /**
+     * Gets the number of cards a player is holding.
+     *
+     * @param playerID The player to check.
+     * @return The number of cards in their hand.
+     */
+    public int getHandSize(int playerID) {
+        return handSizes[playerID];
+    }
+
+    /**
+     * Gets the total score of a player.
+     *
+     * @param playerID The player to check.
+     * @return Their total score from previous rounds.
+     */
+    public int getTotalScore(int playerID) {
+        return totalScores[playerID];
+    }
+
+    /**
+     * Gets the number of players in the round.
+     *
+     * @return The player count.
+     */
+    public int getPlayerCount() {
+        return handSizes.length;
+    }
+
+    /**
+     * Gets what the current player is being waited on for.
+     *
+     * @return The Decision.
+     */
+    public WireProtocol.Decision getDecision() {
+        return decision;
+    }
+
+    /**
+     * Gets the cards in the client's own hand.
+     *
+     * @return The hand.
+     */
+    public List<Card> getHand() {
+        return hand;
+    }
+
+    /**
+     * Gets the cards a player was left holding when their hand was revealed at the end of the round.
+     *
+     * @param playerID The player to check.
+     * @return Their revealed hand, or null if hands have not been revealed this round.
+     */
+    public List<Card> getRevealedHand(int playerID) {
+        return playerID < revealedHands.size() ? revealedHands.get(playerID) : null;
+    }
+}
@@ -19,6 +19,16 @@ public class RuleSet {
      */
     public enum ScoreLimitType {OneRound, Score200, Score300, Score500, Unlimited}
 
+    /**
+     * Bits used for each rule by getRuleFlags().
+     */
+    public static final int CAN_STACK_FLAG = 1, DRAWN_TILL_CAN_PLAY_FLAG = 1 << 1, TWO_PLAYERS_FLAG = 1 << 2,
+            SEVEN_ZERO_FLAG = 1 << 3, NO_BLUFFING_FLAG = 1 << 4, ALLOW_JUMP_IN_FLAG = 1 << 5, FORCED_PLAY_FLAG = 1 << 6;
+    /**
+     * Position of the scoreLimitType above the rule flags in getSignature().
+     */
+    private static final int SIGNATURE_SCORE_SHIFT = 7;
+
     /**
      * 0 to 14 mapped with CardActions to represent each of the different Uno cards.
      */
@@ -253,4 +263,67 @@ public class RuleSet {
     public ScoreLimitType getScoreLimitType() {
         return scoreLimitType;
     }
+
+    /**
+     * Packs the boolean rules into bits in the order: canStackCards, drawnTillCanPlay, onlyTwoPlayers,
+     * sevenZeroRule, noBluffingRule, allowJumpInRule, forcedPlayRule.
+     *
+     * @return The rules with each flag as a single bit.
+     */
+    public int getRuleFlags() {
+        int flags = 0;
+        if(canStackCards) flags |= CAN_STACK_FLAG;
+        if(drawnTillCanPlay) flags |= DRAWN_TILL_CAN_PLAY_FLAG;
+        if(onlyTwoPlayers) flags |= TWO_PLAYERS_FLAG;
+        if(sevenZeroRule) flags |= SEVEN_ZERO_FLAG;
+        if(noBluffingRule) flags |= NO_BLUFFING_FLAG;
+        if(allowJumpInRule) flags |= ALLOW_JUMP_IN_FLAG;
+        if(forcedPlayRule) flags |= FORCED_PLAY_FLAG;
+        return flags;
+    }
+
+    /**
+     * Sets all the boolean rules from bits packed by getRuleFlags().
+     *
+     * @param flags The rules with each flag as a single bit.
+     */
+    public void setRuleFlags(int flags) {
+        setCanStackCards((flags & CAN_STACK_FLAG) != 0);
+        setDrawnTillCanPlay((flags & DRAWN_TILL_CAN_PLAY_FLAG) != 0);
+        setTwoPlayers((flags & TWO_PLAYERS_FLAG) != 0);
+        setSevenZeroRule((flags & SEVEN_ZERO_FLAG) != 0);
+        setNoBuffingRule((flags & NO_BLUFFING_FLAG) != 0);
+        setAllowJumpInRule((flags & ALLOW_JUMP_IN_FLAG) != 0);
+        setForcedPlayRule((flags & FORCED_PLAY_FLAG) != 0);
+    }
+
+    /**
+     * Packs every rule that changes how a game is played into one number, so games with the
+     * same signature are played the same way.
+     *
+     * @return The rules from getRuleFlags() with the scoreLimitType ordinal in the bits above them.
+     */
+    public int getSignature() {
+        return getRuleFlags() | scoreLimitType.ordinal() << SIGNATURE_SCORE_SHIFT;
+    }
+
+    /**
+     * Sets every rule from a number packed by getSignature().
+     *
+     * @param signature The rules packed by getSignature(), which must be valid.
+     */
+    public void setSignature(int signature) {
+        setRuleFlags(signature);
+        setScoreLimitType(ScoreLimitType.values()[signature >>> SIGNATURE_SCORE_SHIFT]);
+    }
+
+    /**
+     * Checks if a number could have been packed by getSignature().
+     *
+     * @param signature The number to check.
+     * @return True if setSignature() can be used with it.
+     */
+    public static boolean isValidSignature(int signature) {
+        return signature >= 0 && signature >>> SIGNATURE_SCORE_SHIFT < ScoreLimitType.values().length;
+    }
 }
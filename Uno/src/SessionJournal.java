@@ -0,0 +1,699 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Uno
+ *
+ * SessionJournal class:
+ * A write ahead journal of multi-round sessions so that the total scores of a
+ * session survive a crash. Each session records its start, the result of every
+ * round with the totals after the round, and its end. Any number of sessions
+ * share one journal file.
+ *
+ * Records are queued and a single thread writes everything that is waiting
+ * with one write and one fsync, then completes the future returned for each
+ * record. While an fsync is in progress more records queue up and are committed
+ * together by the next one, so the cost of an fsync is shared by every session
+ * that recorded something at the same time. A batch that fails to be written is
+ * cut off the end of the file again before its futures fail, so a partial record
+ * never hides the records committed after it.
+ *
+ * Every record holds the complete state it changes rather than a difference,
+ * so applying a record twice has no effect. When the journal file grows past
+ * MAX_JOURNAL_SIZE a new file is started with a Start record for each session
+ * that has not ended, and the old file is deleted. The same happens when the
+ * journal is opened after reading the existing files.
+ *
+ * Each record is: length (4 bytes), CRC32 of the data (4 bytes), then the data.
+ * Reading stops at the first record that is incomplete or fails its CRC check.
+ * The data is the record type followed by the sessionID and then:
+ *     Start: RuleSet flags, ScoreLimitType, rounds played, the player count, and
+ *            each player (type, strategy, name, total score).
+ *     Round: rounds played, winner's playerID + 1 (0 for none), winner's round
+ *            score, the player count, and the total score of each player.
+ *     End:   nothing more.
+ * Numbers other than the record type, ScoreLimitType, player type, and strategy
+ * are variable length integers.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class SessionJournal implements AutoCloseable {
+    /**
+     * Uno
+     *
+     * Session class:
+     * The state of a session as recorded in the journal.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    public static class Session {
+        /**
+         * The number identifying the session in the journal.
+         */
+        private final int sessionID;
+        /**
+         * The rules the session is played with.
+         */
+        private final RuleSet ruleSet;
+        /**
+         * Details to recreate each player in order of their playerID.
+         */
+        private final List<LobbyPlayer> lobbyPlayers;
+        /**
+         * The total score of each player after the last round.
+         */
+        private int[] totalScores;
+        /**
+         * Number of rounds that have been recorded.
+         */
+        private int roundsPlayed;
+
+        /**
+         * Creates a session with no players.
+         *
+         * @param sessionID The number identifying the session in the journal.
+         */
+        private Session(int sessionID) {
+            this.sessionID = sessionID;
+            ruleSet = new RuleSet();
+            lobbyPlayers = new ArrayList<>();
+            totalScores = new int[0];
+        }
+
+        /**
+         * Gets the number identifying the session in the journal.
+         *
+         * @return The sessionID.
+         */
+        public int getSessionID() {
+            return sessionID;
+        }
+
+        /**
+         * Gets the rules the session is played with.
+         *
+         * @return The rules.
+         */
+        public RuleSet getRuleSet() {
+            return ruleSet;
+        }
+
+        /**
+         * Gets the details needed to recreate each player.
+         *
+         * @return The players in order of their playerID.
+         */
+        public List<LobbyPlayer> getLobbyPlayers() {
+            return lobbyPlayers;
+        }
+
+        /**
+         * Gets the number of rounds that have been recorded.
+         *
+         * @return The rounds played.
+         */
+        public int getRoundsPlayed() {
+            return roundsPlayed;
+        }
+
+        /**
+         * Gets the total score of a player after the last round.
+         *
+         * @param playerID The player to look up.
+         * @return The total score.
+         */
+        public int getTotalScore(int playerID) {
+            return totalScores[playerID];
+        }
+
+        /**
+         * Restores the total score after the last round to each player.
+         *
+         * @param players The players created from getLobbyPlayers().
+         * @return The same list of players.
+         */
+        public List<Player> restoreTotalScores(List<Player> players) {
+            for(int i = 0; i < players.size() && i < totalScores.length; i++) {
+                players.get(i).restoreTotalScore(totalScores[i]);
+            }
+            return players;
+        }
+    }
+
+    /**
+     * Uno
+     *
+     * PendingRecord class:
+     * A record waiting to be committed and the future to complete once it has been.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    private static class PendingRecord {
+        /**
+         * The framed record ready for reading, or null to stop the commit thread.
+         */
+        private final ByteBuffer data;
+        /**
+         * Completed once the record has been written and forced to disk.
+         */
+        private final CompletableFuture<Void> committed;
+
+        /**
+         * Stores the record ready to be committed.
+         *
+         * @param data The framed record ready for reading, or null to stop the commit thread.
+         */
+        private PendingRecord(ByteBuffer data) {
+            this.data = data;
+            committed = new CompletableFuture<>();
+        }
+    }
+
+    /**
+     * Folder the journal is kept in by the game, relative to the working directory.
+     */
+    public static final String JOURNAL_FOLDER = "Sessions";
+    /**
+     * File extension for journal files.
+     */
+    public static final String JOURNAL_EXTENSION = ".unojournal";
+    /**
+     * Size a journal file can reach before it is replaced by a new one with only the unfinished sessions.
+     */
+    public static final long MAX_JOURNAL_SIZE = 16 * 1024 * 1024;
+    /**
+     * Bytes before the data of each record.
+     */
+    private static final int RECORD_HEADER_SIZE = 8;
+    /**
+     * Most records committed with a single fsync.
+     */
+    private static final int MAX_BATCH_SIZE = 1024;
+    /**
+     * Record type values.
+     */
+    private static final byte START_RECORD = 1, ROUND_RECORD = 2, END_RECORD = 3;
+
+    /**
+     * The folder containing the journal files.
+     */
+    private final Path folder;
+    /**
+     * The sessions that have not ended, by sessionID.
+     */
+    private final Map<Integer, Session> sessions;
+    /**
+     * The sessionID to give the next session.
+     */
+    private int nextSessionID;
+    /**
+     * Records waiting to be committed in the order they were recorded.
+     */
+    private final BlockingQueue<PendingRecord> pending;
+    /**
+     * The journal file being appended to. Only used by the commit thread once the journal is open.
+     */
+    private FileChannel channel;
+    /**
+     * Size of the journal file up to the end of the last batch that was committed.
+     */
+    private long committedSize;
+    /**
+     * True when a failed batch could not be cut off the journal file. Nothing more is written until it has been.
+     */
+    private boolean isDamaged;
+    /**
+     * The number used to name the journal file being appended to.
+     */
+    private int journalNumber;
+    /**
+     * The thread writing and forcing batches of records.
+     */
+    private final Thread commitThread;
+    /**
+     * True once close() has been called. No more records are accepted.
+     */
+    private volatile boolean isClosed;
+
+    /**
+     * Opens the journal in a folder, reads the sessions that had not ended, and starts a new
+     * journal file containing only those sessions.
+     *
+     * @param folder The folder containing the journal files. It is created if needed.
+     * @throws IOException When the journal could not be read or the new file created.
+     */
+    public SessionJournal(Path folder) throws IOException {
+        this.folder = folder;
+        sessions = new HashMap<>();
+        pending = new LinkedBlockingQueue<>();
+        Files.createDirectories(folder);
+        List<Path> oldFiles = findJournalFiles(folder);
+        for(Path file : oldFiles) {
+            readJournal(file);
+        }
+        if(!oldFiles.isEmpty()) {
+            String lastName = oldFiles.get(oldFiles.size() - 1).getFileName().toString();
+            journalNumber = Integer.parseInt(lastName.substring("journal-".length(), lastName.length() - JOURNAL_EXTENSION.length()));
+        }
+        startNewJournal(oldFiles);
+        commitThread = new Thread(this::commitRecords, "SessionJournal");
+        commitThread.setDaemon(true);
+        commitThread.start();
+    }
+
+    /**
+     * Starts a new session and records the players and rules.
+     *
+     * @param ruleSet The rules the session is played with.
+     * @param players The players with any total scores they start with.
+     * @return The sessionID to use when recording rounds.
+     */
+    public int beginSession(RuleSet ruleSet, List<Player> players) {
+        Session session;
+        synchronized (sessions) {
+            session = new Session(nextSessionID++);
+        }
+        session.ruleSet.setRuleFlags(ruleSet.getRuleFlags());
+        session.ruleSet.setScoreLimitType(ruleSet.getScoreLimitType());
+        session.totalScores = new int[players.size()];
+        for(Player player : players) {
+            LobbyPlayer lobbyPlayer = new LobbyPlayer(player.getPlayerName(), player.getPlayerType(), new Rectangle(0, 0, 0, 0));
+            if(player instanceof AIPlayer) {
+                lobbyPlayer.setAIStrategy(((AIPlayer) player).getStrategy());
+            }
+            session.lobbyPlayers.add(lobbyPlayer);
+            session.totalScores[player.getPlayerID()] = player.getTotalScore();
+        }
+        synchronized (sessions) {
+            sessions.put(session.sessionID, session);
+        }
+        append(encodeStart(session));
+        return session.sessionID;
+    }
+
+    /**
+     * Records the result of a round that has ended. The totals of the players must already include the round.
+     *
+     * @param sessionID The session the round was played in.
+     * @param players The players after the winner has been set.
+     * @return Completed once the round is safely on disk.
+     */
+    public CompletableFuture<Void> recordRound(int sessionID, List<Player> players) {
+        Session session = getSession(sessionID);
+        if(session == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("No open session " + sessionID));
+        }
+        int winnerID = -1;
+        int roundScore = 0;
+        ByteBuffer data = ByteBuffer.allocate(32 + players.size() * 5);
+        // The commit thread reads the session when it starts a new journal file.
+        synchronized (session) {
+            for(Player player : players) {
+                session.totalScores[player.getPlayerID()] = player.getTotalScore();
+                if(player.getWon()) {
+                    winnerID = player.getPlayerID();
+                    roundScore = player.getCurrentRoundScore();
+                }
+            }
+            session.roundsPlayed++;
+            data.put(ROUND_RECORD);
+            GameEventLog.writeVarInt(data, sessionID);
+            GameEventLog.writeVarInt(data, session.roundsPlayed);
+            GameEventLog.writeVarInt(data, winnerID + 1);
+            GameEventLog.writeVarInt(data, roundScore);
+            GameEventLog.writeVarInt(data, session.totalScores.length);
+            for(int totalScore : session.totalScores) {
+                GameEventLog.writeVarInt(data, totalScore);
+            }
+        }
+        return append(data.flip());
+    }
+
+    /**
+     * Records that a session has ended so it will not be resumed.
+     *
+     * @param sessionID The session that ended.
+     * @return Completed once the end is safely on disk.
+     */
+    public CompletableFuture<Void> endSession(int sessionID) {
+        synchronized (sessions) {
+            if(sessions.remove(sessionID) == null) return CompletableFuture.completedFuture(null);
+        }
+        ByteBuffer data = ByteBuffer.allocate(6);
+        data.put(END_RECORD);
+        GameEventLog.writeVarInt(data, sessionID);
+        return append(data.flip());
+    }
+
+    /**
+     * Gets a session that has not ended.
+     *
+     * @param sessionID The session to look up.
+     * @return The session, or null if it has ended or does not exist.
+     */
+    public Session getSession(int sessionID) {
+        synchronized (sessions) {
+            return sessions.get(sessionID);
+        }
+    }
+
+    /**
+     * Gets every session that has not ended.
+     *
+     * @return The sessions in the order they were started.
+     */
+    public List<Session> getUnfinishedSessions() {
+        synchronized (sessions) {
+            return sessions.values().stream().sorted(Comparator.comparingInt(Session::getSessionID))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Commits any records that are waiting and closes the journal file. The file is left open
+     * if the commit thread is still writing after the wait, so that it can finish the batch.
+     *
+     * @throws IOException When the journal file could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if(isClosed) return;
+        isClosed = true;
+        pending.add(new PendingRecord(null));
+        try {
+            commitThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(commitThread.isAlive()) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Warning, "Session journal is still committing records.");
+            return;
+        }
+        failPendingRecords();
+        channel.close();
+    }
+
+    /**
+     * Frames the record data with its length and CRC and queues it to be committed.
+     *
+     * @param data The record data ready for reading.
+     * @return Completed once the record is safely on disk.
+     */
+    private CompletableFuture<Void> append(ByteBuffer data) {
+        if(isClosed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Session journal is closed."));
+        }
+        PendingRecord record = new PendingRecord(frameRecord(data));
+        pending.add(record);
+        // The journal may have been closed after the check, once the commit thread stopped taking records.
+        if(isClosed && !commitThread.isAlive() && pending.remove(record)) {
+            record.committed.completeExceptionally(new IllegalStateException("Session journal is closed."));
+        }
+        return record.committed;
+    }
+
+    /**
+     * Fails the future of every record still waiting once the commit thread has stopped.
+     */
+    private void failPendingRecords() {
+        PendingRecord record;
+        while((record = pending.poll()) != null) {
+            if(record.data != null) {
+                record.committed.completeExceptionally(new IllegalStateException("Session journal is closed."));
+            }
+        }
+    }
+
+    /**
+     * Writes batches of waiting records with one fsync each until the journal is closed.
+     */
+    private void commitRecords() {
+        List<PendingRecord> batch = new ArrayList<>();
+        boolean isStopping = false;
+        while(!isStopping) {
+            batch.clear();
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            pending.drainTo(batch, MAX_BATCH_SIZE - 1);
+            if(batch.removeIf(record -> record.data == null)) {
+                isStopping = true;
+                pending.drainTo(batch);
+            }
+            if(isDamaged) {
+                repairJournal();
+            }
+            if(isDamaged) {
+                IOException e = new IOException("Session journal could not be repaired.");
+                batch.forEach(record -> record.committed.completeExceptionally(e));
+                continue;
+            }
+            ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+            long byteCount = 0;
+            for(int i = 0; i < buffers.length; i++) {
+                buffers[i] = batch.get(i).data;
+                byteCount += buffers[i].remaining();
+            }
+            try {
+                while(byteCount > 0) {
+                    byteCount -= channel.write(buffers);
+                }
+                channel.force(false);
+                committedSize = channel.position();
+            } catch (IOException e) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Failed to write session journal. {}", e.getMessage());
+                isDamaged = true;
+                repairJournal();
+                batch.forEach(record -> record.committed.completeExceptionally(e));
+                continue;
+            }
+            batch.forEach(record -> record.committed.complete(null));
+            if(committedSize > MAX_JOURNAL_SIZE) {
+                try {
+                    startNewJournal(findJournalFiles(folder));
+                } catch (IOException e) {
+                    GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Failed to start a new session journal. {}", e.getMessage());
+                }
+            }
+        }
+        failPendingRecords();
+    }
+
+    /**
+     * Cuts a batch that failed to be written off the end of the journal file. When that fails too a
+     * new journal file is started from the sessions, which already include the failed batch.
+     */
+    private void repairJournal() {
+        try {
+            channel.truncate(committedSize);
+            channel.position(committedSize);
+            isDamaged = false;
+            return;
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Failed to truncate session journal. {}", e.getMessage());
+        }
+        try {
+            startNewJournal(findJournalFiles(folder));
+            isDamaged = false;
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Failed to start a new session journal. {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the next journal file with a Start record for every session that has not ended,
+     * forces it and the folder to disk, and then deletes the older files. The folder is forced
+     * first so that the new file cannot be lost after a crash that keeps the deletes.
+     *
+     * @param oldFiles The journal files to delete once the new one is complete.
+     * @throws IOException When the new file could not be written. The journal file being appended to is kept.
+     */
+    private void startNewJournal(List<Path> oldFiles) throws IOException {
+        journalNumber++;
+        Path file = folder.resolve(String.format("journal-%08d%s", journalNumber, JOURNAL_EXTENSION));
+        FileChannel newChannel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            for(Session session : getUnfinishedSessions()) {
+                ByteBuffer record;
+                synchronized (session) {
+                    record = frameRecord(encodeStart(session));
+                }
+                while(record.hasRemaining()) {
+                    newChannel.write(record);
+                }
+            }
+            newChannel.force(true);
+        } catch (IOException e) {
+            newChannel.close();
+            throw e;
+        }
+        DurableFile.forceFolder(folder);
+        if(channel != null) {
+            channel.close();
+        }
+        channel = newChannel;
+        committedSize = newChannel.position();
+        for(Path oldFile : oldFiles) {
+            Files.deleteIfExists(oldFile);
+        }
+    }
+
+    /**
+     * Encodes a Start record with the current state of a session.
+     *
+     * @param session The session to record.
+     * @return The record data ready for reading.
+     */
+    private static ByteBuffer encodeStart(Session session) {
+        List<byte[]> names = new ArrayList<>();
+        int size = 32;
+        for(LobbyPlayer lobbyPlayer : session.lobbyPlayers) {
+            byte[] name = lobbyPlayer.getPlayerName().getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            size += 2 + 5 + name.length + 5;
+        }
+        ByteBuffer data = ByteBuffer.allocate(size);
+        data.put(START_RECORD);
+        GameEventLog.writeVarInt(data, session.sessionID);
+        GameEventLog.writeVarInt(data, session.ruleSet.getRuleFlags());
+        data.put((byte) session.ruleSet.getScoreLimitType().ordinal());
+        GameEventLog.writeVarInt(data, session.roundsPlayed);
+        GameEventLog.writeVarInt(data, session.lobbyPlayers.size());
+        for(int i = 0; i < session.lobbyPlayers.size(); i++) {
+            LobbyPlayer lobbyPlayer = session.lobbyPlayers.get(i);
+            data.put((byte) lobbyPlayer.getPlayerType().ordinal());
+            data.put((byte) (lobbyPlayer.getPlayerType() == Player.PlayerType.AIPlayer
+                                ? lobbyPlayer.getAIStrategy().ordinal() : GameEventLog.NO_STRATEGY));
+            GameEventLog.writeVarInt(data, names.get(i).length);
+            data.put(names.get(i));
+            GameEventLog.writeVarInt(data, session.totalScores[i]);
+        }
+        return data.flip();
+    }
+
+    /**
+     * Adds the length and CRC in front of the record data.
+     *
+     * @param data The record data ready for reading.
+     * @return The framed record ready for reading.
+     */
+    private static ByteBuffer frameRecord(ByteBuffer data) {
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate());
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + data.remaining());
+        record.putInt(data.remaining()).putInt((int) crc.getValue()).put(data);
+        return record.flip();
+    }
+
+    /**
+     * Applies every complete record in a journal file to the sessions.
+     *
+     * @param file The journal file to read.
+     * @throws IOException When the file could not be read.
+     */
+    private void readJournal(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        CRC32 crc = new CRC32();
+        while(buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int length = buffer.getInt();
+            int expectedCRC = buffer.getInt();
+            if(length <= 0 || length > buffer.remaining()) break;
+            ByteBuffer data = buffer.slice(buffer.position(), length);
+            crc.reset();
+            crc.update(data.duplicate());
+            if((int) crc.getValue() != expectedCRC) break;
+            buffer.position(buffer.position() + length);
+            try {
+                applyRecord(data);
+            } catch (RuntimeException e) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Warning, "Skipped a damaged session journal record in {}", file);
+            }
+        }
+    }
+
+    /**
+     * Updates the sessions from a record read from a journal file. Records for rounds older than
+     * the state already read are ignored.
+     *
+     * @param data The record data.
+     */
+    private void applyRecord(ByteBuffer data) {
+        byte recordType = data.get();
+        int sessionID = GameEventLog.readVarInt(data);
+        nextSessionID = Math.max(nextSessionID, sessionID + 1);
+        if(recordType == START_RECORD) {
+            Session session = new Session(sessionID);
+            session.ruleSet.setRuleFlags(GameEventLog.readVarInt(data));
+            session.ruleSet.setScoreLimitType(RuleSet.ScoreLimitType.values()[data.get()]);
+            session.roundsPlayed = GameEventLog.readVarInt(data);
+            int playerCount = GameEventLog.readVarInt(data);
+            session.totalScores = new int[playerCount];
+            for(int i = 0; i < playerCount; i++) {
+                LobbyPlayer lobbyPlayer = new LobbyPlayer("", Player.PlayerType.values()[data.get()], new Rectangle(0, 0, 0, 0));
+                int strategy = data.get() & 0xFF;
+                if(strategy != GameEventLog.NO_STRATEGY) {
+                    lobbyPlayer.setAIStrategy(AIPlayer.AIStrategy.values()[strategy]);
+                }
+                byte[] name = new byte[GameEventLog.readVarInt(data)];
+                data.get(name);
+                lobbyPlayer.setPlayerName(new String(name, StandardCharsets.UTF_8));
+                session.lobbyPlayers.add(lobbyPlayer);
+                session.totalScores[i] = GameEventLog.readVarInt(data);
+            }
+            Session existing = sessions.get(sessionID);
+            if(existing == null || existing.roundsPlayed <= session.roundsPlayed) {
+                sessions.put(sessionID, session);
+            }
+        } else if(recordType == ROUND_RECORD) {
+            Session session = sessions.get(sessionID);
+            int roundsPlayed = GameEventLog.readVarInt(data);
+            if(session == null || roundsPlayed <= session.roundsPlayed) return;
+            GameEventLog.readVarInt(data);
+            GameEventLog.readVarInt(data);
+            int playerCount = GameEventLog.readVarInt(data);
+            for(int i = 0; i < playerCount && i < session.totalScores.length; i++) {
+                session.totalScores[i] = GameEventLog.readVarInt(data);
+            }
+            session.roundsPlayed = roundsPlayed;
+        } else if(recordType == END_RECORD) {
+            sessions.remove(sessionID);
+        }
+    }
+
+    /**
+     * Finds the journal files in a folder.
+     *
+     * @param folder The folder to search.
+     * @return The journal files in the order they were created.
+     * @throws IOException When the folder could not be read.
+     */
+    private static List<Path> findJournalFiles(Path folder) throws IOException {
+        try(Stream<Path> files = Files.list(folder)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("journal-")
+                                        && file.getFileName().toString().endsWith(JOURNAL_EXTENSION))
+                    .sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,1522 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uno
+ *
+ * ShardCoordinator class:
+ * Hosts the tables across several ShardWorker processes so that a worker can be restarted,
+ * for example to deploy a new version, without ending the games on it. Clients connect to
+ * the coordinator and speak the same WireProtocol as with a GameServer. The coordinator runs
+ * the Matchmaker itself and gives each table to the worker chosen for its tableID by a
+ * ConsistentHashRing, sending the clients Seated and the worker OpenTable with the seats
+ * reserved for them. Each client's frames are then relayed to and from the worker over a
+ * connection the coordinator opens for them, which claims the seat with Resume.
+ *
+ * A worker is drained by taking it off the ring and moving its tables to their new owners a
+ * few at a time. Frames from the clients of a table being moved are held while the old worker
+ * exports it, the new worker imports the state, and then the clients are resumed there and
+ * sent a Snapshot, so they see a pause but no lost moves. Before asking for the export, the
+ * coordinator fences the table: each connection relaying to it is closed for writing, and
+ * the export is only asked for once the worker has read to the end of every one and closed
+ * it. So every frame already relayed reaches the table before it is exported. A worker that is restarted gets new
+ * tables once it is back on the ring, and rebalance moves the tables whose owner changed back
+ * to it. A worker that stops unexpectedly loses its tables, whose clients are disconnected so
+ * they can join again, and is started again.
+ *
+ * Everything runs on one thread with a java.nio Selector. Commands are read from standard input:
+ * status, drain workerID, restart workerID, start workerID, and rebalance.
+ *
+ * Run with: java ShardCoordinator [port] [workerCount] [eventLoopsPerWorker] [threadPerTable] [aiStrategy] [arbitrationWindow]
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class ShardCoordinator {
+    /**
+     * Number of workers started when none is given.
+     */
+    public static final int DEFAULT_WORKER_COUNT = 2;
+    /**
+     * Most tables moved between workers at the same time.
+     */
+    private static final int MIGRATION_BATCH = 16;
+    /**
+     * Most frames held for a client while its table is being moved or its seat claimed.
+     */
+    private static final int MAX_HELD_FRAMES = 32;
+
+    /**
+     * Uno
+     *
+     * Worker class:
+     * Defines a worker process and the control connection to it.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    private static class Worker {
+        /**
+         * Index of the worker in workers and its node on the ring.
+         */
+        private final int workerID;
+        /**
+         * The running process, or null when stopped.
+         */
+        private Process process;
+        /**
+         * The control connection, or null until the worker is Ready.
+         */
+        private ClientConnection control;
+        /**
+         * The address the worker accepts relayed connections on.
+         */
+        private InetSocketAddress dataAddress;
+        /**
+         * True once Ready has arrived and until the worker is lost.
+         */
+        private boolean isReady;
+        /**
+         * True while the worker's tables are being moved off it.
+         */
+        private boolean isDraining;
+        /**
+         * True when the worker is started again once it has been drained and stopped.
+         */
+        private boolean isRestarting;
+        /**
+         * True once the worker has been told to Stop.
+         */
+        private boolean isStopping;
+        /**
+         * Number of tables hosted or being imported by the worker.
+         */
+        private int tableCount;
+
+        /**
+         * Creates a worker that has not been started.
+         *
+         * @param workerID Index of the worker.
+         */
+        private Worker(int workerID) {
+            this.workerID = workerID;
+        }
+    }
+
+    /**
+     * Uno
+     *
+     * HostedTable class:
+     * Defines a table formed by the coordinator and where it is hosted.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    private static class HostedTable {
+        /**
+         * Unique ID of the table across every worker.
+         */
+        private final int tableID;
+        /**
+         * The worker hosting the table, or importing it once it has been exported.
+         */
+        private Worker worker;
+        /**
+         * The worker the table is being moved to until it has been exported, otherwise null.
+         */
+        private Worker target;
+        /**
+         * True once the worker has opened the table and its seats can be claimed.
+         */
+        private boolean isOpen;
+        /**
+         * True while the table is being moved. Frames from its clients are held.
+         */
+        private boolean isMigrating;
+        /**
+         * True once the table being moved has been exported and is being imported.
+         */
+        private boolean isExported;
+        /**
+         * The client confirmed in each seat, or null.
+         */
+        private final Relay[] seats;
+        /**
+         * True for seats whose client counts frames the same way as the worker's history. Cleared when the table moves.
+         */
+        private final boolean[] isSeatSynced;
+        /**
+         * The clients watching the table.
+         */
+        private final List<Relay> spectators;
+        /**
+         * System.nanoTime() when the table started being moved.
+         */
+        private long migrationStart;
+        /**
+         * Number of seats being claimed through the worker that it has not answered yet.
+         */
+        private int claimCount;
+        /**
+         * True once the connections to the worker have been fenced for the table being moved.
+         */
+        private boolean isFenced;
+        /**
+         * Number of fenced connections to the worker that it has not closed yet. The table is exported once there are none.
+         */
+        private int fenceCount;
+
+        /**
+         * Creates a table not yet opened by its worker.
+         *
+         * @param tableID Unique ID of the table.
+         * @param worker The worker to host the table.
+         * @param seatCount Number of seats at the table.
+         */
+        private HostedTable(int tableID, Worker worker, int seatCount) {
+            this.tableID = tableID;
+            this.worker = worker;
+            seats = new Relay[seatCount];
+            isSeatSynced = new boolean[seatCount];
+            Arrays.fill(isSeatSynced, true);
+            spectators = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Uno
+     *
+     * Relay class:
+     * Defines a client connected to the coordinator and its connection to the worker hosting its table.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    private static class Relay {
+        /**
+         * The connection from the client.
+         */
+        private final ClientConnection client;
+        /**
+         * The connection to the worker for the client, or null when not attached.
+         */
+        private ClientConnection upstream;
+        /**
+         * The table the client is seated at or watching, or null.
+         */
+        private HostedTable table;
+        /**
+         * The client's seat, or -1.
+         */
+        private int seatID;
+        /**
+         * The token the client claims its seat with.
+         */
+        private long resumeToken;
+        /**
+         * Number of frames the client received in the seat, sent with Resume.
+         */
+        private int frameCount;
+        /**
+         * True when the client is watching the table instead of seated.
+         */
+        private boolean isSpectator;
+        /**
+         * True once the worker accepted the upstream with Resumed or Watching.
+         */
+        private boolean isAttached;
+        /**
+         * True while the upstream is still connecting to the worker.
+         */
+        private boolean isConnecting;
+        /**
+         * True once the upstream has been closed for writing to fence the table, until the worker closes it.
+         */
+        private boolean isFenced;
+        /**
+         * True when the client was sent Seated by the coordinator, so the Resumed claiming the seat is not passed on.
+         */
+        private boolean isResumedSilently;
+        /**
+         * Complete frames from the client waiting to be relayed.
+         */
+        private final List<ByteBuffer> heldFrames;
+        /**
+         * True once the client has disconnected.
+         */
+        private boolean isClosed;
+
+        /**
+         * Creates a relay for a client that has just connected.
+         *
+         * @param client The connection from the client.
+         */
+        private Relay(ClientConnection client) {
+            this.client = client;
+            seatID = -1;
+            heldFrames = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Uno
+     *
+     * Endpoint class:
+     * Defines what a connection registered with the Selector belongs to.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    private static class Endpoint {
+        /**
+         * The connection.
+         */
+        private final ClientConnection connection;
+        /**
+         * The relay the connection is the client or upstream of, or null for a control connection.
+         */
+        private final Relay relay;
+        /**
+         * True for the connection to the worker of a relay.
+         */
+        private final boolean isUpstream;
+        /**
+         * The worker of a control connection, or null until it is Ready.
+         */
+        private Worker worker;
+
+        /**
+         * Creates an endpoint.
+         *
+         * @param connection The connection.
+         * @param relay The relay it belongs to, or null for a control connection.
+         * @param isUpstream True for the connection to the worker of a relay.
+         */
+        private Endpoint(ClientConnection connection, Relay relay, boolean isUpstream) {
+            this.connection = connection;
+            this.relay = relay;
+            this.isUpstream = isUpstream;
+        }
+    }
+
+    /**
+     * The port clients connect to.
+     */
+    private final int port;
+    /**
+     * The arguments after the control port and workerID given to each worker.
+     */
+    private final List<String> workerArguments;
+    /**
+     * The workers indexed by workerID.
+     */
+    private final Worker[] workers;
+    /**
+     * Chooses the worker for each tableID from those that are Ready and not draining.
+     */
+    private final ConsistentHashRing ring;
+    /**
+     * Every table formed indexed by tableID.
+     */
+    private final Map<Integer, HostedTable> tables;
+    /**
+     * What each connection registered with the Selector belongs to.
+     */
+    private final Map<ClientConnection, Endpoint> endpoints;
+    /**
+     * Groups the clients waiting for a table by the rules they asked for.
+     */
+    private final Matchmaker matchmaker;
+    /**
+     * Selector for every connection.
+     */
+    private final Selector selector;
+    /**
+     * Tasks passed from other threads waiting to be run.
+     */
+    private final Queue<Runnable> tasks;
+    /**
+     * Connections with output waiting to be flushed.
+     */
+    private final List<ClientConnection> flushQueue;
+    /**
+     * Buffer used to add the length back to a frame being relayed.
+     */
+    private final ByteBuffer relayBuffer;
+    /**
+     * Buffer used to build control frames.
+     */
+    private final ByteBuffer controlBuffer;
+    /**
+     * Time in microseconds from asking for a table to be exported until it was imported.
+     */
+    private StatHistogram migrationPauses;
+    /**
+     * The thread running the coordinator.
+     */
+    private final Thread thread;
+    /**
+     * The channel accepting clients. Only registered once a worker is Ready.
+     */
+    private ServerSocketChannel clientChannel;
+    /**
+     * The channel accepting control connections from the workers.
+     */
+    private ServerSocketChannel controlChannel;
+    /**
+     * The ID to give the next table formed.
+     */
+    private int nextTableID;
+    /**
+     * Number of tables being moved.
+     */
+    private int migrationCount;
+    /**
+     * Number of tables moved since the last statistics were logged.
+     */
+    private int migratedCount;
+    /**
+     * Number of tables lost since the last statistics were logged.
+     */
+    private int lostCount;
+    /**
+     * True while tables whose owner on the ring changed are being moved to it.
+     */
+    private boolean isRebalancing;
+    /**
+     * False once stop() has been called.
+     */
+    private volatile boolean isRunning;
+
+    /**
+     * Creates a coordinator ready to be started.
+     *
+     * @param port The port clients connect to.
+     * @param workerCount Number of workers to start.
+     * @param workerArguments The event loop count, threadPerTable, AIStrategy, and arbitration window for each worker.
+     * @throws IOException When the Selector could not be opened.
+     */
+    public ShardCoordinator(int port, int workerCount, List<String> workerArguments) throws IOException {
+        this.port = port;
+        this.workerArguments = workerArguments;
+        workers = new Worker[workerCount];
+        for(int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker(i);
+        }
+        ring = new ConsistentHashRing();
+        tables = new HashMap<>();
+        endpoints = new HashMap<>();
+        tasks = new ConcurrentLinkedQueue<>();
+        matchmaker = new Matchmaker(match -> tasks.add(() -> openTable(match)));
+        selector = Selector.open();
+        flushQueue = new ArrayList<>();
+        relayBuffer = ByteBuffer.allocate(WireProtocol.LENGTH_SIZE + WireProtocol.MAX_FRAME_SIZE);
+        controlBuffer = ByteBuffer.allocate(WireProtocol.LENGTH_SIZE + ShardProtocol.MAX_FRAME_SIZE);
+        migrationPauses = new StatHistogram();
+        thread = new Thread(this::run, "ShardCoordinator");
+    }
+
+    /**
+     * Starts listening, starts every worker, and starts the coordinator's thread. Clients are
+     * accepted once the first worker is Ready.
+     *
+     * @throws IOException When a port could not be listened on or a worker could not be started.
+     */
+    public void start() throws IOException {
+        controlChannel = ServerSocketChannel.open();
+        controlChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        controlChannel.configureBlocking(false);
+        controlChannel.register(selector, SelectionKey.OP_ACCEPT);
+        clientChannel = ServerSocketChannel.open();
+        clientChannel.bind(new InetSocketAddress(port), 4096);
+        clientChannel.configureBlocking(false);
+        isRunning = true;
+        for(Worker worker : workers) {
+            startWorker(worker);
+        }
+        thread.start();
+        GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "Shard coordinator listening on port {} with {} workers.",
+                port, workers.length);
+    }
+
+    /**
+     * Queues a task from another thread to be run by the coordinator.
+     *
+     * @param task The task to run.
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Stops the coordinator, closing every connection, which makes every worker exit.
+     */
+    public void stop() {
+        isRunning = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for(Worker worker : workers) {
+            Process process = worker.process;
+            if(process == null) continue;
+            try {
+                if(!process.waitFor(5, TimeUnit.SECONDS)) {
+                    process.destroy();
+                }
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Selects until stopped, running the Matchmaker's backfill and moving tables every tick.
+     */
+    private void run() {
+        long nextTick = System.nanoTime();
+        long nextStatistics = nextTick + TimeUnit.MILLISECONDS.toNanos(GameServer.STATISTICS_INTERVAL);
+        try {
+            while(isRunning) {
+                long waitTime = TimeUnit.NANOSECONDS.toMillis(nextTick - System.nanoTime());
+                if(waitTime > 0) {
+                    selector.select(this::handleReadyKey, waitTime);
+                } else {
+                    selector.selectNow(this::handleReadyKey);
+                }
+                Runnable task;
+                while((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                long now = System.nanoTime();
+                if(now - nextTick >= 0) {
+                    matchmaker.backfill();
+                    continueMigrations();
+                    nextTick = now + TimeUnit.MILLISECONDS.toNanos(GameServer.TICK_INTERVAL);
+                }
+                flushConnections();
+                if(now - nextStatistics >= 0) {
+                    logStatistics();
+                    nextStatistics = now + TimeUnit.MILLISECONDS.toNanos(GameServer.STATISTICS_INTERVAL);
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if(isRunning) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Coordinator stopped. {}", e.getMessage());
+            }
+        }
+        for(SelectionKey key : selector.keys()) {
+            if(key.attachment() instanceof Endpoint) {
+                ((Endpoint) key.attachment()).connection.close();
+            }
+        }
+        try {
+            selector.close();
+            clientChannel.close();
+            controlChannel.close();
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Debug, "Failed to close coordinator. {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Accepts, reads, or writes for a key that is ready.
+     *
+     * @param key The key that is ready.
+     */
+    private void handleReadyKey(SelectionKey key) {
+        if(!key.isValid()) return;
+        if(key.isAcceptable()) {
+            acceptConnections((ServerSocketChannel) key.channel());
+            return;
+        }
+        Endpoint endpoint = (Endpoint) key.attachment();
+        if(key.isConnectable()) {
+            finishConnect(key, endpoint);
+            return;
+        }
+        try {
+            if(key.isWritable()) {
+                endpoint.connection.flush();
+            }
+            if(key.isValid() && key.isReadable() && !endpoint.connection.readFrames(frame -> handleFrame(endpoint, frame))) {
+                close(endpoint);
+            }
+        } catch (IOException e) {
+            close(endpoint);
+        }
+    }
+
+    /**
+     * Accepts every waiting client or worker control connection.
+     *
+     * @param serverChannel The channel with connections waiting.
+     */
+    private void acceptConnections(ServerSocketChannel serverChannel) {
+        boolean isControl = serverChannel == controlChannel;
+        try {
+            SocketChannel channel;
+            while((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                Endpoint endpoint;
+                if(isControl) {
+                    endpoint = new Endpoint(new ClientConnection(channel, key, flushQueue, ShardProtocol.MAX_FRAME_SIZE,
+                            ShardProtocol.MAX_OUTPUT_SIZE), null, false);
+                } else {
+                    ClientConnection connection = new ClientConnection(channel, key, flushQueue);
+                    endpoint = new Endpoint(connection, new Relay(connection), false);
+                }
+                key.attach(endpoint);
+                endpoints.put(endpoint.connection, endpoint);
+            }
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Warning, "Failed to accept connection. {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Passes a frame to the handler for the kind of connection it came from.
+     *
+     * @param endpoint The connection the frame came from.
+     * @param frame The message type and payload.
+     */
+    private void handleFrame(Endpoint endpoint, ByteBuffer frame) {
+        if(endpoint.relay == null) {
+            handleWorkerFrame(endpoint, frame);
+        } else if(endpoint.isUpstream) {
+            if(endpoint.connection == endpoint.relay.upstream) {
+                handleUpstreamFrame(endpoint.relay, frame);
+            }
+        } else {
+            handleClientFrame(endpoint.relay, frame);
+        }
+    }
+
+    /**
+     * Joins, seats, or lets a client watch, or relays their message to the worker hosting their table.
+     * Messages are held while the client's seat is being claimed or their table is being moved.
+     *
+     * @param relay The client who sent the frame.
+     * @param frame The message type and payload.
+     */
+    private void handleClientFrame(Relay relay, ByteBuffer frame) {
+        int frameStart = frame.position();
+        int messageTypeID = frame.get() & 0xFF;
+        if(messageTypeID >= WireProtocol.ClientMessage.values().length) {
+            relay.client.sendError(255, WireProtocol.ErrorCode.UnknownMessage);
+            return;
+        }
+        WireProtocol.ClientMessage messageType = WireProtocol.ClientMessage.values()[messageTypeID];
+        try {
+            if(messageType == WireProtocol.ClientMessage.Join) {
+                joinTable(relay, frame);
+            } else if(messageType == WireProtocol.ClientMessage.Spectate) {
+                watchTable(relay, frame);
+            } else if(messageType == WireProtocol.ClientMessage.Resume) {
+                resumeSeat(relay, frame);
+            } else if(relay.table == null) {
+                relay.client.sendError(messageTypeID, WireProtocol.ErrorCode.NotSeated);
+            } else if(relay.isSpectator) {
+                relay.client.sendError(messageTypeID, WireProtocol.ErrorCode.NotAllowed);
+            } else if(relay.isAttached && !relay.table.isMigrating) {
+                relay(relay.upstream, frame.position(frameStart));
+            } else if(relay.heldFrames.size() < MAX_HELD_FRAMES) {
+                ByteBuffer heldFrame = ByteBuffer.allocate(WireProtocol.LENGTH_SIZE + frame.limit() - frameStart);
+                heldFrame.putShort((short) (frame.limit() - frameStart)).put(frame.position(frameStart)).flip();
+                relay.heldFrames.add(heldFrame);
+            } else {
+                relay.client.sendError(messageTypeID, WireProtocol.ErrorCode.NotAllowed);
+            }
+        } catch (BufferUnderflowException e) {
+            relay.client.sendError(messageTypeID, WireProtocol.ErrorCode.InvalidMessage);
+        }
+    }
+
+    /**
+     * Adds the client to the Matchmaker in the same way as GameServer does.
+     *
+     * @param relay The client joining.
+     * @param payload The protocol version, seatCount, name, and optionally the RuleSet signature.
+     */
+    private void joinTable(Relay relay, ByteBuffer payload) {
+        int joinID = WireProtocol.ClientMessage.Join.ordinal();
+        if(relay.table != null || relay.client.getTicket() != null) {
+            relay.client.sendError(joinID, WireProtocol.ErrorCode.AlreadySeated);
+            return;
+        }
+        if((payload.get() & 0xFF) != WireProtocol.PROTOCOL_VERSION) {
+            relay.client.sendError(joinID, WireProtocol.ErrorCode.WrongVersion);
+            return;
+        }
+        int seatCount = payload.get();
+        String playerName = WireProtocol.readName(payload);
+        int signature = payload.hasRemaining() ? GameEventLog.readVarInt(payload) : GameServer.DEFAULT_SIGNATURE;
+        if((seatCount != 2 && seatCount != 4) || !RuleSet.isValidSignature(signature)) {
+            relay.client.sendError(joinID, WireProtocol.ErrorCode.InvalidMessage);
+            return;
+        }
+        if(playerName.isBlank()) {
+            playerName = "Player";
+        }
+        signature = seatCount == 2 ? signature | RuleSet.TWO_PLAYERS_FLAG : signature & ~RuleSet.TWO_PLAYERS_FLAG;
+        relay.client.setTicket(matchmaker.join(relay.client, playerName, signature, 0));
+    }
+
+    /**
+     * Makes the client a spectator of a table, watching through the worker hosting it.
+     *
+     * @param relay The client asking to watch.
+     * @param payload The protocol version and tableID.
+     */
+    private void watchTable(Relay relay, ByteBuffer payload) {
+        int spectateID = WireProtocol.ClientMessage.Spectate.ordinal();
+        if(relay.table != null || relay.client.getTicket() != null) {
+            relay.client.sendError(spectateID, WireProtocol.ErrorCode.AlreadySeated);
+            return;
+        }
+        if((payload.get() & 0xFF) != WireProtocol.PROTOCOL_VERSION) {
+            relay.client.sendError(spectateID, WireProtocol.ErrorCode.WrongVersion);
+            return;
+        }
+        HostedTable table = tables.get(GameEventLog.readVarInt(payload));
+        if(table == null) {
+            relay.client.sendError(spectateID, WireProtocol.ErrorCode.UnknownTable);
+            return;
+        }
+        relay.table = table;
+        relay.isSpectator = true;
+        table.spectators.add(relay);
+        if(table.isOpen && !table.isMigrating) {
+            attach(relay);
+        }
+    }
+
+    /**
+     * Claims a client's seat again through the worker hosting their table, which checks the
+     * resumeToken. A client whose table moved since they left is caught up from the start of
+     * the seat's history on the new worker.
+     *
+     * @param relay The client asking to resume.
+     * @param payload The protocol version, tableID, seatID, resumeToken, and frames received in the seat.
+     */
+    private void resumeSeat(Relay relay, ByteBuffer payload) {
+        int resumeID = WireProtocol.ClientMessage.Resume.ordinal();
+        if(relay.table != null || relay.client.getTicket() != null) {
+            relay.client.sendError(resumeID, WireProtocol.ErrorCode.AlreadySeated);
+            return;
+        }
+        if((payload.get() & 0xFF) != WireProtocol.PROTOCOL_VERSION) {
+            relay.client.sendError(resumeID, WireProtocol.ErrorCode.WrongVersion);
+            return;
+        }
+        HostedTable table = tables.get(GameEventLog.readVarInt(payload));
+        int seatID = payload.get() & 0xFF;
+        long resumeToken = payload.getLong();
+        int frameCount = GameEventLog.readVarInt(payload);
+        if(table == null) {
+            relay.client.sendError(resumeID, WireProtocol.ErrorCode.UnknownTable);
+            return;
+        }
+        if(seatID >= table.seats.length) {
+            relay.client.sendError(resumeID, WireProtocol.ErrorCode.NotAllowed);
+            return;
+        }
+        relay.table = table;
+        relay.seatID = seatID;
+        relay.resumeToken = resumeToken;
+        relay.frameCount = table.isSeatSynced[seatID] ? frameCount : 0;
+        relay.isResumedSilently = false;
+        if(table.isOpen && !table.isMigrating) {
+            attach(relay);
+        }
+    }
+
+    /**
+     * Starts opening the relay's connection to the worker hosting its table without waiting for it
+     * to connect. The seat is claimed or watching starts once it has. Frames from the client are
+     * held until the worker accepts.
+     *
+     * @param relay The client to attach.
+     */
+    private void attach(Relay relay) {
+        HostedTable table = relay.table;
+        try {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            boolean isConnected = channel.connect(table.worker.dataAddress);
+            SelectionKey key = channel.register(selector, isConnected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT);
+            ClientConnection upstream = new ClientConnection(channel, key, flushQueue, WireProtocol.MAX_FRAME_SIZE,
+                    ClientConnection.MAX_OUTPUT_SIZE);
+            Endpoint endpoint = new Endpoint(upstream, relay, true);
+            key.attach(endpoint);
+            endpoints.put(upstream, endpoint);
+            relay.upstream = upstream;
+            relay.isAttached = false;
+            relay.isConnecting = !isConnected;
+            if(!relay.isSpectator) {
+                table.claimCount++;
+            }
+            if(isConnected) {
+                claim(relay);
+            }
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Warning, "Failed to reach worker {}. {}",
+                    table.worker.workerID, e.getMessage());
+            disconnect(relay);
+        }
+    }
+
+    /**
+     * Finishes connecting a relay's connection to the worker and claims the seat or starts watching.
+     *
+     * @param key The registration of the upstream, which is ready to finish connecting.
+     * @param endpoint The upstream.
+     */
+    private void finishConnect(SelectionKey key, Endpoint endpoint) {
+        Relay relay = endpoint.relay;
+        try {
+            if(!((SocketChannel) key.channel()).finishConnect()) return;
+            key.interestOps(SelectionKey.OP_READ);
+            relay.isConnecting = false;
+            claim(relay);
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Warning, "Failed to reach worker. {}", e.getMessage());
+            close(endpoint);
+        }
+    }
+
+    /**
+     * Sends Resume to claim the relay's seat, or Spectate to start watching, over its connection to the worker.
+     *
+     * @param relay The client with a connected upstream.
+     */
+    private void claim(Relay relay) {
+        HostedTable table = relay.table;
+        ByteBuffer frame;
+        if(relay.isSpectator) {
+            frame = WireProtocol.beginFrame(controlBuffer, WireProtocol.ClientMessage.Spectate.ordinal());
+            frame.put((byte) WireProtocol.PROTOCOL_VERSION);
+            GameEventLog.writeVarInt(frame, table.tableID);
+        } else {
+            frame = WireProtocol.beginFrame(controlBuffer, WireProtocol.ClientMessage.Resume.ordinal());
+            frame.put((byte) WireProtocol.PROTOCOL_VERSION);
+            GameEventLog.writeVarInt(frame, table.tableID);
+            frame.put((byte) relay.seatID);
+            frame.putLong(relay.resumeToken);
+            GameEventLog.writeVarInt(frame, relay.frameCount);
+        }
+        relay.upstream.send(WireProtocol.endFrame(frame));
+    }
+
+    /**
+     * Relays a frame from the worker to the client. The worker accepting the seat or spectator
+     * releases the frames held for the worker, and the worker refusing it leaves the client unseated.
+     *
+     * @param relay The client the frame is for.
+     * @param frame The message type and payload.
+     */
+    private void handleUpstreamFrame(Relay relay, ByteBuffer frame) {
+        int messageTypeID = frame.get(frame.position()) & 0xFF;
+        if(messageTypeID == WireProtocol.ServerMessage.Resumed.ordinal()) {
+            relay.isAttached = true;
+            relay.table.claimCount--;
+            relay.table.seats[relay.seatID] = relay;
+            relay.table.isSeatSynced[relay.seatID] = true;
+            if(relay.isResumedSilently) {
+                relay.isResumedSilently = false;
+            } else {
+                relay(relay.client, frame);
+            }
+            // The worker hands the connection between its event loops after Resume, so nothing is sent until it has.
+            // A table that started moving keeps the frames held until its clients are attached to the new worker.
+            if(relay.table.isMigrating) {
+                fenceWhenClaimed(relay.table);
+                return;
+            }
+            for(ByteBuffer heldFrame : relay.heldFrames) {
+                relay.upstream.send(heldFrame);
+            }
+            relay.heldFrames.clear();
+            return;
+        }
+        if(messageTypeID == WireProtocol.ServerMessage.Watching.ordinal()) {
+            relay.isAttached = true;
+        } else if(messageTypeID == WireProtocol.ServerMessage.Error.ordinal() && !relay.isAttached
+                && frame.remaining() > 1 && (frame.get(frame.position() + 1) == WireProtocol.ClientMessage.Resume.ordinal()
+                || frame.get(frame.position() + 1) == WireProtocol.ClientMessage.Spectate.ordinal())) {
+            detach(relay);
+        }
+        relay(relay.client, frame);
+    }
+
+    /**
+     * Handles a message from a worker about itself or one of its tables. Messages about a table
+     * from a worker that no longer hosts it are ignored.
+     *
+     * @param endpoint The worker's control connection.
+     * @param frame The message type and payload.
+     */
+    private void handleWorkerFrame(Endpoint endpoint, ByteBuffer frame) {
+        int messageTypeID = frame.get() & 0xFF;
+        if(messageTypeID >= ShardProtocol.WorkerMessage.values().length) {
+            close(endpoint);
+            return;
+        }
+        ShardProtocol.WorkerMessage messageType = ShardProtocol.WorkerMessage.values()[messageTypeID];
+        try {
+            if(endpoint.worker == null) {
+                if(messageType == ShardProtocol.WorkerMessage.Ready) {
+                    workerReady(endpoint, frame);
+                } else {
+                    close(endpoint);
+                }
+                return;
+            }
+            Worker worker = endpoint.worker;
+            HostedTable table = tables.get(GameEventLog.readVarInt(frame));
+            if(table == null || table.worker != worker) return;
+            switch (messageType) {
+                case TableOpened -> {
+                    table.isOpen = true;
+                    attachAll(table);
+                }
+                case TableExported -> {
+                    if(table.isMigrating && !table.isExported) {
+                        moveTable(table, frame);
+                    }
+                }
+                case TableImported -> {
+                    if(table.isMigrating && table.isExported) {
+                        finishMigration(table);
+                    }
+                }
+                case ExportFailed, ImportFailed -> {
+                    if(table.isMigrating) {
+                        GameLogger.log(GameLogger.Category.General, GameLogger.Level.Warning, "Failed to move table {}. {}",
+                                table.tableID, messageType);
+                        dropTable(table, true);
+                    }
+                }
+                case TableClosed -> dropTable(table, false);
+                default -> close(endpoint);
+            }
+        } catch (BufferUnderflowException e) {
+            close(endpoint);
+        }
+    }
+
+    /**
+     * Puts a worker that is Ready on the ring and starts accepting clients once the first is.
+     *
+     * @param endpoint The worker's control connection.
+     * @param payload The workerID and the port it accepts relayed connections on.
+     */
+    private void workerReady(Endpoint endpoint, ByteBuffer payload) {
+        int workerID = GameEventLog.readVarInt(payload);
+        int dataPort = GameEventLog.readVarInt(payload);
+        if(workerID >= workers.length || workers[workerID].isReady) {
+            close(endpoint);
+            return;
+        }
+        Worker worker = workers[workerID];
+        endpoint.worker = worker;
+        worker.control = endpoint.connection;
+        worker.dataAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), dataPort);
+        worker.isReady = true;
+        ring.add(workerID);
+        GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "Worker {} is ready on port {}.", workerID, dataPort);
+        if(clientChannel.keyFor(selector) == null) {
+            try {
+                clientChannel.register(selector, SelectionKey.OP_ACCEPT);
+            } catch (IOException e) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Failed to accept clients. {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Forms a table for a Match on the worker that owns its tableID on the ring. Each client is
+     * sent Seated with a new resumeToken and their seat is claimed once the worker opens the table.
+     *
+     * @param match The clients put together and the rules they asked for.
+     */
+    private void openTable(Matchmaker.Match match) {
+        RuleSet ruleSet = match.createRuleSet();
+        int tableID = nextTableID++;
+        int workerID = ring.get(tableID);
+        List<Relay> relays = new ArrayList<>();
+        for(Matchmaker.Ticket ticket : match.getTickets()) {
+            Endpoint endpoint = endpoints.get(ticket.getConnection());
+            ticket.getConnection().setTicket(null);
+            if(endpoint == null || endpoint.relay.isClosed) continue;
+            if(workerID < 0) {
+                ticket.getConnection().sendError(WireProtocol.ClientMessage.Join.ordinal(), WireProtocol.ErrorCode.UnknownTable);
+            } else {
+                relays.add(endpoint.relay);
+            }
+        }
+        if(relays.isEmpty()) return;
+        Worker worker = workers[workerID];
+        HostedTable table = new HostedTable(tableID, worker, ruleSet.getOnlyTwoPlayers() ? 2 : 4);
+        tables.put(tableID, table);
+        worker.tableCount++;
+        ByteBuffer openFrame = WireProtocol.beginFrame(ByteBuffer.allocate(256), ShardProtocol.CoordinatorMessage.OpenTable.ordinal());
+        GameEventLog.writeVarInt(openFrame, tableID);
+        GameEventLog.writeVarInt(openFrame, ruleSet.getSignature());
+        openFrame.put((byte) relays.size());
+        for(int i = 0; i < relays.size(); i++) {
+            Relay relay = relays.get(i);
+            relay.table = table;
+            relay.seatID = i;
+            relay.resumeToken = GameTable.createResumeToken();
+            relay.frameCount = 0;
+            relay.isResumedSilently = true;
+            table.seats[i] = relay;
+            WireProtocol.writeName(openFrame, match.getTickets().stream().filter(ticket -> ticket.getConnection() == relay.client)
+                    .findFirst().map(Matchmaker.Ticket::getPlayerName).orElse("Player"));
+            openFrame.putLong(relay.resumeToken);
+            ByteBuffer frame = WireProtocol.beginFrame(relayBuffer, WireProtocol.ServerMessage.Seated.ordinal());
+            GameEventLog.writeVarInt(frame, tableID);
+            frame.put((byte) i);
+            frame.put((byte) table.seats.length);
+            frame.putLong(relay.resumeToken);
+            relay.client.send(WireProtocol.endFrame(frame));
+        }
+        worker.control.send(WireProtocol.endFrame(openFrame));
+    }
+
+    /**
+     * Attaches every client seated at or watching a table.
+     *
+     * @param table The table that opened or finished moving.
+     */
+    private void attachAll(HostedTable table) {
+        for(Relay relay : table.seats) {
+            if(relay != null && !relay.isClosed && relay.upstream == null) {
+                attach(relay);
+            }
+        }
+        for(Relay relay : new ArrayList<>(table.spectators)) {
+            if(relay.upstream == null) {
+                attach(relay);
+            }
+        }
+    }
+
+    /**
+     * Starts moving a table by fencing its connections to the worker hosting it. Frames from its clients
+     * are held from now on. The worker is asked to export the table once every fenced connection is closed.
+     *
+     * @param table The table to move.
+     * @param target The worker to move it to.
+     */
+    private void startMigration(HostedTable table, Worker target) {
+        table.isMigrating = true;
+        table.target = target;
+        table.migrationStart = System.nanoTime();
+        migrationCount++;
+        table.isFenced = false;
+        table.fenceCount = 0;
+        fenceWhenClaimed(table);
+    }
+
+    /**
+     * Fences a table being moved once the worker has answered every claim on its seats. A table
+     * that has not started only starts once all its seats are claimed, so a fenced seat emptied
+     * before a later claim arrived would be given to an AIPlayer when the table started.
+     *
+     * @param table The table being moved.
+     */
+    private void fenceWhenClaimed(HostedTable table) {
+        if(table.isFenced || table.claimCount > 0 || tables.get(table.tableID) != table || table.isExported) return;
+        table.isFenced = true;
+        for(Relay relay : table.seats) {
+            if(relay != null && relay.table == table) {
+                fence(relay);
+            }
+        }
+        for(Relay relay : new ArrayList<>(table.spectators)) {
+            fence(relay);
+        }
+        if(table.fenceCount == 0) {
+            requestExport(table);
+        }
+    }
+
+    /**
+     * Closes a relay's connection to the worker for writing once the frames already relayed on it
+     * are written. The worker handles every one of them and then closes the connection, which is
+     * how the coordinator knows they have all reached the table. A connection still connecting
+     * has nothing relayed on it and is just closed.
+     *
+     * @param relay The client of a table being moved.
+     */
+    private void fence(Relay relay) {
+        if(relay.upstream == null) return;
+        if(relay.isConnecting) {
+            closeUpstream(relay);
+            return;
+        }
+        try {
+            relay.upstream.shutdownOutput();
+            relay.isFenced = true;
+            relay.table.fenceCount++;
+        } catch (IOException e) {
+            closeUpstream(relay);
+        }
+    }
+
+    /**
+     * Asks the worker hosting a table that is being moved to export it.
+     *
+     * @param table The table to move, with no fenced connections left open.
+     */
+    private void requestExport(HostedTable table) {
+        ByteBuffer frame = WireProtocol.beginFrame(controlBuffer, ShardProtocol.CoordinatorMessage.ExportTable.ordinal());
+        GameEventLog.writeVarInt(frame, table.tableID);
+        table.worker.control.send(WireProtocol.endFrame(frame));
+    }
+
+    /**
+     * Detaches the clients of a table that was exported and sends its state to the new worker.
+     * Every client resumes from the start of its seat's history there.
+     *
+     * @param table The table exported.
+     * @param state The state from the old worker.
+     */
+    private void moveTable(HostedTable table, ByteBuffer state) {
+        Worker target = table.target;
+        // The worker chosen may have been lost while the table was exported.
+        if(target == null || !target.isReady) {
+            int workerID = ring.get(table.tableID);
+            target = workerID >= 0 && workers[workerID] != table.worker ? workers[workerID] : null;
+        }
+        if(target == null) {
+            dropTable(table, true);
+            return;
+        }
+        table.isExported = true;
+        for(Relay relay : table.seats) {
+            if(relay != null) {
+                closeUpstream(relay);
+            }
+        }
+        for(Relay relay : table.spectators) {
+            closeUpstream(relay);
+        }
+        for(int i = 0; i < table.seats.length; i++) {
+            table.isSeatSynced[i] = false;
+            if(table.seats[i] != null) {
+                table.seats[i].frameCount = 0;
+            }
+        }
+        table.worker.tableCount--;
+        table.worker = target;
+        table.target = null;
+        target.tableCount++;
+        ByteBuffer frame = WireProtocol.beginFrame(controlBuffer, ShardProtocol.CoordinatorMessage.ImportTable.ordinal());
+        GameEventLog.writeVarInt(frame, table.tableID);
+        frame.put(state);
+        target.control.send(WireProtocol.endFrame(frame));
+    }
+
+    /**
+     * Attaches the clients of a table to the worker that imported it.
+     *
+     * @param table The table moved.
+     */
+    private void finishMigration(HostedTable table) {
+        table.isMigrating = false;
+        table.isExported = false;
+        migrationCount--;
+        migratedCount++;
+        migrationPauses.record((int) Math.min(Integer.MAX_VALUE,
+                TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - table.migrationStart)));
+        attachAll(table);
+    }
+
+    /**
+     * Forgets a table and disconnects any client still seated at or watching it, so they can join again.
+     *
+     * @param table The table closed or lost.
+     * @param isLost True when the game was lost rather than everyone having left.
+     */
+    private void dropTable(HostedTable table, boolean isLost) {
+        if(tables.remove(table.tableID) == null) return;
+        if(table.isMigrating) {
+            migrationCount--;
+        }
+        table.worker.tableCount--;
+        if(isLost) {
+            lostCount++;
+        }
+        for(Relay relay : table.seats) {
+            if(relay != null && relay.table == table) {
+                disconnect(relay);
+            }
+        }
+        for(Relay relay : new ArrayList<>(table.spectators)) {
+            disconnect(relay);
+        }
+    }
+
+    /**
+     * Moves tables off draining workers, and to their owners on the ring while rebalancing,
+     * keeping at most MIGRATION_BATCH moving at once. Drained workers are told to Stop.
+     */
+    private void continueMigrations() {
+        boolean isDraining = false;
+        for(Worker worker : workers) {
+            isDraining |= worker.isDraining && worker.isReady;
+        }
+        if(!isDraining && !isRebalancing) return;
+        boolean hasWaitingTables = false;
+        for(HostedTable table : tables.values()) {
+            if(table.isMigrating) continue;
+            int workerID = ring.get(table.tableID);
+            if(workerID < 0 || workers[workerID] == table.worker
+                    || (!table.worker.isDraining && !isRebalancing)) continue;
+            hasWaitingTables = true;
+            if(migrationCount < MIGRATION_BATCH && table.isOpen && workers[workerID].isReady) {
+                startMigration(table, workers[workerID]);
+            }
+        }
+        if(!hasWaitingTables && migrationCount == 0 && isRebalancing) {
+            isRebalancing = false;
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "Rebalance finished.");
+        }
+        for(Worker worker : workers) {
+            if(worker.isDraining && worker.isReady && !worker.isStopping && worker.tableCount == 0) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "Worker {} drained. {}", worker.workerID,
+                        describe(migrationPauses));
+                worker.isStopping = true;
+                worker.control.send(WireProtocol.endFrame(WireProtocol.beginFrame(controlBuffer,
+                        ShardProtocol.CoordinatorMessage.Stop.ordinal())));
+            }
+        }
+    }
+
+    /**
+     * Starts a worker process that connects back to the coordinator.
+     *
+     * @param worker The worker to start.
+     */
+    private void startWorker(Worker worker) {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("ShardWorker");
+        command.add(String.valueOf(((InetSocketAddress) controlChannel.socket().getLocalSocketAddress()).getPort()));
+        command.add(String.valueOf(worker.workerID));
+        command.addAll(workerArguments);
+        worker.isDraining = false;
+        worker.isRestarting = false;
+        worker.isStopping = false;
+        try {
+            Process process = new ProcessBuilder(command).inheritIO().start();
+            worker.process = process;
+            process.onExit().thenRun(() -> execute(() -> workerExited(worker, process)));
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Failed to start worker {}. {}",
+                    worker.workerID, e.getMessage());
+        }
+    }
+
+    /**
+     * Forgets a worker whose process exited and starts it again when it was restarting or stopped unexpectedly.
+     *
+     * @param worker The worker.
+     * @param process The process that exited.
+     */
+    private void workerExited(Worker worker, Process process) {
+        if(worker.process != process) return;
+        worker.process = null;
+        boolean isExpected = worker.isStopping;
+        loseWorker(worker);
+        GameLogger.log(GameLogger.Category.General, isExpected ? GameLogger.Level.Info : GameLogger.Level.Warning, "Worker {} exited with {}.",
+                worker.workerID, process.exitValue());
+        if(isRunning && (worker.isRestarting || !isExpected)) {
+            startWorker(worker);
+        }
+    }
+
+    /**
+     * Takes a worker off the ring and drops the tables that were on it or being imported by it.
+     * Tables being exported to it are moved to the next owner instead.
+     *
+     * @param worker The worker lost.
+     */
+    private void loseWorker(Worker worker) {
+        ring.remove(worker.workerID);
+        worker.isReady = false;
+        if(worker.control != null) {
+            endpoints.remove(worker.control);
+            worker.control.close();
+            worker.control = null;
+        }
+        for(HostedTable table : new ArrayList<>(tables.values())) {
+            if(table.worker == worker) {
+                dropTable(table, true);
+            } else if(table.target == worker) {
+                table.target = null;
+            }
+        }
+        worker.tableCount = 0;
+    }
+
+    /**
+     * Relays a frame with its length added back.
+     *
+     * @param connection The connection to send to.
+     * @param frame The message type and payload.
+     */
+    private void relay(ClientConnection connection, ByteBuffer frame) {
+        relayBuffer.clear();
+        relayBuffer.putShort((short) frame.remaining());
+        relayBuffer.put(frame);
+        connection.send(relayBuffer.flip());
+    }
+
+    /**
+     * Closes the connection from a relay to its worker.
+     *
+     * @param relay The relay to detach.
+     */
+    private void closeUpstream(Relay relay) {
+        if(relay.upstream == null) return;
+        endpoints.remove(relay.upstream);
+        relay.upstream.close();
+        relay.upstream = null;
+        if(!relay.isAttached && !relay.isSpectator) {
+            relay.table.claimCount--;
+            if(relay.table.isMigrating) {
+                fenceWhenClaimed(relay.table);
+            }
+        }
+        relay.isAttached = false;
+        relay.isConnecting = false;
+        if(relay.isFenced) {
+            relay.isFenced = false;
+            HostedTable table = relay.table;
+            table.fenceCount--;
+            // A table dropped while it was being fenced is not exported.
+            if(table.fenceCount == 0 && tables.get(table.tableID) == table && table.isMigrating && !table.isExported) {
+                requestExport(table);
+            }
+        }
+    }
+
+    /**
+     * Takes a client off their table so they can join or resume again. Frames held for them are discarded.
+     *
+     * @param relay The client to detach.
+     */
+    private void detach(Relay relay) {
+        closeUpstream(relay);
+        HostedTable table = relay.table;
+        if(table != null) {
+            if(relay.seatID >= 0 && table.seats[relay.seatID] == relay) {
+                table.seats[relay.seatID] = null;
+            }
+            table.spectators.remove(relay);
+        }
+        relay.table = null;
+        relay.seatID = -1;
+        relay.isSpectator = false;
+        relay.isResumedSilently = false;
+        relay.heldFrames.clear();
+    }
+
+    /**
+     * Closes a client's connection and their connection to the worker. The worker keeps their seat for them to resume.
+     *
+     * @param relay The client to disconnect.
+     */
+    private void disconnect(Relay relay) {
+        if(relay.isClosed) return;
+        relay.isClosed = true;
+        endpoints.remove(relay.client);
+        relay.client.close();
+        if(relay.client.getTicket() != null) {
+            matchmaker.cancel(relay.client.getTicket());
+        }
+        detach(relay);
+    }
+
+    /**
+     * Cleans up after a connection that closed or failed.
+     *
+     * @param endpoint The connection.
+     */
+    private void close(Endpoint endpoint) {
+        if(endpoint == null) return;
+        if(endpoint.relay != null) {
+            if(endpoint.isUpstream && endpoint.connection == endpoint.relay.upstream && endpoint.relay.isFenced) {
+                // The worker closing a fenced upstream means it has handled every frame relayed on it.
+                closeUpstream(endpoint.relay);
+            } else if(!endpoint.isUpstream || endpoint.connection == endpoint.relay.upstream) {
+                // An upstream closed by the worker leaves nothing to relay to, so the client is sent away to resume.
+                disconnect(endpoint.relay);
+            }
+            endpoint.connection.close();
+        } else if(endpoint.worker != null) {
+            // The worker exits once its control connection closes and is started again from workerExited().
+            loseWorker(endpoint.worker);
+        } else {
+            endpoints.remove(endpoint.connection);
+            endpoint.connection.close();
+        }
+    }
+
+    /**
+     * Writes the output waiting for every connection in the flush queue.
+     */
+    private void flushConnections() {
+        for(int i = 0; i < flushQueue.size(); i++) {
+            ClientConnection connection = flushQueue.get(i);
+            try {
+                connection.flush();
+            } catch (IOException e) {
+                close(endpoints.get(connection));
+            }
+        }
+        flushQueue.clear();
+    }
+
+    /**
+     * Performs a command typed on the console.
+     *
+     * @param command status, drain workerID, restart workerID, start workerID, or rebalance.
+     */
+    private void handleCommand(String command) {
+        String[] words = command.trim().split("\\s+");
+        Worker worker = null;
+        if(words.length > 1) {
+            try {
+                int workerID = Integer.parseInt(words[1]);
+                worker = workerID >= 0 && workerID < workers.length ? workers[workerID] : null;
+            } catch (NumberFormatException e) {
+                worker = null;
+            }
+        }
+        switch (words[0]) {
+            case "status" -> logStatus();
+            case "rebalance" -> isRebalancing = true;
+            case "drain", "restart" -> {
+                if(worker == null || !worker.isReady || worker.isDraining) {
+                    GameLogger.log(GameLogger.Category.General, GameLogger.Level.Warning, "No ready worker to {}.", words[0]);
+                    return;
+                }
+                worker.isDraining = true;
+                worker.isRestarting = words[0].equals("restart");
+                ring.remove(worker.workerID);
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "Draining worker {} of {} tables.",
+                        worker.workerID, worker.tableCount);
+            }
+            case "start" -> {
+                if(worker == null || worker.process != null) {
+                    GameLogger.log(GameLogger.Category.General, GameLogger.Level.Warning, "No stopped worker to start.");
+                    return;
+                }
+                startWorker(worker);
+            }
+            default -> GameLogger.log(GameLogger.Category.General, GameLogger.Level.Warning,
+                    "Commands: status, drain workerID, restart workerID, start workerID, rebalance");
+        }
+    }
+
+    /**
+     * Logs the state of every worker.
+     */
+    private void logStatus() {
+        for(Worker worker : workers) {
+            String state = worker.process == null ? "stopped" : !worker.isReady ? "starting"
+                    : worker.isStopping ? "stopping" : worker.isDraining ? "draining" : "ready";
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "Worker {}: {}, {} tables",
+                    worker.workerID, state, worker.tableCount);
+        }
+        GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "{} connections, {} tables, {} moving",
+                endpoints.size(), tables.size(), migrationCount);
+    }
+
+    /**
+     * Logs the tables moved and lost since last time and how long their clients were paused.
+     */
+    private void logStatistics() {
+        if(migratedCount == 0 && lostCount == 0) return;
+        GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "{} tables, {} moved, {} lost, pause us {}",
+                tables.size(), migratedCount, lostCount, describe(migrationPauses));
+        migratedCount = 0;
+        lostCount = 0;
+        migrationPauses = new StatHistogram();
+    }
+
+    /**
+     * Describes a histogram of times in microseconds.
+     *
+     * @param histogram The histogram to describe.
+     * @return The count, p50, p99, and max.
+     */
+    private static String describe(StatHistogram histogram) {
+        return String.format("n=%d p50=%d p99=%d max=%d", histogram.getCount(), histogram.getValueAtPercentile(50),
+                histogram.getValueAtPercentile(99), histogram.getMax());
+    }
+
+    /**
+     * Entry point to run the coordinator and its workers.
+     *
+     * @param args Optionally the port, the number of workers, and for each worker the number of event loops,
+     *             true to run each table on its own thread, the AIStrategy, and the arbitration window in ms.
+     * @throws IOException When the coordinator could not be started.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : GameServer.DEFAULT_PORT;
+        int workerCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_WORKER_COUNT;
+        List<String> workerArguments = new ArrayList<>(Arrays.asList(args).subList(Math.min(2, args.length), args.length));
+        if(workerArguments.isEmpty()) {
+            workerArguments.add(String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors() / workerCount)));
+        }
+        ShardCoordinator coordinator = new ShardCoordinator(port, workerCount, workerArguments);
+        coordinator.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            coordinator.stop();
+            GameLogger.shutdown();
+        }));
+        BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while((line = console.readLine()) != null) {
+            String command = line;
+            if(!command.isBlank()) {
+                coordinator.execute(() -> coordinator.handleCommand(command));
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Uno
+ *
+ * ShardProtocol class:
+ * Defines the protocol on the control connection between the ShardCoordinator and each
+ * ShardWorker. Frames are laid out the same as WireProtocol frames, with a 2 byte length,
+ * a 1 byte message type, and then the payload, but may be up to MAX_FRAME_SIZE so that a
+ * whole table can be sent in one. Clients never see these messages. The coordinator relays
+ * their WireProtocol frames to the workers over separate connections.
+ *
+ * Coordinator messages (payload):
+ *   OpenTable (tableID, RuleSet signature, clientCount, then name and 8 byte resumeToken for each client)
+ *     to host a table whose seats are claimed by the coordinator sending Resume for each client,
+ *   ExportTable (tableID) to stop a table and send back its state,
+ *   ImportTable (tableID, state from GameTable.exportTable()) to host a table moved from another worker,
+ *   Stop to shut down the worker.
+ *
+ * Worker messages (payload):
+ *   Ready (workerID, port the worker accepts the coordinator's relayed connections on),
+ *   TableOpened (tableID), TableExported (tableID, state), ExportFailed (tableID),
+ *   TableImported (tableID), ImportFailed (tableID), TableClosed (tableID) once everyone has left a table.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class ShardProtocol {
+    /**
+     * Messages sent by the coordinator to a worker.
+     */
+    public enum CoordinatorMessage { OpenTable, ExportTable, ImportTable, Stop }
+
+    /**
+     * Messages sent by a worker to the coordinator.
+     */
+    public enum WorkerMessage { Ready, TableOpened, TableExported, ExportFailed, TableImported, ImportFailed, TableClosed }
+
+    /**
+     * Largest frame on the control connection after the length.
+     */
+    public static final int MAX_FRAME_SIZE = 32 * 1024;
+    /**
+     * Most bytes allowed to wait to be sent on the control connection.
+     */
+    public static final int MAX_OUTPUT_SIZE = 4 * 1024 * 1024;
+}
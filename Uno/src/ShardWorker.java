@@ -0,0 +1,235 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Uno
+ *
+ * ShardWorker class:
+ * Defines a process started by the ShardCoordinator that hosts a share of the tables. It runs
+ * a GameServer listening only on the loopback address, which the coordinator connects to
+ * on behalf of each client, and takes its orders over a control connection to the coordinator
+ * using the ShardProtocol. Orders are read on the main thread and passed on to the server,
+ * and replies are sent from whichever thread finishes the work. The worker exits once it is
+ * told to Stop or the control connection closes, so it never outlives its coordinator.
+ *
+ * Run with: java ShardWorker coordinatorPort workerID [eventLoopCount] [threadPerTable] [aiStrategy] [arbitrationWindow]
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class ShardWorker {
+    /**
+     * The ID the coordinator knows the worker by.
+     */
+    private final int workerID;
+    /**
+     * Hosts the tables.
+     */
+    private final GameServer server;
+    /**
+     * Blocking connection to the coordinator.
+     */
+    private final SocketChannel control;
+    /**
+     * Buffer the orders are read into, kept ready for reading between frames.
+     */
+    private final ByteBuffer inputBuffer;
+
+    /**
+     * Creates a worker and connects to the coordinator.
+     *
+     * @param coordinatorPort The port the coordinator accepts control connections on.
+     * @param workerID The ID the coordinator knows the worker by.
+     * @param server The server to host the tables with, not yet started.
+     * @throws IOException When the coordinator could not be reached.
+     */
+    public ShardWorker(int coordinatorPort, int workerID, GameServer server) throws IOException {
+        this.workerID = workerID;
+        this.server = server;
+        control = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), coordinatorPort));
+        inputBuffer = ByteBuffer.allocate(WireProtocol.LENGTH_SIZE + ShardProtocol.MAX_FRAME_SIZE).flip();
+        server.setBindAddress(InetAddress.getLoopbackAddress());
+        server.setTableClosedListener(tableID -> sendTableMessage(ShardProtocol.WorkerMessage.TableClosed, tableID));
+    }
+
+    /**
+     * Starts the server, tells the coordinator it is Ready, and performs orders until told to
+     * Stop or the control connection closes. The server is stopped before returning.
+     *
+     * @throws IOException When the server could not be started.
+     */
+    public void run() throws IOException {
+        server.start();
+        ByteBuffer frame = WireProtocol.beginFrame(ByteBuffer.allocate(16), ShardProtocol.WorkerMessage.Ready.ordinal());
+        GameEventLog.writeVarInt(frame, workerID);
+        GameEventLog.writeVarInt(frame, server.getPort());
+        send(WireProtocol.endFrame(frame));
+        try {
+            while(handleFrame(readFrame())) {
+                // Every order is handled as it is read.
+            }
+        } catch (IOException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Info, "Worker {} lost its coordinator. {}", workerID, e.getMessage());
+        } finally {
+            server.stop();
+            try {
+                control.close();
+            } catch (IOException e) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Debug, "Failed to close control connection. {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Waits for the next whole frame from the coordinator.
+     *
+     * @return A view of the message type and payload, valid until the next read.
+     * @throws IOException When the connection closed or the frame was invalid.
+     */
+    private ByteBuffer readFrame() throws IOException {
+        ByteBuffer frame;
+        while((frame = WireProtocol.nextFrame(inputBuffer, ShardProtocol.MAX_FRAME_SIZE)) == null) {
+            inputBuffer.compact();
+            if(control.read(inputBuffer) < 0) {
+                throw new EOFException("Control connection closed.");
+            }
+            inputBuffer.flip();
+        }
+        return frame;
+    }
+
+    /**
+     * Passes an order from the coordinator on to the server.
+     *
+     * @param frame The message type and payload.
+     * @return False once told to Stop.
+     * @throws IOException When the message is not known.
+     */
+    private boolean handleFrame(ByteBuffer frame) throws IOException {
+        int messageTypeID = frame.get() & 0xFF;
+        if(messageTypeID >= ShardProtocol.CoordinatorMessage.values().length) {
+            throw new IOException("Unknown message " + messageTypeID);
+        }
+        try {
+            switch (ShardProtocol.CoordinatorMessage.values()[messageTypeID]) {
+                case OpenTable -> openTable(frame);
+                case ExportTable -> {
+                    int tableID = GameEventLog.readVarInt(frame);
+                    server.exportTable(tableID, state -> sendExportedTable(tableID, state));
+                }
+                case ImportTable -> {
+                    int tableID = GameEventLog.readVarInt(frame);
+                    // The frame is only valid until the next read so the state is copied.
+                    ByteBuffer state = ByteBuffer.allocate(frame.remaining());
+                    state.put(frame).flip();
+                    server.importTable(tableID, state, isImported -> sendTableMessage(isImported
+                            ? ShardProtocol.WorkerMessage.TableImported : ShardProtocol.WorkerMessage.ImportFailed, tableID));
+                }
+                case Stop -> {
+                    return false;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Invalid message " + messageTypeID, e);
+        }
+        return true;
+    }
+
+    /**
+     * Opens a table with its seats reserved for the clients the coordinator matched.
+     *
+     * @param payload The tableID, RuleSet signature, clientCount, and the name and resumeToken of each client.
+     * @throws IOException When the RuleSet signature is not valid.
+     */
+    private void openTable(ByteBuffer payload) throws IOException {
+        int tableID = GameEventLog.readVarInt(payload);
+        int signature = GameEventLog.readVarInt(payload);
+        if(!RuleSet.isValidSignature(signature)) {
+            throw new IOException("Invalid rules " + signature);
+        }
+        RuleSet ruleSet = new RuleSet();
+        ruleSet.setSignature(signature);
+        int clientCount = payload.get();
+        String[] playerNames = new String[clientCount];
+        long[] resumeTokens = new long[clientCount];
+        for(int i = 0; i < clientCount; i++) {
+            playerNames[i] = WireProtocol.readName(payload);
+            resumeTokens[i] = payload.getLong();
+        }
+        server.openReservedTable(tableID, ruleSet, playerNames, resumeTokens,
+                () -> sendTableMessage(ShardProtocol.WorkerMessage.TableOpened, tableID));
+    }
+
+    /**
+     * Sends the coordinator the state of an exported table, or ExportFailed when there was none.
+     *
+     * @param tableID The table that was asked for.
+     * @param state The state ready for reading, or null.
+     */
+    private void sendExportedTable(int tableID, ByteBuffer state) {
+        if(state == null || state.remaining() > ShardProtocol.MAX_FRAME_SIZE - 8) {
+            sendTableMessage(ShardProtocol.WorkerMessage.ExportFailed, tableID);
+            return;
+        }
+        ByteBuffer frame = WireProtocol.beginFrame(ByteBuffer.allocate(WireProtocol.LENGTH_SIZE + ShardProtocol.MAX_FRAME_SIZE),
+                ShardProtocol.WorkerMessage.TableExported.ordinal());
+        GameEventLog.writeVarInt(frame, tableID);
+        frame.put(state);
+        send(WireProtocol.endFrame(frame));
+    }
+
+    /**
+     * Sends the coordinator a message about a table.
+     *
+     * @param messageType The message to send.
+     * @param tableID The table it is about.
+     */
+    private void sendTableMessage(ShardProtocol.WorkerMessage messageType, int tableID) {
+        ByteBuffer frame = WireProtocol.beginFrame(ByteBuffer.allocate(16), messageType.ordinal());
+        GameEventLog.writeVarInt(frame, tableID);
+        send(WireProtocol.endFrame(frame));
+    }
+
+    /**
+     * Writes a whole frame to the coordinator. Called from the main thread, the event loops,
+     * and the table runners, so writes are done one at a time.
+     *
+     * @param frame The frame ready for reading.
+     */
+    private synchronized void send(ByteBuffer frame) {
+        try {
+            while(frame.hasRemaining()) {
+                control.write(frame);
+            }
+        } catch (IOException e) {
+            // The main thread finds the connection closed on its next read and stops the worker.
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Debug, "Failed to write to coordinator. {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Entry point for a worker started by the ShardCoordinator.
+     *
+     * @param args The coordinator's control port, the workerID, and optionally the number of event loops,
+     *             true to run each table on its own thread, the AIStrategy, and the arbitration window in ms.
+     * @throws IOException When the coordinator could not be reached or the server could not be started.
+     */
+    public static void main(String[] args) throws IOException {
+        int coordinatorPort = Integer.parseInt(args[0]);
+        int workerID = Integer.parseInt(args[1]);
+        int eventLoopCount = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        boolean isThreadPerTable = args.length > 3 && Boolean.parseBoolean(args[3]);
+        AIPlayer.AIStrategy aiStrategy = args.length > 4 ? AIPlayer.AIStrategy.valueOf(args[4]) : AIPlayer.AIStrategy.Random;
+        GameServer server = new GameServer(0, eventLoopCount, isThreadPerTable, aiStrategy);
+        if(args.length > 5) {
+            server.setArbitrationWindow(Integer.parseInt(args[5]));
+        }
+        new ShardWorker(coordinatorPort, workerID, server).run();
+        GameLogger.shutdown();
+    }
+}
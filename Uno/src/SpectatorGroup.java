@@ -0,0 +1,155 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Uno
+ *
+ * SpectatorGroup class:
+ * Defines the spectators watching a GameTable. Each frame is encoded once by the table
+ * and the same read-only buffer is queued for every spectator, so adding spectators only
+ * costs the queueing and the writes. Owned by the event loop that owns the table and its
+ * spectators' connections, so frames from a TableRunner are published through that event loop.
+ *
+ * Spectators can fall a little behind the seats, so their frames are only flushed every
+ * FLUSH_INTERVAL and each spectator gets several frames in one write instead of one write
+ * per frame. Spectators have a bounded queue each. A spectator whose queue fills up has it
+ * dropped and is skipped for Deltas until the table publishes a Snapshot to catch them up.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class SpectatorGroup {
+    /**
+     * Time in ms between flushes of the frames queued for the spectators.
+     */
+    public static final int FLUSH_INTERVAL = 100;
+
+    /**
+     * The connections watching the table.
+     */
+    private final List<ClientConnection> spectators;
+    /**
+     * Asks the table to publish a Snapshot for the spectators that are behind.
+     */
+    private final Runnable snapshotRequester;
+    /**
+     * Number of spectators, readable from a TableRunner's thread to skip encoding when nobody is watching.
+     */
+    private volatile int spectatorCount;
+    /**
+     * True when a Snapshot has been requested and not yet published.
+     */
+    private boolean isSnapshotRequested;
+    /**
+     * Time in ms since the spectators were last flushed.
+     */
+    private int flushTimer;
+
+    /**
+     * Creates an empty group.
+     *
+     * @param snapshotRequester Asks the table to publish a Snapshot. Called at most once until it is published.
+     */
+    public SpectatorGroup(Runnable snapshotRequester) {
+        this.snapshotRequester = snapshotRequester;
+        spectators = new ArrayList<>();
+    }
+
+    /**
+     * Adds a spectator who is then sent a Snapshot before any Deltas.
+     *
+     * @param connection The spectator, already set as spectating the table.
+     */
+    public void add(ClientConnection connection) {
+        spectators.add(connection);
+        spectatorCount = spectators.size();
+        markBehind(connection);
+    }
+
+    /**
+     * Removes a spectator.
+     *
+     * @param connection The spectator to remove.
+     */
+    public void remove(ClientConnection connection) {
+        spectators.remove(connection);
+        spectatorCount = spectators.size();
+    }
+
+    /**
+     * Gets the spectators.
+     *
+     * @return The spectators watching the table.
+     */
+    public List<ClientConnection> getSpectators() {
+        return spectators;
+    }
+
+    /**
+     * Checks if anyone is watching. Can be called from any thread.
+     *
+     * @return True when there is at least one spectator.
+     */
+    public boolean hasSpectators() {
+        return spectatorCount > 0;
+    }
+
+    /**
+     * Queues a frame for the spectators. A Snapshot is only sent to the spectators that are
+     * behind and a Delta only to those that are not. A RoundStart means every spectator needs
+     * the Snapshot that follows it. Any other frame is sent to everyone.
+     *
+     * @param frame A read-only frame from WireProtocol.shareFrame() that is never changed again.
+     */
+    public void publish(ByteBuffer frame) {
+        int messageType = frame.get(frame.position() + WireProtocol.LENGTH_SIZE);
+        boolean isSnapshot = messageType == WireProtocol.ServerMessage.Snapshot.ordinal();
+        boolean isDelta = messageType == WireProtocol.ServerMessage.Delta.ordinal();
+        if(isSnapshot) {
+            isSnapshotRequested = false;
+        }
+        for(ClientConnection spectator : spectators) {
+            if(isSnapshot != spectator.needsSnapshot() && (isSnapshot || isDelta)) continue;
+            if(!spectator.sendShared(frame)) {
+                markBehind(spectator);
+            } else if(isSnapshot) {
+                spectator.setNeedsSnapshot(false);
+            }
+        }
+        if(messageType == WireProtocol.ServerMessage.RoundStart.ordinal()) {
+            for(ClientConnection spectator : spectators) {
+                spectator.setNeedsSnapshot(true);
+            }
+            // The table always follows a RoundStart with a Snapshot so there is no need to ask for one.
+            isSnapshotRequested = true;
+        }
+    }
+
+    /**
+     * Flushes the frames queued for every spectator once FLUSH_INTERVAL has passed. Called by the event loop each tick.
+     *
+     * @param deltaTime Time since last update.
+     */
+    public void update(int deltaTime) {
+        flushTimer += deltaTime;
+        if(flushTimer < FLUSH_INTERVAL) return;
+        flushTimer = 0;
+        for(ClientConnection spectator : spectators) {
+            spectator.requestFlush();
+        }
+    }
+
+    /**
+     * Stops sending Deltas to a spectator and asks the table for a Snapshot if one is not already coming.
+     *
+     * @param connection The spectator that is behind.
+     */
+    private void markBehind(ClientConnection connection) {
+        connection.setNeedsSnapshot(true);
+        if(!isSnapshotRequested) {
+            isSnapshotRequested = true;
+            snapshotRequester.run();
+        }
+    }
+}
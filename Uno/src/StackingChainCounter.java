@@ -0,0 +1,68 @@
+/**
+ * Uno
+ *
+ * StackingChainCounter class:
+ * Follows +2/+4 stacking chains through the events of a recorded round so that
+ * GameStatistics and GameRecordQuery count chains with the same rules. A chain
+ * grows when a +2 or +4 is placed after the next player chose to stack, starts
+ * again at 1 when one is placed without stacking, and ends once someone draws
+ * or is caught by an AntiUno call without stacking.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class StackingChainCounter {
+    /**
+     * Number of +2 and +4 cards played in the current chain.
+     */
+    private int chainLength;
+    /**
+     * True once a player chose to stack and before they placed their card.
+     */
+    private boolean isStacking;
+
+    /**
+     * Creates a counter for the start of a round.
+     */
+    public StackingChainCounter() {
+        chainLength = 0;
+        isStacking = false;
+    }
+
+    /**
+     * Updates the chain with the event the reader is on.
+     *
+     * @param reader The reader positioned on the next event of the round.
+     * @return The length of a chain that the event ended, or 0 if none ended.
+     */
+    public int addEvent(GameRecordReader reader) {
+        switch (reader.getEventType()) {
+            case Stack -> isStacking = true;
+            case Place, JumpIn -> {
+                if(reader.getFaceValueID() == 10 || reader.getFaceValueID() == 13) {
+                    int endedLength = isStacking ? 0 : chainLength;
+                    chainLength = isStacking ? chainLength + 1 : 1;
+                    isStacking = false;
+                    return endedLength;
+                }
+            }
+            case Draw, AntiUnoCalled -> {
+                if(chainLength > 0 && !isStacking) {
+                    int endedLength = chainLength;
+                    chainLength = 0;
+                    return endedLength;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the length of the chain still going.
+     *
+     * @return The number of +2 and +4 cards played in the current chain, or 0 if there is none.
+     */
+    public int getChainLength() {
+        return chainLength;
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Uno
+ *
+ * StatHistogram class:
+ * A fixed size histogram of non-negative int values that can be merged with
+ * others, so parts of a data set can be counted on separate threads and then
+ * combined. Values below 64 are counted exactly. Larger values share buckets
+ * that keep them to within about 3% (6 significant bits), in the same way as
+ * an HDR histogram. The memory used does not depend on how many values are
+ * recorded.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class StatHistogram {
+    /**
+     * Number of bits of each value kept exactly.
+     */
+    private static final int SUB_BUCKET_BITS = 6;
+    /**
+     * Number of values counted exactly before buckets begin to cover ranges.
+     */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /**
+     * Number of buckets added for each doubling of the value.
+     */
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    /**
+     * Total buckets needed to cover every non-negative int.
+     */
+    private static final int BUCKET_COUNT = (31 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_HALF + SUB_BUCKET_COUNT;
+
+    /**
+     * Number of values recorded in each bucket.
+     */
+    private final long[] counts;
+    /**
+     * Number of values recorded.
+     */
+    private long totalCount;
+    /**
+     * Sum of every value recorded.
+     */
+    private long sum;
+    /**
+     * Smallest value recorded.
+     */
+    private int min;
+    /**
+     * Largest value recorded.
+     */
+    private int max;
+
+    /**
+     * Creates an empty histogram.
+     */
+    public StatHistogram() {
+        counts = new long[BUCKET_COUNT];
+        min = Integer.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value The value to record. Negative values are recorded as 0.
+     */
+    public void record(int value) {
+        value = Math.max(0, value);
+        counts[getBucketIndex(value)]++;
+        totalCount++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds all the values recorded by another histogram to this one.
+     *
+     * @param other The histogram to add.
+     */
+    public void merge(StatHistogram other) {
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Gets the number of values recorded.
+     *
+     * @return The count of values.
+     */
+    public long getCount() {
+        return totalCount;
+    }
+
+    /**
+     * Gets the mean of the values recorded.
+     *
+     * @return The exact mean, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    /**
+     * Gets the smallest value recorded.
+     *
+     * @return The smallest value, or 0 if nothing was recorded.
+     */
+    public int getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    /**
+     * Gets the largest value recorded.
+     *
+     * @return The largest value.
+     */
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the number of values recorded that are in the same bucket as the value.
+     * Values below 64 each have their own bucket so this is their exact count.
+     *
+     * @param value The value to look up.
+     * @return The count for the bucket containing value.
+     */
+    public long getCountAtValue(int value) {
+        return counts[getBucketIndex(Math.max(0, value))];
+    }
+
+    /**
+     * Gets the value that the given percentage of recorded values are less than or equal to.
+     *
+     * @param percentile The percentage from 0 to 100.
+     * @return The highest value in the bucket where the percentile falls, limited to the largest value recorded.
+     */
+    public int getValueAtPercentile(double percentile) {
+        if(totalCount == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long counted = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            counted += counts[i];
+            if(counted >= target) {
+                return Math.min(max, getHighestValueInBucket(i));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Describes the distribution in a single line.
+     *
+     * @return The count, mean, and main percentiles.
+     */
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.2f min=%d p50=%d p90=%d p99=%d max=%d", totalCount, getMean(),
+                getMin(), getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99), getMax());
+    }
+
+    /**
+     * Finds the bucket a value is counted in.
+     *
+     * @param value A non-negative value.
+     * @return The index into counts.
+     */
+    private static int getBucketIndex(int value) {
+        if(value < SUB_BUCKET_COUNT) return value;
+        int shift = (31 - Integer.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF + (value >>> shift);
+    }
+
+    /**
+     * Finds the highest value counted in a bucket.
+     *
+     * @param bucketIndex The index into counts.
+     * @return The highest value that would be counted in the bucket.
+     */
+    private static int getHighestValueInBucket(int bucketIndex) {
+        if(bucketIndex < SUB_BUCKET_COUNT) return bucketIndex;
+        int shift = bucketIndex / SUB_BUCKET_HALF - 1;
+        long lowest = (long) (bucketIndex - shift * SUB_BUCKET_HALF) << shift;
+        return (int) Math.min(Integer.MAX_VALUE, lowest + (1L << shift) - 1);
+    }
+}
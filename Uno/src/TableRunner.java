@@ -0,0 +1,266 @@
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Uno
+ *
+ * TableRunner class:
+ * Runs a started GameTable on a thread of its own so the table can be written as plain
+ * sequential code that blocks while it waits. Messages from clients are passed in through
+ * a mailbox. While the table is only waiting on its clients the thread parks on the mailbox
+ * instead of ticking, so idle tables cost nothing but memory. Virtual threads are used when
+ * the Java runtime has them, otherwise platform threads with a small stack. The LoadTestClient
+ * turns virtual threads off with setVirtualThreadsAllowed() to compare the two.
+ *
+ * ClientConnections stay owned by their event loop. Frames the table sends while handling
+ * one step are copied and handed back to the event loop together to be sent, along with
+ * the frames published to the table's SpectatorGroup.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class TableRunner implements Runnable {
+    /**
+     * Stack size in bytes for platform threads when virtual threads are not available.
+     */
+    private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+    /**
+     * Thread.ofVirtual() when the runtime has virtual threads, otherwise null.
+     */
+    private static final Method ofVirtualMethod = findMethod(Thread.class, "ofVirtual");
+    /**
+     * When false platform threads are used even if the runtime has virtual threads.
+     */
+    private static volatile boolean isVirtualThreadAllowed = true;
+
+    /**
+     * The table being run.
+     */
+    private final GameTable table;
+    /**
+     * Runs a task on the event loop that owns the table's connections.
+     */
+    private final Consumer<Runnable> eventLoopExecutor;
+    /**
+     * Tasks waiting to be run on the table's thread.
+     */
+    private final BlockingQueue<Runnable> mailbox;
+    /**
+     * Sends and publishes waiting to be handed to the event loop.
+     */
+    private List<Runnable> pendingSends;
+    /**
+     * The thread running the table.
+     */
+    private final Thread thread;
+    /**
+     * True once start() has been called.
+     */
+    private volatile boolean isStarted;
+    /**
+     * True once stop() has been called.
+     */
+    private volatile boolean isStopping;
+    /**
+     * True once the thread has finished because everyone left or the runner was stopped.
+     */
+    private volatile boolean isFinished;
+
+    /**
+     * Creates a runner for a table ready to be started.
+     *
+     * @param table The table to run.
+     * @param eventLoopExecutor Runs a task on the event loop that owns the table's connections.
+     */
+    public TableRunner(GameTable table, Consumer<Runnable> eventLoopExecutor) {
+        this.table = table;
+        this.eventLoopExecutor = eventLoopExecutor;
+        mailbox = new LinkedBlockingQueue<>();
+        pendingSends = new ArrayList<>();
+        thread = createThread(this, "GameTable-" + table.getTableID());
+    }
+
+    /**
+     * Checks if tables are run on virtual threads.
+     *
+     * @return True if the Java runtime has virtual threads and they are allowed.
+     */
+    public static boolean usesVirtualThreads() {
+        return ofVirtualMethod != null && isVirtualThreadAllowed;
+    }
+
+    /**
+     * Checks if the Java runtime has virtual threads.
+     *
+     * @return True if Thread.ofVirtual() exists.
+     */
+    public static boolean hasVirtualThreads() {
+        return ofVirtualMethod != null;
+    }
+
+    /**
+     * Sets whether runners created from now on may use virtual threads.
+     *
+     * @param isAllowed False to always use platform threads.
+     */
+    public static void setVirtualThreadsAllowed(boolean isAllowed) {
+        isVirtualThreadAllowed = isAllowed;
+    }
+
+    /**
+     * Starts running the table on its own thread. From then on the table must only be used from that thread.
+     */
+    public void start() {
+        isStarted = true;
+        thread.start();
+    }
+
+    /**
+     * Asks the thread to finish and wakes it if it is parked.
+     */
+    public void stop() {
+        isStopping = true;
+        mailbox.add(() -> {});
+    }
+
+    /**
+     * Checks if the runner has been started.
+     *
+     * @return True once start() has been called.
+     */
+    public boolean isStarted() {
+        return isStarted;
+    }
+
+    /**
+     * Checks if the thread has finished.
+     *
+     * @return True once everyone has left the table or the runner was stopped.
+     */
+    public boolean isFinished() {
+        return isFinished;
+    }
+
+    /**
+     * Queues a task to run on the table's thread.
+     *
+     * @param task The task to run.
+     */
+    public void execute(Runnable task) {
+        mailbox.add(task);
+    }
+
+    /**
+     * Queues a frame to be sent by the event loop once the current step has been handled.
+     * Must be called from the table's thread.
+     *
+     * @param connection The client to send to.
+     * @param frame The frame ready for reading. It is copied and its position is not changed.
+     */
+    public void send(ClientConnection connection, ByteBuffer frame) {
+        ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+        copy.put(frame.duplicate()).flip();
+        pendingSends.add(() -> connection.send(copy));
+    }
+
+    /**
+     * Queues a frame to be published to the spectators by the event loop once the current step
+     * has been handled. Must be called from the table's thread.
+     *
+     * @param spectators The table's spectators.
+     * @param frame A read-only frame from WireProtocol.shareFrame().
+     */
+    public void publish(SpectatorGroup spectators, ByteBuffer frame) {
+        pendingSends.add(() -> spectators.publish(frame));
+    }
+
+    /**
+     * Runs the mailbox and updates the table each tick until everyone has left and can no longer resume. When the table is
+     * only waiting on its clients the thread parks until a message arrives or the table's wait is over.
+     */
+    @Override
+    public void run() {
+        long tickInterval = TimeUnit.MILLISECONDS.toNanos(GameServer.TICK_INTERVAL);
+        long lastUpdate = System.nanoTime();
+        try {
+            while(!isStopping && !table.isDeserted()) {
+                long parkTime = table.getParkTime();
+                long waitTime = parkTime > 0 ? TimeUnit.MILLISECONDS.toNanos(parkTime) : lastUpdate + tickInterval - System.nanoTime();
+                Runnable task = waitTime > 0 ? mailbox.poll(waitTime, TimeUnit.NANOSECONDS) : mailbox.poll();
+                while(task != null) {
+                    task.run();
+                    task = mailbox.poll();
+                }
+                long now = System.nanoTime();
+                // A parked table is updated as soon as it wakes with all the time that passed while parked.
+                if(now - lastUpdate >= tickInterval || parkTime > 0) {
+                    table.updateTable((int) Math.min(TimeUnit.NANOSECONDS.toMillis(now - lastUpdate), Integer.MAX_VALUE));
+                    lastUpdate = now;
+                }
+                flushFrames();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            GameLogger.log(GameLogger.Category.General, GameLogger.Level.Error, "Table {} stopped. {}",
+                    table.getTableID(), e.toString());
+        }
+        flushFrames();
+        isFinished = true;
+    }
+
+    /**
+     * Hands every frame queued by the table to the event loop as a single task.
+     */
+    private void flushFrames() {
+        if(pendingSends.isEmpty()) return;
+        List<Runnable> sends = pendingSends;
+        pendingSends = new ArrayList<>();
+        eventLoopExecutor.accept(() -> sends.forEach(Runnable::run));
+    }
+
+    /**
+     * Creates an unstarted virtual thread when the runtime has them, otherwise a daemon platform
+     * thread with a small stack.
+     *
+     * @param task The task for the thread to run.
+     * @param name Name of the thread.
+     * @return The unstarted thread.
+     */
+    private static Thread createThread(Runnable task, String name) {
+        if(usesVirtualThreads()) {
+            try {
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                Object builder = builderClass.getMethod("name", String.class).invoke(ofVirtualMethod.invoke(null), name);
+                return (Thread) builderClass.getMethod("unstarted", Runnable.class).invoke(builder, task);
+            } catch (ReflectiveOperationException e) {
+                GameLogger.log(GameLogger.Category.General, GameLogger.Level.Warning,
+                        "Failed to create virtual thread. {}", e.toString());
+            }
+        }
+        Thread thread = new Thread(null, task, name, PLATFORM_STACK_SIZE);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Finds a public method that may not exist in the running version of Java.
+     *
+     * @param type The class to look in.
+     * @param name Name of the method without parameters.
+     * @return The method, or null if it does not exist.
+     */
+    private static Method findMethod(Class<?> type, String name) {
+        try {
+            return type.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
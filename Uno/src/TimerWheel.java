@@ -0,0 +1,218 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Uno
+ *
+ * TimerWheel class:
+ * Defines a hashed timer wheel for scheduling many timeouts on a single thread. Time is
+ * split into ticks and the wheel has a ring of buckets, one per tick. A timeout is put in
+ * the bucket for the tick it expires on, along with how many more times the wheel must
+ * go round first, so scheduling and cancelling are O(1) however many timeouts there are.
+ * Each advance only looks at the buckets for the ticks that passed.
+ *
+ * Not thread safe. The wheel must only be used by the thread that owns it.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class TimerWheel {
+    /**
+     * Uno
+     *
+     * Timeout class:
+     * Defines a task scheduled on the wheel. Timeouts in the same bucket form a doubly linked
+     * list so any of them can be removed without searching.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    public static class Timeout {
+        /**
+         * The task to run when the timeout expires.
+         */
+        private final Runnable task;
+        /**
+         * Number of full turns of the wheel left before the timeout expires.
+         */
+        private long remainingRounds;
+        /**
+         * Index of the bucket holding the timeout, or -1 when it is not scheduled.
+         */
+        private int bucket;
+        /**
+         * True between the timeout being taken out of its bucket to expire and its task running.
+         */
+        private boolean isExpiring;
+        /**
+         * The previous timeout in the bucket.
+         */
+        private Timeout previous;
+        /**
+         * The next timeout in the bucket.
+         */
+        private Timeout next;
+
+        /**
+         * Creates a timeout that has not been scheduled.
+         *
+         * @param task The task to run when the timeout expires.
+         */
+        private Timeout(Runnable task) {
+            this.task = task;
+            bucket = -1;
+        }
+
+        /**
+         * Checks if the timeout is waiting to expire.
+         *
+         * @return True until the timeout has expired or been cancelled.
+         */
+        public boolean isScheduled() {
+            return bucket != -1;
+        }
+    }
+
+    /**
+     * Time in ms covered by each tick.
+     */
+    private final int tickDuration;
+    /**
+     * Heads of the list of timeouts in each bucket.
+     */
+    private final Timeout[] buckets;
+    /**
+     * Bit mask to turn a tick into a bucket index. The number of buckets is a power of two.
+     */
+    private final int mask;
+    /**
+     * The next tick to be processed.
+     */
+    private long currentTick;
+    /**
+     * Time in ms the wheel started counting ticks from.
+     */
+    private final long startTime;
+    /**
+     * Number of timeouts waiting to expire.
+     */
+    private int size;
+    /**
+     * Timeouts taken out of the bucket being processed and waiting for their tasks to run.
+     */
+    private final List<Timeout> expired;
+
+    /**
+     * Creates an empty wheel starting from now.
+     *
+     * @param tickDuration Time in ms covered by each tick.
+     * @param bucketCount Number of buckets, rounded up to a power of two.
+     * @param now The current time in ms.
+     */
+    public TimerWheel(int tickDuration, int bucketCount, long now) {
+        this.tickDuration = tickDuration;
+        int size = Integer.highestOneBit(Math.max(1, bucketCount - 1)) << 1;
+        buckets = new Timeout[size];
+        mask = size - 1;
+        startTime = now;
+        expired = new ArrayList<>();
+    }
+
+    /**
+     * Schedules a task to run after a delay. The task runs from advance() on the first tick
+     * at or after the delay has passed.
+     *
+     * @param task The task to run.
+     * @param delay Time in ms to wait.
+     * @param now The current time in ms.
+     * @return The timeout, which can be cancelled.
+     */
+    public Timeout schedule(Runnable task, long delay, long now) {
+        Timeout timeout = new Timeout(task);
+        long expiryTick = Math.max(currentTick, (now - startTime + delay + tickDuration - 1) / tickDuration);
+        timeout.remainingRounds = (expiryTick - currentTick) / buckets.length;
+        timeout.bucket = (int) (expiryTick & mask);
+        timeout.next = buckets[timeout.bucket];
+        if(timeout.next != null) {
+            timeout.next.previous = timeout;
+        }
+        buckets[timeout.bucket] = timeout;
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Removes a timeout so it never runs. Does nothing when it has already expired or been cancelled.
+     *
+     * @param timeout The timeout to cancel, or null.
+     */
+    public void cancel(Timeout timeout) {
+        if(timeout == null) return;
+        timeout.isExpiring = false;
+        if(timeout.isScheduled()) {
+            unlink(timeout);
+        }
+    }
+
+    /**
+     * Takes a timeout out of its bucket.
+     *
+     * @param timeout The scheduled timeout to remove.
+     */
+    private void unlink(Timeout timeout) {
+        if(timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if(timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+        size--;
+    }
+
+    /**
+     * Runs every timeout that has expired by now. Tasks may schedule or cancel other timeouts.
+     *
+     * @param now The current time in ms.
+     */
+    public void advance(long now) {
+        long targetTick = (now - startTime) / tickDuration;
+        while(currentTick <= targetTick) {
+            int bucket = (int) (currentTick & mask);
+            Timeout timeout = buckets[bucket];
+            while(timeout != null) {
+                Timeout next = timeout.next;
+                if(timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                } else {
+                    unlink(timeout);
+                    timeout.isExpiring = true;
+                    expired.add(timeout);
+                }
+                timeout = next;
+            }
+            // The tick is passed before running the tasks so anything they schedule lands in a later tick.
+            currentTick++;
+            for(Timeout expiredTimeout : expired) {
+                if(expiredTimeout.isExpiring) {
+                    expiredTimeout.isExpiring = false;
+                    expiredTimeout.task.run();
+                }
+            }
+            expired.clear();
+        }
+    }
+
+    /**
+     * Gets the number of timeouts waiting to expire.
+     *
+     * @return The number of scheduled timeouts.
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -1,5 +1,6 @@
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
@@ -15,6 +16,10 @@ import java.util.function.Consumer;
  * @version 2021.1
  */
 public class TurnActionFactory {
+    /**
+     * The ways a sequence of TurnActions can be started.
+     */
+    public enum SequenceType { PlayCard, DrawCard }
 
     /**
      * Uno
@@ -43,6 +48,19 @@ public class TurnActionFactory {
          * Text to be used to describe the current state in debug output.
          */
         protected final String actionDebugText;
+        /**
+         * The first TurnAction in the sequence this action belongs to. Set once the whole sequence has been created.
+         */
+        protected TurnAction sequenceHead;
+        /**
+         * How the sequence this action belongs to was started.
+         */
+        protected SequenceType sequenceType;
+        /**
+         * The faceValueID of the card that started the sequence, or -1 for sequences that drew a card.
+         * Kept separately because storedData can be changed by actions later in the sequence.
+         */
+        protected int sequenceFaceValueID;
 
         /**
          * Stores the properties specified ready to use.
@@ -195,15 +213,93 @@ public class TurnActionFactory {
         storedData.put("faceValueID", faceValueID);
         storedData.put("colourID", colourID);
         TurnAction nextSequence = cardIDToTurnAction(faceValueID, storedData);
-        return new TurnAction(nextSequence, storedData, TurnActionFactory::placeCard, "Place Card");
+        return markSequence(new TurnAction(nextSequence, storedData, TurnActionFactory::placeCard, "Place Card"),
+                SequenceType.PlayCard, faceValueID);
+    }
+
+    /**
+     * Finds the position of the action within its sequence so the same action can be found
+     * again in a sequence created with rebuildSequence().
+     *
+     * @param action The action to find.
+     * @return The index of the action in the order given by getSequenceNodes().
+     */
+    public static int getSequenceIndex(TurnAction action) {
+        return getSequenceNodes(action.sequenceHead).indexOf(action);
+    }
+
+    /**
+     * Creates a new sequence of the same type and shape as a saved sequence, restores the
+     * stored data, and returns the action at the saved position.
+     *
+     * @param sequenceType How the saved sequence was started.
+     * @param faceValueID The sequenceFaceValueID of the saved sequence.
+     * @param storedData The stored data from the saved sequence. Must contain the playerID.
+     * @param sequenceIndex The index of the saved action from getSequenceIndex().
+     * @return The action matching the saved action in the new sequence.
+     */
+    public static TurnAction rebuildSequence(SequenceType sequenceType, int faceValueID,
+                                             Map<String, Integer> storedData, int sequenceIndex) {
+        TurnAction head;
+        if(sequenceType == SequenceType.PlayCard) {
+            head = playCardAsAction(storedData.get("playerID"), -1, faceValueID, -1);
+        } else {
+            head = drawCardAsAction(storedData.get("playerID"));
+        }
+        head.storedData.clear();
+        head.storedData.putAll(storedData);
+        return getSequenceNodes(head).get(sequenceIndex);
+    }
+
+    /**
+     * Lists every action in a sequence once in a fixed order, following next before otherNext.
+     * Sequences with the same type and card produce the same order.
+     *
+     * @param headNode The first action in the sequence.
+     * @return All the actions reachable from the headNode.
+     */
+    private static List<TurnAction> getSequenceNodes(TurnAction headNode) {
+        List<TurnAction> nodes = new ArrayList<>();
+        Map<TurnAction, Boolean> visited = new IdentityHashMap<>();
+        List<TurnAction> toVisit = new ArrayList<>();
+        toVisit.add(headNode);
+        while(!toVisit.isEmpty()) {
+            TurnAction node = toVisit.remove(toVisit.size()-1);
+            if(node == null || visited.put(node, true) != null) continue;
+            nodes.add(node);
+            if(node instanceof TurnDecisionAction) {
+                toVisit.add(((TurnDecisionAction) node).otherNext);
+            }
+            toVisit.add(node.next);
+        }
+        return nodes;
+    }
+
+    /**
+     * Records the head, type, and starting card of the sequence on every action in it.
+     *
+     * @param headNode The first action in the sequence.
+     * @param sequenceType How the sequence was started.
+     * @param faceValueID The faceValueID of the card that started the sequence, or -1 when drawing.
+     * @return The headNode.
+     */
+    private static TurnAction markSequence(TurnAction headNode, SequenceType sequenceType, int faceValueID) {
+        for(TurnAction node : getSequenceNodes(headNode)) {
+            node.sequenceHead = headNode;
+            node.sequenceType = sequenceType;
+            node.sequenceFaceValueID = faceValueID;
+        }
+        return headNode;
     }
 
     /**
      * Iterates over the provided TurnAction tree recursively and outputs it for debug purposes to the console.
+     * Does nothing when TurnActions debug logging is off, so the indents and arguments are never built.
      *
      * @param headNode Node to recursively generate a tree output from.
      */
     public static void debugOutputTurnActionTree(TurnAction headNode) {
+        if(!GameLogger.isEnabled(GameLogger.Category.TurnActions, GameLogger.Level.Debug)) return;
         debugRecursiveNodeOutput(headNode, 0);
     }
 
@@ -217,14 +313,16 @@ public class TurnActionFactory {
         if(currentNode == null) return;
         if(currentNode instanceof TurnDecisionAction) {
             TurnDecisionAction currentSplitNode = (TurnDecisionAction) currentNode;
-            System.out.println("\t".repeat(indentLevel) + "? " + (indentLevel+1) + ". " + currentSplitNode.flagName
-                                + " Timeout: " + currentSplitNode.timeOut + " " + currentSplitNode.actionDebugText);
+            GameLogger.log(GameLogger.Category.TurnActions, GameLogger.Level.Debug, "{}? {}. {} Timeout: {} {}",
+                    "\t".repeat(indentLevel), indentLevel+1, currentSplitNode.flagName,
+                    currentSplitNode.timeOut, currentSplitNode.actionDebugText);
             debugRecursiveNodeOutput(currentSplitNode.next,indentLevel+1);
             if(currentSplitNode.next != currentSplitNode.otherNext) {
                 debugRecursiveNodeOutput(currentSplitNode.otherNext, indentLevel + 1);
             }
         } else {
-            System.out.println("\t".repeat(indentLevel) + "- " + (indentLevel+1) + ". " + currentNode.actionDebugText);
+            GameLogger.log(GameLogger.Category.TurnActions, GameLogger.Level.Debug, "{}- {}. {}",
+                    "\t".repeat(indentLevel), indentLevel+1, currentNode.actionDebugText);
             debugRecursiveNodeOutput(currentNode.next,indentLevel+1);
         }
     }
@@ -254,7 +352,8 @@ public class TurnActionFactory {
                 "drawTillCanPlay?", storedData, TurnActionFactory::checkDrawTillCanPlayRule, "Check Draw Till Can Play Rule");
         TurnDecisionAction canPlayCard = new TurnDecisionAction(drawTillCanPlay, isForcedPlay, false,
                 "cardPlayable", storedData, TurnActionFactory::isCardPlayable, "Check is the Card Playable");
-        return new TurnAction(canPlayCard, storedData, TurnActionFactory::drawCard, "Draw a Card");
+        return markSequence(new TurnAction(canPlayCard, storedData, TurnActionFactory::drawCard, "Draw a Card"),
+                SequenceType.DrawCard, -1);
     }
 
     /**
@@ -271,6 +370,10 @@ public class TurnActionFactory {
         TurnAction playCard = playCardAsAction(storedData.get("playerID"), storedData.get("cardID"),
                 storedData.get("faceValueID"), storedData.get("colourID"));
         playCard.injectProperty("drawCount", storedData.get("drawCount"));
+        if(storedData.get("drawCount") != null && storedData.get("drawCount") > 0) {
+            CurrentGameInterface.getCurrentGame().getEventLog().logEvent(GameEventLog.EventType.Stack,
+                    storedData.get("playerID"), storedData.get("drawCount"));
+        }
         CurrentGameInterface.getCurrentGame().setCurrentTurnAction(playCard);
     }
 
@@ -463,7 +566,10 @@ public class TurnActionFactory {
         storedData.put("faceValueID", drawnCard.getFaceValueID());
         storedData.put("colourID", drawnCard.getColourID());
         // Add card to hand
-        CurrentGameInterface.getCurrentGame().getCurrentPlayer().addCardToHand(drawnCard);
+        Player currentPlayer = CurrentGameInterface.getCurrentGame().getCurrentPlayer();
+        CurrentGameInterface.getCurrentGame().getEventLog().logCardEvent(GameEventLog.EventType.Draw,
+                currentPlayer.getPlayerID(), drawnCard);
+        currentPlayer.addCardToHand(drawnCard);
     }
 
     /**
@@ -478,6 +584,8 @@ public class TurnActionFactory {
         Card cardToPlace = currentPlayer.getCardByID(storedData.get("cardID"));
         // Remove card from hand
         currentPlayer.removeCard(cardToPlace);
+        CurrentGameInterface.getCurrentGame().getEventLog().logCardEvent(GameEventLog.EventType.Place,
+                currentPlayer.getPlayerID(), cardToPlace);
         // Add card to pile
         CurrentGameInterface.getCurrentGame().placeCard(cardToPlace);
     }
@@ -537,9 +645,8 @@ public class TurnActionFactory {
             for(int i = 0; i < count; i++) {
                 drawCard(storedData);
             }
-            CurrentGameInterface.getCurrentGame().showGeneralOverlay(
-                    "DrawN"+CurrentGameInterface.getCurrentGame().getCurrentPlayer().getPlayerID()
-                                + ";" + count);
+            CurrentGameInterface.getCurrentGame().showDrawNOverlay(
+                    CurrentGameInterface.getCurrentGame().getCurrentPlayer().getPlayerID(), count);
             storedData.remove("drawCount");
         }
     }
@@ -606,8 +713,8 @@ public class TurnActionFactory {
      * @param storedData Reference to the shared stored data to be used for passing on to all the TurnAction sequence.
      */
     private static void showSkip(Map<String, Integer> storedData) {
-        CurrentGameInterface.getCurrentGame().showGeneralOverlay("SkipVisual"
-                + CurrentGameInterface.getCurrentGame().getCurrentPlayer().getPlayerID());
+        CurrentGameInterface.getCurrentGame().showGeneralOverlay(OverlayManager.GeneralOverlayType.SkipVisual,
+                CurrentGameInterface.getCurrentGame().getCurrentPlayer().getPlayerID());
     }
 
     /**
@@ -659,8 +766,8 @@ public class TurnActionFactory {
         for(int i = 0; i < 4; i++) {
             drawCard(storedData);
         }
-        CurrentGameInterface.getCurrentGame().showGeneralOverlay(
-                "DrawN"+CurrentGameInterface.getCurrentGame().getCurrentPlayer().getPlayerID() + ";4");
+        CurrentGameInterface.getCurrentGame().showDrawNOverlay(
+                CurrentGameInterface.getCurrentGame().getCurrentPlayer().getPlayerID(), 4);
     }
 
     /**
@@ -688,6 +795,8 @@ public class TurnActionFactory {
         Object[] targetPlayerHand = targetPlayer.getHand().toArray();
         targetPlayer.emptyHand();
         Player currentPlayer = CurrentGameInterface.getCurrentGame().getCurrentPlayer();
+        CurrentGameInterface.getCurrentGame().getEventLog().logEvent(GameEventLog.EventType.Swap,
+                currentPlayer.getPlayerID(), targetPlayerID);
         Object[] currentPlayerHand = currentPlayer.getHand().toArray();
         currentPlayer.emptyHand();
         for(Object card : targetPlayerHand) {
@@ -707,6 +816,9 @@ public class TurnActionFactory {
     private static void passAllHands(Map<String, Integer> storedData) {
         List<Object[]> hands = new ArrayList<>();
         List<Player> players = CurrentGameInterface.getCurrentGame().getAllPlayers();
+        CurrentGameInterface.getCurrentGame().getEventLog().logEvent(GameEventLog.EventType.PassAll,
+                CurrentGameInterface.getCurrentGame().getCurrentPlayer().getPlayerID(),
+                CurrentGameInterface.getCurrentGame().isIncreasing() ? 1 : 0);
         for(Player player : players) {
             hands.add(player.getHand().toArray());
             player.emptyHand();
@@ -737,12 +849,14 @@ public class TurnActionFactory {
      * @param storedData Reference to the shared stored data to be used for passing on to all the TurnAction sequence.
      */
     private static void showChallengeResult(Map<String, Integer> storedData) {
+        CurrentGameInterface.getCurrentGame().getEventLog().logEvent(GameEventLog.EventType.ChallengeResult,
+                CurrentGameInterface.getCurrentGame().getCurrentPlayer().getPlayerID(), storedData.get("couldPreviousPlayCard"));
         if(storedData.get("couldPreviousPlayCard") == 0) {
-            CurrentGameInterface.getCurrentGame().showGeneralOverlay(
-                    "ChallengeFailed"+CurrentGameInterface.getCurrentGame().getCurrentPlayer().getPlayerID());
+            CurrentGameInterface.getCurrentGame().showGeneralOverlay(OverlayManager.GeneralOverlayType.ChallengeFailed,
+                    CurrentGameInterface.getCurrentGame().getCurrentPlayer().getPlayerID());
         } else {
-            CurrentGameInterface.getCurrentGame().showGeneralOverlay(
-                    "ChallengeSuccess"+CurrentGameInterface.getCurrentGame().getCurrentPlayer().getPlayerID());
+            CurrentGameInterface.getCurrentGame().showGeneralOverlay(OverlayManager.GeneralOverlayType.ChallengeSuccess,
+                    CurrentGameInterface.getCurrentGame().getCurrentPlayer().getPlayerID());
         }
     }
 
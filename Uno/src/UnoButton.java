@@ -110,8 +110,7 @@ public class UnoButton extends WndInterface implements GeneralOverlayInterface {
     @Override
     public void handleMousePress(Position mousePosition, boolean isLeft) {
         if(isActive && bounds.isPositionInside(mousePosition)) {
-            bottomPlayer.setUnoState(Player.UNOState.Called);
-            CurrentGameInterface.getCurrentGame().showGeneralOverlay("UNOCalled"+bottomPlayer.getPlayerID());
+            CurrentGameInterface.getCurrentGame().callUNO(bottomPlayer.getPlayerID());
         }
     }
 }
@@ -0,0 +1,366 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Uno
+ *
+ * WireProtocol class:
+ * Defines the binary protocol between the GameServer and its clients. Every message is
+ * a frame made of a 2 byte length, a 1 byte message type, and then the payload. The
+ * length covers the type and payload. Numbers use the varints from GameEventLog and
+ * cards are written with GameEventLog.writeCard().
+ *
+ * Client messages (payload):
+ *   Join (version, seatCount, name, and optionally the RuleSet signature), Draw, Play (cardID),
+ *   JumpIn (cardID), CallUNO, AntiUno,
+ *   and one message for each TurnDecisionAction flagName:
+ *   WildColour (colourID), KeepOrPlay (0 keep, 1 play), OtherPlayer (playerID),
+ *   IsChallenging (0 decline, 1 challenge, 2 stack then cardID), IsStacking (0 decline, 1 stack then cardID),
+ *   Spectate (version, tableID) to watch a table instead of joining one,
+ *   Resume (version, tableID, seatID, resumeToken, frameCount) to take back a seat after reconnecting.
+ *
+ * Server messages (payload):
+ *   Seated (tableID, seatID, seatCount, 8 byte resumeToken), PlayerInfo (playerID, PlayerType, name), RoundStart,
+ *   Snapshot and Delta (see GameTable and RemoteGameState), RoundEnd (winnerID, roundScore,
+ *   playerCount, totalScore...), Left (seatID), Error (the ClientMessage ordinal or 255, ErrorCode),
+ *   Watching (tableID, seatCount), HandsRevealed (playerCount, then handCount and card... for each),
+ *   Resumed (seatID, frameNumber), Returned (seatID).
+ * Spectators are sent the public frames only. Their Snapshots and Deltas never include a hand.
+ *
+ * The frames a seat is sent after Seated are numbered from 0, leaving out Error frames and Resumed.
+ * A client that reconnects sends Resume with the number of frames it received. The server answers
+ * with Resumed and the number of the next frame, followed by the frames it missed when they are
+ * still kept, or otherwise by the players and a Snapshot.
+ *
+ * @author Peter Mitchell
+ * @version 2021.1
+ */
+public class WireProtocol {
+    /**
+     * Messages sent by clients. The messages for a TurnDecisionAction know its flagName.
+     */
+    public enum ClientMessage {
+        Join(null), Draw(null), Play(null), JumpIn(null), CallUNO(null), AntiUno(null),
+        WildColour("wildColour"), KeepOrPlay("keepOrPlay"), OtherPlayer("otherPlayer"),
+        IsChallenging("isChallenging"), IsStacking("isStacking"), Spectate(null), Resume(null);
+
+        /**
+         * The flagName of the TurnDecisionAction the message decides, or null for other messages.
+         */
+        private final String flagName;
+
+        /**
+         * Sets the flagName decided by the message.
+         *
+         * @param flagName The flagName of the TurnDecisionAction, or null.
+         */
+        ClientMessage(String flagName) {
+            this.flagName = flagName;
+        }
+
+        /**
+         * Gets the flagName of the TurnDecisionAction the message decides.
+         *
+         * @return The flagName, or null for messages that are not decisions.
+         */
+        public String getFlagName() {
+            return flagName;
+        }
+    }
+
+    /**
+     * Messages sent by the server.
+     */
+    public enum ServerMessage { Seated, PlayerInfo, RoundStart, Snapshot, Delta, RoundEnd, Left, Error, Watching, HandsRevealed, Resumed, Returned }
+
+    /**
+     * Reasons a client message was rejected.
+     */
+    public enum ErrorCode { UnknownMessage, InvalidMessage, NotAllowed, NoRound, NotSeated, AlreadySeated, WrongVersion, UnknownTable }
+
+    /**
+     * What the current player is being waited on for. None means they can Draw or Play,
+     * Busy means an action sequence is running, and the rest are the TurnDecisionAction
+     * waiting for the matching ClientMessage.
+     */
+    public enum Decision {
+        None(null), Busy(null), WildColour("wildColour"), KeepOrPlay("keepOrPlay"), OtherPlayer("otherPlayer"),
+        IsChallenging("isChallenging"), IsStacking("isStacking");
+
+        /**
+         * The flagName of the TurnDecisionAction being waited on, or null.
+         */
+        private final String flagName;
+
+        /**
+         * Sets the flagName being waited on.
+         *
+         * @param flagName The flagName of the TurnDecisionAction, or null.
+         */
+        Decision(String flagName) {
+            this.flagName = flagName;
+        }
+
+        /**
+         * Finds the Decision for a TurnDecisionAction.
+         *
+         * @param flagName The flagName of the TurnDecisionAction.
+         * @return The matching Decision, or Busy if the decision is not one clients make.
+         */
+        public static Decision fromFlagName(String flagName) {
+            for(Decision decision : values()) {
+                if(flagName.equals(decision.flagName)) return decision;
+            }
+            return Busy;
+        }
+    }
+
+    /**
+     * Uno
+     *
+     * Statistics class:
+     * Counts the state bytes sent and the time spent encoding them for the tables on
+     * one event loop so the cost of each turn can be logged. Safe to share with the
+     * threads of TableRunners.
+     *
+     * @author Peter Mitchell
+     * @version 2021.1
+     */
+    public static class Statistics {
+        /**
+         * Bytes of Snapshot and Delta frames sent since the last reset.
+         */
+        private final LongAdder stateBytesSent = new LongAdder();
+        /**
+         * Time in nanoseconds spent finding and encoding changes since the last reset.
+         */
+        private final LongAdder encodeNanos = new LongAdder();
+        /**
+         * Number of turns that started since the last reset.
+         */
+        private final LongAdder turnCount = new LongAdder();
+        /**
+         * Number of arbitration windows resolved since the last reset.
+         */
+        private final LongAdder arbitrationCount = new LongAdder();
+        /**
+         * Number of arbitration windows with messages from more than one seat since the last reset.
+         */
+        private final LongAdder contestedCount = new LongAdder();
+
+        /**
+         * Records a Snapshot or Delta frame being sent.
+         *
+         * @param frameSize Size of the frame including the length.
+         */
+        public void recordFrame(int frameSize) {
+            stateBytesSent.add(frameSize);
+        }
+
+        /**
+         * Records time spent finding and encoding changes.
+         *
+         * @param nanos Time spent in nanoseconds.
+         */
+        public void recordEncodeTime(long nanos) {
+            encodeNanos.add(nanos);
+        }
+
+        /**
+         * Records a turn starting at a table.
+         */
+        public void recordTurn() {
+            turnCount.increment();
+        }
+
+        /**
+         * Records a table resolving the messages held in an arbitration window.
+         *
+         * @param isContested True if more than one seat sent messages in the window.
+         */
+        public void recordArbitration(boolean isContested) {
+            arbitrationCount.increment();
+            if(isContested) {
+                contestedCount.increment();
+            }
+        }
+
+        /**
+         * Checks if any turns have been recorded since the last reset.
+         *
+         * @return True if there is something to report.
+         */
+        public boolean hasTurns() {
+            return turnCount.sum() > 0;
+        }
+
+        /**
+         * Describes the average bytes sent and encoding time per turn and the arbitration windows, then starts counting again.
+         *
+         * @return A summary of the statistics since the last reset.
+         */
+        public String takeSummary() {
+            long turns = turnCount.sumThenReset();
+            return String.format("%d turns, %.1f state bytes per turn, %.2f us encoding per turn, %d arbitration windows (%d contested)",
+                    turns, (double) stateBytesSent.sumThenReset() / turns, encodeNanos.sumThenReset() / 1000.0 / turns,
+                    arbitrationCount.sumThenReset(), contestedCount.sumThenReset());
+        }
+    }
+
+    /**
+     * Version sent with Join. Clients using another version are rejected.
+     */
+    public static final int PROTOCOL_VERSION = 1;
+    /**
+     * Size of the length at the start of every frame.
+     */
+    public static final int LENGTH_SIZE = 2;
+    /**
+     * Largest frame the server sends including the length.
+     */
+    public static final int MAX_FRAME_SIZE = 8192;
+    /**
+     * Largest frame a client may send after the length.
+     */
+    public static final int MAX_CLIENT_FRAME_SIZE = 64;
+    /**
+     * Longest player name in bytes.
+     */
+    public static final int MAX_NAME_LENGTH = 20;
+    /**
+     * Number of Deltas sent to a client between each full Snapshot.
+     */
+    public static final int SNAPSHOT_INTERVAL = 32;
+    /**
+     * Bit set in a Delta when the turnNumber, current player, and direction follow.
+     */
+    public static final int DELTA_TURN = 1;
+    /**
+     * Bit set in a Delta when the top card follows.
+     */
+    public static final int DELTA_TOP_CARD = 1 << 1;
+    /**
+     * Bit set in a Delta when the hand sizes of the players that changed follow.
+     */
+    public static final int DELTA_HAND_SIZES = 1 << 2;
+    /**
+     * Bit set in a Delta when the Decision follows.
+     */
+    public static final int DELTA_DECISION = 1 << 3;
+    /**
+     * Bit set in a Delta when the cards added to the client's hand follow.
+     */
+    public static final int DELTA_CARDS_ADDED = 1 << 4;
+    /**
+     * Bit set in a Delta when the cardIDs removed from the client's hand follow.
+     */
+    public static final int DELTA_CARDS_REMOVED = 1 << 5;
+
+    /**
+     * Clears the buffer and starts a frame, leaving room for the length.
+     *
+     * @param buffer The buffer to write the frame into.
+     * @param messageType Ordinal of the ClientMessage or ServerMessage.
+     * @return The buffer ready for the payload.
+     */
+    public static ByteBuffer beginFrame(ByteBuffer buffer, int messageType) {
+        buffer.clear();
+        buffer.putShort((short) 0);
+        buffer.put((byte) messageType);
+        return buffer;
+    }
+
+    /**
+     * Fills in the length of a frame started with beginFrame().
+     *
+     * @param buffer The buffer containing the frame.
+     * @return The buffer ready for reading the frame.
+     */
+    public static ByteBuffer endFrame(ByteBuffer buffer) {
+        buffer.putShort(0, (short) (buffer.position() - LENGTH_SIZE));
+        return buffer.flip();
+    }
+
+    /**
+     * Takes the next complete frame from the buffer.
+     *
+     * @param buffer The bytes received ready for reading.
+     * @param maxFrameSize The largest frame allowed after the length.
+     * @return A view of the message type and payload, or null if the frame is not complete yet.
+     * @throws IOException When the frame is empty or longer than allowed.
+     */
+    public static ByteBuffer nextFrame(ByteBuffer buffer, int maxFrameSize) throws IOException {
+        if(buffer.remaining() < LENGTH_SIZE) return null;
+        int length = buffer.getShort(buffer.position()) & 0xFFFF;
+        if(length == 0 || length > maxFrameSize) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        if(buffer.remaining() < LENGTH_SIZE + length) return null;
+        ByteBuffer frame = buffer.slice(buffer.position() + LENGTH_SIZE, length);
+        buffer.position(buffer.position() + LENGTH_SIZE + length);
+        return frame;
+    }
+
+    /**
+     * Copies a finished frame into a read-only buffer of its own so it can be queued for many
+     * clients at once without being copied again.
+     *
+     * @param frame The frame ready for reading. Its position is not changed.
+     * @return A read-only copy of the frame ready for reading.
+     */
+    public static ByteBuffer shareFrame(ByteBuffer frame) {
+        ByteBuffer shared = ByteBuffer.allocate(frame.remaining());
+        shared.put(frame.duplicate()).flip();
+        return shared.asReadOnlyBuffer();
+    }
+
+    /**
+     * Reads a card written by GameEventLog.writeCard().
+     *
+     * @param buffer The buffer to read from.
+     * @return A new card with the cardID, faceValueID, and colourID that were read.
+     */
+    public static Card readCard(ByteBuffer buffer) {
+        int cardID = GameEventLog.readVarInt(buffer);
+        int packedValue = buffer.get() & 0xFF;
+        return new Card(packedValue / 5, packedValue % 5, cardID);
+    }
+
+    /**
+     * Writes a name as its length and then the UTF-8 bytes.
+     *
+     * @param buffer The buffer to write to.
+     * @param name The name to write, cut to MAX_NAME_LENGTH bytes without splitting a character.
+     */
+    public static void writeName(ByteBuffer buffer, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_NAME_LENGTH);
+        // Back up to the first byte of the character that would be cut.
+        while(length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        buffer.put((byte) length);
+        buffer.put(bytes, 0, length);
+    }
+
+    /**
+     * Reads a name written by writeName().
+     *
+     * @param buffer The buffer to read from.
+     * @return The name.
+     * @throws BufferUnderflowException When the length is over MAX_NAME_LENGTH, so that callers
+     *                                  treat it the same as a message cut short.
+     */
+    public static String readName(ByteBuffer buffer) {
+        int length = buffer.get() & 0xFF;
+        if(length > MAX_NAME_LENGTH) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}